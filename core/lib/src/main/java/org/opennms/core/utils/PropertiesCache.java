@@ -34,10 +34,18 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
-import java.util.TreeMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -47,6 +55,11 @@ import org.slf4j.LoggerFactory;
 /**
  * Caches properties files in order to improve performance.
  *
+ * Files are only written when their content changes, by writing a temporary
+ * file and renaming it over the original.  When a flush interval is set the
+ * writes are deferred to a background thread, so that several changes to a
+ * file are written at once.
+ *
  * @author <a href="mailto:brozow@opennms.org">Mathew Brozowski</a>
  * @version $Id: $
  */
@@ -56,12 +69,15 @@ public class PropertiesCache {
 
     public static final String CHECK_LAST_MODIFY_STRING = "org.opennms.utils.propertiesCache.enableCheckFileModified";
 
-    private static class PropertiesHolder {
+    public static final String FLUSH_INTERVAL_STRING = "org.opennms.utils.propertiesCache.flushInterval";
+
+    private class PropertiesHolder {
         private Properties m_properties;
         private final File m_file;
         private final Lock lock = new ReentrantLock();
         private long m_lastModify = 0;
         private boolean m_checkLastModify = Boolean.getBoolean(CHECK_LAST_MODIFY_STRING);
+        private boolean m_dirty = false;
 
         PropertiesHolder(File file) {
             m_file = file;
@@ -93,15 +109,29 @@ public class PropertiesCache {
             }
         }
         
+        /**
+         * Writes the file now or schedules it to be written by the flusher.
+         */
         private void write() throws IOException {
+            if (m_flusher == null) {
+                writeFile();
+            } else if (!m_dirty) {
+                m_dirty = true;
+                m_dirtyHolders.add(this);
+            }
+        }
+
+        private void writeFile() throws IOException {
             if(!m_file.getParentFile().mkdirs()) {
             	if(!m_file.getParentFile().exists()) {
             		LOG.warn("Could not make directory: {}", m_file.getParentFile().getPath());
             	}
             }
+            // write a temporary file and rename it so that readers and crashes never see a partial file
+            final File tmpFile = new File(m_file.getParentFile(), "." + m_file.getName() + ".tmp");
             OutputStream out = null;
             try {
-                out = new FileOutputStream(m_file);
+                out = new FileOutputStream(tmpFile);
                 m_properties.store(out, null);
             } finally {
                 if (out != null) {
@@ -112,6 +142,29 @@ public class PropertiesCache {
                     }
                 }
             }
+            try {
+                Files.move(tmpFile.toPath(), m_file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), m_file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            m_dirty = false;
+            if (m_checkLastModify) {
+                m_lastModify = m_file.lastModified();
+            }
+        }
+
+        public void flush() {
+            lock.lock();
+            try {
+                if (m_dirty) {
+                    writeFile();
+                }
+            } catch (IOException e) {
+                LOG.error("Failed to write properties file {}, will retry", m_file, e);
+                m_dirtyHolders.add(this);
+            } finally {
+                lock.unlock();
+            }
         }
 
         public Properties get() throws IOException {
@@ -120,7 +173,8 @@ public class PropertiesCache {
                 if (m_properties == null) {
                     readWithDefault(new Properties());
                 } else {
-                    if (m_checkLastModify && m_file.canRead() && m_lastModify != m_file.lastModified()) {
+                    // don't lose changes that have not been written yet
+                    if (m_checkLastModify && !m_dirty && m_file.canRead() && m_lastModify != m_file.lastModified()) {
                         m_properties = read();
                     }
                 }
@@ -214,26 +268,89 @@ public class PropertiesCache {
     }
     
     
-    private Map<String, PropertiesHolder> m_cache = new TreeMap<String, PropertiesHolder>();
-    
+    /**
+     * Holders by canonical path
+     */
+    private final Map<String, PropertiesHolder> m_cache = new ConcurrentHashMap<String, PropertiesHolder>();
+
+    /**
+     * Holders by the path they were requested with, which avoids resolving
+     * the canonical path on every access
+     */
+    private final Map<String, PropertiesHolder> m_holdersByPath = new ConcurrentHashMap<String, PropertiesHolder>();
+
+    private final Queue<PropertiesHolder> m_dirtyHolders = new ConcurrentLinkedQueue<PropertiesHolder>();
+
+    private final ScheduledExecutorService m_flusher;
+
+    /**
+     * <p>Constructor for PropertiesCache.</p>
+     *
+     * The flush interval is read from the
+     * <code>org.opennms.utils.propertiesCache.flushInterval</code> system
+     * property, in milliseconds.  Files are written immediately when it is 0,
+     * the default.
+     */
+    public PropertiesCache() {
+        this(Long.getLong(FLUSH_INTERVAL_STRING, 0L));
+    }
+
+    /**
+     * <p>Constructor for PropertiesCache.</p>
+     *
+     * @param flushInterval the number of milliseconds changes are held in
+     *            memory before they are written, or 0 to write them immediately
+     */
+    public PropertiesCache(final long flushInterval) {
+        if (flushInterval > 0) {
+            m_flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "PropertiesCache-Flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            m_flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "PropertiesCache-Shutdown"));
+        } else {
+            m_flusher = null;
+        }
+    }
+
     private PropertiesHolder getHolder(File propFile) throws IOException {
-        String key = propFile.getCanonicalPath();
-        synchronized (m_cache) {
-            PropertiesHolder holder = m_cache.get(key);
+        final String path = propFile.getPath();
+        PropertiesHolder holder = m_holdersByPath.get(path);
+        if (holder == null) {
+            final String key = propFile.getCanonicalPath();
+            holder = m_cache.get(key);
             if (holder == null) {
-                holder = new PropertiesHolder(propFile);
-                m_cache.put(key, holder);
+                final PropertiesHolder newHolder = new PropertiesHolder(propFile);
+                holder = m_cache.putIfAbsent(key, newHolder);
+                if (holder == null) {
+                    holder = newHolder;
+                }
             }
-            return holder;
+            m_holdersByPath.put(path, holder);
         }
+        return holder;
     }
-    
+
     /**
      * <p>clear</p>
      */
     public void clear() {
-        synchronized (m_cache) {
-            m_cache.clear();
+        flush();
+        m_holdersByPath.clear();
+        m_cache.clear();
+    }
+
+    /**
+     * Writes all of the changes that are held in memory.
+     */
+    public void flush() {
+        PropertiesHolder holder;
+        int pending = m_dirtyHolders.size();
+        // holders that fail are queued again, so only go through the current ones
+        while (pending-- > 0 && (holder = m_dirtyHolders.poll()) != null) {
+            holder.flush();
         }
     }
 
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PropertiesCacheTest {
+
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    private static Properties load(final File file) throws IOException {
+        final Properties properties = new Properties();
+        final InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        return properties;
+    }
+
+    @Test
+    public void testWritesOnlyChanges() throws Exception {
+        final PropertiesCache cache = new PropertiesCache(0);
+        final File file = new File(m_folder.getRoot(), "strings.properties");
+
+        cache.setProperty(file, "ifAlias", "uplink");
+        assertEquals("uplink", load(file).getProperty("ifAlias"));
+
+        // an unchanged value does not touch the file
+        assertTrue(file.delete());
+        cache.setProperty(file, "ifAlias", "uplink");
+        cache.updateProperties(file, Collections.singletonMap("ifAlias", "uplink"));
+        assertFalse(file.exists());
+
+        cache.setProperty(file, "ifAlias", "downlink");
+        assertEquals("downlink", load(file).getProperty("ifAlias"));
+        assertFalse(new File(m_folder.getRoot(), ".strings.properties.tmp").exists());
+    }
+
+    @Test
+    public void testWriteBehind() throws Exception {
+        // long enough for the flusher to never run during the test
+        final PropertiesCache cache = new PropertiesCache(3600000);
+        final File file = new File(m_folder.getRoot(), "strings.properties");
+
+        cache.setProperty(file, "ifAlias", "uplink");
+        cache.setProperty(file, "ifAlias", "downlink");
+        cache.updateProperties(file, Collections.singletonMap("ifDescr", "eth0"));
+        assertFalse(file.exists());
+        assertEquals("downlink", cache.getProperty(file, "ifAlias"));
+
+        cache.flush();
+        final Properties properties = load(file);
+        assertEquals("downlink", properties.getProperty("ifAlias"));
+        assertEquals("eth0", properties.getProperty("ifDescr"));
+    }
+
+    @Test
+    public void testSamePathsShareTheCache() throws Exception {
+        final PropertiesCache cache = new PropertiesCache(0);
+        final File file = new File(m_folder.getRoot(), "strings.properties");
+        final File other = new File(new File(m_folder.getRoot(), "."), "strings.properties");
+
+        cache.setProperty(file, "ifAlias", "uplink");
+        assertEquals("uplink", cache.getProperty(other, "ifAlias"));
+    }
+}
@@ -61,6 +61,12 @@ public abstract class SnmpWalker implements Closeable {
     private boolean m_error = false;
     private String m_errorMessage = "";
     private Throwable m_errorThrowable = null;
+    private volatile SnmpWalkCallback m_callback = null;
+
+    /** requests sent and variable bindings received, read once the walk has finished */
+    private int m_pdusSent = 0;
+    private long m_varbindsReceived = 0;
+    private long m_bytesReceived = 0;
     
     protected SnmpWalker(InetAddress address, String name, int maxVarsPerPdu, int maxRepetitions, CollectionTracker tracker) {
         m_address = address;
@@ -85,6 +91,15 @@ public abstract class SnmpWalker implements Closeable {
         }
     }
     
+    /**
+     * Sets a callback that is notified when the walk finishes, so callers do
+     * not have to block in {@link #waitFor()}. Must be set before
+     * {@link #start()}.
+     */
+    public void setCallback(SnmpWalkCallback callback) {
+        m_callback = callback;
+    }
+
     public final int getMaxVarsPerPdu() {
         return (m_pduBuilder == null ? m_maxVarsPerPdu : m_pduBuilder.getMaxVarsPerPdu());
     }
@@ -95,6 +110,7 @@ public abstract class SnmpWalker implements Closeable {
         } else {
             m_pduBuilder.reset();
             m_responseProcessor = m_tracker.buildNextPdu(m_pduBuilder);
+            m_pdusSent++;
             sendNextPdu(m_pduBuilder);
         }
     }
@@ -162,6 +178,14 @@ public abstract class SnmpWalker implements Closeable {
         } catch (IOException e) {
             LOG.error("{}: Unexpected Error occured closing SNMP session for: {}", getName(), m_address, e);
         }
+        final SnmpWalkCallback callback = m_callback;
+        if (callback != null) {
+            try {
+                callback.complete(this);
+            } catch (Throwable t) {
+                LOG.error("{}: Unexpected Error occured in walk callback for: {}", getName(), m_address, t);
+            }
+        }
     }
 
     @Override
@@ -199,6 +223,7 @@ public abstract class SnmpWalker implements Closeable {
     }
     
     protected void processResponse(SnmpObjId receivedOid, SnmpValue val) {
+        m_varbindsReceived++;
         m_responseProcessor.processResponse(receivedOid, val);
     }
 
@@ -206,6 +231,39 @@ public abstract class SnmpWalker implements Closeable {
         return m_address;
     }
 
+    /**
+     * @return the number of requests sent so far
+     */
+    public final int getPdusSent() {
+        return m_pdusSent;
+    }
+
+    /**
+     * @return the number of variable bindings received so far
+     */
+    public final long getVarbindsReceived() {
+        return m_varbindsReceived;
+    }
+
+    /**
+     * Returns the encoded size of the responses received so far, for the
+     * strategies that report it.
+     *
+     * @return the number of bytes received
+     */
+    public final long getBytesReceived() {
+        return m_bytesReceived;
+    }
+
+    /**
+     * Called by the strategies for every response received.
+     *
+     * @param bytes the encoded size of the response
+     */
+    protected final void addBytesReceived(int bytes) {
+        m_bytesReceived += bytes;
+    }
+
     public final String getErrorMessage() {
         return m_errorMessage;
     }
@@ -0,0 +1,607 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.security.USM;
+import org.snmp4j.security.UsmUser;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+/**
+ * A small fixed set of SNMP sessions that are shared by all requests.
+ *
+ * Each session has its own UDP transport and listen thread, and SNMP4J
+ * matches the responses to the pending requests by request id, so the
+ * number of sockets and threads does not grow with the number of agents.
+ * An agent always uses the same session, and the SNMPv3 engine ids,
+ * engine boots and times and localized keys that the session learns
+ * about the agent are kept for the next request.
+ *
+ * An SNMPv3 user is added to the USM of a session once, for all engines.
+ * If an agent has a user with the same security name and different
+ * credentials, for example because its pass phrases have been changed, the
+ * user is added again for the authoritative engine id of that agent only.
+ *
+ * The number of requests that are outstanding to one agent is limited.
+ * Synchronous requests wait for a free slot, asynchronous requests are
+ * queued and sent as soon as a slot is released. The bookkeeping of an
+ * agent is dropped once it has no outstanding or queued requests.
+ */
+public class Snmp4JSessionPool {
+    private static final Logger LOG = LoggerFactory.getLogger(Snmp4JSessionPool.class);
+
+    private static class PooledSession {
+        private final Snmp m_snmp;
+
+        private final USM m_usm;
+
+        /** credentials of the SNMPv3 users known to the session, by security name */
+        private final Map<OctetString, List<Object>> m_users = new HashMap<OctetString, List<Object>>();
+
+        /** credentials of the SNMPv3 users added for the engine of one agent, by agent and security name */
+        private final Map<String, List<Object>> m_agentUsers = new HashMap<String, List<Object>>();
+
+        private PooledSession(final Snmp snmp, final USM usm) {
+            m_snmp = snmp;
+            m_usm = usm;
+        }
+
+        /**
+         * Adds the user of the agent to the USM of the session, unless the
+         * session already has a user with the same security name and
+         * different credentials, for all engines or for the engine of the
+         * agent.
+         *
+         * @return false if the user has to be added for the engine of the agent
+         */
+        private synchronized boolean addUser(final Snmp4JAgentConfig agentConfig) {
+            final List<Object> credentials = getCredentials(agentConfig);
+            final OctetString securityName = agentConfig.getSecurityName();
+            final List<Object> agentUser = m_agentUsers.get(getAgentKey(agentConfig) + " " + securityName);
+            if (agentUser != null) {
+                return agentUser.equals(credentials);
+            }
+            final List<Object> existing = m_users.get(securityName);
+            if (existing == null) {
+                final UsmUser user = agentConfig.createUsmUser();
+                m_usm.addUser(securityName, user);
+                m_users.put(securityName, credentials);
+                return true;
+            }
+            return existing.equals(credentials);
+        }
+
+        /**
+         * Adds the user of the agent to the USM of the session for the
+         * authoritative engine of the agent, replacing the user and the
+         * keys localized for that engine, if any.
+         */
+        private synchronized void addUser(final Snmp4JAgentConfig agentConfig, final OctetString engineId) {
+            m_usm.addUser(agentConfig.getSecurityName(), engineId, agentConfig.createUsmUser());
+            m_agentUsers.put(getAgentKey(agentConfig) + " " + agentConfig.getSecurityName(), getCredentials(agentConfig));
+        }
+
+        private static List<Object> getCredentials(final Snmp4JAgentConfig agentConfig) {
+            return Arrays.<Object>asList(
+                agentConfig.getAuthProtocol(), agentConfig.getAuthPassPhrase(),
+                agentConfig.getPrivProtocol(), agentConfig.getPrivPassPhrase()
+            );
+        }
+    }
+
+    /**
+     * Tracks the requests that are outstanding to one agent.
+     */
+    private class AgentLimiter {
+        private final String m_key;
+
+        private int m_inFlight = 0;
+
+        /** requests that got the limiter from {@link Snmp4JSessionPool#getLimiter(Snmp4JAgentConfig)} and have not released it yet */
+        private int m_users = 0;
+
+        /** set once the limiter has been removed from the map, it must not be used any more */
+        private boolean m_removed = false;
+
+        private final Queue<PooledRequest> m_pending = new LinkedList<PooledRequest>();
+
+        private AgentLimiter(final String key) {
+            m_key = key;
+        }
+
+        private synchronized boolean use() {
+            if (m_removed) {
+                return false;
+            }
+            m_users++;
+            return true;
+        }
+
+        /**
+         * Called with the lock held when a request is done with the limiter.
+         */
+        private void unuse() {
+            m_users--;
+            if (m_users == 0) {
+                m_removed = true;
+                m_limiters.remove(m_key, this);
+            }
+        }
+
+        private synchronized void acquire() throws InterruptedException {
+            try {
+                while (m_inFlight >= m_maxInFlightPerAgent || !m_pending.isEmpty()) {
+                    wait();
+                }
+            } catch (final InterruptedException e) {
+                unuse();
+                throw e;
+            }
+            m_inFlight++;
+            m_inFlightCount.incrementAndGet();
+        }
+
+        /**
+         * @return true if the request can be sent now, false if it has been queued
+         */
+        private synchronized boolean acquireOrQueue(final PooledRequest request) {
+            if (m_inFlight < m_maxInFlightPerAgent && m_pending.isEmpty()) {
+                m_inFlight++;
+                m_inFlightCount.incrementAndGet();
+                return true;
+            }
+            m_pending.add(request);
+            m_queuedCount.incrementAndGet();
+            m_queuedTotal.incrementAndGet();
+            return false;
+        }
+
+        private synchronized boolean dequeue(final PooledRequest request) {
+            if (m_pending.remove(request)) {
+                m_queuedCount.decrementAndGet();
+                unuse();
+                return true;
+            }
+            return false;
+        }
+
+        private void release() {
+            final PooledRequest next;
+            synchronized (this) {
+                m_inFlight--;
+                m_inFlightCount.decrementAndGet();
+                unuse();
+                next = m_pending.poll();
+                if (next == null) {
+                    notifyAll();
+                } else {
+                    // hand the slot over to the queued request
+                    m_queuedCount.decrementAndGet();
+                    m_inFlight++;
+                    m_inFlightCount.incrementAndGet();
+                }
+            }
+            if (next != null) {
+                // not on the listen thread, the first request to an agent may have to discover its engine id
+                m_dispatcher.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        next.send();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * An asynchronous request sent through the pool.
+     */
+    public class PooledRequest implements ResponseListener {
+        private final Snmp m_session;
+        private final AgentLimiter m_limiter;
+        private final PDU m_pdu;
+        private final Target m_target;
+        private final ResponseListener m_listener;
+
+        /** set once the request has been answered, has failed or has been cancelled */
+        private final AtomicBoolean m_done = new AtomicBoolean(false);
+
+        private PooledRequest(final Snmp session, final AgentLimiter limiter, final PDU pdu, final Target target, final ResponseListener listener) {
+            m_session = session;
+            m_limiter = limiter;
+            m_pdu = pdu;
+            m_target = target;
+            m_listener = listener;
+        }
+
+        private void send() {
+            if (m_done.get()) {
+                // cancelled while being handed over, the slot has been released by cancel()
+                return;
+            }
+            try {
+                m_session.send(m_pdu, m_target, null, this);
+            } catch (final IOException e) {
+                if (m_done.compareAndSet(false, true)) {
+                    m_limiter.release();
+                    m_listener.onResponse(new ResponseEvent(m_session, null, m_pdu, null, null, e));
+                }
+            }
+        }
+
+        @Override
+        public void onResponse(final ResponseEvent event) {
+            // SNMP4J keeps the request around unless it is cancelled
+            m_session.cancel(event.getRequest(), this);
+            if (m_done.compareAndSet(false, true)) {
+                m_limiter.release();
+                m_listener.onResponse(event);
+            }
+        }
+
+        /**
+         * Cancels the request without notifying its listener.
+         */
+        public void cancel() {
+            if (m_done.compareAndSet(false, true)) {
+                if (m_limiter.dequeue(this)) {
+                    return;
+                }
+                m_session.cancel(m_pdu, this);
+                m_limiter.release();
+            }
+        }
+    }
+
+    private final PooledSession[] m_sessions;
+
+    private final int m_maxInFlightPerAgent;
+
+    private final ConcurrentMap<String, AgentLimiter> m_limiters = new ConcurrentHashMap<String, AgentLimiter>();
+
+    private final ExecutorService m_dispatcher;
+
+    private final ScheduledExecutorService m_statsLogger;
+
+    private final AtomicInteger m_inFlightCount = new AtomicInteger();
+
+    private final AtomicInteger m_queuedCount = new AtomicInteger();
+
+    private final AtomicLong m_queuedTotal = new AtomicLong();
+
+    private final AtomicLong m_requests = new AtomicLong();
+
+    private final AtomicLong m_userConflicts = new AtomicLong();
+
+    private final AtomicLong m_agentUsers = new AtomicLong();
+
+    /**
+     * <p>Constructor for Snmp4JSessionPool.</p>
+     *
+     * @param sessions the number of shared sessions, each with its own socket and listen thread
+     * @param maxInFlightPerAgent the maximum number of outstanding requests to one agent
+     * @throws IOException if a socket can not be opened
+     */
+    public Snmp4JSessionPool(final int sessions, final int maxInFlightPerAgent) throws IOException {
+        this(sessions, maxInFlightPerAgent, 0);
+    }
+
+    /**
+     * <p>Constructor for Snmp4JSessionPool.</p>
+     *
+     * @param sessions the number of shared sessions, each with its own socket and listen thread
+     * @param maxInFlightPerAgent the maximum number of outstanding requests to one agent
+     * @param statsInterval the interval in milliseconds at which the statistics of the pool are logged, or 0 to not log them
+     * @throws IOException if a socket can not be opened
+     */
+    public Snmp4JSessionPool(final int sessions, final int maxInFlightPerAgent, final long statsInterval) throws IOException {
+        if (sessions < 1 || maxInFlightPerAgent < 1) {
+            throw new IllegalArgumentException("the pool needs at least one session and one request per agent");
+        }
+        m_maxInFlightPerAgent = maxInFlightPerAgent;
+        m_sessions = new PooledSession[sessions];
+        try {
+            for (int i = 0; i < sessions; i++) {
+                // an empty USM of its own, the users are added as they are needed
+                final Snmp snmp = new Snmp(new DefaultUdpTransportMapping());
+                m_sessions[i] = new PooledSession(snmp, Snmp4JAgentConfig.replaceUsm(snmp));
+                snmp.listen();
+            }
+        } catch (final IOException e) {
+            close();
+            throw e;
+        }
+
+        final AtomicInteger threads = new AtomicInteger();
+        m_dispatcher = Executors.newFixedThreadPool(sessions, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "Snmp4JSessionPool-dispatcher-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        if (statsInterval > 0) {
+            m_statsLogger = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "Snmp4JSessionPool-stats");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            m_statsLogger.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    LOG.info(getStats());
+                }
+            }, statsInterval, statsInterval, TimeUnit.MILLISECONDS);
+        } else {
+            m_statsLogger = null;
+        }
+
+        LOG.info("Created SNMP session pool with {} sessions and at most {} requests in flight per agent", sessions, maxInFlightPerAgent);
+    }
+
+    private static String getAgentKey(final Snmp4JAgentConfig agentConfig) {
+        return agentConfig.getInetAddress().getHostAddress() + "/" + agentConfig.getPort();
+    }
+
+    /**
+     * Returns the limiter of the agent. The caller has to release it, or
+     * dequeue its request, once the request is done.
+     */
+    private AgentLimiter getLimiter(final Snmp4JAgentConfig agentConfig) {
+        final String key = getAgentKey(agentConfig);
+        while (true) {
+            AgentLimiter limiter = m_limiters.get(key);
+            if (limiter == null) {
+                final AgentLimiter created = new AgentLimiter(key);
+                limiter = m_limiters.putIfAbsent(key, created);
+                if (limiter == null) {
+                    limiter = created;
+                }
+            }
+            if (limiter.use()) {
+                return limiter;
+            }
+            // the last request of the agent has just removed it, try again with a new one
+        }
+    }
+
+    /**
+     * Returns the shared session used for the agent.
+     *
+     * @param agentConfig the agent
+     * @return the session, or null if the session already knows an SNMPv3
+     * user with the same security name and different credentials and the
+     * engine id of the agent can not be discovered, in which case the
+     * caller has to use a session of its own
+     */
+    public Snmp getSession(final Snmp4JAgentConfig agentConfig) {
+        final int h = getAgentKey(agentConfig).hashCode();
+        final PooledSession session = m_sessions[((h ^ (h >>> 16)) & 0x7fffffff) % m_sessions.length];
+        if (agentConfig.isSnmpV3() && !session.addUser(agentConfig) && !addAgentUser(session, agentConfig)) {
+            return null;
+        }
+        return session.m_snmp;
+    }
+
+    /**
+     * Adds the user of the agent to the session for the authoritative
+     * engine of the agent only.
+     *
+     * @return false if the engine id of the agent could not be discovered
+     */
+    private boolean addAgentUser(final PooledSession session, final Snmp4JAgentConfig agentConfig) {
+        final byte[] engineId = session.m_snmp.discoverAuthoritativeEngineID(agentConfig.getTarget().getAddress(), agentConfig.getTimeout());
+        if (engineId == null) {
+            m_userConflicts.incrementAndGet();
+            LOG.warn("The shared session has a user {} with other credentials and the engine id of {} could not be discovered, using a dedicated session", agentConfig.getSecurityName(), agentConfig);
+            return false;
+        }
+        final OctetString engine = new OctetString(engineId);
+        session.addUser(agentConfig, engine);
+        m_agentUsers.incrementAndGet();
+        LOG.info("The shared session has a user {} with other credentials, added the user of {} for its engine id {}", agentConfig.getSecurityName(), agentConfig, engine.toHexString());
+        return true;
+    }
+
+    /**
+     * Sends a request and waits for the response, once the number of
+     * requests outstanding to the agent allows it.
+     *
+     * @param session the session returned by {@link #getSession(Snmp4JAgentConfig)}
+     * @param agentConfig the agent
+     * @param pdu the request
+     * @return the response event
+     * @throws IOException if the request can not be sent
+     * @throws InterruptedException if interrupted while waiting for a free slot
+     */
+    public ResponseEvent send(final Snmp session, final Snmp4JAgentConfig agentConfig, final PDU pdu) throws IOException, InterruptedException {
+        final AgentLimiter limiter = getLimiter(agentConfig);
+        limiter.acquire();
+        m_requests.incrementAndGet();
+        try {
+            return session.send(pdu, agentConfig.getTarget());
+        } finally {
+            limiter.release();
+        }
+    }
+
+    /**
+     * Sends a request without waiting for the response. If the agent
+     * already has as many outstanding requests as allowed, the request is
+     * queued.
+     *
+     * @param session the session returned by {@link #getSession(Snmp4JAgentConfig)}
+     * @param agentConfig the agent
+     * @param pdu the request
+     * @param target the target of the request
+     * @param listener notified once of the response, timeout or error
+     * @return the request, which can be cancelled
+     */
+    public PooledRequest send(final Snmp session, final Snmp4JAgentConfig agentConfig, final PDU pdu, final Target target, final ResponseListener listener) {
+        final AgentLimiter limiter = getLimiter(agentConfig);
+        final PooledRequest request = new PooledRequest(session, limiter, pdu, target, listener);
+        m_requests.incrementAndGet();
+        if (limiter.acquireOrQueue(request)) {
+            request.send();
+        }
+        return request;
+    }
+
+    /**
+     * Closes the sessions. Outstanding requests are cancelled.
+     */
+    public void close() {
+        if (m_statsLogger != null) {
+            m_statsLogger.shutdown();
+        }
+        for (final PooledSession session : m_sessions) {
+            if (session == null) {
+                continue;
+            }
+            try {
+                session.m_snmp.close();
+            } catch (final IOException e) {
+                LOG.error("error closing shared SNMP session", e);
+            }
+        }
+        if (m_dispatcher != null) {
+            m_dispatcher.shutdown();
+        }
+    }
+
+    /**
+     * @return the number of open sockets of the pool
+     */
+    public int getSocketCount() {
+        return m_sessions.length;
+    }
+
+    /**
+     * @return the number of listen threads of the pool
+     */
+    public int getThreadCount() {
+        return m_sessions.length;
+    }
+
+    /**
+     * @return the number of requests that have been sent and not yet answered
+     */
+    public int getInFlightCount() {
+        return m_inFlightCount.get();
+    }
+
+    /**
+     * @return the number of requests waiting for an agent to have a free slot
+     */
+    public int getQueuedCount() {
+        return m_queuedCount.get();
+    }
+
+    /**
+     * @return the number of requests that had to wait for a free slot
+     */
+    public long getQueuedTotal() {
+        return m_queuedTotal.get();
+    }
+
+    /**
+     * @return the number of requests sent through the pool
+     */
+    public long getRequestCount() {
+        return m_requests.get();
+    }
+
+    /**
+     * @return the number of agents with outstanding or queued requests
+     */
+    public int getAgentCount() {
+        return m_limiters.size();
+    }
+
+    /**
+     * @return the number of times an agent had to use a dedicated session
+     * because of a conflicting SNMPv3 user
+     */
+    public long getUserConflictCount() {
+        return m_userConflicts.get();
+    }
+
+    /**
+     * @return the number of SNMPv3 users that were added for the engine of
+     * one agent because of a conflicting user
+     */
+    public long getAgentUserCount() {
+        return m_agentUsers.get();
+    }
+
+    /**
+     * @return the statistics of the pool, as logged every statsInterval milliseconds
+     */
+    public String getStats() {
+        return "SNMP session pool: sockets=" + getSocketCount() +
+                ", threads=" + getThreadCount() +
+                ", agents=" + getAgentCount() +
+                ", requests=" + getRequestCount() +
+                ", inFlight=" + getInFlightCount() +
+                ", queued=" + getQueuedCount() +
+                ", queuedTotal=" + getQueuedTotal() +
+                ", agentUsers=" + getAgentUserCount() +
+                ", userConflicts=" + getUserConflictCount();
+    }
+}
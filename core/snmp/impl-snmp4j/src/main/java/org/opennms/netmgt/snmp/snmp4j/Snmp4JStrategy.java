@@ -85,9 +85,21 @@ public class Snmp4JStrategy implements SnmpStrategy {
     private static Map<TrapNotificationListener, RegistrationInfo> s_registrations = new HashMap<TrapNotificationListener, RegistrationInfo>();
     
     private static boolean s_initialized = false;
+
+    private static final boolean POOLED = Boolean.getBoolean("org.opennms.snmp.snmp4j.pooled");
+
+    private static final int POOL_SIZE = Integer.getInteger("org.opennms.snmp.snmp4j.poolSize", 4);
+
+    private static final int MAX_IN_FLIGHT_PER_AGENT = Integer.getInteger("org.opennms.snmp.snmp4j.maxInFlightPerAgent", 4);
+
+    private static final long POOL_STATS_INTERVAL = Long.getLong("org.opennms.snmp.snmp4j.poolStatsInterval", 300000);
+
+    private static Snmp4JSessionPool s_pool = null;
     
     private Snmp4JValueFactory m_valueFactory;
 
+    private final Snmp4JSessionPool m_pool;
+
     /**
      * Initialize for v3 communications
      */
@@ -117,8 +129,40 @@ public class Snmp4JStrategy implements SnmpStrategy {
         s_initialized = true;
     }
     
+    /**
+     * Returns the session pool shared by all strategies, creating it the
+     * first time, or null if pooled mode is not enabled.
+     */
+    private static synchronized Snmp4JSessionPool getSharedPool() {
+        if (s_pool == null && POOLED) {
+            try {
+                s_pool = new Snmp4JSessionPool(POOL_SIZE, MAX_IN_FLIGHT_PER_AGENT, POOL_STATS_INTERVAL);
+            } catch (final IOException e) {
+                LOG.error("Could not create the SNMP session pool, using a session per request", e);
+            }
+        }
+        return s_pool;
+    }
+
     public Snmp4JStrategy() {
+        this(getSharedPool());
+    }
+
+    /**
+     * Creates a strategy that sends its requests through the given pool.
+     *
+     * @param pool the pool, or null to use a session per request
+     */
+    Snmp4JStrategy(final Snmp4JSessionPool pool) {
         initialize();
+        m_pool = pool;
+    }
+
+    /**
+     * @return the session pool used by this strategy, or null if every request uses a session of its own
+     */
+    public Snmp4JSessionPool getSessionPool() {
+        return m_pool;
     }
     
     /**
@@ -130,7 +174,7 @@ public class Snmp4JStrategy implements SnmpStrategy {
      */
         @Override
     public SnmpWalker createWalker(SnmpAgentConfig snmpAgentConfig, String name, CollectionTracker tracker) {
-        return new Snmp4JWalker(new Snmp4JAgentConfig(snmpAgentConfig), name, tracker);
+        return new Snmp4JWalker(new Snmp4JAgentConfig(snmpAgentConfig), name, tracker, m_pool);
     }
     
     /**
@@ -242,6 +286,13 @@ public class Snmp4JStrategy implements SnmpStrategy {
      * adapted from default SnmpAgentConfig values to those compatible with the SNMP4J library.
      */
     protected SnmpValue[] send(Snmp4JAgentConfig agentConfig, PDU pdu, boolean expectResponse) {
+        if (expectResponse && m_pool != null) {
+            final Snmp session = m_pool.getSession(agentConfig);
+            if (session != null) {
+                return sendPooled(session, agentConfig, pdu);
+            }
+        }
+
         Snmp session;
 
         try {
@@ -280,7 +331,22 @@ public class Snmp4JStrategy implements SnmpStrategy {
             closeQuietly(session);
         }
     }
-    
+
+    private SnmpValue[] sendPooled(Snmp session, Snmp4JAgentConfig agentConfig, PDU pdu) {
+        try {
+            return processResponse(agentConfig, m_pool.send(session, agentConfig, pdu));
+        } catch (final IOException e) {
+            LOG.error("send: error during SNMP operation", e);
+            return new SnmpValue[] { null };
+        } catch (final InterruptedException e) {
+            LOG.warn("send: interrupted while waiting to send to agent {}", agentConfig);
+            Thread.currentThread().interrupt();
+            return new SnmpValue[] { null };
+        } catch (final RuntimeException e) {
+            LOG.error("send: unexpected error during SNMP operation", e);
+            return new SnmpValue[] { null };
+        }
+    }
 
     protected PDU buildPdu(Snmp4JAgentConfig agentConfig, int pduType, SnmpObjId[] oids, SnmpValue[] values) {
         PDU pdu = agentConfig.createPdu(pduType);
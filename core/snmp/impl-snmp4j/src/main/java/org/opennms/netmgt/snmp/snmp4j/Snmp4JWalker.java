@@ -137,6 +137,7 @@ public class Snmp4JWalker extends SnmpWalker {
         private void processResponse(final PDU response) {
             try {
                 LOG.debug("Received a tracker PDU of type {} from {} of size {}, errorStatus = {}, errorStatusText = {}, errorIndex = {}", PDU.getTypeString(response.getType()), getAddress(), response.size(), response.getErrorStatus(), response.getErrorStatusText(), response.getErrorIndex());
+                addBytesReceived(response.getBERLength());
                 if (response.getType() == PDU.REPORT) {
                     handleAuthError("A REPORT PDU was returned from the agent.  This is most likely an authentication problem.  Please check the config");
                 } else {
@@ -164,7 +165,10 @@ public class Snmp4JWalker extends SnmpWalker {
         @Override
         public void onResponse(ResponseEvent responseEvent) {
             // need to cancel the request here otherwise SNMP4J Keeps it around forever... go figure
-            m_session.cancel(responseEvent.getRequest(), this);
+            // (the pool does this for its own requests)
+            if (m_pool == null) {
+                m_session.cancel(responseEvent.getRequest(), this);
+            }
 
             // Check to see if we got an interrupted exception
             if (responseEvent.getError() instanceof InterruptedException) {
@@ -190,10 +194,26 @@ public class Snmp4JWalker extends SnmpWalker {
     private final ResponseListener m_listener;
     private final Snmp4JAgentConfig m_agentConfig;
 
+    /** the pool the requests are sent through, null if the walker has a session of its own */
+    private volatile Snmp4JSessionPool m_pool;
+
+    /** the outstanding request when the requests are sent through the pool */
+    private volatile Snmp4JSessionPool.PooledRequest m_request;
+
     public Snmp4JWalker(Snmp4JAgentConfig agentConfig, String name, CollectionTracker tracker) {
+        this(agentConfig, name, tracker, null);
+    }
+
+    /**
+     * <p>Constructor for Snmp4JWalker.</p>
+     *
+     * @param pool the pool to send the requests through, or null to use a session of its own
+     */
+    public Snmp4JWalker(Snmp4JAgentConfig agentConfig, String name, CollectionTracker tracker, Snmp4JSessionPool pool) {
         super(agentConfig.getInetAddress(), name, agentConfig.getMaxVarsPerPdu(), agentConfig.getMaxRepetitions(), tracker);
         
         m_agentConfig = agentConfig;
+        m_pool = pool;
         
         m_tgt = agentConfig.getTarget();
         m_listener = new Snmp4JResponseListener();
@@ -217,13 +237,24 @@ public class Snmp4JWalker extends SnmpWalker {
         @Override
     protected void sendNextPdu(WalkerPduBuilder pduBuilder) throws IOException {
         Snmp4JPduBuilder snmp4JPduBuilder = (Snmp4JPduBuilder)pduBuilder;
+        if (m_session == null && m_pool != null) {
+            m_session = m_pool.getSession(m_agentConfig);
+            if (m_session == null) {
+                // conflicting SNMPv3 user in the pool
+                m_pool = null;
+            }
+        }
         if (m_session == null) {
             m_session = m_agentConfig.createSnmpSession();
             m_session.listen();
         }
         
         LOG.debug("Sending tracker pdu of size {}", snmp4JPduBuilder.getPdu().size());
-        m_session.send(snmp4JPduBuilder.getPdu(), m_tgt, null, m_listener);
+        if (m_pool == null) {
+            m_session.send(snmp4JPduBuilder.getPdu(), m_tgt, null, m_listener);
+        } else {
+            m_request = m_pool.send(m_session, m_agentConfig, snmp4JPduBuilder.getPdu(), m_tgt, m_listener);
+        }
     }
     
     protected int getVersion() {
@@ -232,7 +263,13 @@ public class Snmp4JWalker extends SnmpWalker {
 
     @Override
     public void close() throws IOException {
-        if (m_session != null) {
+        if (m_pool != null) {
+            // the session is shared, only give up the outstanding request
+            if (m_request != null) {
+                m_request.cancel();
+                m_request = null;
+            }
+        } else if (m_session != null) {
             m_session.close();
             m_session = null;
         }
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.snmp.ColumnTracker;
+import org.opennms.netmgt.snmp.SnmpAgentConfig;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpResult;
+import org.opennms.netmgt.snmp.SnmpValue;
+import org.opennms.netmgt.snmp.SnmpWalker;
+import org.snmp4j.Snmp;
+import org.snmp4j.smi.OctetString;
+
+/**
+ * Tests for sending the requests of the SNMP4J strategy through a
+ * {@link Snmp4JSessionPool}.
+ */
+public class Snmp4JSessionPoolTest extends MockSnmpAgentTestCase {
+
+    private Snmp4JSessionPool m_pool;
+
+    private Snmp4JStrategy m_strategy;
+
+    @Override
+    protected boolean usingMockStrategy() {
+        return false;
+    }
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        m_pool = new Snmp4JSessionPool(2, 1);
+        m_strategy = new Snmp4JStrategy(m_pool);
+    }
+
+    @After
+    @Override
+    public void tearDown() throws Exception {
+        m_pool.close();
+        super.tearDown();
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        final SnmpValue value = m_strategy.get(getAgentConfig(), SnmpObjId.get(".1.3.5.1.1.3.0"));
+
+        assertNotNull("value should not be null", value);
+        assertEquals(SnmpValue.SNMP_INT32, value.getType());
+        assertEquals(42, value.toInt());
+        assertEquals(1, m_pool.getRequestCount());
+        assertEquals(0, m_pool.getInFlightCount());
+    }
+
+    @Test
+    public void testSameAgentSharesSession() throws Exception {
+        final Snmp4JAgentConfig agentConfig = new Snmp4JAgentConfig(getAgentConfig());
+        assertSame(m_pool.getSession(agentConfig), m_pool.getSession(new Snmp4JAgentConfig(getAgentConfig())));
+    }
+
+    @Test
+    public void testV3RequestsShareTheUserOfTheSession() throws Exception {
+        final Snmp session = m_pool.getSession(new Snmp4JAgentConfig(getV3AgentConfig("0p3nNMSv3")));
+        assertNotNull("session should not be null", session);
+
+        SnmpValue value = m_strategy.get(getV3AgentConfig("0p3nNMSv3"), SnmpObjId.get(".1.3.5.1.1.3.0"));
+        assertNotNull("value should not be null", value);
+        assertEquals(42, value.toInt());
+        assertNotNull(session.getUSM().getUserTable().getUser(new OctetString("opennmsUser")));
+        // the user and the keys localized for the engine of the agent
+        final int users = session.getUSM().getUserTable().getUserEntries().size();
+
+        for (int i = 0; i < 3; i++) {
+            value = m_strategy.get(getV3AgentConfig("0p3nNMSv3"), SnmpObjId.get(".1.3.5.1.1.3.0"));
+            assertNotNull("value should not be null", value);
+            assertEquals(42, value.toInt());
+        }
+
+        assertSame(session, m_pool.getSession(new Snmp4JAgentConfig(getV3AgentConfig("0p3nNMSv3"))));
+        assertEquals("the user must be added only once", users, session.getUSM().getUserTable().getUserEntries().size());
+        assertEquals(4, m_pool.getRequestCount());
+        assertEquals(0, m_pool.getUserConflictCount());
+    }
+
+    @Test
+    public void testConflictingV3UserIsAddedForTheEngineOfTheAgent() throws Exception {
+        // the shared session learns the user with the wrong pass phrases first
+        final Snmp session = m_pool.getSession(new Snmp4JAgentConfig(getV3AgentConfig("wrongPassPhrase")));
+        assertNotNull("session should not be null", session);
+        assertSame(session, m_pool.getSession(new Snmp4JAgentConfig(getV3AgentConfig("0p3nNMSv3"))));
+        assertEquals(1, m_pool.getAgentUserCount());
+
+        SnmpValue value = m_strategy.get(getV3AgentConfig("0p3nNMSv3"), SnmpObjId.get(".1.3.5.1.1.3.0"));
+        assertNotNull("value should not be null", value);
+        assertEquals(42, value.toInt());
+        assertEquals("the request must go through the pool", 1, m_pool.getRequestCount());
+        assertEquals(1, m_pool.getAgentUserCount());
+
+        // the pass phrases of the agent are changed back
+        assertSame(session, m_pool.getSession(new Snmp4JAgentConfig(getV3AgentConfig("wrongPassPhrase"))));
+        assertEquals(2, m_pool.getAgentUserCount());
+        assertSame(session, m_pool.getSession(new Snmp4JAgentConfig(getV3AgentConfig("0p3nNMSv3"))));
+        assertEquals(3, m_pool.getAgentUserCount());
+        value = m_strategy.get(getV3AgentConfig("0p3nNMSv3"), SnmpObjId.get(".1.3.5.1.1.3.0"));
+        assertNotNull("value should not be null", value);
+        assertEquals(42, value.toInt());
+        assertEquals(0, m_pool.getUserConflictCount());
+    }
+
+    @Test
+    public void testConcurrentGetsAreLimitedPerAgent() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<SnmpValue>> futures = new ArrayList<Future<SnmpValue>>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(new Callable<SnmpValue>() {
+                    @Override
+                    public SnmpValue call() throws Exception {
+                        return m_strategy.get(getAgentConfig(), SnmpObjId.get(".1.3.5.1.1.4.0"));
+                    }
+                }));
+            }
+            for (final Future<SnmpValue> future : futures) {
+                final SnmpValue value = future.get();
+                assertNotNull("value should not be null", value);
+                assertEquals(42, value.toInt());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(32, m_pool.getRequestCount());
+        assertEquals(0, m_pool.getInFlightCount());
+        assertEquals(0, m_pool.getQueuedCount());
+        // the agent is forgotten once it has no outstanding requests
+        assertEquals(0, m_pool.getAgentCount());
+        assertEquals(2, m_pool.getSocketCount());
+    }
+
+    @Test
+    public void testWalk() throws Exception {
+        final SnmpAgentConfig config = getAgentConfig();
+        config.setVersion(SnmpAgentConfig.VERSION2C);
+
+        final AtomicInteger count = new AtomicInteger();
+        final ColumnTracker tracker = new ColumnTracker(SnmpObjId.get(".1.3.5.1.1")) {
+            @Override
+            protected void storeResult(final SnmpResult res) {
+                count.incrementAndGet();
+            }
+        };
+
+        // walk the same agent twice at the same time, the second walk waits for the requests of the first
+        final ColumnTracker other = new ColumnTracker(SnmpObjId.get(".1.3.5.1.1"));
+        final SnmpWalker walker = m_strategy.createWalker(config, "test", tracker);
+        final SnmpWalker otherWalker = m_strategy.createWalker(config, "other", other);
+        walker.start();
+        otherWalker.start();
+        walker.waitFor();
+        otherWalker.waitFor();
+        walker.close();
+        otherWalker.close();
+
+        assertFalse("walk must not fail", walker.failed());
+        assertFalse("walk must not fail", otherWalker.failed());
+        assertTrue("tracker must be finished", tracker.isFinished());
+        assertEquals("number of values returned must match test data", 9, count.get());
+        assertEquals(0, m_pool.getInFlightCount());
+        assertEquals(0, m_pool.getQueuedCount());
+    }
+
+    private SnmpAgentConfig getV3AgentConfig(final String passPhrase) {
+        final SnmpAgentConfig config = getAgentConfig();
+        config.setVersion(SnmpAgentConfig.VERSION3);
+        config.setSecurityLevel(SnmpAgentConfig.AUTH_PRIV);
+        config.setSecurityName("opennmsUser");
+        config.setAuthProtocol("MD5");
+        config.setAuthPassPhrase(passPhrase);
+        config.setPrivProtocol("DES");
+        config.setPrivPassPhrase(passPhrase);
+        return config;
+    }
+}
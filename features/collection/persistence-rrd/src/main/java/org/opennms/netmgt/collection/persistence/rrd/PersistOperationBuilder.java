@@ -32,7 +32,6 @@ package org.opennms.netmgt.collection.persistence.rrd;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -174,7 +173,12 @@ public class PersistOperationBuilder {
             List<RrdDataSource> dataSources = getDataSources();
             if (dataSources != null && dataSources.size() > 0) {
                 RrdUtils.createRRD(ownerName, absolutePath, m_rrdName, getRepository().getStep(), dataSources, getRepository().getRraList(), getAttributeMappings());
-                RrdUtils.updateRRD(ownerName, absolutePath, m_rrdName, m_timeKeeper.getCurrentTime(), getValues());
+                if (hasInexactValues()) {
+                    // keep every digit of large counters, rrdtool stores them exactly
+                    RrdUtils.updateRRD(ownerName, absolutePath, m_rrdName, m_timeKeeper.getCurrentTime(), getValuesAsString());
+                } else {
+                    RrdUtils.updateRRD(ownerName, absolutePath, m_rrdName, m_timeKeeper.getCurrentTime(), getValues(dataSources.size()));
+                }
                 RrdUtils.createMetaDataFile(absolutePath, m_rrdName, m_metaData);
             }
         } catch (FileNotFoundException e) {
@@ -183,18 +187,44 @@ public class PersistOperationBuilder {
         }
     }
 
-    private String getValues() {
-        boolean first = true;
-        StringBuffer values = new StringBuffer();
-        for (Iterator<CollectionAttributeType> iter = m_declarations.keySet().iterator(); iter.hasNext();) {
-        	CollectionAttributeType attrDef = iter.next();
-            String value = m_declarations.get(attrDef);
-            if (!first) {
-                values.append(':');
-            } else {
-                first = false;
+    /**
+     * Returns the values in the same order as the data sources returned by
+     * {@link #getDataSources()}; values that are unknown or not numbers are
+     * <code>Double.NaN</code>.
+     */
+    private double[] getValues(int dataSourceCount) {
+        final double[] values = new double[dataSourceCount];
+        int i = 0;
+        for (final Map.Entry<CollectionAttributeType, String> entry : m_declarations.entrySet()) {
+            if (PersistOperationBuilder.mapType(entry.getKey().getType()) != null) {
+                values[i++] = RrdUtils.parseValue(entry.getValue());
+            }
+        }
+        return values;
+    }
+
+    private boolean hasInexactValues() {
+        for (final Map.Entry<CollectionAttributeType, String> entry : m_declarations.entrySet()) {
+            if (PersistOperationBuilder.mapType(entry.getKey().getType()) != null && RrdUtils.isInexactInteger(entry.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the values as they were collected, joined with colons in the
+     * same order as the data sources returned by {@link #getDataSources()}.
+     */
+    private String getValuesAsString() {
+        final StringBuilder values = new StringBuilder();
+        for (final Map.Entry<CollectionAttributeType, String> entry : m_declarations.entrySet()) {
+            if (PersistOperationBuilder.mapType(entry.getKey().getType()) != null) {
+                if (values.length() > 0) {
+                    values.append(':');
+                }
+                values.append(entry.getValue() == null ? "U" : entry.getValue());
             }
-            values.append(value);
         }
         return values.toString();
     }
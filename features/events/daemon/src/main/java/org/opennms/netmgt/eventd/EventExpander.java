@@ -541,10 +541,17 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
      * expansion.
      * </p>
      *
+     * <p>
+     * This method is reentrant: it keeps no state between invocations other
+     * than the {@link EventConfDao}, which publishes a new configuration
+     * atomically on reload, so it may be called concurrently by all of the
+     * event handler threads.
+     * </p>
+     *
      * @param e
      *            The event to expand if necessary.
      */
-    public synchronized void expandEvent(Event e) {
+    public void expandEvent(Event e) {
         org.opennms.netmgt.xml.eventconf.Event econf = lookup(m_eventConfDao, e);
 
         if (econf != null) {
@@ -725,8 +732,9 @@ public final class EventExpander implements org.opennms.netmgt.dao.api.EventExpa
             }
         }
         
-        Map<String, Map<String, String>> decode = new HashMap<String, Map<String,String>>();
-        if (econf != null && econf.getVarbindsdecode() != null) {
+        Map<String, Map<String, String>> decode = null;
+        if (econf != null && econf.getVarbindsdecodeCount() > 0) {
+           decode = new HashMap<String, Map<String,String>>();
            Varbindsdecode[] vardecodeArray = econf.getVarbindsdecode();
            for (Varbindsdecode element : vardecodeArray) {
                Decode[] decodeArray = element.getDecode();
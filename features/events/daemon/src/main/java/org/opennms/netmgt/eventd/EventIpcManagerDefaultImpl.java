@@ -32,19 +32,24 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.core.logging.Logging;
+import org.opennms.netmgt.events.api.BatchEventListener;
 import org.opennms.netmgt.events.api.EventHandler;
 import org.opennms.netmgt.events.api.EventIpcBroadcaster;
 import org.opennms.netmgt.events.api.EventIpcManager;
@@ -71,6 +76,21 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     
     private static final Logger LOG = LoggerFactory.getLogger(EventIpcManagerDefaultImpl.class);
 
+    /**
+     * Capacity of the queue of a {@link BatchEventListener} when no handler
+     * queue length is configured
+     */
+    public static final int DEFAULT_BATCH_QUEUE_CAPACITY = 65536;
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    /**
+     * The number of distinct UEIs whose routes are cached
+     */
+    private static final int MAX_CACHED_ROUTES = 10000;
+
+    private static final ListenerExecutor[] NO_LISTENERS = new ListenerExecutor[0];
+
     public static class DiscardTrapsAndSyslogEvents implements RejectedExecutionHandler {
         /**
          * Creates a <tt>DiscardOldestPolicy</tt> for the given executor.
@@ -107,7 +127,13 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     /**
      * Hash table of event listener threads keyed by the listener's id
      */
-    private Map<String, EventListenerExecutor> m_listenerThreads = new HashMap<String, EventListenerExecutor>();
+    private Map<String, ListenerExecutor> m_listenerThreads = new HashMap<String, ListenerExecutor>();
+
+    /**
+     * Snapshot of the listener registrations used to route events, rebuilt
+     * whenever a listener is added or removed
+     */
+    private volatile Routes m_routes = new Routes();
 
     /**
      * The thread pool handling the events
@@ -120,13 +146,37 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     
     private Integer m_handlerQueueLength;
 
+    private int m_maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    /**
+     * Delivers the events queued for a listener.
+     */
+    private interface ListenerExecutor {
+        void addEvent(Event event);
+
+        /**
+         * Stops the execution of this listener.
+         */
+        void stop();
+
+        /**
+         * @return the number of events waiting to be delivered
+         */
+        int getQueueDepth();
+
+        /**
+         * @return the time in milliseconds the oldest undelivered event has been waiting
+         */
+        long getLag();
+    }
+
     /**
      * A thread dedicated to each listener. The events meant for each listener
      * is added to an execution queue when the 'sendNow()' is called. The
      * ListenerThread reads events off of this queue and sends them to the
      * appropriate listener.
      */
-    private static class EventListenerExecutor {
+    private static class EventListenerExecutor implements ListenerExecutor {
         /**
          * Listener to which this thread is dedicated
          */
@@ -135,7 +185,34 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         /**
          * The thread that is running this runnable.
          */
-        private final ExecutorService m_delegateThread;
+        private final ThreadPoolExecutor m_delegateThread;
+
+        private class EventDelivery implements Runnable {
+            private final Event m_event;
+            private final long m_queuedAt = System.currentTimeMillis();
+
+            private EventDelivery(final Event event) {
+                m_event = event;
+            }
+
+            @Override
+            public void run() {
+                final Event event = m_event;
+                try {
+                    LOG.debug("run: calling onEvent on {} for event {} dbid {} with time {}", m_listener.getName(), event.getUei(), event.getDbid(), event.getTime());
+
+                    // Make sure we restore our log4j logging prefix after onEvent is called
+                    Map<String,String> mdc = Logging.getCopyOfContextMap();
+                    try {
+                        m_listener.onEvent(event);
+                    } finally {
+                        Logging.setContextMap(mdc);
+                    }
+                } catch (Throwable t) {
+                    LOG.warn("run: an unexpected error occured during ListenerThread {}", m_listener.getName(), t);
+                }
+            }
+        }
 
         /**
          * Constructor
@@ -163,33 +240,224 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             );
         }
 
+        @Override
         public void addEvent(final Event event) {
-            m_delegateThread.execute(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        LOG.debug("run: calling onEvent on {} for event {} dbid {} with time {}", m_listener.getName(), event.getUei(), event.getDbid(), event.getTime());
-
-                        // Make sure we restore our log4j logging prefix after onEvent is called
-                        Map<String,String> mdc = Logging.getCopyOfContextMap();
-                        try {
-                            m_listener.onEvent(event);
-                        } finally {
-                            Logging.setContextMap(mdc);
+            m_delegateThread.execute(new EventDelivery(event));
+        }
+
+        @Override
+        public void stop() {
+            m_delegateThread.shutdown();
+        }
+
+        @Override
+        public int getQueueDepth() {
+            return m_delegateThread.getQueue().size();
+        }
+
+        @Override
+        public long getLag() {
+            final Runnable next = m_delegateThread.getQueue().peek();
+            if (next instanceof EventDelivery) {
+                return Math.max(0, System.currentTimeMillis() - ((EventDelivery)next).m_queuedAt);
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Queues the events for a {@link BatchEventListener} in a ring buffer
+     * and hands them over in batches. A drain task is only submitted to the
+     * listener's thread when the buffer goes from empty to non-empty, so
+     * events that arrive while the listener is busy cost no task at all.
+     */
+    private static class BatchEventListenerExecutor implements ListenerExecutor {
+        private final BatchEventListener m_listener;
+
+        private final EventRingBuffer m_buffer;
+
+        private final int m_maxBatchSize;
+
+        /**
+         * Set while a drain task is queued or running
+         */
+        private final AtomicBoolean m_scheduled = new AtomicBoolean(false);
+
+        private final ThreadPoolExecutor m_delegateThread;
+
+        private final Runnable m_drain = new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+
+        BatchEventListenerExecutor(BatchEventListener listener, int capacity, int maxBatchSize) {
+            m_listener = listener;
+            m_buffer = new EventRingBuffer(capacity);
+            m_maxBatchSize = maxBatchSize;
+            m_delegateThread = new ThreadPoolExecutor(
+                    1,
+                    1,
+                    0L,
+                    TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new LogPreservingThreadFactory(m_listener.getName(), 1),
+                    new RejectedExecutionHandler() {
+                        @Override
+                        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                            LOG.warn("Listener {} has been stopped, discarding {} events", m_listener.getName(), m_buffer.size());
                         }
-                    } catch (Throwable t) {
-                        LOG.warn("run: an unexpected error occured during ListenerThread {}", m_listener.getName(), t);
                     }
+            );
+        }
+
+        @Override
+        public void addEvent(final Event event) {
+            if (!m_buffer.offer(event)) {
+                LOG.warn("Listener {}'s event queue is full, discarding event", m_listener.getName());
+                return;
+            }
+            if (m_scheduled.compareAndSet(false, true)) {
+                m_delegateThread.execute(m_drain);
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                List<Event> batch = new ArrayList<Event>(Math.min(m_maxBatchSize, m_buffer.size()));
+                while (m_buffer.drainTo(batch, m_maxBatchSize) > 0) {
+                    deliver(batch);
+                    batch = new ArrayList<Event>(Math.min(m_maxBatchSize, m_buffer.size()));
                 }
-            });
+
+                m_scheduled.set(false);
+                // an event may have been queued after the last drain, but
+                // before the flag was cleared
+                if (m_buffer.size() == 0 || !m_scheduled.compareAndSet(false, true)) {
+                    return;
+                }
+            }
         }
 
-        /**
-         * Stops the execution of this listener.
-         */
+        private void deliver(final List<Event> batch) {
+            try {
+                LOG.debug("run: calling onEvents on {} for {} events", m_listener.getName(), batch.size());
+
+                // Make sure we restore our log4j logging prefix after onEvents is called
+                Map<String,String> mdc = Logging.getCopyOfContextMap();
+                try {
+                    m_listener.onEvents(batch);
+                } finally {
+                    Logging.setContextMap(mdc);
+                }
+            } catch (Throwable t) {
+                LOG.warn("run: an unexpected error occured during ListenerThread {}", m_listener.getName(), t);
+            }
+        }
+
+        @Override
         public void stop() {
             m_delegateThread.shutdown();
         }
+
+        @Override
+        public int getQueueDepth() {
+            return m_buffer.size();
+        }
+
+        @Override
+        public long getLag() {
+            return m_buffer.getLag();
+        }
+    }
+
+    /**
+     * An immutable view of the listener registrations. Every registered UEI
+     * and UEI prefix maps to the listeners of the UEI itself followed by
+     * those of its parent prefixes, so an event is routed with a single
+     * lookup of the most specific registered prefix. The result is cached
+     * per UEI.
+     */
+    private static class Routes {
+        /**
+         * Listeners interested in all events
+         */
+        private final ListenerExecutor[] m_all;
+
+        private final Map<String, ListenerExecutor[]> m_byUei;
+
+        private final ConcurrentMap<String, ListenerExecutor[]> m_resolved = new ConcurrentHashMap<String, ListenerExecutor[]>();
+
+        private Routes() {
+            m_all = NO_LISTENERS;
+            m_byUei = Collections.emptyMap();
+        }
+
+        private Routes(List<EventListener> listeners, Map<String, List<EventListener>> ueiListeners, Map<String, ListenerExecutor> listenerThreads) {
+            m_all = toExecutors(listeners, listenerThreads);
+
+            final Map<String, ListenerExecutor[]> byUei = new HashMap<String, ListenerExecutor[]>();
+            for (final String registered : ueiListeners.keySet()) {
+                final Set<EventListener> matching = new LinkedHashSet<EventListener>();
+                for (String uei = registered; uei != null; uei = getParentPrefix(uei)) {
+                    final List<EventListener> ueiList = ueiListeners.get(uei);
+                    if (ueiList != null) {
+                        matching.addAll(ueiList);
+                    }
+                }
+                if (!matching.isEmpty()) {
+                    byUei.put(registered, toExecutors(matching, listenerThreads));
+                }
+            }
+            m_byUei = byUei;
+        }
+
+        private static ListenerExecutor[] toExecutors(Collection<EventListener> listeners, Map<String, ListenerExecutor> listenerThreads) {
+            final Set<ListenerExecutor> executors = new LinkedHashSet<ListenerExecutor>();
+            for (final EventListener listener : listeners) {
+                final ListenerExecutor executor = listenerThreads.get(listener.getName());
+                if (executor != null) {
+                    executors.add(executor);
+                }
+            }
+            return executors.toArray(new ListenerExecutor[executors.size()]);
+        }
+
+        private ListenerExecutor[] resolve(String uei) {
+            ListenerExecutor[] executors = m_resolved.get(uei);
+            if (executors != null) {
+                return executors;
+            }
+
+            executors = NO_LISTENERS;
+            for (String prefix = uei; prefix != null && prefix.length() > 0; prefix = getParentPrefix(prefix)) {
+                final ListenerExecutor[] matching = m_byUei.get(prefix);
+                if (matching != null) {
+                    executors = matching;
+                    break;
+                }
+            }
+            if (m_resolved.size() < MAX_CACHED_ROUTES) {
+                m_resolved.put(uei, executors);
+            }
+            return executors;
+        }
+
+        /**
+         * Returns the partial wild card "directory" of a UEI, the UEI up to
+         * and including the last / before its last character.
+         */
+        private static String getParentPrefix(String uei) {
+            int i = uei.lastIndexOf("/", uei.length() - 2);
+            if (i > 0) {
+                // Split at "/", including the /
+                return uei.substring(0, i + 1);
+            } else {
+                // No more wild cards to match
+                return null;
+            }
+        }
     }
 
     /**
@@ -262,13 +530,14 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     public void broadcastNow(Event event) {
         LOG.debug("Event ID {} to be broadcasted: {}", event.getDbid(), event.getUei());
 
-        if (m_listeners.isEmpty()) {
+        final Routes routes = m_routes;
+        if (routes.m_all.length == 0) {
             LOG.debug("No listeners interested in all events");
         }
 
         // Send to listeners interested in receiving all events
-        for (EventListener listener : m_listeners) {
-            queueEventToListener(event, listener);
+        for (ListenerExecutor listener : routes.m_all) {
+            listener.addEvent(event);
         }
 
         if (event.getUei() == null) {
@@ -277,38 +546,21 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         }
 
         /*
-         * Send to listeners who are interested in this event UEI.
-         * Loop to attempt partial wild card "directory" matches.
+         * Send to listeners who are interested in this event UEI,
+         * including partial wild card "directory" matches.
          */
-        Set<EventListener> sentToListeners = new HashSet<EventListener>();
-        for (String uei = event.getUei(); uei.length() > 0; ) {
-            if (m_ueiListeners.containsKey(uei)) {
-                for (EventListener listener : m_ueiListeners.get(uei)) {
-                    if (!sentToListeners.contains(listener)) {
-                        queueEventToListener(event, listener);
-                        sentToListeners.add(listener);
-                    }
-                }
-            }
-            
-            // Try wild cards: Find / before last character
-            int i = uei.lastIndexOf("/", uei.length() - 2);
-            if (i > 0) {
-                // Split at "/", including the /
-                uei = uei.substring (0, i + 1);
-            } else {
-                // No more wild cards to match
-                break;
-            }
+        final ListenerExecutor[] sentToListeners = routes.resolve(event.getUei());
+        for (ListenerExecutor listener : sentToListeners) {
+            listener.addEvent(event);
         }
-        
-        if (sentToListeners.isEmpty()) {
+
+        if (sentToListeners.length == 0) {
             LOG.debug("No listener interested in event ID {}: {}", event.getDbid(), event.getUei());
         }
     }
 
-    private void queueEventToListener(Event event, EventListener listener) {
-        m_listenerThreads.get(listener.getName()).addEvent(event);
+    private void rebuildRoutes() {
+        m_routes = new Routes(m_listeners, m_ueiListeners, m_listenerThreads);
     }
 
     /**
@@ -329,6 +581,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         for (String uei : m_ueiListeners.keySet()) {
             removeUeiForListener(uei, listener);
         }
+
+        rebuildRoutes();
     }
 
     /**
@@ -356,6 +610,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
         // Since we have a UEI-specific listener, remove the match-all listener
         removeMatchAllForListener(listener);
+
+        rebuildRoutes();
     }
 
     /**
@@ -390,6 +646,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         for (String uei : ueis) {
             removeUeiForListener(uei, listener);
         }
+
+        rebuildRoutes();
     }
 
     /**
@@ -409,6 +667,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         Assert.notNull(uei, "uei argument cannot be null");
 
         removeUeiForListener(uei, listener);
+
+        rebuildRoutes();
     }
 
     /**
@@ -435,6 +695,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
             m_listenerThreads.remove(listener.getName());
         }
+
+        rebuildRoutes();
     }
 
     /**
@@ -446,7 +708,12 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             return;
         }
         
-        EventListenerExecutor listenerThread = new EventListenerExecutor(listener, m_handlerQueueLength);
+        final ListenerExecutor listenerThread;
+        if (listener instanceof BatchEventListener) {
+            listenerThread = new BatchEventListenerExecutor((BatchEventListener)listener, m_handlerQueueLength == null ? DEFAULT_BATCH_QUEUE_CAPACITY : m_handlerQueueLength, m_maxBatchSize);
+        } else {
+            listenerThread = new EventListenerExecutor(listener, m_handlerQueueLength);
+        }
         m_listenerThreads.put(listener.getName(), listenerThread);
     }
 
@@ -576,4 +843,50 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         Assert.state(m_eventHandlerPool == null, "handlerQueueLength property cannot be set after afterPropertiesSet() is called");
         m_handlerQueueLength = size;
     }
+
+    /**
+     * <p>getMaxBatchSize</p>
+     *
+     * @return the maximum number of events handed to a {@link BatchEventListener} at once
+     */
+    public int getMaxBatchSize() {
+        return m_maxBatchSize;
+    }
+
+    /**
+     * <p>setMaxBatchSize</p>
+     *
+     * @param maxBatchSize a int.
+     */
+    public synchronized void setMaxBatchSize(int maxBatchSize) {
+        Assert.isTrue(maxBatchSize > 0, "maxBatchSize must be positive");
+        m_maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Returns the number of events waiting to be delivered to each listener.
+     *
+     * @return the queue depths keyed by listener name
+     */
+    public synchronized Map<String, Integer> getListenerQueueDepths() {
+        final Map<String, Integer> depths = new TreeMap<String, Integer>();
+        for (final Map.Entry<String, ListenerExecutor> entry : m_listenerThreads.entrySet()) {
+            depths.put(entry.getKey(), entry.getValue().getQueueDepth());
+        }
+        return depths;
+    }
+
+    /**
+     * Returns how long the oldest undelivered event of each listener has
+     * been waiting.
+     *
+     * @return the lag in milliseconds keyed by listener name
+     */
+    public synchronized Map<String, Long> getListenerLags() {
+        final Map<String, Long> lags = new TreeMap<String, Long>();
+        for (final Map.Entry<String, ListenerExecutor> entry : m_listenerThreads.entrySet()) {
+            lags.put(entry.getKey(), entry.getValue().getLag());
+        }
+        return lags;
+    }
 }
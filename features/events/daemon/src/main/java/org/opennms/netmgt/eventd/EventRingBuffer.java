@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import java.util.Collection;
+
+import org.opennms.netmgt.xml.event.Event;
+
+/**
+ * A bounded ring buffer of events with the time at which each event was
+ * queued, shared by the broadcasting threads and the single thread that
+ * delivers them to a listener.
+ */
+class EventRingBuffer {
+    private final Event[] m_events;
+    private final long[] m_queuedAt;
+    private int m_head = 0;
+    private int m_count = 0;
+
+    EventRingBuffer(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        m_events = new Event[capacity];
+        m_queuedAt = new long[capacity];
+    }
+
+    /**
+     * Queues an event.
+     *
+     * @return false if the buffer is full
+     */
+    synchronized boolean offer(final Event event) {
+        if (m_count == m_events.length) {
+            return false;
+        }
+        final int tail = (m_head + m_count) % m_events.length;
+        m_events[tail] = event;
+        m_queuedAt[tail] = System.currentTimeMillis();
+        m_count++;
+        return true;
+    }
+
+    /**
+     * Removes up to <code>max</code> events, oldest first.
+     *
+     * @return the number of events added to the collection
+     */
+    synchronized int drainTo(final Collection<Event> events, final int max) {
+        final int n = Math.min(max, m_count);
+        for (int i = 0; i < n; i++) {
+            events.add(m_events[m_head]);
+            m_events[m_head] = null;
+            m_head = (m_head + 1) % m_events.length;
+        }
+        m_count -= n;
+        return n;
+    }
+
+    synchronized int size() {
+        return m_count;
+    }
+
+    /**
+     * @return the time in milliseconds the oldest event has been waiting, 0 if empty
+     */
+    synchronized long getLag() {
+        return m_count == 0 ? 0 : Math.max(0, System.currentTimeMillis() - m_queuedAt[m_head]);
+    }
+
+    int getCapacity() {
+        return m_events.length;
+    }
+}
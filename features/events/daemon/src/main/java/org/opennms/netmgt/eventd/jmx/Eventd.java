@@ -28,7 +28,13 @@
 
 package org.opennms.netmgt.eventd.jmx;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
+import org.opennms.netmgt.eventd.EventIpcManagerDefaultImpl;
 
 /**
  * <p>Eventd class.</p>
@@ -48,4 +54,53 @@ public class Eventd extends AbstractSpringContextJmxServiceDaemon<org.opennms.ne
     protected String getSpringContext() {
         return "eventDaemonContext";       
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getListenerQueueDepth() {
+        long depth = 0;
+        for (final Integer listenerDepth : getQueueDepths().values()) {
+            depth += listenerDepth;
+        }
+        return depth;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMaxListenerLag() {
+        long lag = 0;
+        for (final Long listenerLag : getLags().values()) {
+            lag = Math.max(lag, listenerLag);
+        }
+        return lag;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String[] getListenerQueues() {
+        final Map<String, Integer> depths = getQueueDepths();
+        final Map<String, Long> lags = getLags();
+        final List<String> queues = new ArrayList<String>(depths.size());
+        for (final Map.Entry<String, Integer> entry : depths.entrySet()) {
+            final Long lag = lags.get(entry.getKey());
+            queues.add(entry.getKey() + ": depth=" + entry.getValue() + ", lag=" + (lag == null ? 0 : lag) + "ms");
+        }
+        return queues.toArray(new String[queues.size()]);
+    }
+
+    private Map<String, Integer> getQueueDepths() {
+        final EventIpcManagerDefaultImpl manager = getDaemon().getEventIpcManager();
+        if (manager == null) {
+            return Collections.emptyMap();
+        }
+        return manager.getListenerQueueDepths();
+    }
+
+    private Map<String, Long> getLags() {
+        final EventIpcManagerDefaultImpl manager = getDaemon().getEventIpcManager();
+        if (manager == null) {
+            return Collections.emptyMap();
+        }
+        return manager.getListenerLags();
+    }
 }
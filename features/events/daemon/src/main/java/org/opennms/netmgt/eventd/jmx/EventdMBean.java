@@ -37,4 +37,19 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface EventdMBean extends BaseOnmsMBean {
+
+    /**
+     * @return The number of events waiting to be delivered, summed over all event listeners
+     */
+    public long getListenerQueueDepth();
+
+    /**
+     * @return The longest time in milliseconds that an undelivered event has been waiting for any listener
+     */
+    public long getMaxListenerLag();
+
+    /**
+     * @return The queue depth and lag of each event listener, one entry per listener
+     */
+    public String[] getListenerQueues();
 }
@@ -32,6 +32,9 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
 
 import javax.sql.DataSource;
 
@@ -90,6 +93,11 @@ public abstract class AbstractJdbcPersister implements InitializingBean, EventWr
 
     private String m_getNextIdString;
 
+    private int m_idBlockSize = 1;
+
+    /** ids taken from the sequence that have not been handed out yet */
+    private final Queue<Integer> m_allocatedIds = new ArrayDeque<Integer>();
+
     /**
      * <p>Constructor for AbstractJdbcPersister.</p>
      */
@@ -219,7 +227,19 @@ public abstract class AbstractJdbcPersister implements InitializingBean, EventWr
      * @throws java.sql.SQLException if any.
      */
     protected int getNextId() throws SQLException {
-        return new JdbcTemplate(getDataSource()).queryForObject(getGetNextIdString(), Integer.class);
+        if (m_idBlockSize <= 1) {
+            return new JdbcTemplate(getDataSource()).queryForObject(getGetNextIdString(), Integer.class);
+        }
+
+        synchronized (m_allocatedIds) {
+            if (m_allocatedIds.isEmpty()) {
+                // Take a whole block of values from the sequence in a single round trip
+                final List<Integer> ids = new JdbcTemplate(getDataSource()).queryForList(getGetNextIdString() + " FROM generate_series(1, ?)", Integer.class, m_idBlockSize);
+                LOG.debug("Allocated {} ids from the sequence", ids.size());
+                m_allocatedIds.addAll(ids);
+            }
+            return m_allocatedIds.remove();
+        }
     }
 
     /**
@@ -233,6 +253,7 @@ public abstract class AbstractJdbcPersister implements InitializingBean, EventWr
         Assert.state(m_eventUtil != null, "property eventUtil must be set");
         Assert.state(m_dataSource != null, "property dataSource must be set");
         Assert.state(m_getNextIdString != null, "property getNextIdString must be set");
+        Assert.state(m_idBlockSize <= 1 || !m_getNextIdString.toUpperCase().contains(" FROM "), "property getNextIdString must be a plain SELECT of the sequence when idBlockSize is greater than 1");
     }
 
     /**
@@ -297,6 +318,29 @@ public abstract class AbstractJdbcPersister implements InitializingBean, EventWr
         m_getNextIdString = getNextIdString;
     }
 
+    /**
+     * <p>getIdBlockSize</p>
+     *
+     * @return the number of ids taken from the sequence at a time
+     */
+    public int getIdBlockSize() {
+        return m_idBlockSize;
+    }
+
+    /**
+     * Sets the number of ids that are taken from the sequence at a time.
+     * With a value greater than 1, the getNextIdString query is run as
+     * <code>getNextIdString FROM generate_series(1, idBlockSize)</code> and
+     * the ids are handed out locally until the block is used up. Ids that
+     * are left over when the daemon stops are simply skipped. The default
+     * of 1 runs the query for every event.
+     *
+     * @param idBlockSize a int.
+     */
+    public void setIdBlockSize(int idBlockSize) {
+        m_idBlockSize = idBlockSize;
+    }
+
     /**
      * <p>checkEventSanityAndDoWeProcess</p>
      *
@@ -34,7 +34,14 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
 
 import org.opennms.core.utils.DBUtils;
 import org.opennms.netmgt.dao.util.AutoAction;
@@ -51,6 +58,7 @@ import org.opennms.netmgt.xml.event.Header;
 import org.opennms.netmgt.xml.event.Operaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.dao.DataAccessException;
 
@@ -68,6 +76,16 @@ import org.springframework.dao.DataAccessException;
  *
  * Values for the ' <parms>' block are loaded with each parm name and parm value
  * delimited with the NAME_VAL_DELIM.
+ *
+ * When batchSize is greater than 1 the writer runs in group-commit mode:
+ * events get their dbid right away (see {@link #setIdBlockSize(int)}) and
+ * are staged in a bounded queue, and a single writer thread inserts them
+ * as a JDBC batch with one commit once batchSize events are waiting or
+ * batchInterval milliseconds have passed. {@link #process(Header, Event)}
+ * still only returns once the event has been committed, so the processors
+ * that run after this one can rely on the event row being there. The
+ * batches are formed from the events processed concurrently by the eventd
+ * receiver threads.
  * 
  * @deprecated Replace with a Hibernate implementation. See bug NMS-3033. Actually
  * it doesn't have any details. :P
@@ -80,8 +98,145 @@ import org.springframework.dao.DataAccessException;
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
-public final class JdbcEventWriter extends AbstractJdbcPersister implements EventProcessor, InitializingBean {
+public final class JdbcEventWriter extends AbstractJdbcPersister implements EventProcessor, InitializingBean, DisposableBean {
     private static final Logger LOG = LoggerFactory.getLogger(JdbcEventWriter.class);
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+    /**
+     * An event waiting in the group-commit queue. The host name and the
+     * service id are resolved by the calling thread so that the writer
+     * thread only has to bind and send the values.
+     */
+    private static class PendingEvent {
+        private final Header m_header;
+        private final Event m_event;
+        private final String m_hostname;
+        private final int m_serviceId;
+        private final CountDownLatch m_done = new CountDownLatch(1);
+        private volatile Throwable m_failure;
+
+        private PendingEvent(final Header header, final Event event, final String hostname, final int serviceId) {
+            m_header = header;
+            m_event = event;
+            m_hostname = hostname;
+            m_serviceId = serviceId;
+        }
+
+        private void complete(final Throwable failure) {
+            m_failure = failure;
+            m_done.countDown();
+        }
+    }
+
+    private int m_batchSize = 1;
+
+    private long m_batchInterval = 0;
+
+    private int m_queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    private BlockingQueue<PendingEvent> m_queue;
+
+    private Thread m_flusher;
+
+    private volatile boolean m_running = false;
+
+    /**
+     * <p>afterPropertiesSet</p>
+     *
+     * @throws java.sql.SQLException if any.
+     */
+    @Override
+    public void afterPropertiesSet() throws SQLException {
+        super.afterPropertiesSet();
+
+        if (m_batchSize > 1) {
+            m_queue = new ArrayBlockingQueue<PendingEvent>(m_queueCapacity);
+            m_running = true;
+            m_flusher = new LogPreservingThreadFactory(getClass().getSimpleName(), 1).newThread(new Runnable() {
+                @Override
+                public void run() {
+                    flushQueue();
+                }
+            });
+            m_flusher.start();
+            LOG.info("JdbcEventWriter: group commit enabled, batchSize={}, batchInterval={}ms, idBlockSize={}", m_batchSize, m_batchInterval, getIdBlockSize());
+        }
+    }
+
+    /**
+     * Stops the group-commit writer thread. Events that are still queued are
+     * written before it exits.
+     *
+     * @throws java.lang.InterruptedException if interrupted while waiting for the writer thread
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        if (m_flusher != null) {
+            m_running = false;
+            m_flusher.join();
+            m_flusher = null;
+        }
+    }
+
+    /**
+     * <p>getBatchSize</p>
+     *
+     * @return the maximum number of events written with one commit
+     */
+    public int getBatchSize() {
+        return m_batchSize;
+    }
+
+    /**
+     * Sets the maximum number of events written with one commit. A value
+     * greater than 1 enables group commit; the default of 1 writes and
+     * commits every event on the calling thread.
+     *
+     * @param batchSize a int.
+     */
+    public void setBatchSize(final int batchSize) {
+        m_batchSize = batchSize;
+    }
+
+    /**
+     * <p>getBatchInterval</p>
+     *
+     * @return the time in milliseconds a batch waits to fill up
+     */
+    public long getBatchInterval() {
+        return m_batchInterval;
+    }
+
+    /**
+     * Sets how long, in milliseconds, a batch waits for more events before
+     * it is written. With the default of 0 a batch holds whatever was
+     * queued while the previous batch was being written.
+     *
+     * @param batchInterval a long.
+     */
+    public void setBatchInterval(final long batchInterval) {
+        m_batchInterval = batchInterval;
+    }
+
+    /**
+     * <p>getQueueCapacity</p>
+     *
+     * @return the maximum number of events waiting to be written
+     */
+    public int getQueueCapacity() {
+        return m_queueCapacity;
+    }
+
+    /**
+     * Sets the maximum number of events waiting to be written in group-commit
+     * mode. Callers block when the queue is full.
+     *
+     * @param queueCapacity a int.
+     */
+    public void setQueueCapacity(final int queueCapacity) {
+        m_queueCapacity = queueCapacity;
+    }
     /**
      * {@inheritDoc}
      *
@@ -95,6 +250,16 @@ public final class JdbcEventWriter extends AbstractJdbcPersister implements Even
 
         LOG.debug("JdbcEventWriter: processing {} nodeid: {} ipaddr: {} serviceid: {} time: {}", event.getUei(), event.getNodeid(), event.getInterface(), event.getService(), event.getTime());
 
+        if (m_batchSize > 1) {
+            enqueueAndWait(eventHeader, event);
+        } else {
+            writeEvent(eventHeader, event);
+        }
+
+        LOG.debug("EventWriter finished for : {}", event.getUei());
+    }
+
+    private void writeEvent(final Header eventHeader, final Event event) throws EventProcessorException {
         Connection connection;
         try {
             connection = getDataSource().getConnection();
@@ -139,8 +304,159 @@ public final class JdbcEventWriter extends AbstractJdbcPersister implements Even
                 LOG.warn("SQLException while closing database connection.", e);
             }
         }
+    }
 
-        LOG.debug("EventWriter finished for : {}", event.getUei());
+    /**
+     * Assigns the dbid, hands the event to the writer thread and waits
+     * until the batch it ends up in has been committed.
+     */
+    private void enqueueAndWait(final Header eventHeader, final Event event) throws EventProcessorException {
+        final PendingEvent pending;
+        try {
+            assignId(event);
+            pending = new PendingEvent(eventHeader, event, getEventHost(event), getEventServiceId(event));
+        } catch (final DataAccessException e) {
+            throw new EventProcessorException(e);
+        } catch (final SQLException e) {
+            throw new EventProcessorException(e);
+        }
+
+        final Thread flusher = m_flusher;
+        try {
+            while (!m_queue.offer(pending, 100, TimeUnit.MILLISECONDS)) {
+                if (!m_running) {
+                    throw new EventProcessorException("JdbcEventWriter has been stopped; event " + event.getDbid() + " was not written");
+                }
+            }
+            while (!pending.m_done.await(100, TimeUnit.MILLISECONDS)) {
+                // the writer thread may have exited after its last look at the queue
+                if ((flusher == null || !flusher.isAlive()) && m_queue.remove(pending)) {
+                    throw new EventProcessorException("JdbcEventWriter has been stopped; event " + event.getDbid() + " was not written");
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EventProcessorException("Interrupted while waiting for event " + event.getDbid() + " to be written", e);
+        }
+
+        if (pending.m_failure != null) {
+            throw new EventProcessorException(pending.m_failure);
+        }
+    }
+
+    /**
+     * The loop run by the group-commit writer thread. A batch is started by
+     * the first waiting event and closed once it holds batchSize events or
+     * batchInterval milliseconds have passed, whichever comes first.
+     */
+    private void flushQueue() {
+        final List<PendingEvent> batch = new ArrayList<PendingEvent>(m_batchSize);
+        while (m_running || !m_queue.isEmpty()) {
+            try {
+                final PendingEvent first = m_queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(m_batchInterval);
+                while (batch.size() < m_batchSize) {
+                    m_queue.drainTo(batch, m_batchSize - batch.size());
+                    final long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= m_batchSize || remaining <= 0) {
+                        break;
+                    }
+                    final PendingEvent next = m_queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                writeBatch(batch);
+            } catch (final InterruptedException e) {
+                LOG.warn("JdbcEventWriter: interrupted while waiting for events to write, failing the {} queued events.", m_queue.size(), e);
+                m_running = false;
+                m_queue.drainTo(batch);
+                Thread.currentThread().interrupt();
+                return;
+            } catch (final Throwable t) {
+                LOG.error("JdbcEventWriter: unexpected error writing a batch of {} events.", batch.size(), t);
+            } finally {
+                // never leave a caller waiting
+                for (final PendingEvent pending : batch) {
+                    if (pending.m_done.getCount() > 0) {
+                        pending.complete(new IllegalStateException("Event " + pending.m_event.getDbid() + " was not written"));
+                    }
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Inserts the events with a single JDBC batch and commit. If the batch
+     * fails, the events are written one at a time so that a single bad
+     * event only fails itself.
+     */
+    private void writeBatch(final List<PendingEvent> batch) {
+        Throwable failure = null;
+        final DBUtils d = new DBUtils(getClass());
+        try {
+            final Connection connection = getDataSource().getConnection();
+            d.watch(connection);
+            connection.setAutoCommit(false);
+
+            try {
+                final PreparedStatement insStmt = connection.prepareStatement(EventdConstants.SQL_DB_INS_EVENT);
+                d.watch(insStmt);
+
+                for (final PendingEvent pending : batch) {
+                    bindEvent(insStmt, pending.m_header, pending.m_event, pending.m_hostname, pending.m_serviceId);
+                    insStmt.addBatch();
+                }
+                insStmt.executeBatch();
+
+                connection.commit();
+            } catch (final SQLException e) {
+                failure = e;
+                try {
+                    connection.rollback();
+                } catch (final Throwable e2) {
+                    LOG.warn("Rollback of transaction failed.", e2);
+                }
+            }
+        } catch (final SQLException e) {
+            failure = e;
+        } finally {
+            d.cleanUp();
+        }
+
+        if (failure == null) {
+            LOG.debug("SUCCESSFULLY added {} events to the EVENTS table.", batch.size());
+            for (final PendingEvent pending : batch) {
+                pending.complete(null);
+            }
+        } else if (batch.size() > 1) {
+            LOG.warn("Error inserting a batch of {} events into the datastore, retrying them one at a time.", batch.size(), failure);
+            for (final PendingEvent pending : batch) {
+                writeBatch(Collections.singletonList(pending));
+            }
+        } else {
+            LOG.warn("Error inserting event into the datastore.", failure);
+            batch.get(0).complete(failure);
+        }
+    }
+
+    private void assignId(final Event event) throws SQLException {
+        // Execute the statement to get the next event id
+        final int eventID = getNextId();
+
+        LOG.debug("DBID: {}", eventID);
+
+        synchronized (event) {
+            event.setDbid(eventID);
+        }
     }
 
     /**
@@ -154,198 +470,197 @@ public final class JdbcEventWriter extends AbstractJdbcPersister implements Even
      *                properties file.
      */
     private void insertEvent(final Header eventHeader, final Event event, final Connection connection) throws SQLException {
-        // Execute the statement to get the next event id
-        final int eventID = getNextId();
-
-        LOG.debug("DBID: {}", eventID);
+        assignId(event);
 
-        synchronized (event) {
-            event.setDbid(eventID);
-        }
         final DBUtils d = new DBUtils(getClass());
 
         try {
             final PreparedStatement insStmt = connection.prepareStatement(EventdConstants.SQL_DB_INS_EVENT);
             d.watch(insStmt);
 
-            // eventID
-            insStmt.setInt(1, eventID);
+            bindEvent(insStmt, eventHeader, event, getEventHost(event), getEventServiceId(event));
+
+            // execute
+            insStmt.executeUpdate();
+        } finally {
+            d.cleanUp();
+        }
 
-            // eventUEI
-            insStmt.setString(2, EventDatabaseConstants.format(event.getUei(), EVENT_UEI_FIELD_SIZE));
+        LOG.debug("SUCCESSFULLY added {} related  data into the EVENTS table.", event.getUei());
+    }
 
-            // nodeID
-            final Long nodeid = event.getNodeid();
-            set(insStmt, 3, event.hasNodeid() ? nodeid.intValue() : -1);
+    /**
+     * Sets the parameters of the EVENTS insert statement for an event that
+     * has already been given its dbid.
+     */
+    private static void bindEvent(final PreparedStatement insStmt, final Header eventHeader, final Event event, final String hostname, final int serviceId) throws SQLException {
+        // eventID
+        insStmt.setInt(1, event.getDbid());
 
-            // eventTime
-            insStmt.setTimestamp(4, getEventTime(event));
+        // eventUEI
+        insStmt.setString(2, EventDatabaseConstants.format(event.getUei(), EVENT_UEI_FIELD_SIZE));
 
-            // Resolve the event host to a hostname using the ipInterface table
-            String hostname = getEventHost(event);
+        // nodeID
+        final Long nodeid = event.getNodeid();
+        set(insStmt, 3, event.hasNodeid() ? nodeid.intValue() : -1);
 
-            // eventHost
-            set(insStmt, 5, EventDatabaseConstants.format(hostname, EVENT_HOST_FIELD_SIZE));
+        // eventTime
+        insStmt.setTimestamp(4, getEventTime(event));
 
-            // ipAddr
-            set(insStmt, 6, EventDatabaseConstants.format(event.getInterface(), EVENT_INTERFACE_FIELD_SIZE));
+        // eventHost
+        set(insStmt, 5, EventDatabaseConstants.format(hostname, EVENT_HOST_FIELD_SIZE));
 
-            // eventDpName
-            String dpName = "localhost";
-            if (eventHeader != null && eventHeader.getDpName() != null) {
-                dpName = EventDatabaseConstants.format(eventHeader.getDpName(), EVENT_DPNAME_FIELD_SIZE);
-            } else if (event.getDistPoller() != null) {
-                dpName = EventDatabaseConstants.format(event.getDistPoller(), EVENT_DPNAME_FIELD_SIZE);
-            }
-            insStmt.setString(7, dpName);
+        // ipAddr
+        set(insStmt, 6, EventDatabaseConstants.format(event.getInterface(), EVENT_INTERFACE_FIELD_SIZE));
 
-            // eventSnmpHost
-            set(insStmt, 8, EventDatabaseConstants.format(event.getSnmphost(), EVENT_SNMPHOST_FIELD_SIZE));
+        // eventDpName
+        String dpName = "localhost";
+        if (eventHeader != null && eventHeader.getDpName() != null) {
+            dpName = EventDatabaseConstants.format(eventHeader.getDpName(), EVENT_DPNAME_FIELD_SIZE);
+        } else if (event.getDistPoller() != null) {
+            dpName = EventDatabaseConstants.format(event.getDistPoller(), EVENT_DPNAME_FIELD_SIZE);
+        }
+        insStmt.setString(7, dpName);
 
-            // service identifier - convert the service name to a service id
-            set(insStmt, 9, getEventServiceId(event));
+        // eventSnmpHost
+        set(insStmt, 8, EventDatabaseConstants.format(event.getSnmphost(), EVENT_SNMPHOST_FIELD_SIZE));
 
-            // eventSnmp
-            if (event.getSnmp() != null) {
-                insStmt.setString(10, SnmpInfo.format(event.getSnmp(), EVENT_SNMP_FIELD_SIZE));
-            } else {
-                insStmt.setNull(10, Types.VARCHAR);
-            }
+        // service identifier - convert the service name to a service id
+        set(insStmt, 9, serviceId);
 
-            // eventParms
-
-            // Replace any null bytes with a space, otherwise postgres will complain about encoding in UNICODE 
-            final String parametersString=EventParameterUtils.format(event);
-            set(insStmt, 11, EventDatabaseConstants.format(parametersString, 0));
-
-            // eventCreateTime
-            final Timestamp eventCreateTime = new Timestamp(System.currentTimeMillis());
-            insStmt.setTimestamp(12, eventCreateTime);
-
-            // eventDescr
-            set(insStmt, 13, EventDatabaseConstants.format(event.getDescr(), 0));
-
-            // eventLoggroup
-            set(insStmt, 14, (event.getLoggroupCount() > 0) ? EventDatabaseConstants.format(event.getLoggroup(), EVENT_LOGGRP_FIELD_SIZE) : null);
-
-            // eventLogMsg
-            // eventLog
-            // eventDisplay
-            if (event.getLogmsg() != null) {
-                // set log message
-                set(insStmt, 15, EventDatabaseConstants.format(event.getLogmsg().getContent(), 0));
-                String logdest = event.getLogmsg().getDest();
-                if (logdest.equals("logndisplay")) {
-                    // if 'logndisplay' set both log and display column to yes
-                    set(insStmt, 16, MSG_YES);
-                    set(insStmt, 17, MSG_YES);
-                } else if (logdest.equals("logonly")) {
-                    // if 'logonly' set log column to true
-                    set(insStmt, 16, MSG_YES);
-                    set(insStmt, 17, MSG_NO);
-                } else if (logdest.equals("displayonly")) {
-                    // if 'displayonly' set display column to true
-                    set(insStmt, 16, MSG_NO);
-                    set(insStmt, 17, MSG_YES);
-                } else if (logdest.equals("suppress")) {
-                    // if 'suppress' set both log and display to false
-                    set(insStmt, 16, MSG_NO);
-                    set(insStmt, 17, MSG_NO);
-                }
-            } else {
-                insStmt.setNull(15, Types.VARCHAR);
-
-                /*
-                 * If this is an event that had no match in the event conf
-                 * mark it as to be logged and displayed so that there
-                 * are no events that slip through the system
-                 * without the user knowing about them
-                 */
-                set(insStmt, 17, MSG_YES);
-            }
+        // eventSnmp
+        if (event.getSnmp() != null) {
+            insStmt.setString(10, SnmpInfo.format(event.getSnmp(), EVENT_SNMP_FIELD_SIZE));
+        } else {
+            insStmt.setNull(10, Types.VARCHAR);
+        }
 
-            // eventSeverity
-            set(insStmt, 18, OnmsSeverity.get(event.getSeverity()).getId());
+        // eventParms
 
-            // eventPathOutage
-            set(insStmt, 19, (event.getPathoutage() != null) ? EventDatabaseConstants.format(event.getPathoutage(), EVENT_PATHOUTAGE_FIELD_SIZE) : null);
+        // Replace any null bytes with a space, otherwise postgres will complain about encoding in UNICODE 
+        final String parametersString=EventParameterUtils.format(event);
+        set(insStmt, 11, EventDatabaseConstants.format(parametersString, 0));
 
-            // eventCorrelation
-            set(insStmt, 20, (event.getCorrelation() != null) ? org.opennms.netmgt.dao.util.Correlation.format(event.getCorrelation(), EVENT_CORRELATION_FIELD_SIZE) : null);
+        // eventCreateTime
+        final Timestamp eventCreateTime = new Timestamp(System.currentTimeMillis());
+        insStmt.setTimestamp(12, eventCreateTime);
 
-            // eventSuppressedCount
-            insStmt.setNull(21, Types.INTEGER);
+        // eventDescr
+        set(insStmt, 13, EventDatabaseConstants.format(event.getDescr(), 0));
 
-            // eventOperInstruct
-            set(insStmt, 22, EventDatabaseConstants.format(event.getOperinstruct(), 0)); // the field should be text on the DB
+        // eventLoggroup
+        set(insStmt, 14, (event.getLoggroupCount() > 0) ? EventDatabaseConstants.format(event.getLoggroup(), EVENT_LOGGRP_FIELD_SIZE) : null);
 
-            // eventAutoAction
-            set(insStmt, 23, (event.getAutoactionCount() > 0) ? AutoAction.format(event.getAutoaction(), EVENT_AUTOACTION_FIELD_SIZE) : null);
+        // eventLogMsg
+        // eventLog
+        // eventDisplay
+        if (event.getLogmsg() != null) {
+            // set log message
+            set(insStmt, 15, EventDatabaseConstants.format(event.getLogmsg().getContent(), 0));
+            String logdest = event.getLogmsg().getDest();
+            if (logdest.equals("logndisplay")) {
+                // if 'logndisplay' set both log and display column to yes
+                set(insStmt, 16, MSG_YES);
+                set(insStmt, 17, MSG_YES);
+            } else if (logdest.equals("logonly")) {
+                // if 'logonly' set log column to true
+                set(insStmt, 16, MSG_YES);
+                set(insStmt, 17, MSG_NO);
+            } else if (logdest.equals("displayonly")) {
+                // if 'displayonly' set display column to true
+                set(insStmt, 16, MSG_NO);
+                set(insStmt, 17, MSG_YES);
+            } else if (logdest.equals("suppress")) {
+                // if 'suppress' set both log and display to false
+                set(insStmt, 16, MSG_NO);
+                set(insStmt, 17, MSG_NO);
+            }
+        } else {
+            insStmt.setNull(15, Types.VARCHAR);
+
+            /*
+             * If this is an event that had no match in the event conf
+             * mark it as to be logged and displayed so that there
+             * are no events that slip through the system
+             * without the user knowing about them
+             */
+            set(insStmt, 17, MSG_YES);
+        }
 
-            // eventOperAction / eventOperActionMenuText
-            if (event.getOperactionCount() > 0) {
-                final List<Operaction> a = new ArrayList<Operaction>();
-                final List<String> b = new ArrayList<String>();
+        // eventSeverity
+        set(insStmt, 18, OnmsSeverity.get(event.getSeverity()).getId());
 
-                for (final Operaction eoa : event.getOperactionCollection()) {
-                    a.add(eoa);
-                    b.add(eoa.getMenutext());
-                }
+        // eventPathOutage
+        set(insStmt, 19, (event.getPathoutage() != null) ? EventDatabaseConstants.format(event.getPathoutage(), EVENT_PATHOUTAGE_FIELD_SIZE) : null);
 
-                set(insStmt, 24, OperatorAction.format(a, EVENT_OPERACTION_FIELD_SIZE));
-                set(insStmt, 25, EventDatabaseConstants.format(b, EVENT_OPERACTION_MENU_FIELD_SIZE));
-            } else {
-                insStmt.setNull(24, Types.VARCHAR);
-                insStmt.setNull(25, Types.VARCHAR);
-            }
+        // eventCorrelation
+        set(insStmt, 20, (event.getCorrelation() != null) ? org.opennms.netmgt.dao.util.Correlation.format(event.getCorrelation(), EVENT_CORRELATION_FIELD_SIZE) : null);
+
+        // eventSuppressedCount
+        insStmt.setNull(21, Types.INTEGER);
+
+        // eventOperInstruct
+        set(insStmt, 22, EventDatabaseConstants.format(event.getOperinstruct(), 0)); // the field should be text on the DB
 
-            // eventNotification, this column no longer needed
-            insStmt.setNull(26, Types.VARCHAR);
+        // eventAutoAction
+        set(insStmt, 23, (event.getAutoactionCount() > 0) ? AutoAction.format(event.getAutoaction(), EVENT_AUTOACTION_FIELD_SIZE) : null);
 
-            // eventTroubleTicket / eventTroubleTicket state
-            if (event.getTticket() != null) {
-                set(insStmt, 27, EventDatabaseConstants.format(event.getTticket().getContent(), EVENT_TTICKET_FIELD_SIZE));
-                set(insStmt, 28, event.getTticket().getState().equals("on") ? 1 : 0);
-            } else {
-                insStmt.setNull(27, Types.VARCHAR);
-                insStmt.setNull(28, Types.INTEGER);
+        // eventOperAction / eventOperActionMenuText
+        if (event.getOperactionCount() > 0) {
+            final List<Operaction> a = new ArrayList<Operaction>();
+            final List<String> b = new ArrayList<String>();
+
+            for (final Operaction eoa : event.getOperactionCollection()) {
+                a.add(eoa);
+                b.add(eoa.getMenutext());
             }
 
-            // eventForward
-            set(insStmt, 29, (event.getForwardCount() > 0) ? org.opennms.netmgt.dao.util.Forward.format(event.getForward(), EVENT_FORWARD_FIELD_SIZE) : null);
+            set(insStmt, 24, OperatorAction.format(a, EVENT_OPERACTION_FIELD_SIZE));
+            set(insStmt, 25, EventDatabaseConstants.format(b, EVENT_OPERACTION_MENU_FIELD_SIZE));
+        } else {
+            insStmt.setNull(24, Types.VARCHAR);
+            insStmt.setNull(25, Types.VARCHAR);
+        }
+
+        // eventNotification, this column no longer needed
+        insStmt.setNull(26, Types.VARCHAR);
 
-            // eventmouseOverText
-            set(insStmt, 30, EventDatabaseConstants.format(event.getMouseovertext(), EVENT_MOUSEOVERTEXT_FIELD_SIZE));
+        // eventTroubleTicket / eventTroubleTicket state
+        if (event.getTticket() != null) {
+            set(insStmt, 27, EventDatabaseConstants.format(event.getTticket().getContent(), EVENT_TTICKET_FIELD_SIZE));
+            set(insStmt, 28, event.getTticket().getState().equals("on") ? 1 : 0);
+        } else {
+            insStmt.setNull(27, Types.VARCHAR);
+            insStmt.setNull(28, Types.INTEGER);
+        }
 
-            // eventAckUser
-            if (event.getAutoacknowledge() != null && event.getAutoacknowledge().getState().equals("on")) {
-                set(insStmt, 31, EventDatabaseConstants.format(event.getAutoacknowledge().getContent(), EVENT_ACKUSER_FIELD_SIZE));
+        // eventForward
+        set(insStmt, 29, (event.getForwardCount() > 0) ? org.opennms.netmgt.dao.util.Forward.format(event.getForward(), EVENT_FORWARD_FIELD_SIZE) : null);
 
-                // eventAckTime - if autoacknowledge is present,
-                // set time to event create time
-                set(insStmt, 32, eventCreateTime);
-            } else {
-                insStmt.setNull(31, Types.INTEGER);
-                insStmt.setNull(32, Types.TIMESTAMP);
-            }
+        // eventmouseOverText
+        set(insStmt, 30, EventDatabaseConstants.format(event.getMouseovertext(), EVENT_MOUSEOVERTEXT_FIELD_SIZE));
 
-            // eventSource
-            set(insStmt, 33, EventDatabaseConstants.format(event.getSource(), EVENT_SOURCE_FIELD_SIZE));
+        // eventAckUser
+        if (event.getAutoacknowledge() != null && event.getAutoacknowledge().getState().equals("on")) {
+            set(insStmt, 31, EventDatabaseConstants.format(event.getAutoacknowledge().getContent(), EVENT_ACKUSER_FIELD_SIZE));
 
-            // ifindex
-            if (event.hasIfIndex()) {
-                set(insStmt, 34, event.getIfIndex());
-            } else {
-                insStmt.setNull(34, Types.INTEGER);
-            }
-            
-            // execute
-            insStmt.executeUpdate();
-        } finally {
-            d.cleanUp();
+            // eventAckTime - if autoacknowledge is present,
+            // set time to event create time
+            set(insStmt, 32, eventCreateTime);
+        } else {
+            insStmt.setNull(31, Types.INTEGER);
+            insStmt.setNull(32, Types.TIMESTAMP);
         }
 
-        LOG.debug("SUCCESSFULLY added {} related  data into the EVENTS table.", event.getUei());
+        // eventSource
+        set(insStmt, 33, EventDatabaseConstants.format(event.getSource(), EVENT_SOURCE_FIELD_SIZE));
+
+        // ifindex
+        if (event.hasIfIndex()) {
+            set(insStmt, 34, event.getIfIndex());
+        } else {
+            insStmt.setNull(34, Types.INTEGER);
+        }
     }
 
     /**
@@ -32,10 +32,13 @@ import static org.opennms.core.utils.InetAddressUtils.addr;
 
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import junit.framework.TestCase;
 
+import org.opennms.netmgt.events.api.BatchEventListener;
 import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.events.api.EventHandler;
 import org.opennms.netmgt.events.api.EventListener;
@@ -455,6 +458,79 @@ public class EventIpcManagerDefaultImplTest extends TestCase {
         m_mocks.verifyAll();
     }
     
+    public void testRemoveEventListenerWithUeiAndBroadcast() throws Exception {
+        EventBuilder bldr = new EventBuilder("uei.opennms.org/foo", "testRemoveEventListenerWithUeiAndBroadcast");
+        Event e = bldr.getEvent();
+
+        m_mocks.replayAll();
+
+        m_manager.addEventListener(m_listener, "uei.opennms.org/");
+        m_manager.removeEventListener(m_listener, "uei.opennms.org/");
+        m_manager.broadcastNow(e);
+        Thread.sleep(100);
+
+        m_mocks.verifyAll();
+    }
+
+    public void testBatchEventListenerAndBroadcast() throws Exception {
+        MockBatchEventListener listener = new MockBatchEventListener();
+        List<Event> sent = new ArrayList<Event>();
+
+        m_mocks.replayAll();
+
+        m_manager.setMaxBatchSize(10);
+        m_manager.addEventListener(listener, "uei.opennms.org/");
+        for (int i = 0; i < 1000; i++) {
+            Event e = new EventBuilder("uei.opennms.org/foo/" + (i % 7), "testBatchEventListenerAndBroadcast").getEvent();
+            sent.add(e);
+            m_manager.broadcastNow(e);
+        }
+        for (int i = 0; i < 100 && listener.getEvents().size() < sent.size(); i++) {
+            Thread.sleep(100);
+        }
+
+        m_mocks.verifyAll();
+
+        assertEquals("events should be delivered in order", sent, listener.getEvents());
+        assertTrue("batches should not exceed the maximum batch size", listener.getMaxBatchSize() <= 10);
+
+        Map<String, Integer> depths = m_manager.getListenerQueueDepths();
+        assertEquals(Integer.valueOf(0), depths.get(listener.getName()));
+        assertEquals(Long.valueOf(0), m_manager.getListenerLags().get(listener.getName()));
+
+        m_manager.removeEventListener(listener);
+        assertFalse(m_manager.getListenerQueueDepths().containsKey(listener.getName()));
+    }
+
+    public class MockBatchEventListener implements BatchEventListener {
+        private List<Event> m_events = Collections.synchronizedList(new ArrayList<Event>());
+        private volatile int m_maxBatchSize = 0;
+
+        @Override
+        public String getName() {
+            return "party time, excellent";
+        }
+
+        @Override
+        public void onEvent(Event e) {
+            fail("events should be delivered in batches");
+        }
+
+        @Override
+        public void onEvents(List<Event> events) {
+            m_maxBatchSize = Math.max(m_maxBatchSize, events.size());
+            m_events.addAll(events);
+        }
+
+        public List<Event> getEvents() {
+            return m_events;
+        }
+
+        public int getMaxBatchSize() {
+            return m_maxBatchSize;
+        }
+    }
+
     public class MockEventListener implements EventListener {
         private List<Event> m_events = new ArrayList<Event>();
         
@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.opennms.core.utils.InetAddressUtils.addr;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.opennms.netmgt.dao.mock.MockEventIpcManager.EmptyEventConfDao;
+import org.opennms.netmgt.eventd.AbstractEventUtil;
+import org.opennms.netmgt.eventd.EventExpander;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.eventconf.EnterpriseIdPartition;
+import org.opennms.netmgt.xml.eventconf.EventOrdering;
+import org.opennms.netmgt.xml.eventconf.Events;
+import org.opennms.netmgt.xml.eventconf.Logmsg;
+import org.opennms.netmgt.xml.eventconf.Mask;
+import org.opennms.netmgt.xml.eventconf.Maskelement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Expands batches of traps on several threads sharing one
+ * {@link EventExpander} and checks the uei and the log message of every
+ * expanded trap. testThroughputScalesWithThreads() expands larger batches
+ * with an increasing number of threads and logs the events/sec reached for
+ * each thread count; it is ignored and meant to be run by hand.
+ */
+public class EventExpanderThroughputTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventExpanderThroughputTest.class);
+
+    private static final int EVENT_DEFINITIONS = 2000;
+    private static final int EVENTS_PER_THREAD = 20000;
+
+    private EventExpander m_expander;
+
+    @Before
+    public void setUp() {
+        final Events events = new Events();
+        for (int i = 0; i < EVENT_DEFINITIONS; i++) {
+            final org.opennms.netmgt.xml.eventconf.Event eventConf = new org.opennms.netmgt.xml.eventconf.Event();
+            eventConf.setUei("uei.opennms.org/test/trap" + i);
+            eventConf.setEventLabel("Test trap " + i);
+            eventConf.setDescr("<p>Trap %id% from %interface% with %parm[##]% parms: %parm[all]%</p>");
+            final Logmsg logmsg = new Logmsg();
+            logmsg.setContent("Trap " + i + " from %interface%: %parm[#1]%");
+            logmsg.setDest("logndisplay");
+            eventConf.setLogmsg(logmsg);
+            eventConf.setSeverity("Warning");
+
+            final Mask mask = new Mask();
+            mask.addMaskelement(maskElement("id", ".1.3.6.1.4.1.5813." + (i / 10)));
+            mask.addMaskelement(maskElement("generic", "6"));
+            mask.addMaskelement(maskElement("specific", Integer.toString(i % 10)));
+            eventConf.setMask(mask);
+
+            events.addEvent(eventConf);
+        }
+        final org.opennms.netmgt.xml.eventconf.Event defaultEvent = new org.opennms.netmgt.xml.eventconf.Event();
+        defaultEvent.setUei("uei.opennms.org/default/event");
+        defaultEvent.setEventLabel("Unknown event");
+        defaultEvent.setSeverity("Indeterminate");
+        events.addEvent(defaultEvent);
+        events.initialize(new EnterpriseIdPartition(), new EventOrdering());
+
+        m_expander = new EventExpander();
+        m_expander.setEventConfDao(new EmptyEventConfDao() {
+            @Override
+            public org.opennms.netmgt.xml.eventconf.Event findByEvent(final Event matchingEvent) {
+                return events.findFirstMatchingEvent(matchingEvent);
+            }
+
+            @Override
+            public org.opennms.netmgt.xml.eventconf.Event findByUei(final String uei) {
+                return events.findFirstMatchingEvent(new Events.EventCriteria() {
+                    @Override
+                    public boolean matches(final org.opennms.netmgt.xml.eventconf.Event e) {
+                        return uei.equals(e.getUei());
+                    }
+                });
+            }
+
+            @Override
+            public Events getRootEvents() {
+                return events;
+            }
+        });
+        m_expander.afterPropertiesSet();
+
+        AbstractEventUtil.setInstance(new AbstractEventUtil() {
+            @Override
+            protected String getNodeLabel(final long nodeId) throws SQLException {
+                return null;
+            }
+
+            @Override
+            protected String getIfAlias(final long nodeId, final String ipaddr) throws SQLException {
+                return null;
+            }
+
+            @Override
+            protected String getAssetFieldValue(final String parm, final long nodeId) {
+                return null;
+            }
+
+            @Override
+            public String getHardwareFieldValue(final String parm, final long nodeId) {
+                return null;
+            }
+
+            @Override
+            public String getHostName(final int nodeId, final String hostip) throws SQLException {
+                return hostip;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        AbstractEventUtil.setInstance(null);
+    }
+
+    private static Maskelement maskElement(final String name, final String value) {
+        final Maskelement element = new Maskelement();
+        element.setMename(name);
+        element.addMevalue(value);
+        return element;
+    }
+
+    /**
+     * The trap number of the i-th event of a batch, the numbers from
+     * EVENT_DEFINITIONS on have no event definition of their own.
+     */
+    private static int getTrap(final int seed, final int i) {
+        return (seed + i * 7) % (EVENT_DEFINITIONS + 100);
+    }
+
+    private static List<Event> createEvents(final int seed, final int count) {
+        final List<Event> events = new ArrayList<Event>(count);
+        for (int i = 0; i < count; i++) {
+            final int trap = getTrap(seed, i);
+            final EventBuilder bldr = new EventBuilder("uei.opennms.org/default/trap", "EventExpanderThroughputTest");
+            bldr.setInterface(addr("192.168.1." + (i % 250 + 1)));
+            bldr.setSnmpVersion("v2c");
+            bldr.setEnterpriseId(".1.3.6.1.4.1.5813." + (trap / 10));
+            bldr.setGeneric(6);
+            bldr.setSpecific(trap % 10);
+            bldr.addParam(".1.3.6.1.4.1.5813.20.1", "value" + i);
+            bldr.addParam(".1.3.6.1.4.1.5813.20.2", i);
+            final Event event = bldr.getEvent();
+            event.setUei(null);
+            events.add(event);
+        }
+        return events;
+    }
+
+    private double expandConcurrently(final int threads, final int eventsPerThread) throws Exception {
+        final List<List<Event>> batches = new ArrayList<List<Event>>(threads);
+        for (int i = 0; i < threads; i++) {
+            batches.add(createEvents(i, eventsPerThread));
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final long elapsed;
+        try {
+            final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(threads);
+            for (final List<Event> batch : batches) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (final Event event : batch) {
+                            m_expander.expandEvent(event);
+                        }
+                        return null;
+                    }
+                });
+            }
+
+            final long start = System.nanoTime();
+            for (final Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+            elapsed = System.nanoTime() - start;
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        for (int seed = 0; seed < threads; seed++) {
+            final List<Event> batch = batches.get(seed);
+            for (int i = 0; i < eventsPerThread; i++) {
+                assertExpanded(getTrap(seed, i), i, batch.get(i));
+            }
+        }
+        return threads * eventsPerThread * 1e9 / elapsed;
+    }
+
+    private static void assertExpanded(final int trap, final int i, final Event event) {
+        if (trap >= EVENT_DEFINITIONS) {
+            assertEquals("uei.opennms.org/default/event", event.getUei());
+            assertNull(event.getLogmsg());
+        } else {
+            assertEquals("uei.opennms.org/test/trap" + trap, event.getUei());
+            assertEquals("Trap " + trap + " from 192.168.1." + (i % 250 + 1) + ": value" + i, event.getLogmsg().getContent());
+        }
+    }
+
+    @Test
+    public void testExpandConcurrently() throws Exception {
+        expandConcurrently(4, 1000);
+    }
+
+    @Test
+    @Ignore("logs the events/sec for each thread count, run by hand")
+    public void testThroughputScalesWithThreads() throws Exception {
+        // warm up
+        expandConcurrently(1, EVENTS_PER_THREAD);
+
+        final int maxThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            LOG.info("{} handler thread(s): {} events/sec", threads, Math.round(expandConcurrently(threads, EVENTS_PER_THREAD)));
+        }
+    }
+
+}
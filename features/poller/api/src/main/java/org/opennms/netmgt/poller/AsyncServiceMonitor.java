@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller;
+
+import java.util.Map;
+
+/**
+ * <p>
+ * A {@link ServiceMonitor} that can poll a service without blocking the
+ * calling thread while it waits on the network.
+ * </p>
+ * <p>
+ * The framework calls {@link #pollAsync(MonitoredService, Map)} when the
+ * poller runs in asynchronous mode and {@link #poll(MonitoredService, Map)}
+ * otherwise, so both must return the same result for the same service.
+ * </p>
+ */
+public interface AsyncServiceMonitor extends ServiceMonitor {
+
+    /**
+     * <p>
+     * Starts a poll of the service and returns immediately. The returned
+     * future is completed, with the same status that {@link #poll(MonitoredService, Map)}
+     * would have returned, once the poll has finished including all of its
+     * retries. Listeners may be notified on a thread that is used for I/O,
+     * so they should hand off any work that can block.
+     * </p>
+     *
+     * @param svc the service to poll
+     * @param parameters
+     *            The package parameters (timeout, retry, etc...) to be used for
+     *            this poll.
+     * @return a {@link org.opennms.netmgt.poller.PollFuture} object.
+     */
+    public PollFuture pollAsync(MonitoredService svc, Map<String, Object> parameters);
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller;
+
+/**
+ * <p>The pending result of an {@link AsyncServiceMonitor} poll.</p>
+ */
+public interface PollFuture {
+
+    /**
+     * <p>getServiceMonitor</p>
+     *
+     * @return a {@link org.opennms.netmgt.poller.AsyncServiceMonitor} object.
+     */
+    AsyncServiceMonitor getServiceMonitor();
+
+    /**
+     * <p>getStatus</p>
+     *
+     * @return the status of the poll or null if it is not done
+     */
+    PollStatus getStatus();
+
+    /**
+     * Completes the poll. Only the first status set is kept.
+     *
+     * @param status a {@link org.opennms.netmgt.poller.PollStatus} object.
+     */
+    void setStatus(PollStatus status);
+
+    /**
+     * <p>awaitFor</p>
+     *
+     * @throws InterruptedException
+     */
+    void awaitFor() throws InterruptedException;
+
+    /**
+     * <p>awaitForUninterruptibly</p>
+     */
+    void awaitForUninterruptibly();
+
+    /**
+     * <p>isDone</p>
+     */
+    boolean isDone();
+
+    /**
+     * Adds a listener that is notified when the poll completes, right away
+     * if it already has.
+     */
+    PollFuture addListener(PollFutureListener listener);
+}
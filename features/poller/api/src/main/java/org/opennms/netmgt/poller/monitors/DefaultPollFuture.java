@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.PollFuture;
+import org.opennms.netmgt.poller.PollFutureListener;
+import org.opennms.netmgt.poller.PollStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>DefaultPollFuture class.</p>
+ *
+ * Listeners are called on the thread that completes the future, or on the
+ * thread that adds them if the future is already done.
+ */
+public class DefaultPollFuture implements PollFuture {
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultPollFuture.class);
+
+    private final AsyncServiceMonitor m_monitor;
+    private final CountDownLatch m_latch = new CountDownLatch(1);
+    private List<PollFutureListener> m_listeners = new ArrayList<PollFutureListener>(1);
+    private volatile PollStatus m_status;
+
+    /**
+     * <p>Constructor for DefaultPollFuture.</p>
+     *
+     * @param monitor a {@link org.opennms.netmgt.poller.AsyncServiceMonitor} object.
+     */
+    public DefaultPollFuture(final AsyncServiceMonitor monitor) {
+        m_monitor = monitor;
+    }
+
+    /**
+     * Creates a future that is already completed with the given status.
+     *
+     * @param monitor a {@link org.opennms.netmgt.poller.AsyncServiceMonitor} object.
+     * @param status a {@link org.opennms.netmgt.poller.PollStatus} object.
+     * @return a {@link org.opennms.netmgt.poller.PollFuture} object.
+     */
+    public static PollFuture completed(final AsyncServiceMonitor monitor, final PollStatus status) {
+        final DefaultPollFuture future = new DefaultPollFuture(monitor);
+        future.setStatus(status);
+        return future;
+    }
+
+    @Override
+    public AsyncServiceMonitor getServiceMonitor() {
+        return m_monitor;
+    }
+
+    @Override
+    public PollStatus getStatus() {
+        return m_status;
+    }
+
+    @Override
+    public void setStatus(final PollStatus status) {
+        final List<PollFutureListener> listeners;
+        synchronized (this) {
+            if (m_listeners == null) {
+                LOG.debug("Ignoring status {}, the poll has already completed with {}", status, m_status);
+                return;
+            }
+            m_status = status;
+            listeners = m_listeners;
+            m_listeners = null;
+        }
+        m_latch.countDown();
+        for (final PollFutureListener listener : listeners) {
+            notifyListener(listener);
+        }
+    }
+
+    @Override
+    public void awaitFor() throws InterruptedException {
+        m_latch.await();
+    }
+
+    @Override
+    public void awaitForUninterruptibly() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                m_latch.await();
+                break;
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isDone() {
+        return m_latch.getCount() == 0;
+    }
+
+    @Override
+    public PollFuture addListener(final PollFutureListener listener) {
+        synchronized (this) {
+            if (m_listeners != null) {
+                m_listeners.add(listener);
+                return this;
+            }
+        }
+        notifyListener(listener);
+        return this;
+    }
+
+    private void notifyListener(final PollFutureListener listener) {
+        try {
+            listener.operationComplete(this);
+        } catch (final Throwable t) {
+            LOG.warn("Poll future listener {} threw an exception", listener, t);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DefaultPollFuture[monitor=" + m_monitor + ", status=" + m_status + "]";
+    }
+}
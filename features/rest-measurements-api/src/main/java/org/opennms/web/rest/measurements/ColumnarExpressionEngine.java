@@ -0,0 +1,1219 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.web.rest.measurements;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+import org.apache.commons.jexl2.JexlContext;
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.JexlException;
+import org.apache.commons.jexl2.MapContext;
+import org.opennms.web.rest.measurements.fetch.FetchResults;
+import org.opennms.web.rest.measurements.model.Expression;
+import org.opennms.web.rest.measurements.model.QueryRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/**
+ * An expression engine that compiles every expression once per query and
+ * evaluates it a column at a time, directly on the <code>double[]</code>
+ * columns of the {@link FetchResults}.
+ *
+ * The engine supports the arithmetic, comparison, logical and ternary
+ * operators along with the <code>math:</code> and <code>strictmath:</code>
+ * functions and references to earlier expressions, with the same
+ * semantics as the {@link JEXLExpressionEngine}.  Sub-expressions that do
+ * not depend on the row, such as literals and constants, are evaluated once
+ * by JEXL itself.  When any expression of a query uses syntax that is not
+ * supported, the whole query is evaluated by the {@link JEXLExpressionEngine}.
+ */
+public class ColumnarExpressionEngine implements ExpressionEngine {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ColumnarExpressionEngine.class);
+
+    private static final Set<String> RESERVED_WORDS = new HashSet<String>(Arrays.asList(
+            "or", "and", "eq", "ne", "lt", "gt", "le", "ge", "div", "mod", "not",
+            "null", "true", "false", "new", "empty", "size", "var", "return",
+            "if", "else", "for", "foreach", "while", "in", "function"));
+
+    /**
+     * Bean properties of {@link Double} and {@link Long} that JEXL would
+     * resolve instead of a dotted constant name.
+     */
+    private static final Set<String> NUMBER_PROPERTIES = new HashSet<String>(Arrays.asList(
+            "class", "naN", "infinite"));
+
+    private static final Map<String, DoubleUnaryOperator> UNARY_FUNCTIONS = Maps.newHashMap();
+
+    private static final Map<String, DoubleBinaryOperator> BINARY_FUNCTIONS = Maps.newHashMap();
+
+    static {
+        UNARY_FUNCTIONS.put("math:abs", Math::abs);
+        UNARY_FUNCTIONS.put("math:acos", Math::acos);
+        UNARY_FUNCTIONS.put("math:asin", Math::asin);
+        UNARY_FUNCTIONS.put("math:atan", Math::atan);
+        UNARY_FUNCTIONS.put("math:cbrt", Math::cbrt);
+        UNARY_FUNCTIONS.put("math:ceil", Math::ceil);
+        UNARY_FUNCTIONS.put("math:cos", Math::cos);
+        UNARY_FUNCTIONS.put("math:cosh", Math::cosh);
+        UNARY_FUNCTIONS.put("math:exp", Math::exp);
+        UNARY_FUNCTIONS.put("math:expm1", Math::expm1);
+        UNARY_FUNCTIONS.put("math:floor", Math::floor);
+        UNARY_FUNCTIONS.put("math:log", Math::log);
+        UNARY_FUNCTIONS.put("math:log10", Math::log10);
+        UNARY_FUNCTIONS.put("math:log1p", Math::log1p);
+        UNARY_FUNCTIONS.put("math:rint", Math::rint);
+        UNARY_FUNCTIONS.put("math:signum", Math::signum);
+        UNARY_FUNCTIONS.put("math:sin", Math::sin);
+        UNARY_FUNCTIONS.put("math:sinh", Math::sinh);
+        UNARY_FUNCTIONS.put("math:sqrt", Math::sqrt);
+        UNARY_FUNCTIONS.put("math:tan", Math::tan);
+        UNARY_FUNCTIONS.put("math:tanh", Math::tanh);
+        UNARY_FUNCTIONS.put("math:toDegrees", Math::toDegrees);
+        UNARY_FUNCTIONS.put("math:toRadians", Math::toRadians);
+        UNARY_FUNCTIONS.put("math:ulp", Math::ulp);
+        UNARY_FUNCTIONS.put("strictmath:abs", StrictMath::abs);
+        UNARY_FUNCTIONS.put("strictmath:acos", StrictMath::acos);
+        UNARY_FUNCTIONS.put("strictmath:asin", StrictMath::asin);
+        UNARY_FUNCTIONS.put("strictmath:atan", StrictMath::atan);
+        UNARY_FUNCTIONS.put("strictmath:cbrt", StrictMath::cbrt);
+        UNARY_FUNCTIONS.put("strictmath:ceil", StrictMath::ceil);
+        UNARY_FUNCTIONS.put("strictmath:cos", StrictMath::cos);
+        UNARY_FUNCTIONS.put("strictmath:cosh", StrictMath::cosh);
+        UNARY_FUNCTIONS.put("strictmath:exp", StrictMath::exp);
+        UNARY_FUNCTIONS.put("strictmath:expm1", StrictMath::expm1);
+        UNARY_FUNCTIONS.put("strictmath:floor", StrictMath::floor);
+        UNARY_FUNCTIONS.put("strictmath:log", StrictMath::log);
+        UNARY_FUNCTIONS.put("strictmath:log10", StrictMath::log10);
+        UNARY_FUNCTIONS.put("strictmath:log1p", StrictMath::log1p);
+        UNARY_FUNCTIONS.put("strictmath:rint", StrictMath::rint);
+        UNARY_FUNCTIONS.put("strictmath:signum", StrictMath::signum);
+        UNARY_FUNCTIONS.put("strictmath:sin", StrictMath::sin);
+        UNARY_FUNCTIONS.put("strictmath:sinh", StrictMath::sinh);
+        UNARY_FUNCTIONS.put("strictmath:sqrt", StrictMath::sqrt);
+        UNARY_FUNCTIONS.put("strictmath:tan", StrictMath::tan);
+        UNARY_FUNCTIONS.put("strictmath:tanh", StrictMath::tanh);
+        UNARY_FUNCTIONS.put("strictmath:toDegrees", StrictMath::toDegrees);
+        UNARY_FUNCTIONS.put("strictmath:toRadians", StrictMath::toRadians);
+        UNARY_FUNCTIONS.put("strictmath:ulp", StrictMath::ulp);
+
+        BINARY_FUNCTIONS.put("math:atan2", Math::atan2);
+        BINARY_FUNCTIONS.put("math:hypot", Math::hypot);
+        BINARY_FUNCTIONS.put("math:IEEEremainder", Math::IEEEremainder);
+        BINARY_FUNCTIONS.put("math:max", Math::max);
+        BINARY_FUNCTIONS.put("math:min", Math::min);
+        BINARY_FUNCTIONS.put("math:pow", Math::pow);
+        BINARY_FUNCTIONS.put("strictmath:atan2", StrictMath::atan2);
+        BINARY_FUNCTIONS.put("strictmath:hypot", StrictMath::hypot);
+        BINARY_FUNCTIONS.put("strictmath:IEEEremainder", StrictMath::IEEEremainder);
+        BINARY_FUNCTIONS.put("strictmath:max", StrictMath::max);
+        BINARY_FUNCTIONS.put("strictmath:min", StrictMath::min);
+        BINARY_FUNCTIONS.put("strictmath:pow", StrictMath::pow);
+    }
+
+    /**
+     * Used for the queries that can not be compiled.
+     */
+    private final JEXLExpressionEngine m_jexlEngine = new JEXLExpressionEngine();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void applyExpressions(final QueryRequest request, final FetchResults results) throws ExpressionException {
+        Preconditions.checkNotNull(request, "request argument");
+        Preconditions.checkNotNull(results, "results argument");
+
+        final List<Expression> expressions = request.getExpressions();
+
+        // Don't do anything if there are no expressions
+        if (expressions.size() < 1) {
+            return;
+        }
+
+        final Frame frame = new Frame(results.getTimestamps(), expressions.size());
+        final List<Node> compiled;
+        try {
+            compiled = compile(expressions, results);
+        } catch (final UnsupportedExpressionException e) {
+            LOG.debug("Evaluating the expressions with JEXL: {}", e.getMessage());
+            m_jexlEngine.applyExpressions(request, results);
+            return;
+        }
+
+        // Evaluate every expression, in the same order as which they appeared in the query
+        for (int k = 0; k < compiled.size(); k++) {
+            frame.m_values[k] = toColumn(compiled.get(k), frame);
+        }
+
+        // Store the results
+        final Map<String, double[]> columns = results.getColumns();
+        for (int k = 0; k < expressions.size(); k++) {
+            if (!expressions.get(k).getTransient()) {
+                columns.put(expressions.get(k).getLabel(), frame.m_values[k]);
+            }
+        }
+    }
+
+    private List<Node> compile(final List<Expression> expressions, final FetchResults results) throws UnsupportedExpressionException {
+        final JexlEngine jexl = m_jexlEngine.getJexlEngine();
+
+        // The same variables JEXL would see before the first row is evaluated
+        final Map<String, Object> constants = Maps.newHashMap();
+        constants.putAll(results.getConstants());
+        constants.put("__inf", Double.POSITIVE_INFINITY);
+        constants.put("__neg_inf", Double.NEGATIVE_INFINITY);
+        final JexlContext context = new MapContext(constants);
+
+        final List<String> labels = new ArrayList<String>(expressions.size());
+        for (final Expression e : expressions) {
+            if (e.getLabel() == null || e.getExpression() == null || labels.contains(e.getLabel())) {
+                throw new UnsupportedExpressionException("duplicate or missing label");
+            }
+            labels.add(e.getLabel());
+
+            // Let JEXL report syntax errors
+            try {
+                jexl.createExpression(e.getExpression());
+            } catch (final JexlException ex) {
+                throw new UnsupportedExpressionException(ex.getMessage());
+            }
+        }
+
+        final List<Node> compiled = new ArrayList<Node>(expressions.size());
+        for (int k = 0; k < expressions.size(); k++) {
+            final Compiler compiler = new Compiler(expressions.get(k).getExpression(), jexl, context,
+                                                  results.getColumns(), labels, k);
+            compiled.add(compiler.compile());
+        }
+        return compiled;
+    }
+
+    /**
+     * Converts the value of an expression to a column, the way the
+     * {@link JEXLExpressionEngine} converts the value of every row.
+     */
+    private static double[] toColumn(final Node node, final Frame frame) {
+        if (node instanceof Constant) {
+            final double value = Utils.toDouble(((Constant) node).m_value);
+            final double[] values = new double[frame.m_rows];
+            Arrays.fill(values, value);
+            return values;
+        } else if (node instanceof Timestamps) {
+            return Timestamps.toDoubles(frame);
+        } else if (node instanceof ColumnValues || node instanceof ExpressionValues) {
+            return ((DoubleVector) node).evaluate(frame).clone();
+        }
+        return ((DoubleVector) node).evaluate(frame);
+    }
+
+    /**
+     * Thrown when an expression can not be compiled, in which case the
+     * query is evaluated by JEXL.
+     */
+    private static class UnsupportedExpressionException extends Exception {
+        private static final long serialVersionUID = 5373286924581213493L;
+
+        public UnsupportedExpressionException(final String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The inputs and the results of the expressions of a query.
+     */
+    private static class Frame {
+        private final long[] m_timestamps;
+        private final int m_rows;
+        private final double[][] m_values;
+
+        public Frame(final long[] timestamps, final int numExpressions) {
+            m_timestamps = timestamps;
+            m_rows = timestamps.length;
+            m_values = new double[numExpressions][];
+        }
+    }
+
+    /**
+     * A compiled (sub-)expression.
+     */
+    private static abstract class Node {
+    }
+
+    /**
+     * A value that is the same for every row, as computed by JEXL.
+     */
+    private static class Constant extends Node {
+        private final Object m_value;
+
+        public Constant(final Object value) {
+            m_value = value;
+        }
+
+        /**
+         * JEXL uses double arithmetic when either operand is a Double or a
+         * Float.
+         */
+        public boolean isFloatingPoint() {
+            return m_value instanceof Double || m_value instanceof Float;
+        }
+
+        public boolean isIntegral() {
+            return m_value instanceof Integer || m_value instanceof Long
+                    || m_value instanceof Short || m_value instanceof Byte;
+        }
+
+        /**
+         * Returns the value as converted by JEXL when the other operand is
+         * floating point, or null if the conversion is not supported.
+         */
+        public Double toDouble() {
+            if (m_value instanceof Double) {
+                return (Double) m_value;
+            } else if (m_value instanceof Number) {
+                return Double.parseDouble(String.valueOf(m_value));
+            } else if (m_value instanceof String && !"".equals(((String) m_value).trim())) {
+                try {
+                    return Double.parseDouble((String) m_value);
+                } catch (final NumberFormatException e) {
+                    return null;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The timestamps of the rows, which JEXL sees as Longs.
+     */
+    private static class Timestamps extends Node {
+        public static double[] toDoubles(final Frame frame) {
+            final double[] values = new double[frame.m_rows];
+            for (int i = 0; i < frame.m_rows; i++) {
+                values[i] = frame.m_timestamps[i];
+            }
+            return values;
+        }
+    }
+
+    /**
+     * A column of numbers.  When mixed, some rows would be integers in
+     * JEXL, which only matters when both operands of an operator are.
+     */
+    private static abstract class DoubleVector extends Node {
+        public abstract double[] evaluate(Frame frame);
+
+        public boolean isMixed() {
+            return false;
+        }
+    }
+
+    private static abstract class BooleanVector extends Node {
+        public abstract boolean[] evaluate(Frame frame);
+    }
+
+    private static class ColumnValues extends DoubleVector {
+        private final double[] m_values;
+
+        public ColumnValues(final double[] values) {
+            m_values = values;
+        }
+
+        @Override
+        public double[] evaluate(final Frame frame) {
+            return m_values;
+        }
+    }
+
+    private static class ExpressionValues extends DoubleVector {
+        private final int m_index;
+
+        public ExpressionValues(final int index) {
+            m_index = index;
+        }
+
+        @Override
+        public double[] evaluate(final Frame frame) {
+            return frame.m_values[m_index];
+        }
+    }
+
+    private static class TimestampValues extends DoubleVector {
+        private final boolean m_mixed;
+
+        public TimestampValues(final boolean mixed) {
+            m_mixed = mixed;
+        }
+
+        @Override
+        public double[] evaluate(final Frame frame) {
+            return Timestamps.toDoubles(frame);
+        }
+
+        @Override
+        public boolean isMixed() {
+            return m_mixed;
+        }
+    }
+
+    private static class ScalarValues extends DoubleVector {
+        private final double m_value;
+        private final boolean m_mixed;
+
+        public ScalarValues(final double value, final boolean mixed) {
+            m_value = value;
+            m_mixed = mixed;
+        }
+
+        @Override
+        public double[] evaluate(final Frame frame) {
+            final double[] values = new double[frame.m_rows];
+            Arrays.fill(values, m_value);
+            return values;
+        }
+
+        @Override
+        public boolean isMixed() {
+            return m_mixed;
+        }
+    }
+
+    private static class Arithmetic extends DoubleVector {
+        private final char m_operator;
+        private final DoubleVector m_left;
+        private final DoubleVector m_right;
+
+        public Arithmetic(final char operator, final DoubleVector left, final DoubleVector right) {
+            m_operator = operator;
+            m_left = left;
+            m_right = right;
+        }
+
+        @Override
+        public double[] evaluate(final Frame frame) {
+            final double[] l = m_left.evaluate(frame);
+            final double[] r = m_right.evaluate(frame);
+            final double[] values = new double[frame.m_rows];
+            switch (m_operator) {
+            case '+':
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = l[i] + r[i];
+                }
+                break;
+            case '-':
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = l[i] - r[i];
+                }
+                break;
+            case '*':
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = l[i] * r[i];
+                }
+                break;
+            case '/':
+                // JEXL evaluates a division by zero to 0 unless it is strict
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = r[i] == 0.0d ? 0.0d : l[i] / r[i];
+                }
+                break;
+            case '%':
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = r[i] == 0.0d ? 0.0d : l[i] % r[i];
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown operator " + m_operator);
+            }
+            return values;
+        }
+    }
+
+    private static class Negation extends DoubleVector {
+        private final DoubleVector m_operand;
+
+        public Negation(final DoubleVector operand) {
+            m_operand = operand;
+        }
+
+        @Override
+        public double[] evaluate(final Frame frame) {
+            final double[] v = m_operand.evaluate(frame);
+            final double[] values = new double[frame.m_rows];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = -v[i];
+            }
+            return values;
+        }
+    }
+
+    private static class UnaryFunction extends DoubleVector {
+        private final DoubleUnaryOperator m_function;
+        private final DoubleVector m_argument;
+
+        public UnaryFunction(final DoubleUnaryOperator function, final DoubleVector argument) {
+            m_function = function;
+            m_argument = argument;
+        }
+
+        @Override
+        public double[] evaluate(final Frame frame) {
+            final double[] a = m_argument.evaluate(frame);
+            final double[] values = new double[frame.m_rows];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = m_function.applyAsDouble(a[i]);
+            }
+            return values;
+        }
+    }
+
+    private static class BinaryFunction extends DoubleVector {
+        private final DoubleBinaryOperator m_function;
+        private final DoubleVector m_first;
+        private final DoubleVector m_second;
+
+        public BinaryFunction(final DoubleBinaryOperator function, final DoubleVector first, final DoubleVector second) {
+            m_function = function;
+            m_first = first;
+            m_second = second;
+        }
+
+        @Override
+        public double[] evaluate(final Frame frame) {
+            final double[] a = m_first.evaluate(frame);
+            final double[] b = m_second.evaluate(frame);
+            final double[] values = new double[frame.m_rows];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = m_function.applyAsDouble(a[i], b[i]);
+            }
+            return values;
+        }
+    }
+
+    private static class Conditional extends DoubleVector {
+        private final BooleanVector m_condition;
+        private final DoubleVector m_then;
+        private final DoubleVector m_else;
+
+        public Conditional(final BooleanVector condition, final DoubleVector then, final DoubleVector otherwise) {
+            m_condition = condition;
+            m_then = then;
+            m_else = otherwise;
+        }
+
+        @Override
+        public double[] evaluate(final Frame frame) {
+            final boolean[] c = m_condition.evaluate(frame);
+            final double[] t = m_then.evaluate(frame);
+            final double[] e = m_else.evaluate(frame);
+            final double[] values = new double[frame.m_rows];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = c[i] ? t[i] : e[i];
+            }
+            return values;
+        }
+
+        @Override
+        public boolean isMixed() {
+            return m_then.isMixed() || m_else.isMixed();
+        }
+    }
+
+    /**
+     * Compares two columns the way JEXL compares floating point numbers,
+     * which treats NaN as equal to any other value.
+     */
+    private static class Comparison extends BooleanVector {
+        private final String m_operator;
+        private final DoubleVector m_left;
+        private final DoubleVector m_right;
+
+        public Comparison(final String operator, final DoubleVector left, final DoubleVector right) {
+            m_operator = operator;
+            m_left = left;
+            m_right = right;
+        }
+
+        @Override
+        public boolean[] evaluate(final Frame frame) {
+            final double[] l = m_left.evaluate(frame);
+            final double[] r = m_right.evaluate(frame);
+            final boolean[] values = new boolean[frame.m_rows];
+            switch (m_operator) {
+            case "<":
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = l[i] < r[i];
+                }
+                break;
+            case "<=":
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = !(l[i] > r[i]);
+                }
+                break;
+            case ">":
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = l[i] > r[i];
+                }
+                break;
+            case ">=":
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = !(l[i] < r[i]);
+                }
+                break;
+            case "==":
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = !(l[i] < r[i]) && !(l[i] > r[i]);
+                }
+                break;
+            case "!=":
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = l[i] < r[i] || l[i] > r[i];
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown operator " + m_operator);
+            }
+            return values;
+        }
+    }
+
+    /**
+     * Compares the timestamps to an integer, which JEXL does as longs.
+     */
+    private static class TimestampComparison extends BooleanVector {
+        private final String m_operator;
+        private final long m_value;
+        private final boolean m_timestampsFirst;
+
+        public TimestampComparison(final String operator, final long value, final boolean timestampsFirst) {
+            m_operator = operator;
+            m_value = value;
+            m_timestampsFirst = timestampsFirst;
+        }
+
+        @Override
+        public boolean[] evaluate(final Frame frame) {
+            final boolean[] values = new boolean[frame.m_rows];
+            for (int i = 0; i < values.length; i++) {
+                final int c = m_timestampsFirst ? Long.compare(frame.m_timestamps[i], m_value) : Long.compare(m_value, frame.m_timestamps[i]);
+                switch (m_operator) {
+                case "<":
+                    values[i] = c < 0;
+                    break;
+                case "<=":
+                    values[i] = c <= 0;
+                    break;
+                case ">":
+                    values[i] = c > 0;
+                    break;
+                case ">=":
+                    values[i] = c >= 0;
+                    break;
+                case "==":
+                    values[i] = c == 0;
+                    break;
+                default:
+                    values[i] = c != 0;
+                    break;
+                }
+            }
+            return values;
+        }
+    }
+
+    private static class Logical extends BooleanVector {
+        private final boolean m_and;
+        private final BooleanVector m_left;
+        private final BooleanVector m_right;
+
+        public Logical(final boolean and, final BooleanVector left, final BooleanVector right) {
+            m_and = and;
+            m_left = left;
+            m_right = right;
+        }
+
+        @Override
+        public boolean[] evaluate(final Frame frame) {
+            final boolean[] l = m_left.evaluate(frame);
+            final boolean[] r = m_right.evaluate(frame);
+            final boolean[] values = new boolean[frame.m_rows];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = m_and ? l[i] && r[i] : l[i] || r[i];
+            }
+            return values;
+        }
+    }
+
+    private static class Not extends BooleanVector {
+        private final BooleanVector m_operand;
+
+        public Not(final BooleanVector operand) {
+            m_operand = operand;
+        }
+
+        @Override
+        public boolean[] evaluate(final Frame frame) {
+            final boolean[] v = m_operand.evaluate(frame);
+            final boolean[] values = new boolean[frame.m_rows];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = !v[i];
+            }
+            return values;
+        }
+    }
+
+    /**
+     * A recursive descent parser for the supported subset of the JEXL
+     * grammar, which compiles the expression while it is being parsed.
+     */
+    private static class Compiler {
+        private final String m_text;
+        private final JexlEngine m_jexl;
+        private final JexlContext m_constants;
+        private final Map<String, double[]> m_columns;
+        private final List<String> m_labels;
+        private final int m_index;
+        private int m_pos = 0;
+
+        public Compiler(final String text, final JexlEngine jexl, final JexlContext constants,
+                final Map<String, double[]> columns, final List<String> labels, final int index) {
+            m_text = text;
+            m_jexl = jexl;
+            m_constants = constants;
+            m_columns = columns;
+            m_labels = labels;
+            m_index = index;
+        }
+
+        public Node compile() throws UnsupportedExpressionException {
+            final Node node = ternary();
+            skipWhitespace();
+            if (m_pos < m_text.length()) {
+                throw unsupported("unexpected '" + m_text.charAt(m_pos) + "'");
+            }
+            if (node instanceof BooleanVector) {
+                throw unsupported("boolean result");
+            }
+            if (node instanceof Constant) {
+                try {
+                    Utils.toDouble(((Constant) node).m_value);
+                } catch (NullPointerException|NumberFormatException e) {
+                    throw unsupported("result is not a number");
+                }
+            }
+            return node;
+        }
+
+        private Node ternary() throws UnsupportedExpressionException {
+            final int start = position();
+            final Node condition = or();
+            if (!accept("?")) {
+                return condition;
+            }
+            if (peek(":")) {
+                throw unsupported("elvis operator");
+            }
+            final Node then = ternary();
+            expect(":");
+            final Node otherwise = ternary();
+
+            if (condition instanceof Constant && then instanceof Constant && otherwise instanceof Constant) {
+                return fold(start);
+            } else if (condition instanceof Constant) {
+                if (!(((Constant) condition).m_value instanceof Boolean)) {
+                    throw unsupported("condition is not a boolean");
+                }
+                return ((Boolean) ((Constant) condition).m_value) ? then : otherwise;
+            } else if (!(condition instanceof BooleanVector)) {
+                throw unsupported("condition is not a boolean");
+            }
+            return new Conditional((BooleanVector) condition, toBranch(then), toBranch(otherwise));
+        }
+
+        private Node or() throws UnsupportedExpressionException {
+            final int start = position();
+            Node left = and();
+            while (accept("||") || acceptWord("or")) {
+                left = logical(start, false, left, and());
+            }
+            return left;
+        }
+
+        private Node and() throws UnsupportedExpressionException {
+            final int start = position();
+            Node left = equality();
+            while (accept("&&") || acceptWord("and")) {
+                left = logical(start, true, left, equality());
+            }
+            return left;
+        }
+
+        private Node equality() throws UnsupportedExpressionException {
+            final int start = position();
+            Node left = relational();
+            while (true) {
+                final String operator;
+                if (accept("==") || acceptWord("eq")) {
+                    operator = "==";
+                } else if (accept("!=") || acceptWord("ne")) {
+                    operator = "!=";
+                } else {
+                    return left;
+                }
+                left = comparison(start, operator, left, relational());
+            }
+        }
+
+        private Node relational() throws UnsupportedExpressionException {
+            final int start = position();
+            Node left = additive();
+            while (true) {
+                final String operator;
+                if (accept("<=") || acceptWord("le")) {
+                    operator = "<=";
+                } else if (accept(">=") || acceptWord("ge")) {
+                    operator = ">=";
+                } else if (accept("<") || acceptWord("lt")) {
+                    operator = "<";
+                } else if (accept(">") || acceptWord("gt")) {
+                    operator = ">";
+                } else {
+                    return left;
+                }
+                left = comparison(start, operator, left, additive());
+            }
+        }
+
+        private Node additive() throws UnsupportedExpressionException {
+            final int start = position();
+            Node left = multiplicative();
+            while (true) {
+                final char operator;
+                if (accept("+")) {
+                    operator = '+';
+                } else if (accept("-")) {
+                    operator = '-';
+                } else {
+                    return left;
+                }
+                left = arithmetic(start, operator, left, multiplicative());
+            }
+        }
+
+        private Node multiplicative() throws UnsupportedExpressionException {
+            final int start = position();
+            Node left = unary();
+            while (true) {
+                final char operator;
+                if (accept("*")) {
+                    operator = '*';
+                } else if (accept("/") || acceptWord("div")) {
+                    operator = '/';
+                } else if (accept("%") || acceptWord("mod")) {
+                    operator = '%';
+                } else {
+                    return left;
+                }
+                left = arithmetic(start, operator, left, unary());
+            }
+        }
+
+        private Node unary() throws UnsupportedExpressionException {
+            final int start = position();
+            if (accept("-")) {
+                final Node operand = unary();
+                if (operand instanceof Constant) {
+                    return fold(start);
+                } else if (operand instanceof DoubleVector && !((DoubleVector) operand).isMixed()) {
+                    return new Negation((DoubleVector) operand);
+                }
+                throw unsupported("negation of a non floating point value");
+            } else if (accept("!") || acceptWord("not")) {
+                final Node operand = unary();
+                if (operand instanceof Constant) {
+                    return fold(start);
+                } else if (operand instanceof BooleanVector) {
+                    return new Not((BooleanVector) operand);
+                }
+                throw unsupported("logical negation of a number");
+            }
+            return primary();
+        }
+
+        private Node primary() throws UnsupportedExpressionException {
+            final int start = position();
+            if (m_pos >= m_text.length()) {
+                throw unsupported("unexpected end of expression");
+            }
+            final char c = m_text.charAt(m_pos);
+            if (c == '(') {
+                m_pos++;
+                final Node node = ternary();
+                expect(")");
+                return node instanceof Constant ? fold(start) : node;
+            } else if (Character.isDigit(c)) {
+                number();
+                return fold(start);
+            } else if (isIdentifierStart(c)) {
+                final String name = identifier();
+                if ("true".equals(name) || "false".equals(name) || "null".equals(name)) {
+                    return fold(start);
+                } else if (RESERVED_WORDS.contains(name)) {
+                    throw unsupported("'" + name + "'");
+                }
+
+                // namespace function, e.g. math:sin(x)
+                final int afterName = m_pos;
+                if (accept(":")) {
+                    skipWhitespace();
+                    if (m_pos < m_text.length() && isIdentifierStart(m_text.charAt(m_pos))) {
+                        final String function = identifier();
+                        if (accept("(")) {
+                            return function(start, name + ":" + function);
+                        }
+                    }
+                    m_pos = afterName;
+                }
+
+                final List<String> segments = new ArrayList<String>();
+                segments.add(name);
+                while (accept(".")) {
+                    skipWhitespace();
+                    if (m_pos >= m_text.length() || !isIdentifierStart(m_text.charAt(m_pos))) {
+                        throw unsupported("unsupported property access");
+                    }
+                    segments.add(identifier());
+                }
+                if (peek("(") || peek("[")) {
+                    throw unsupported("method calls and indexes");
+                }
+                return reference(start, segments);
+            }
+            throw unsupported("unexpected '" + c + "'");
+        }
+
+        private Node function(final int start, final String name) throws UnsupportedExpressionException {
+            final List<Node> arguments = new ArrayList<Node>();
+            if (!accept(")")) {
+                do {
+                    arguments.add(ternary());
+                } while (accept(","));
+                expect(")");
+            }
+
+            boolean constant = true;
+            for (final Node argument : arguments) {
+                constant &= argument instanceof Constant;
+            }
+            if (constant) {
+                return fold(start);
+            }
+
+            // JEXL picks the double variant as soon as one argument is a Double
+            final List<DoubleVector> vectors = new ArrayList<DoubleVector>(arguments.size());
+            for (final Node argument : arguments) {
+                if (argument instanceof Constant && ((Constant) argument).m_value instanceof Number
+                        && (((Constant) argument).isFloatingPoint() || ((Constant) argument).isIntegral())) {
+                    vectors.add(new ScalarValues(((Constant) argument).toDouble(), false));
+                } else if (argument instanceof DoubleVector && !((DoubleVector) argument).isMixed()) {
+                    vectors.add((DoubleVector) argument);
+                } else {
+                    throw unsupported("arguments of " + name);
+                }
+            }
+            if (vectors.size() == 1 && UNARY_FUNCTIONS.containsKey(name)) {
+                return new UnaryFunction(UNARY_FUNCTIONS.get(name), vectors.get(0));
+            } else if (vectors.size() == 2 && BINARY_FUNCTIONS.containsKey(name)) {
+                return new BinaryFunction(BINARY_FUNCTIONS.get(name), vectors.get(0), vectors.get(1));
+            }
+            throw unsupported("function " + name + " with " + vectors.size() + " arguments");
+        }
+
+        private Node reference(final int start, final List<String> segments) throws UnsupportedExpressionException {
+            if (segments.size() == 1) {
+                return resolve(start, segments.get(0));
+            } else if (segments.size() > 2) {
+                throw unsupported("nested properties");
+            }
+
+            // JEXL looks for a property of the first variable and when
+            // there is none, for a variable named after the whole reference
+            final String first = segments.get(0);
+            if (m_columns.containsKey(first) || "timestamp".equals(first) || m_labels.contains(first)) {
+                if (NUMBER_PROPERTIES.contains(segments.get(1))) {
+                    throw unsupported("property " + segments.get(1));
+                }
+            } else if (m_constants.has(first)) {
+                throw unsupported("property of a constant");
+            }
+            return resolve(start, first + "." + segments.get(1));
+        }
+
+        /**
+         * Resolves a variable in the same order the
+         * {@link JEXLExpressionEngine} overwrites them.
+         */
+        private Node resolve(final int start, final String name) throws UnsupportedExpressionException {
+            if (m_columns.containsKey(name)) {
+                return new ColumnValues(m_columns.get(name));
+            } else if ("timestamp".equals(name)) {
+                return new Timestamps();
+            }
+            final int index = m_labels.indexOf(name);
+            if (index >= 0 && index < m_index) {
+                return new ExpressionValues(index);
+            } else if (index >= 0) {
+                // this would be the value from the previous row
+                throw unsupported("reference to expression '" + name + "' before it is evaluated");
+            } else if (m_constants.has(name)) {
+                return fold(start);
+            }
+            throw unsupported("undefined variable '" + name + "'");
+        }
+
+        private Node arithmetic(final int start, final char operator, final Node left, final Node right) throws UnsupportedExpressionException {
+            if (left instanceof Constant && right instanceof Constant) {
+                return fold(start);
+            }
+            if (!isFloatingPoint(left) && !isFloatingPoint(right)) {
+                throw unsupported("integer arithmetic");
+            }
+            return new Arithmetic(operator, toOperand(left), toOperand(right));
+        }
+
+        private Node comparison(final int start, final String operator, final Node left, final Node right) throws UnsupportedExpressionException {
+            if (left instanceof Constant && right instanceof Constant) {
+                return fold(start);
+            }
+            if (left instanceof Timestamps && right instanceof Constant && ((Constant) right).isIntegral()) {
+                return new TimestampComparison(operator, ((Number) ((Constant) right).m_value).longValue(), true);
+            } else if (right instanceof Timestamps && left instanceof Constant && ((Constant) left).isIntegral()) {
+                return new TimestampComparison(operator, ((Number) ((Constant) left).m_value).longValue(), false);
+            }
+            if (!isFloatingPoint(left) && !isFloatingPoint(right)) {
+                throw unsupported("integer comparison");
+            }
+            return new Comparison(operator, toOperand(left), toOperand(right));
+        }
+
+        private Node logical(final int start, final boolean and, final Node left, final Node right) throws UnsupportedExpressionException {
+            if (left instanceof Constant && right instanceof Constant) {
+                return fold(start);
+            }
+            return new Logical(and, toCondition(left), toCondition(right));
+        }
+
+        private static boolean isFloatingPoint(final Node node) {
+            if (node instanceof Constant) {
+                return ((Constant) node).isFloatingPoint();
+            }
+            return node instanceof DoubleVector && !((DoubleVector) node).isMixed();
+        }
+
+        /**
+         * Converts an operand of an arithmetic operator or a comparison
+         * whose other operand is floating point.
+         */
+        private DoubleVector toOperand(final Node node) throws UnsupportedExpressionException {
+            if (node instanceof DoubleVector) {
+                return (DoubleVector) node;
+            } else if (node instanceof Timestamps) {
+                return new TimestampValues(false);
+            } else if (node instanceof Constant && !(((Constant) node).m_value instanceof Boolean)) {
+                final Double value = ((Constant) node).toDouble();
+                if (value != null) {
+                    return new ScalarValues(value, false);
+                }
+            }
+            throw unsupported("operand is not a number");
+        }
+
+        private DoubleVector toBranch(final Node node) throws UnsupportedExpressionException {
+            if (node instanceof DoubleVector) {
+                return (DoubleVector) node;
+            } else if (node instanceof Timestamps) {
+                return new TimestampValues(true);
+            } else if (node instanceof Constant && (((Constant) node).isFloatingPoint() || ((Constant) node).isIntegral())) {
+                return new ScalarValues(((Constant) node).toDouble(), !((Constant) node).isFloatingPoint());
+            }
+            throw unsupported("branch is not a number");
+        }
+
+        private BooleanVector toCondition(final Node node) throws UnsupportedExpressionException {
+            if (node instanceof BooleanVector) {
+                return (BooleanVector) node;
+            } else if (node instanceof Constant && ((Constant) node).m_value instanceof Boolean) {
+                final boolean value = (Boolean) ((Constant) node).m_value;
+                return new BooleanVector() {
+                    @Override
+                    public boolean[] evaluate(final Frame frame) {
+                        final boolean[] values = new boolean[frame.m_rows];
+                        Arrays.fill(values, value);
+                        return values;
+                    }
+                };
+            }
+            throw unsupported("operand is not a boolean");
+        }
+
+        /**
+         * Evaluates the text from the given position up to the current one
+         * with JEXL.
+         */
+        private Constant fold(final int start) throws UnsupportedExpressionException {
+            final String text = m_text.substring(start, m_pos);
+            try {
+                return new Constant(m_jexl.createExpression(text).evaluate(m_constants));
+            } catch (final JexlException e) {
+                throw unsupported("failed to evaluate '" + text + "'");
+            }
+        }
+
+        private void number() throws UnsupportedExpressionException {
+            digits();
+            if (m_pos + 1 < m_text.length() && m_text.charAt(m_pos) == '.' && Character.isDigit(m_text.charAt(m_pos + 1))) {
+                m_pos++;
+                digits();
+                if (m_pos < m_text.length() && (m_text.charAt(m_pos) == 'e' || m_text.charAt(m_pos) == 'E')) {
+                    m_pos++;
+                    if (m_pos < m_text.length() && (m_text.charAt(m_pos) == '+' || m_text.charAt(m_pos) == '-')) {
+                        m_pos++;
+                    }
+                    digits();
+                }
+                if (m_pos < m_text.length() && "dDfFbB".indexOf(m_text.charAt(m_pos)) >= 0) {
+                    m_pos++;
+                }
+            } else if (m_pos < m_text.length() && "lLhH".indexOf(m_text.charAt(m_pos)) >= 0) {
+                m_pos++;
+            }
+            if (m_pos < m_text.length() && isIdentifierPart(m_text.charAt(m_pos))) {
+                throw unsupported("number literal");
+            }
+        }
+
+        private void digits() throws UnsupportedExpressionException {
+            final int start = m_pos;
+            while (m_pos < m_text.length() && Character.isDigit(m_text.charAt(m_pos))) {
+                m_pos++;
+            }
+            if (m_pos == start) {
+                throw unsupported("number literal");
+            }
+        }
+
+        private String identifier() {
+            final int start = m_pos;
+            while (m_pos < m_text.length() && isIdentifierPart(m_text.charAt(m_pos))) {
+                m_pos++;
+            }
+            return m_text.substring(start, m_pos);
+        }
+
+        private static boolean isIdentifierStart(final char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$';
+        }
+
+        private static boolean isIdentifierPart(final char c) {
+            return isIdentifierStart(c) || (c >= '0' && c <= '9');
+        }
+
+        /**
+         * Returns the start of the next token.
+         */
+        private int position() {
+            skipWhitespace();
+            return m_pos;
+        }
+
+        private void skipWhitespace() {
+            while (m_pos < m_text.length() && Character.isWhitespace(m_text.charAt(m_pos))) {
+                m_pos++;
+            }
+        }
+
+        private boolean peek(final String token) {
+            skipWhitespace();
+            return m_text.startsWith(token, m_pos);
+        }
+
+        /**
+         * Consumes the operator if it is next, but not when it is only the
+         * beginning of a longer one.
+         */
+        private boolean accept(final String token) {
+            if (!peek(token)) {
+                return false;
+            }
+            final int end = m_pos + token.length();
+            if (end < m_text.length() && token.length() == 1) {
+                final char next = m_text.charAt(end);
+                // '<' of '<=', '!' of '!=', '=' of '==', '&' of '&&', ...
+                if (next == '=' && "<>!=".indexOf(token.charAt(0)) >= 0) {
+                    return false;
+                } else if (next == '~' && "=!".indexOf(token.charAt(0)) >= 0) {
+                    return false;
+                }
+            }
+            m_pos = end;
+            return true;
+        }
+
+        private boolean acceptWord(final String word) {
+            if (!peek(word)) {
+                return false;
+            }
+            final int end = m_pos + word.length();
+            if (end < m_text.length() && isIdentifierPart(m_text.charAt(end))) {
+                return false;
+            }
+            m_pos = end;
+            return true;
+        }
+
+        private void expect(final String token) throws UnsupportedExpressionException {
+            if (!accept(token)) {
+                throw unsupported("expected '" + token + "'");
+            }
+        }
+
+        private UnsupportedExpressionException unsupported(final String reason) {
+            return new UnsupportedExpressionException(reason + " in '" + m_text + "'");
+        }
+    }
+}
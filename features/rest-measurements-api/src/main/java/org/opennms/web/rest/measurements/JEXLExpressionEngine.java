@@ -34,6 +34,13 @@ public class JEXLExpressionEngine implements ExpressionEngine {
         jexl.setFunctions(functions);
     }
 
+    /**
+     * Returns the configured JEXL engine.
+     */
+    JexlEngine getJexlEngine() {
+        return jexl;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.web.rest.measurements;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.opennms.web.rest.measurements.fetch.FetchResults;
+import org.opennms.web.rest.measurements.model.Expression;
+import org.opennms.web.rest.measurements.model.QueryRequest;
+import org.opennms.web.rest.measurements.model.Source;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Evaluates a dashboard sized query, three months of five minute samples
+ * for a set of interfaces, with both the {@link JEXLExpressionEngine} and
+ * the {@link ColumnarExpressionEngine}. A shorter query checks that they
+ * agree. testEvaluationTime(), which is ignored, logs the time taken by
+ * each on the full query.
+ */
+public class ColumnarExpressionEngineBenchmarkTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ColumnarExpressionEngineBenchmarkTest.class);
+
+    private static final int ITERATIONS = 3;
+
+    private static final int INTERFACES = 25;
+
+    private static final int ROWS = 90 * 24 * 12;
+
+    private QueryRequest m_request;
+
+    private long[] m_timestamps;
+
+    private Map<String, double[]> m_columns;
+
+    private Map<String, Object> m_constants;
+
+    private void createQuery(final int rows) {
+        final Random random = new Random(42);
+
+        m_timestamps = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            m_timestamps[i] = 1420070400000L + i * 300000L;
+        }
+
+        m_columns = Maps.newHashMap();
+        m_constants = Maps.newHashMap();
+        final List<Source> sources = Lists.newArrayList();
+        final List<Expression> expressions = Lists.newArrayList();
+        final StringBuilder total = new StringBuilder();
+        for (int j = 0; j < INTERFACES; j++) {
+            final String label = "ifHCInOctets" + j;
+            final Source source = new Source();
+            source.setLabel(label);
+            sources.add(source);
+
+            final double[] values = new double[rows];
+            for (int i = 0; i < rows; i++) {
+                // with some gaps in the data
+                values[i] = random.nextInt(100) == 0 ? Double.NaN : random.nextDouble() * 12500000;
+            }
+            m_columns.put(label, values);
+            m_constants.put(label + ".ifHighSpeed", "100");
+
+            expressions.add(new Expression("bits" + j, label + " * 8", true));
+            expressions.add(new Expression("utilization" + j, "bits" + j + " / (" + label + ".ifHighSpeed * 1000000) * 100", false));
+            expressions.add(new Expression("peak" + j, "utilization" + j + " > 80 ? utilization" + j + " : 0", false));
+            total.append(j == 0 ? "" : " + ").append("bits").append(j);
+        }
+        expressions.add(new Expression("total", total.toString(), false));
+        expressions.add(new Expression("totalMbps", "math:floor(total / 1000000)", false));
+
+        m_request = new QueryRequest();
+        m_request.setSources(sources);
+        m_request.setExpressions(expressions);
+    }
+
+    private Map<String, double[]> apply(final ExpressionEngine engine) throws ExpressionException {
+        final FetchResults results = new FetchResults(m_timestamps, Maps.newHashMap(m_columns), 300000L, m_constants);
+        engine.applyExpressions(m_request, results);
+        return results.getColumns();
+    }
+
+    @Test
+    public void testColumnarEngineAgreesWithJexl() throws ExpressionException {
+        createQuery(1000);
+
+        final Map<String, double[]> jexl = apply(new JEXLExpressionEngine());
+        final Map<String, double[]> columnar = apply(new ColumnarExpressionEngine());
+        for (final Expression expression : m_request.getExpressions()) {
+            if (!expression.getTransient()) {
+                assertArrayEquals(expression.getLabel(), jexl.get(expression.getLabel()), columnar.get(expression.getLabel()), 0.0);
+            }
+        }
+    }
+
+    @Test
+    @Ignore("compares JEXL and columnar evaluation time")
+    public void testEvaluationTime() throws ExpressionException {
+        createQuery(ROWS);
+
+        final ExpressionEngine jexlEngine = new JEXLExpressionEngine();
+        final ExpressionEngine columnarEngine = new ColumnarExpressionEngine();
+
+        // warm up
+        apply(jexlEngine);
+        apply(columnarEngine);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            apply(jexlEngine);
+        }
+        final long jexl = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            apply(columnarEngine);
+        }
+        final long columnar = System.nanoTime() - start;
+
+        LOG.info("{} expressions over {} rows: jexl {} ms/query, columnar {} ms/query",
+                 m_request.getExpressions().size(), ROWS,
+                 jexl / 1000000 / ITERATIONS, columnar / 1000000 / ITERATIONS);
+    }
+}
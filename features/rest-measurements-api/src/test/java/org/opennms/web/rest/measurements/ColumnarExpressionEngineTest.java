@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.web.rest.measurements;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.opennms.web.rest.measurements.fetch.FetchResults;
+import org.opennms.web.rest.measurements.model.Expression;
+import org.opennms.web.rest.measurements.model.QueryRequest;
+import org.opennms.web.rest.measurements.model.Source;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class ColumnarExpressionEngineTest {
+
+    private final ExpressionEngine columnarExpressionEngine = new ColumnarExpressionEngine();
+
+    private final ExpressionEngine jexlExpressionEngine = new JEXLExpressionEngine();
+
+    @Test(expected=ExpressionException.class)
+    public void failsWhenExpressionHasInvalidSyntax() throws ExpressionException {
+        performExpressions(columnarExpressionEngine, new Expression("y", "/", false));
+    }
+
+    @Test(expected=ExpressionException.class)
+    public void failsWhenExpressionDoesNotReturnADouble() throws ExpressionException {
+        performExpressions(columnarExpressionEngine, new Expression("y", "!(!true)", false));
+    }
+
+    @Test
+    public void canPerformLinearCombination() throws ExpressionException {
+        double results[] = performExpressions(columnarExpressionEngine, new Expression("y", "x * 5 + 7", false)).get("y");
+        assertEquals(12, results[1], 0.0001);
+    }
+
+    @Test
+    public void canPerformSin() throws ExpressionException {
+        double results[] = performExpressions(columnarExpressionEngine, new Expression("y", "math:sin(x)", false)).get("y");
+        assertEquals(Math.sin(1.0d), results[1], 0.0001);
+    }
+
+    @Test
+    public void canReferenceTimestamp() throws ExpressionException {
+        double results[] = performExpressions(columnarExpressionEngine, new Expression("y", "timestamp / 125.0d", false)).get("y");
+        assertEquals(400.0d, results[50], 0.0001);
+    }
+
+    @Test
+    public void canReferenceConstant() throws ExpressionException {
+        double results[] = performExpressions(columnarExpressionEngine, new Expression("y", "x.speed / 0.62137", false)).get("y");
+        assertEquals(160.9347731, results[0], 0.0001);
+    }
+
+    @Test
+    public void canReferenceEarlierExpressions() throws ExpressionException {
+        final Map<String, double[]> columns = performExpressions(columnarExpressionEngine,
+                new Expression("bits", "x * 8", true),
+                new Expression("y", "bits > 80 ? bits : 0", false));
+
+        assertFalse(columns.containsKey("bits"));
+        assertEquals(0, columns.get("y")[10], 0.0);
+        assertEquals(88, columns.get("y")[11], 0.0);
+    }
+
+    @Test
+    public void doesNotShareSourceColumns() throws ExpressionException {
+        final Map<String, double[]> columns = performExpressions(columnarExpressionEngine, new Expression("y", "x", false));
+        assertNotSame(columns.get("x"), columns.get("y"));
+        assertArrayEquals(columns.get("x"), columns.get("y"), 0.0);
+    }
+
+    @Test
+    public void agreesWithJexl() throws ExpressionException {
+        final String[] expressions = new String[] {
+                "x * 8",
+                "x / z",
+                "(x + z) % 3",
+                "-x + 2.5",
+                "x / 0",
+                "x - 7 * 3 / 2",
+                "x > z ? x : z",
+                "x >= 10 && z < 50 ? 1 : 0",
+                "x == z || !(x != 4) ? x : -1",
+                "x lt 20 and not (z ge 40) ? x : 0.5",
+                "math:max(x, z) - math:min(x, 0)",
+                "strictmath:pow(x, 2) + math:abs(z)",
+                "z == 0 ? __inf : x / z",
+                "timestamp / 1000.0d + x",
+                "timestamp > 50000 ? x : z",
+                "x.speed * x / 8",
+                "x * 1.1 + 2.2f",
+                "x div 2 + z mod 7"
+        };
+        for (final String expression : expressions) {
+            final double[] columnar = performExpressions(columnarExpressionEngine, new Expression("y", expression, false)).get("y");
+            final double[] jexl = performExpressions(jexlExpressionEngine, new Expression("y", expression, false)).get("y");
+            assertArrayEquals(expression, jexl, columnar, 0.0);
+        }
+    }
+
+    @Test
+    public void fallsBackToJexl() throws ExpressionException {
+        final String[] expressions = new String[] {
+                // integer arithmetic
+                "timestamp / 1000",
+                // reference to an expression that is evaluated later
+                "y2 + 1",
+                // method call
+                "x.toString().length()"
+        };
+        for (final String expression : expressions) {
+            final Expression second = new Expression("y2", "x + 1", false);
+            final double[] columnar = performExpressions(columnarExpressionEngine, new Expression("y", expression, false), second).get("y");
+            final double[] jexl = performExpressions(jexlExpressionEngine, new Expression("y", expression, false), second).get("y");
+            assertArrayEquals(expression, jexl, columnar, 0.0);
+        }
+    }
+
+    private static Map<String, double[]> performExpressions(final ExpressionEngine engine, final Expression... expressions) throws ExpressionException {
+        // Build a simple request with the given expressions
+        QueryRequest request = new QueryRequest();
+
+        Source x = new Source();
+        x.setLabel("x");
+        Source z = new Source();
+        z.setLabel("z");
+        request.setSources(Lists.newArrayList(x, z));
+
+        final List<Expression> expressionList = Lists.newArrayList(expressions);
+        request.setExpressions(expressionList);
+
+        // Build the fetch results with known values, including unknowns and zeros
+        final int N = 100;
+        long timestamps[] = new long[N];
+        double xValues[] = new double[N];
+        double zValues[] = new double[N];
+        for (int i = 0; i < N; i++) {
+            timestamps[i] = i * 1000;
+            xValues[i] = Double.valueOf(i);
+            zValues[i] = i % 10 == 0 ? Double.NaN : (i % 7) * 10;
+        }
+        Map<String, double[]> values = Maps.newHashMap();
+        values.put("x", xValues);
+        values.put("z", zValues);
+
+        Map<String, Object> constants = Maps.newHashMap();
+        constants.put("x.speed", "100");
+
+        FetchResults results = new FetchResults(timestamps, values, 1, constants);
+
+        // Use the engine to evaluate the expressions
+        engine.applyExpressions(request, results);
+
+        return results.getColumns();
+    }
+}
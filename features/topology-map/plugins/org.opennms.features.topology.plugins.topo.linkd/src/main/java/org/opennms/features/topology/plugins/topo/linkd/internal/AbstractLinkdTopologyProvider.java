@@ -434,6 +434,12 @@ public abstract class AbstractLinkdTopologyProvider extends AbstractTopologyProv
     @Override
     public abstract void load(String filename) throws MalformedURLException, JAXBException;
 
+    /**
+     * Used as a destroy-method in the OSGi blueprint
+     */
+    public void onDestroy() {
+    }
+
     @Override
     public VertexHopGraphProvider.VertexHopCriteria getDefaultCriteria() {
         final OnmsNode node = m_topologyDao.getDefaultFocusPoint();
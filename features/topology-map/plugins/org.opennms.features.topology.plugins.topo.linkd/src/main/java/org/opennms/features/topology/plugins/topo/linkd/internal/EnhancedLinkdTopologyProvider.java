@@ -28,6 +28,7 @@
 
 package org.opennms.features.topology.plugins.topo.linkd.internal;
 
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
@@ -41,9 +42,14 @@ import org.opennms.features.topology.api.support.VertexHopGraphProvider;
 import org.opennms.features.topology.api.support.VertexHopGraphProvider.VertexHopCriteria;
 import org.opennms.features.topology.api.topo.*;
 import org.opennms.netmgt.dao.api.*;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventListener;
+import org.opennms.netmgt.events.api.EventSubscriptionService;
 import org.opennms.netmgt.model.*;
 import org.opennms.netmgt.model.topology.BridgeMacTopologyLink;
 import org.opennms.netmgt.model.topology.CdpTopologyLink;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Parm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.transaction.annotation.Transactional;
@@ -51,8 +57,10 @@ import org.springframework.transaction.annotation.Transactional;
 import javax.xml.bind.JAXBException;
 
 import java.io.File;
+import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider {
 
@@ -381,6 +389,77 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
     public final static String BRIDGE_EDGE_NAMESPACE = TOPOLOGY_NAMESPACE_LINKD + "::BRIDGE";
     public final static String CDP_EDGE_NAMESPACE = TOPOLOGY_NAMESPACE_LINKD + "::CDP";
 
+    /**
+     * The edge namespaces in the order in which their links are loaded.
+     */
+    private static final String[] EDGE_NAMESPACES = new String[] {
+        LLDP_EDGE_NAMESPACE, OSPF_EDGE_NAMESPACE, ISIS_EDGE_NAMESPACE, BRIDGE_EDGE_NAMESPACE, CDP_EDGE_NAMESPACE
+    };
+
+    static final String NODE_LINK_DISCOVERY_COMPLETED_EVENT_UEI = "uei.opennms.org/internal/linkd/nodeLinkDiscoveryCompleted";
+
+    /**
+     * Maps the names of the enlinkd discovery runnables to the edge
+     * namespace whose links they update.
+     */
+    private static final Map<String, String> RUNNABLE_EDGE_NAMESPACES = new HashMap<String, String>();
+    static {
+        RUNNABLE_EDGE_NAMESPACES.put("LldpLinkDiscovery", LLDP_EDGE_NAMESPACE);
+        RUNNABLE_EDGE_NAMESPACES.put("OspfLinkDiscovery", OSPF_EDGE_NAMESPACE);
+        RUNNABLE_EDGE_NAMESPACES.put("IsisLinkDiscovery", ISIS_EDGE_NAMESPACE);
+        RUNNABLE_EDGE_NAMESPACES.put("BridgeLinkDiscovery", BRIDGE_EDGE_NAMESPACE);
+        // the bridge links are resolved to nodes through the ip to media table
+        RUNNABLE_EDGE_NAMESPACES.put("IpNetToMediaLinkDiscovery", BRIDGE_EDGE_NAMESPACE);
+        RUNNABLE_EDGE_NAMESPACES.put("CdpLinksDiscovery", CDP_EDGE_NAMESPACE);
+    }
+
+    /**
+     * The vertices and edges that were created for one edge namespace,
+     * kept so that they can be added to the container again without
+     * querying the links as long as enlinkd has not updated them. The
+     * vertices include the ends of every edge, also those that were first
+     * added by another namespace, since that one may be reloaded without
+     * them.
+     */
+    private static class LinkGraph {
+        private final List<Vertex> m_vertices = new ArrayList<Vertex>();
+        private final List<Edge> m_edges = new ArrayList<Edge>();
+    }
+
+    private final EventListener m_linkEventListener = new EventListener() {
+        @Override
+        public String getName() {
+            return "EnhancedLinkdTopologyProvider";
+        }
+
+        @Override
+        public void onEvent(Event e) {
+            if (NODE_LINK_DISCOVERY_COMPLETED_EVENT_UEI.equals(e.getUei())) {
+                final String namespace = RUNNABLE_EDGE_NAMESPACES.get(getRunnable(e));
+                if (namespace != null) {
+                    m_dirtyNamespaces.add(namespace);
+                    return;
+                }
+            }
+            // nodes were added, changed or removed, or an unknown discovery ran
+            m_dirtyNamespaces.addAll(Arrays.asList(EDGE_NAMESPACES));
+        }
+    };
+
+    private EventSubscriptionService m_eventSubscriptionService;
+
+    /** the edge namespaces whose links enlinkd updated since they were last loaded */
+    private final Set<String> m_dirtyNamespaces = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final Map<String, LinkGraph> m_linkGraphs = new HashMap<String, LinkGraph>();
+
+    /** node vertices and snmp interfaces looked up while loading the links */
+    private final Map<Integer, AbstractVertex> m_nodeVertices = new HashMap<Integer, AbstractVertex>();
+    private final Map<List<Integer>, OnmsSnmpInterface> m_snmpInterfaces = new HashMap<List<Integer>, OnmsSnmpInterface>();
+
+    private volatile long m_loadTime = -1;
+    private volatile Map<String, Integer> m_edgeCounts = Collections.emptyMap();
+
     public EnhancedLinkdTopologyProvider() { }
 
     /**
@@ -389,10 +468,24 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
      * @throws MalformedURLException
      */
     public void onInit() throws MalformedURLException, JAXBException {
+        if (m_eventSubscriptionService != null) {
+            m_eventSubscriptionService.addEventListener(m_linkEventListener, Arrays.asList(
+                    NODE_LINK_DISCOVERY_COMPLETED_EVENT_UEI,
+                    EventConstants.NODE_ADDED_EVENT_UEI,
+                    EventConstants.NODE_DELETED_EVENT_UEI,
+                    EventConstants.NODE_LABEL_CHANGED_EVENT_UEI));
+        }
         LOG.debug("init: loading topology.");
         load(null);
     }
 
+    @Override
+    public void onDestroy() {
+        if (m_eventSubscriptionService != null) {
+            m_eventSubscriptionService.removeEventListener(m_linkEventListener);
+        }
+    }
+
     @Override
     @Transactional
     public void load(String filename) throws MalformedURLException, JAXBException {
@@ -408,31 +501,27 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
             LOG.error("Exception reset Container: "+e.getMessage(),e);
         }
 
-        try{
-            getLldpLinks();
-        } catch (Exception e){
-            LOG.error("Exception getting Lldp link: "+e.getMessage(),e);
-        }
-        try{
-            getOspfLinks();
-        } catch (Exception e){
-            LOG.error("Exception getting Ospf link: "+e.getMessage(),e);
-        }
-        try{
-            getIsIsLinks();
-        } catch (Exception e){
-            LOG.error("Exception getting IsIs link: "+e.getMessage(),e);
-        }
-        try{
-            getBridgeLinks();
-        } catch (Exception e){
-            LOG.error("Exception getting Bridge link: "+e.getMessage(),e);
-        }
-        try{
-            getCdpLinks();
-        } catch (Exception e){
-            LOG.error("Exception getting Cdp link: "+e.getMessage(),e);
+        final long start = System.currentTimeMillis();
+        final Map<String, Integer> edgeCounts = new LinkedHashMap<String, Integer>();
+        final List<String> reloaded = new ArrayList<String>();
+        m_nodeVertices.clear();
+        m_snmpInterfaces.clear();
+        for (String namespace : EDGE_NAMESPACES) {
+            try {
+                if (loadLinks(namespace)) {
+                    reloaded.add(namespace);
+                }
+            } catch (Exception e) {
+                LOG.error("Exception getting " + namespace + " link: " + e.getMessage(), e);
+            }
+            final LinkGraph graph = m_linkGraphs.get(namespace);
+            edgeCounts.put(namespace, graph == null ? 0 : graph.m_edges.size());
         }
+        m_nodeVertices.clear();
+        m_snmpInterfaces.clear();
+        m_loadTime = System.currentTimeMillis() - start;
+        m_edgeCounts = Collections.unmodifiableMap(edgeCounts);
+        LOG.info("loadtopology: loaded links in {} ms, reloaded {}, edges {}", m_loadTime, reloaded, edgeCounts);
 
         LOG.debug("loadtopology: adding nodes without links: " + isAddNodeWithoutLink());
         if (isAddNodeWithoutLink()) {
@@ -495,26 +584,99 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
 
     }
 
+    /**
+     * Adds the vertices and edges of one edge namespace to the container.
+     * The links are only queried again when they are not cached yet or
+     * enlinkd has updated them since, otherwise the cached vertices and
+     * edges are added again.
+     *
+     * @return true if the links were queried
+     */
+    private boolean loadLinks(String namespace) {
+        final boolean dirty = m_dirtyNamespaces.remove(namespace);
+        LinkGraph graph = m_linkGraphs.get(namespace);
+        if (graph != null && !dirty && m_eventSubscriptionService != null) {
+            for (Vertex vertex : graph.m_vertices) {
+                if (getVertex(vertex) == null) {
+                    addVertices(vertex);
+                }
+            }
+            addEdges(graph.m_edges.toArray(new Edge[graph.m_edges.size()]));
+            return false;
+        }
+
+        m_linkGraphs.remove(namespace);
+        final Set<String> vertexIds = new HashSet<String>();
+        for (Vertex vertex : getVertices()) {
+            vertexIds.add(vertex.getId());
+        }
+
+        if (LLDP_EDGE_NAMESPACE.equals(namespace)) {
+            getLldpLinks();
+        } else if (OSPF_EDGE_NAMESPACE.equals(namespace)) {
+            getOspfLinks();
+        } else if (ISIS_EDGE_NAMESPACE.equals(namespace)) {
+            getIsIsLinks();
+        } else if (BRIDGE_EDGE_NAMESPACE.equals(namespace)) {
+            getBridgeLinks();
+        } else if (CDP_EDGE_NAMESPACE.equals(namespace)) {
+            getCdpLinks();
+        }
+
+        graph = new LinkGraph();
+        final Set<String> recorded = new HashSet<String>();
+        for (Vertex vertex : getVertices()) {
+            if (!vertexIds.contains(vertex.getId())) {
+                graph.m_vertices.add(vertex);
+                recorded.add(vertex.getId());
+            }
+        }
+        for (Edge edge : getEdges()) {
+            if (namespace.equals(edge.getNamespace())) {
+                graph.m_edges.add(edge);
+                for (VertexRef end : Arrays.asList(edge.getSource().getVertex(), edge.getTarget().getVertex())) {
+                    final Vertex vertex = getVertex(end);
+                    if (vertex != null && recorded.add(vertex.getId())) {
+                        graph.m_vertices.add(vertex);
+                    }
+                }
+            }
+        }
+        m_linkGraphs.put(namespace, graph);
+        return true;
+    }
+
+    private static String getRunnable(Event e) {
+        for (Parm parm : e.getParmCollection()) {
+            if ("runnable".equals(parm.getParmName()) && parm.getValue() != null) {
+                return parm.getValue().getContent();
+            }
+        }
+        return null;
+    }
+
     private void getOspfLinks() {
         List<OspfLink> allLinks =  getOspfLinkDao().findAll();
+        // index the links by their own and their neighbor's address
+        Multimap<List<InetAddress>, OspfLink> linksByAddresses = ArrayListMultimap.create();
+        for (OspfLink link : allLinks) {
+            linksByAddresses.put(Arrays.asList(link.getOspfIpAddr(), link.getOspfRemIpAddr()), link);
+        }
         Set<OspfLinkDetail> combinedLinkDetails = new HashSet<OspfLinkDetail>();
         for(OspfLink sourceLink : allLinks) {
 
-            for (OspfLink targetLink : allLinks) {
-                boolean ipAddrCheck = sourceLink.getOspfRemIpAddr().equals(targetLink.getOspfIpAddr()) && targetLink.getOspfRemIpAddr().equals(sourceLink.getOspfIpAddr());
-                if(ipAddrCheck) {
-//                    String id = "ospf::" + Math.min(sourceLink.getId(), targetLink.getId()) + "||" + Math.max(sourceLink.getId(), targetLink.getId());
-                    AbstractVertex source = new AbstractVertex(AbstractLinkdTopologyProvider.TOPOLOGY_NAMESPACE_LINKD, sourceLink.getNode().getNodeId(), sourceLink.getNode().getLabel());
-                    source.setIpAddress(sourceLink.getOspfIpAddr().getHostAddress());
+            for (OspfLink targetLink : linksByAddresses.get(Arrays.asList(sourceLink.getOspfRemIpAddr(), sourceLink.getOspfIpAddr()))) {
+//                String id = "ospf::" + Math.min(sourceLink.getId(), targetLink.getId()) + "||" + Math.max(sourceLink.getId(), targetLink.getId());
+                AbstractVertex source = new AbstractVertex(AbstractLinkdTopologyProvider.TOPOLOGY_NAMESPACE_LINKD, sourceLink.getNode().getNodeId(), sourceLink.getNode().getLabel());
+                source.setIpAddress(sourceLink.getOspfIpAddr().getHostAddress());
 
-                    AbstractVertex target = new AbstractVertex(AbstractLinkdTopologyProvider.TOPOLOGY_NAMESPACE_LINKD, targetLink.getNode().getNodeId(), targetLink.getNode().getLabel());
-                    target.setIpAddress(targetLink.getOspfIpAddr().getHostAddress());
+                AbstractVertex target = new AbstractVertex(AbstractLinkdTopologyProvider.TOPOLOGY_NAMESPACE_LINKD, targetLink.getNode().getNodeId(), targetLink.getNode().getLabel());
+                target.setIpAddress(targetLink.getOspfIpAddr().getHostAddress());
 
-                    OspfLinkDetail linkDetail = new OspfLinkDetail(
-                            Math.min(sourceLink.getId(), targetLink.getId()) + "|" + Math.max(sourceLink.getId(), targetLink.getId()),
-                            source, sourceLink, target, targetLink);
-                    combinedLinkDetails.add(linkDetail);
-                }
+                OspfLinkDetail linkDetail = new OspfLinkDetail(
+                        Math.min(sourceLink.getId(), targetLink.getId()) + "|" + Math.max(sourceLink.getId(), targetLink.getId()),
+                        source, sourceLink, target, targetLink);
+                combinedLinkDetails.add(linkDetail);
             }
         }
 
@@ -526,17 +688,26 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
 
     private void getLldpLinks() {
         List<LldpLink> allLinks = m_lldpLinkDao.findAll();
+        // index the links by the local end, in the order they were returned
+        Multimap<List<Object>, LldpLink> linksByLocalPort = ArrayListMultimap.create();
+        for (LldpLink link : allLinks) {
+            List<Object> localPort = getLocalPort(link);
+            if (localPort != null) {
+                linksByLocalPort.put(localPort, link);
+            }
+        }
+        Map<String, List<OnmsNode>> nodesBySysName = new HashMap<String, List<OnmsNode>>();
         Set<LldpLinkDetail> combinedLinkDetails = new HashSet<LldpLinkDetail>();
         Set<Integer> parsed = new HashSet<Integer>();
         for (LldpLink sourceLink : allLinks) {
             LOG.debug("loadtopology: parsing lldp link with id '{}' link '{}' ", sourceLink.getId(), sourceLink);
             if (parsed.contains(sourceLink.getId())) {
-                LOG.debug("loadtopology: lldp link with id '{]' already parsed, skipping", sourceLink.getId());
+                LOG.debug("loadtopology: lldp link with id '{}' already parsed, skipping", sourceLink.getId());
                 continue;
             }
             parsed.add(sourceLink.getId());
             OnmsNode sourceNode = sourceLink.getNode();
-            LldpElement sourceElement = sourceNode.getLldpElement();
+            List<Object> sourcePort = getLocalPort(sourceLink);
             Vertex source = getVertex(getVertexNamespace(), sourceNode.getNodeId());
             if (source == null) {
                 source = getVertex(sourceNode);
@@ -544,21 +715,14 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
             }
 
             LldpLink targetLink = null;
-            for (LldpLink link : allLinks) {
+            //Compare the remote data to the targetNode element data
+            for (LldpLink link : sourcePort == null ? Collections.<LldpLink>emptyList() : linksByLocalPort.get(getRemotePort(sourceLink))) {
                 LOG.debug("loadtopology: parsing lldp link with id '{}' link '{}' ", link.getId(), link);
                 if (parsed.contains(link.getId())) {
-                    LOG.debug("loadtopology: lldp link with id '{]' already parsed, skipping", link.getId());
+                    LOG.debug("loadtopology: lldp link with id '{}' already parsed, skipping", link.getId());
                     continue;
                 }
-                LldpElement element = link.getNode().getLldpElement();
-                //Compare the remote data to the targetNode element data
-                if (!sourceLink.getLldpRemChassisId().equals(element.getLldpChassisId()) || !link.getLldpRemChassisId().equals(sourceElement.getLldpChassisId())) 
-                    continue;
-                boolean bool1 = sourceLink.getLldpRemPortId().equals(link.getLldpPortId()) && link.getLldpRemPortId().equals(sourceLink.getLldpPortId());
-                boolean bool2 = sourceLink.getLldpRemPortDescr().equals(link.getLldpPortDescr()) && link.getLldpRemPortDescr().equals(sourceLink.getLldpPortDescr());
-                boolean bool3 = sourceLink.getLldpRemPortIdSubType() == link.getLldpPortIdSubType() && link.getLldpRemPortIdSubType() == sourceLink.getLldpPortIdSubType();
-
-                if (bool1 && bool2 && bool3) {
+                if (sourcePort.equals(getRemotePort(link))) {
                     targetLink=link;
                     parsed.add(targetLink.getId());
                     LOG.debug("loadtopology: found lldp mutual link: '{}' and '{}' ", sourceLink,targetLink);
@@ -567,8 +731,12 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
             }
             
             if (targetLink == null) {
-                final org.opennms.core.criteria.Criteria criteria = new org.opennms.core.criteria.Criteria(OnmsNode.class).addRestriction(new EqRestriction("sysName", sourceLink.getLldpRemSysname()));
-                List<OnmsNode> nodes = m_nodeDao.findMatching(criteria);
+                List<OnmsNode> nodes = nodesBySysName.get(sourceLink.getLldpRemSysname());
+                if (nodes == null) {
+                    final org.opennms.core.criteria.Criteria criteria = new org.opennms.core.criteria.Criteria(OnmsNode.class).addRestriction(new EqRestriction("sysName", sourceLink.getLldpRemSysname()));
+                    nodes = m_nodeDao.findMatching(criteria);
+                    nodesBySysName.put(sourceLink.getLldpRemSysname(), nodes);
+                }
                 if (nodes.size() == 1) {
                     targetLink = reverseLldpLink(nodes.get(0), sourceLink.getNode().getLldpElement(), sourceLink); 
                     LOG.debug("loadtopology: found lldp link using lldp rem sysname: '{}' and '{}'", sourceLink, targetLink);
@@ -597,6 +765,26 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
         }
     }
 
+    /**
+     * Returns the chassis id, port id, port description and port id subtype
+     * of the local end of a link, or null if the node has no lldp element.
+     */
+    private static List<Object> getLocalPort(LldpLink link) {
+        LldpElement element = link.getNode().getLldpElement();
+        if (element == null) {
+            return null;
+        }
+        return Arrays.<Object>asList(element.getLldpChassisId(), link.getLldpPortId(), link.getLldpPortDescr(), link.getLldpPortIdSubType());
+    }
+
+    /**
+     * Returns the chassis id, port id, port description and port id subtype
+     * of the remote end of a link, as reported by its neighbor.
+     */
+    private static List<Object> getRemotePort(LldpLink link) {
+        return Arrays.<Object>asList(link.getLldpRemChassisId(), link.getLldpRemPortId(), link.getLldpRemPortDescr(), link.getLldpRemPortIdSubType());
+    }
+
     private void getCdpLinks() {
         List<CdpTopologyLink> cdpLinks = m_cdpLinkDao.findLinksForTopology();
 
@@ -604,10 +792,10 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
             LOG.debug("loadtopology: adding cdp link: '{}'", link );
             String id = Math.min(link.getSourceId(), link.getTargetId()) + "|" + Math.max(link.getSourceId(), link.getTargetId());
             CdpLinkDetail linkDetail = new CdpLinkDetail(id,
-                    getVertex(m_nodeDao.get(link.getSrcNodeId())),
+                    getNodeVertex(link.getSrcNodeId()),
                     link.getSrcIfIndex(),
                     link.getSrcIfName(),
-                    getVertex(m_nodeDao.get(link.getTargetNodeId())),
+                    getNodeVertex(link.getTargetNodeId()),
                     link.getTargetIfName());
 
             AbstractEdge edge = connectVertices(linkDetail.getId(), linkDetail.getSource(), linkDetail.getTarget(), CDP_EDGE_NAMESPACE);
@@ -629,10 +817,10 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
             Integer link2IfIndex = (Integer) linkObj[6];
             IsIsLinkDetail linkDetail = new IsIsLinkDetail(
                     Math.min(link1Id, link2Id) + "|" + Math.max(link1Id, link2Id),
-                    getVertex(m_nodeDao.get(link1Nodeid)),
+                    getNodeVertex(link1Nodeid),
                     link1Id,
                     link1IfIndex,
-                    getVertex(m_nodeDao.get(link2Nodeid)),
+                    getNodeVertex(link2Nodeid),
                     link2Id,
                     link2IfIndex
             );
@@ -660,7 +848,7 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
                 BridgeMacTopologyLink topoLink = links.iterator().next();
                 String id = Math.min(topoLink.getNodeId(), topoLink.getTargetNodeId()) + "|" + Math.max(topoLink.getNodeId(), topoLink.getTargetNodeId());
                 BridgeLinkDetail detail = new BridgeLinkDetail(id, EnhancedLinkdTopologyProvider.TOPOLOGY_NAMESPACE_LINKD,
-                        getVertex(m_nodeDao.get(topoLink.getNodeId())), topoLink.getId(), getVertex(m_nodeDao.get(topoLink.getTargetNodeId())), topoLink.getId());
+                        getNodeVertex(topoLink.getNodeId()), topoLink.getId(), getNodeVertex(topoLink.getTargetNodeId()), topoLink.getId());
 
                 AbstractEdge edge = connectVertices(detail.getId(), detail.getSource(), detail.getTarget(), BRIDGE_EDGE_NAMESPACE);
                 //TODO: fix tooltip for bridge topology
@@ -672,7 +860,7 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
         for (BridgeBridgeLink link: m_bridgeBridgeLinkDao.findAll()) {
             String id = Math.min(link.getNode().getId(), link.getDesignatedNode().getId()) + "|" + Math.max(link.getNode().getId(), link.getDesignatedNode().getId());
             BridgeLinkDetail detail = new BridgeLinkDetail(id, EnhancedLinkdTopologyProvider.TOPOLOGY_NAMESPACE_LINKD,
-                        getVertex(m_nodeDao.get(link.getNode().getId())), link.getId(), getVertex(m_nodeDao.get(link.getDesignatedNode().getId())), link.getId());
+                        getNodeVertex(link.getNode().getId()), link.getId(), getNodeVertex(link.getDesignatedNode().getId()), link.getId());
            AbstractEdge edge = connectVertices(detail.getId(), detail.getSource(), detail.getTarget(), BRIDGE_EDGE_NAMESPACE);
            edge.setTooltipText(getEdgeTooltipText(detail));
         }
@@ -685,7 +873,7 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
         int parentNodeId = Integer.parseInt(keyParts[0]);
         String bridgePort = keyParts[1];
 
-        AbstractVertex parentVertex = getVertex(m_nodeDao.get(parentNodeId));
+        AbstractVertex parentVertex = getNodeVertex(parentNodeId);
 
         AbstractVertex cloudVertex = addVertex(bridgeLinkKey, 0, 0);
         cloudVertex.setLabel("");
@@ -702,7 +890,7 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
                 }
 
                 String edgeId = Math.min(topoLink.getNodeId(), topoLink.getTargetNodeId()) + "|" + Math.max(topoLink.getNodeId(), topoLink.getTargetNodeId());
-                AbstractVertex target = getVertex(m_nodeDao.get(topoLink.getTargetNodeId()));
+                AbstractVertex target = getNodeVertex(topoLink.getTargetNodeId());
                 AbstractEdge edge = connectVertices(edgeId, cloudVertex, target, BRIDGE_EDGE_NAMESPACE);
 
 
@@ -723,6 +911,19 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
 
     }
 
+    /**
+     * Returns the vertex of a node, shared by all links of the node that
+     * are loaded together.
+     */
+    private AbstractVertex getNodeVertex(Integer nodeId) {
+        AbstractVertex vertex = m_nodeVertices.get(nodeId);
+        if (vertex == null) {
+            vertex = getVertex(m_nodeDao.get(nodeId));
+            m_nodeVertices.put(nodeId, vertex);
+        }
+        return vertex;
+    }
+
     @Override
     public void refresh() {
         try {
@@ -811,12 +1012,48 @@ public class EnhancedLinkdTopologyProvider extends AbstractLinkdTopologyProvider
     }
 
     private OnmsSnmpInterface getByNodeIdAndIfIndex(Integer ifIndex, Vertex source) {
-        if(source.getId() != null && StringUtils.isNumeric(source.getId()) && ifIndex != null)
-            return getSnmpInterfaceDao().findByNodeIdAndIfIndex(Integer.parseInt(source.getId()), ifIndex);
+        if(source.getId() != null && StringUtils.isNumeric(source.getId()) && ifIndex != null) {
+            final List<Integer> key = Arrays.asList(Integer.valueOf(source.getId()), ifIndex);
+            if (!m_snmpInterfaces.containsKey(key)) {
+                m_snmpInterfaces.put(key, getSnmpInterfaceDao().findByNodeIdAndIfIndex(key.get(0), ifIndex));
+            }
+            return m_snmpInterfaces.get(key);
+        }
 
         return null;
     }
 
+    public EventSubscriptionService getEventSubscriptionService() {
+        return m_eventSubscriptionService;
+    }
+
+    /**
+     * When set, the links of each protocol are only queried again after
+     * enlinkd reports that it has discovered the links of a node with
+     * that protocol.
+     */
+    public void setEventSubscriptionService(EventSubscriptionService eventSubscriptionService) {
+        m_eventSubscriptionService = eventSubscriptionService;
+    }
+
+    /**
+     * <p>getLoadTime</p>
+     *
+     * @return the time it took to load the links the last time, in milliseconds, or -1 if they have not been loaded yet
+     */
+    public long getLoadTime() {
+        return m_loadTime;
+    }
+
+    /**
+     * <p>getEdgeCounts</p>
+     *
+     * @return the number of edges by edge namespace as of the last load
+     */
+    public Map<String, Integer> getEdgeCounts() {
+        return m_edgeCounts;
+    }
+
     public void setLldpLinkDao(LldpLinkDao lldpLinkDao) {
         m_lldpLinkDao = lldpLinkDao;
     }
@@ -30,6 +30,9 @@ package org.opennms.features.topology.plugins.topo.linkd.internal;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -37,11 +40,14 @@ import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.bind.JAXBException;
 
+import org.easymock.Capture;
 import org.easymock.EasyMock;
 import org.junit.After;
 import org.junit.Assert;
@@ -67,11 +73,14 @@ import org.opennms.features.topology.api.topo.WrappedVertex;
 import org.opennms.netmgt.dao.api.DataLinkInterfaceDao;
 import org.opennms.netmgt.dao.api.LldpLinkDao;
 import org.opennms.netmgt.dao.api.OspfLinkDao;
+import org.opennms.netmgt.events.api.EventListener;
+import org.opennms.netmgt.events.api.EventSubscriptionService;
 import org.opennms.netmgt.model.DataLinkInterface;
 import org.opennms.netmgt.model.FilterManager;
 import org.opennms.netmgt.model.LldpLink;
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.OspfLink;
+import org.opennms.netmgt.model.events.EventBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
@@ -395,6 +404,90 @@ public class EnhancedLinkdTopologyProviderTest {
         assertEquals(1, countOSPF);
     }
 
+    @Test
+    public void testLoadOnlyUpdatedLinks() throws Exception {
+        EventSubscriptionService eventSubscriptionService = EasyMock.createMock(EventSubscriptionService.class);
+        Capture<EventListener> listener = new Capture<EventListener>();
+        eventSubscriptionService.addEventListener(EasyMock.capture(listener), EasyMock.<Collection<String>>anyObject());
+        EasyMock.replay(eventSubscriptionService);
+
+        m_topologyProvider.setEventSubscriptionService(eventSubscriptionService);
+        m_topologyProvider.onInit();
+        EasyMock.verify(eventSubscriptionService);
+        assertEquals(Integer.valueOf(8), m_topologyProvider.getEdgeCounts().get(EnhancedLinkdTopologyProvider.LLDP_EDGE_NAMESPACE));
+        assertEquals(Integer.valueOf(1), m_topologyProvider.getEdgeCounts().get(EnhancedLinkdTopologyProvider.OSPF_EDGE_NAMESPACE));
+        assertTrue(m_topologyProvider.getLoadTime() >= 0);
+
+        Map<String, Edge> edges = getEdgesById();
+        assertEquals(9, edges.size());
+
+        // nothing changed, the same edges are added again
+        m_topologyProvider.refresh();
+        for (Edge edge : m_topologyProvider.getEdges()) {
+            assertSame(edges.get(edge.getNamespace() + ":" + edge.getId()), edge);
+        }
+        assertEquals(9, m_topologyProvider.getEdges().size());
+
+        // only the lldp links are loaded again
+        listener.getValue().onEvent(new EventBuilder(EnhancedLinkdTopologyProvider.NODE_LINK_DISCOVERY_COMPLETED_EVENT_UEI, "test")
+                                    .setNodeid(1).addParam("runnable", "LldpLinkDiscovery").getEvent());
+        m_topologyProvider.refresh();
+        for (Edge edge : m_topologyProvider.getEdges()) {
+            Edge previous = edges.get(edge.getNamespace() + ":" + edge.getId());
+            assertEquals(edge, previous);
+            if (edge.getNamespace().equals(EnhancedLinkdTopologyProvider.LLDP_EDGE_NAMESPACE)) {
+                assertNotSame(previous, edge);
+            } else {
+                assertSame(previous, edge);
+            }
+        }
+        assertEquals(9, m_topologyProvider.getEdges().size());
+    }
+
+    @Test
+    public void testReloadKeepsVerticesOfCachedLinks() throws Exception {
+        EventSubscriptionService eventSubscriptionService = EasyMock.createMock(EventSubscriptionService.class);
+        Capture<EventListener> listener = new Capture<EventListener>();
+        eventSubscriptionService.addEventListener(EasyMock.capture(listener), EasyMock.<Collection<String>>anyObject());
+        EasyMock.replay(eventSubscriptionService);
+
+        m_topologyProvider.setEventSubscriptionService(eventSubscriptionService);
+        m_topologyProvider.onInit();
+        assertEquals(Integer.valueOf(8), m_topologyProvider.getEdgeCounts().get(EnhancedLinkdTopologyProvider.LLDP_EDGE_NAMESPACE));
+        assertEquals(Integer.valueOf(1), m_topologyProvider.getEdgeCounts().get(EnhancedLinkdTopologyProvider.OSPF_EDGE_NAMESPACE));
+
+        // the lldp links are gone, the vertices of the cached ospf link were created by lldp
+        LldpLinkDao lldpLinkDao = m_databasePopulator.getLldpLinkDao();
+        EasyMock.reset(lldpLinkDao);
+        EasyMock.expect(lldpLinkDao.findAll()).andReturn(Collections.<LldpLink>emptyList()).anyTimes();
+        EasyMock.replay(lldpLinkDao);
+        listener.getValue().onEvent(new EventBuilder(EnhancedLinkdTopologyProvider.NODE_LINK_DISCOVERY_COMPLETED_EVENT_UEI, "test")
+                                    .setNodeid(1).addParam("runnable", "LldpLinkDiscovery").getEvent());
+        m_topologyProvider.refresh();
+
+        assertEquals(Integer.valueOf(0), m_topologyProvider.getEdgeCounts().get(EnhancedLinkdTopologyProvider.LLDP_EDGE_NAMESPACE));
+        assertEquals(Integer.valueOf(1), m_topologyProvider.getEdgeCounts().get(EnhancedLinkdTopologyProvider.OSPF_EDGE_NAMESPACE));
+        assertEquals(1, m_topologyProvider.getEdges().size());
+        for (Edge edge : m_topologyProvider.getEdges()) {
+            assertNotNull(m_topologyProvider.getVertex(edge.getSource().getVertex()));
+            assertNotNull(m_topologyProvider.getVertex(edge.getTarget().getVertex()));
+        }
+
+        EasyMock.reset(eventSubscriptionService);
+        eventSubscriptionService.removeEventListener(listener.getValue());
+        EasyMock.replay(eventSubscriptionService);
+        m_topologyProvider.onDestroy();
+        EasyMock.verify(eventSubscriptionService);
+    }
+
+    private Map<String, Edge> getEdgesById() {
+        Map<String, Edge> edges = new HashMap<String, Edge>();
+        for (Edge edge : m_topologyProvider.getEdges()) {
+            edges.put(edge.getNamespace() + ":" + edge.getId(), edge);
+        }
+        return edges;
+    }
+
     @Test
     public void testConnectVertices() {
         m_topologyProvider.resetContainer();
@@ -542,6 +635,7 @@ public class EnhancedLinkdTopologyProviderTest {
             m_topologyProvider.resetContainer();
             m_topologyProvider.setLldpLinkDao(m_databasePopulator.getLldpLinkDao());
             m_topologyProvider.setNodeDao(m_databasePopulator.getNodeDao());
+            m_topologyProvider.setEventSubscriptionService(null);
         }
         m_topologyProvider.setConfigurationFile(m_originalFilename);
     }
@@ -50,6 +50,7 @@ public class AlarmPersisterImpl implements AlarmPersister {
 
     private AlarmDao m_alarmDao;
     private EventDao m_eventDao;
+    private AlarmReductionIndex m_reductionIndex;
 
     /** {@inheritDoc} 
      * @return */
@@ -67,13 +68,22 @@ public class AlarmPersisterImpl implements AlarmPersister {
         //TODO: Understand why we use Assert
         Assert.notNull(event, "Incoming event was null, aborting"); 
         Assert.isTrue(event.getDbid() > 0, "Incoming event has an illegal dbid (" + event.getDbid() + "), aborting");
-        
-        
+
+        String reductionKey = event.getAlarmData().getReductionKey();
+        if (m_reductionIndex != null) {
+            final OnmsAlarm reduced = m_reductionIndex.reduce(event);
+            if (reduced != null) {
+                LOG.debug("addOrReduceEventAsAlarm: reductionKey:{} reduced in memory, counter: {}", reductionKey, reduced.getCounter());
+                return reduced;
+            }
+            // make sure the database has everything the index knows about this alarm
+            m_reductionIndex.evict(reductionKey);
+        }
+
         //for some reason when we get here the event from the DB doesn't have the LogMsg (in my tests anyway)
         OnmsEvent e = m_eventDao.get(event.getDbid());
         Assert.notNull(e, "Event was deleted before we could retrieve it and create an alarm.");
     
-        String reductionKey = event.getAlarmData().getReductionKey();
         LOG.debug("addOrReduceEventAsAlarm: looking for existing reduction key: {}", reductionKey);
         OnmsAlarm alarm = m_alarmDao.findByReductionKey(reductionKey);
     
@@ -94,6 +104,10 @@ public class AlarmPersisterImpl implements AlarmPersister {
                 m_eventDao.deletePreviousEventsForAlarm(alarm.getId(), e);
             }
         }
+
+        if (m_reductionIndex != null) {
+            m_reductionIndex.register(alarm);
+        }
         
         return alarm;
     }
@@ -254,4 +268,26 @@ public class AlarmPersisterImpl implements AlarmPersister {
         return m_eventDao;
     }
 
+    /**
+     * <p>setReductionIndex</p>
+     *
+     * @param reductionIndex a {@link org.opennms.netmgt.alarmd.AlarmReductionIndex} object.
+     */
+    public void setReductionIndex(AlarmReductionIndex reductionIndex) {
+        m_reductionIndex = reductionIndex;
+        if (reductionIndex != null) {
+            // events reduced onto an alarm that was deleted come back through here
+            reductionIndex.setPersister(this);
+        }
+    }
+
+    /**
+     * <p>getReductionIndex</p>
+     *
+     * @return a {@link org.opennms.netmgt.alarmd.AlarmReductionIndex} object.
+     */
+    public AlarmReductionIndex getReductionIndex() {
+        return m_reductionIndex;
+    }
+
 }
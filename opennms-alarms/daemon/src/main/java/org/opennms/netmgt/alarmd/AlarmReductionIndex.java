@@ -0,0 +1,763 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.utils.DBUtils;
+import org.opennms.netmgt.dao.api.AlarmDao;
+import org.opennms.netmgt.events.api.EventDatabaseConstants;
+import org.opennms.netmgt.events.api.EventParameterUtils;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.opennms.netmgt.model.OnmsSeverity;
+import org.opennms.netmgt.model.TroubleTicketState;
+import org.opennms.netmgt.xml.event.AlarmData;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.UpdateField;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * An in-memory index of the current alarms by reduction key, used by
+ * {@link AlarmPersisterImpl} to reduce events without going to the
+ * database.
+ *
+ * When enabled, all alarms are loaded at startup. A reduction onto an
+ * indexed alarm updates the counter, last event, log message, parameters
+ * and (when requested by an update field) the severity of the cached
+ * alarm, and the changes are written behind in batches: every alarm that
+ * was reduced since the last flush costs one UPDATE on the alarms table,
+ * one UPDATE to link its events, and one DELETE when the alarm is
+ * auto-cleaned, no matter how many events were reduced onto it. The flush
+ * runs every flushInterval milliseconds, or sooner when maxPending
+ * reductions are waiting.
+ *
+ * Events that need any other update field, and events for reduction keys
+ * that are not in the index, are handled by the persister as before; the
+ * index writes out what it holds for the key first and picks the alarm up
+ * again once that transaction commits.
+ *
+ * Alarms that are deleted by someone else (the web UI, vacuumd) are
+ * dropped from the index at the next flush. The events that were reduced
+ * in memory onto such an alarm in the meantime are handed back to the
+ * persister, which creates a new alarm for them as it would have without
+ * the index.
+ *
+ * Acknowledgements, severity changes and trouble tickets can be made on an
+ * alarm without alarmd seeing an event for them, so {@link #refresh(OnmsAlarm)}
+ * reads that state back from the database before an indexed alarm is handed
+ * to the northbound interfaces.
+ */
+public class AlarmReductionIndex implements InitializingBean, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(AlarmReductionIndex.class);
+
+    /**
+     * System property that enables the index.
+     */
+    public static final String WRITE_BEHIND_PROPERTY = "org.opennms.alarmd.writeBehind";
+
+    private static final String SQL_UPDATE_ALARM = "UPDATE alarms SET counter = counter + ?, lastEventId = ?, lastEventTime = ?, logMsg = ?, eventParms = ?, severity = COALESCE(?, severity) WHERE alarmId = ?";
+
+    private static final String SQL_LINK_EVENTS = "UPDATE events SET alarmId = ? WHERE eventId = ANY(?)";
+
+    private static final String SQL_AUTO_CLEAN = "DELETE FROM events WHERE alarmId = ? AND eventId <> ?";
+
+    private static final String SQL_REFRESH_ALARM = "SELECT severity, alarmAckUser, alarmAckTime, tticketId, tticketState FROM alarms WHERE alarmId = ?";
+
+    private static class Entry {
+        private final OnmsAlarm m_alarm;
+        private int m_reductions = 0;
+        private List<Event> m_events = new ArrayList<Event>();
+        private boolean m_severityChanged = false;
+        private boolean m_autoClean = false;
+        private boolean m_queued = false;
+        private boolean m_removed = false;
+
+        private Entry(final OnmsAlarm alarm) {
+            m_alarm = alarm;
+        }
+    }
+
+    /**
+     * The changes taken from an {@link Entry} for one flush.
+     */
+    private static class Reduction {
+        private final Entry m_entry;
+        private final int m_reductions;
+        private final List<Event> m_events;
+        private final Timestamp m_lastEventTime;
+        private final String m_logMsg;
+        private final String m_eventParms;
+        private final Integer m_severity;
+        private final boolean m_autoClean;
+
+        /** Must be called with the entry locked. */
+        private Reduction(final Entry entry) {
+            final OnmsAlarm alarm = entry.m_alarm;
+            m_entry = entry;
+            m_reductions = entry.m_reductions;
+            m_events = entry.m_events;
+            m_lastEventTime = alarm.getLastEventTime() == null ? null : new Timestamp(alarm.getLastEventTime().getTime());
+            m_logMsg = alarm.getLogMsg();
+            m_eventParms = alarm.getEventParms();
+            m_severity = entry.m_severityChanged ? alarm.getSeverity().getId() : null;
+            m_autoClean = entry.m_autoClean;
+        }
+
+        private Integer getAlarmId() {
+            return m_entry.m_alarm.getId();
+        }
+
+        private Integer getLastEventId() {
+            return m_events.get(m_events.size() - 1).getDbid();
+        }
+
+        private Integer[] getEventIds() {
+            final Integer[] eventIds = new Integer[m_events.size()];
+            for (int i = 0; i < eventIds.length; i++) {
+                eventIds[i] = m_events.get(i).getDbid();
+            }
+            return eventIds;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> m_entries = new ConcurrentHashMap<String, Entry>();
+
+    private final Queue<Entry> m_queued = new ConcurrentLinkedQueue<Entry>();
+
+    private final Object m_flushLock = new Object();
+
+    private final AtomicInteger m_pending = new AtomicInteger();
+
+    private final AtomicBoolean m_flushRequested = new AtomicBoolean(false);
+
+    private final AtomicLong m_reductionCount = new AtomicLong();
+
+    private final AtomicLong m_statementCount = new AtomicLong();
+
+    private final AtomicLong m_flushCount = new AtomicLong();
+
+    private boolean m_enabled = Boolean.getBoolean(WRITE_BEHIND_PROPERTY);
+
+    private long m_flushInterval = 1000;
+
+    private int m_maxPending = 1000;
+
+    private AlarmDao m_alarmDao;
+
+    private AlarmPersister m_persister;
+
+    private DataSource m_dataSource;
+
+    private TransactionTemplate m_transactionTemplate;
+
+    private volatile ScheduledExecutorService m_executor;
+
+    private final Runnable m_flushTask = new Runnable() {
+        @Override
+        public void run() {
+            m_flushRequested.set(false);
+            try {
+                flush();
+            } catch (final Throwable t) {
+                LOG.error("Unexpected error writing alarm reductions.", t);
+            }
+        }
+    };
+
+    /**
+     * Loads the alarms and starts the flush thread if the index is enabled.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        Assert.state(m_alarmDao != null, "alarmDao property must be set");
+        Assert.state(m_dataSource != null, "dataSource property must be set");
+        Assert.state(m_transactionTemplate != null, "transactionTemplate property must be set");
+
+        if (!m_enabled) {
+            return;
+        }
+
+        m_transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                for (final OnmsAlarm alarm : m_alarmDao.findAll()) {
+                    if (alarm.getReductionKey() != null) {
+                        add(alarm);
+                    }
+                }
+            }
+        });
+        LOG.info("Loaded {} alarms into the reduction index.", m_entries.size());
+
+        m_executor = Executors.newSingleThreadScheduledExecutor(new LogPreservingThreadFactory(getClass().getSimpleName(), 1));
+        m_executor.scheduleWithFixedDelay(m_flushTask, m_flushInterval, m_flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the flush thread and writes out the pending reductions.
+     *
+     * @throws java.lang.InterruptedException if interrupted while waiting for a running flush
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        if (m_executor != null) {
+            m_executor.shutdown();
+            m_executor.awaitTermination(m_flushInterval, TimeUnit.MILLISECONDS);
+            m_executor = null;
+            flush();
+        }
+        m_entries.clear();
+    }
+
+    /**
+     * Reduces the event onto the indexed alarm for its reduction key.
+     *
+     * @param event an event with alarm data and a dbid
+     * @return the updated alarm, or null if the event has to be handled
+     *         with the database
+     */
+    public OnmsAlarm reduce(final Event event) {
+        final ScheduledExecutorService executor = m_executor;
+        if (executor == null) {
+            return null;
+        }
+
+        final Entry entry = m_entries.get(event.getAlarmData().getReductionKey());
+        if (entry == null || !isSupported(event.getAlarmData())) {
+            return null;
+        }
+
+        synchronized (entry) {
+            if (entry.m_removed) {
+                return null;
+            }
+            apply(entry, event);
+            if (!entry.m_queued) {
+                entry.m_queued = true;
+                m_queued.add(entry);
+            }
+        }
+
+        m_reductionCount.incrementAndGet();
+        if (m_pending.incrementAndGet() >= m_maxPending && !executor.isShutdown() && m_flushRequested.compareAndSet(false, true)) {
+            executor.execute(m_flushTask);
+        }
+        return entry.m_alarm;
+    }
+
+    /**
+     * Applies the same changes as {@link AlarmPersisterImpl} makes when it
+     * reduces an event. Must be called with the entry locked.
+     */
+    private static void apply(final Entry entry, final Event event) {
+        final OnmsAlarm alarm = entry.m_alarm;
+        final AlarmData alarmData = event.getAlarmData();
+
+        final String logMsg = event.getLogmsg() == null ? null : EventDatabaseConstants.format(event.getLogmsg().getContent(), 0);
+        final String eventParms = EventDatabaseConstants.format(EventParameterUtils.format(event), 0);
+
+        alarm.setLastEventTime(event.getTime());
+        alarm.setCounter(alarm.getCounter() + 1);
+
+        if (!alarmData.hasUpdateFields()) {
+            alarm.setLogMsg(logMsg);
+            alarm.setEventParms(eventParms);
+        } else {
+            for (final UpdateField field : alarmData.getUpdateFieldList()) {
+                if (field.getFieldName().equalsIgnoreCase("LogMsg") && field.isUpdateOnReduction() == false) {
+                    continue;
+                } else {
+                    alarm.setLogMsg(logMsg);
+                }
+
+                if (field.getFieldName().equalsIgnoreCase("Parms") && field.isUpdateOnReduction() == false) {
+                    continue;
+                } else {
+                    alarm.setEventParms(eventParms);
+                }
+
+                if (field.isUpdateOnReduction() && field.getFieldName().equalsIgnoreCase("severity")) {
+                    alarm.setSeverity(OnmsSeverity.get(event.getSeverity()));
+                    entry.m_severityChanged = true;
+                }
+            }
+        }
+
+        entry.m_reductions++;
+        entry.m_events.add(event);
+        entry.m_autoClean |= alarmData.isAutoClean();
+    }
+
+    /**
+     * Whether all the update fields of the alarm data can be applied in
+     * memory.
+     */
+    private static boolean isSupported(final AlarmData alarmData) {
+        if (!alarmData.hasUpdateFields()) {
+            return true;
+        }
+        for (final UpdateField field : alarmData.getUpdateFieldList()) {
+            final String name = field.getFieldName();
+            if (field.isUpdateOnReduction() && !name.equalsIgnoreCase("LogMsg") && !name.equalsIgnoreCase("Parms") && !name.equalsIgnoreCase("severity")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds an alarm that has just been written by the persister. If a
+     * transaction is active the alarm is added once it commits.
+     *
+     * @param alarm a {@link org.opennms.netmgt.model.OnmsAlarm} object.
+     */
+    public void register(final OnmsAlarm alarm) {
+        if (m_executor == null || alarm.getReductionKey() == null) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    add(alarm);
+                }
+            });
+        } else {
+            add(alarm);
+        }
+    }
+
+    private void add(final OnmsAlarm alarm) {
+        if (alarm.getServiceType() != null) {
+            alarm.getServiceType().getName(); // To avoid potential LazyInitializationException when dealing with NorthboundAlarm
+        }
+        final Entry previous = m_entries.put(alarm.getReductionKey(), new Entry(alarm));
+        if (previous != null) {
+            synchronized (previous) {
+                previous.m_removed = true;
+            }
+        }
+    }
+
+    /**
+     * Removes the alarm for a reduction key from the index and writes out
+     * its pending reductions, so that the database is up to date before the
+     * persister reads the alarm.
+     *
+     * @param reductionKey a {@link java.lang.String} object.
+     */
+    public void evict(final String reductionKey) {
+        final Entry entry = m_entries.get(reductionKey);
+        if (entry == null) {
+            return;
+        }
+
+        synchronized (m_flushLock) {
+            synchronized (entry) {
+                entry.m_removed = true;
+            }
+            m_entries.remove(reductionKey, entry);
+            flush();
+        }
+    }
+
+    /**
+     * Writes all pending reductions to the database in one transaction.
+     */
+    public void flush() {
+        synchronized (m_flushLock) {
+            final List<Reduction> reductions = new ArrayList<Reduction>();
+            int pending = 0;
+            for (Entry entry = m_queued.poll(); entry != null; entry = m_queued.poll()) {
+                synchronized (entry) {
+                    final Reduction reduction = new Reduction(entry);
+                    reductions.add(reduction);
+                    pending += reduction.m_reductions;
+                    entry.m_reductions = 0;
+                    entry.m_events = new ArrayList<Event>();
+                    entry.m_severityChanged = false;
+                    entry.m_autoClean = false;
+                    entry.m_queued = false;
+                }
+            }
+            if (reductions.isEmpty()) {
+                return;
+            }
+            m_pending.addAndGet(-pending);
+
+            try {
+                write(reductions);
+                m_flushCount.incrementAndGet();
+                LOG.debug("Wrote {} reductions onto {} alarms.", pending, reductions.size());
+            } catch (final SQLException e) {
+                LOG.warn("Failed to write {} alarm reductions, will try again.", pending, e);
+                for (final Reduction reduction : reductions) {
+                    restore(reduction);
+                }
+            }
+        }
+    }
+
+    private void write(final List<Reduction> reductions) throws SQLException {
+        final List<Reduction> written = new ArrayList<Reduction>(reductions.size());
+        final List<Reduction> deleted = new ArrayList<Reduction>();
+
+        final DBUtils d = new DBUtils(getClass());
+        try {
+            final Connection connection = m_dataSource.getConnection();
+            d.watch(connection);
+            connection.setAutoCommit(false);
+
+            try {
+                final PreparedStatement update = connection.prepareStatement(SQL_UPDATE_ALARM);
+                d.watch(update);
+                for (final Reduction reduction : reductions) {
+                    update.setInt(1, reduction.m_reductions);
+                    update.setInt(2, reduction.getLastEventId());
+                    update.setTimestamp(3, reduction.m_lastEventTime);
+                    update.setString(4, reduction.m_logMsg);
+                    update.setString(5, reduction.m_eventParms);
+                    if (reduction.m_severity == null) {
+                        update.setNull(6, Types.INTEGER);
+                    } else {
+                        update.setInt(6, reduction.m_severity);
+                    }
+                    update.setInt(7, reduction.getAlarmId());
+                    update.addBatch();
+                }
+                final int[] counts = update.executeBatch();
+                m_statementCount.addAndGet(reductions.size());
+
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] == 0) {
+                        deleted.add(reductions.get(i));
+                    } else {
+                        written.add(reductions.get(i));
+                    }
+                }
+
+                if (!written.isEmpty()) {
+                    final PreparedStatement link = connection.prepareStatement(SQL_LINK_EVENTS);
+                    d.watch(link);
+                    final PreparedStatement clean = connection.prepareStatement(SQL_AUTO_CLEAN);
+                    d.watch(clean);
+                    int cleaned = 0;
+                    for (final Reduction reduction : written) {
+                        link.setInt(1, reduction.getAlarmId());
+                        link.setArray(2, connection.createArrayOf("int4", reduction.getEventIds()));
+                        link.addBatch();
+                        if (reduction.m_autoClean) {
+                            clean.setInt(1, reduction.getAlarmId());
+                            clean.setInt(2, reduction.getLastEventId());
+                            clean.addBatch();
+                            cleaned++;
+                        }
+                    }
+                    link.executeBatch();
+                    m_statementCount.addAndGet(written.size());
+                    if (cleaned > 0) {
+                        // the events must be linked before the old ones can be removed
+                        clean.executeBatch();
+                        m_statementCount.addAndGet(cleaned);
+                    }
+                }
+
+                connection.commit();
+            } catch (final SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (final Throwable e2) {
+                    LOG.warn("Rollback of transaction failed.", e2);
+                }
+                throw e;
+            }
+        } finally {
+            d.cleanUp();
+        }
+
+        for (final Reduction reduction : deleted) {
+            final Entry entry = reduction.m_entry;
+            synchronized (entry) {
+                entry.m_removed = true;
+            }
+            m_entries.remove(entry.m_alarm.getReductionKey(), entry);
+            LOG.info("Alarm {} with reduction key {} no longer exists; persisting {} reductions as a new alarm.", reduction.getAlarmId(), entry.m_alarm.getReductionKey(), reduction.m_reductions);
+            replay(reduction);
+        }
+    }
+
+    /**
+     * Hands the events of a reduction onto a deleted alarm back to the
+     * persister, one transaction per event. The entry has been removed, so
+     * the first event creates a new alarm and the others are reduced onto
+     * it.
+     */
+    private void replay(final Reduction reduction) {
+        if (m_persister == null) {
+            LOG.warn("No persister set; dropped {} reductions onto alarm {}.", reduction.m_reductions, reduction.getAlarmId());
+            return;
+        }
+        for (final Event event : reduction.m_events) {
+            try {
+                m_transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                    @Override
+                    protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                        m_persister.persist(event);
+                    }
+                });
+            } catch (final Throwable t) {
+                LOG.warn("Failed to persist event {} with reduction key {} as an alarm.", event.getDbid(), event.getAlarmData().getReductionKey(), t);
+            }
+        }
+    }
+
+    /**
+     * Puts the changes of a reduction that could not be written back into
+     * its entry.
+     */
+    private void restore(final Reduction reduction) {
+        final Entry entry = reduction.m_entry;
+        synchronized (entry) {
+            entry.m_reductions += reduction.m_reductions;
+            entry.m_events.addAll(0, reduction.m_events);
+            entry.m_severityChanged |= reduction.m_severity != null;
+            entry.m_autoClean |= reduction.m_autoClean;
+            if (!entry.m_queued) {
+                entry.m_queued = true;
+                m_queued.add(entry);
+            }
+        }
+        m_pending.addAndGet(reduction.m_reductions);
+    }
+
+    /**
+     * Reads the acknowledgement, severity and trouble ticket state of an
+     * indexed alarm back from the database, since those can be changed
+     * without alarmd knowing. A severity that was changed by a pending
+     * reduction is kept. Alarms that are not in the index are left alone.
+     *
+     * @param alarm an alarm returned by {@link #reduce(Event)}
+     * @return the alarm
+     */
+    public OnmsAlarm refresh(final OnmsAlarm alarm) {
+        if (m_executor == null || alarm.getReductionKey() == null) {
+            return alarm;
+        }
+        final Entry entry = m_entries.get(alarm.getReductionKey());
+        if (entry == null || entry.m_alarm != alarm) {
+            return alarm;
+        }
+
+        final DBUtils d = new DBUtils(getClass());
+        try {
+            final Connection connection = m_dataSource.getConnection();
+            d.watch(connection);
+            final PreparedStatement select = connection.prepareStatement(SQL_REFRESH_ALARM);
+            d.watch(select);
+            select.setInt(1, alarm.getId());
+            final ResultSet rs = select.executeQuery();
+            d.watch(rs);
+            if (rs.next()) {
+                final int ticketState = rs.getInt(5);
+                final boolean hasTicketState = !rs.wasNull();
+                synchronized (entry) {
+                    if (!entry.m_severityChanged) {
+                        alarm.setSeverityId(rs.getInt(1));
+                    }
+                    alarm.setAlarmAckUser(rs.getString(2));
+                    alarm.setAlarmAckTime(rs.getTimestamp(3));
+                    alarm.setTTicketId(rs.getString(4));
+                    alarm.setTTicketState(hasTicketState ? TroubleTicketState.values()[ticketState] : null);
+                }
+            }
+        } catch (final SQLException e) {
+            LOG.warn("Failed to refresh alarm {} from the database.", alarm.getId(), e);
+        } finally {
+            d.cleanUp();
+        }
+        return alarm;
+    }
+
+    /**
+     * <p>size</p>
+     *
+     * @return the number of alarms in the index
+     */
+    public int size() {
+        return m_entries.size();
+    }
+
+    /**
+     * <p>getReductionCount</p>
+     *
+     * @return the number of events reduced in memory
+     */
+    public long getReductionCount() {
+        return m_reductionCount.get();
+    }
+
+    /**
+     * <p>getStatementCount</p>
+     *
+     * @return the number of statements written by the flushes
+     */
+    public long getStatementCount() {
+        return m_statementCount.get();
+    }
+
+    /**
+     * <p>getFlushCount</p>
+     *
+     * @return the number of flushes that wrote reductions
+     */
+    public long getFlushCount() {
+        return m_flushCount.get();
+    }
+
+    /**
+     * <p>isEnabled</p>
+     *
+     * @return a boolean.
+     */
+    public boolean isEnabled() {
+        return m_enabled;
+    }
+
+    /**
+     * Enables the index. Defaults to the value of the
+     * {@link #WRITE_BEHIND_PROPERTY} system property.
+     *
+     * @param enabled a boolean.
+     */
+    public void setEnabled(final boolean enabled) {
+        m_enabled = enabled;
+    }
+
+    /**
+     * <p>getFlushInterval</p>
+     *
+     * @return the time in milliseconds between flushes
+     */
+    public long getFlushInterval() {
+        return m_flushInterval;
+    }
+
+    /**
+     * <p>setFlushInterval</p>
+     *
+     * @param flushInterval the time in milliseconds between flushes
+     */
+    public void setFlushInterval(final long flushInterval) {
+        m_flushInterval = flushInterval;
+    }
+
+    /**
+     * <p>getMaxPending</p>
+     *
+     * @return the number of pending reductions that triggers a flush
+     */
+    public int getMaxPending() {
+        return m_maxPending;
+    }
+
+    /**
+     * <p>setMaxPending</p>
+     *
+     * @param maxPending the number of pending reductions that triggers a flush
+     */
+    public void setMaxPending(final int maxPending) {
+        m_maxPending = maxPending;
+    }
+
+    /**
+     * <p>setAlarmDao</p>
+     *
+     * @param alarmDao a {@link org.opennms.netmgt.dao.api.AlarmDao} object.
+     */
+    public void setAlarmDao(final AlarmDao alarmDao) {
+        m_alarmDao = alarmDao;
+    }
+
+    /**
+     * Sets the persister that the events reduced onto a deleted alarm are
+     * handed back to.
+     *
+     * @param persister a {@link org.opennms.netmgt.alarmd.AlarmPersister} object.
+     */
+    public void setPersister(final AlarmPersister persister) {
+        m_persister = persister;
+    }
+
+    /**
+     * <p>setDataSource</p>
+     *
+     * @param dataSource a {@link javax.sql.DataSource} object.
+     */
+    public void setDataSource(final DataSource dataSource) {
+        m_dataSource = dataSource;
+    }
+
+    /**
+     * <p>setTransactionTemplate</p>
+     *
+     * @param transactionTemplate a {@link org.springframework.transaction.support.TransactionTemplate} object.
+     */
+    public void setTransactionTemplate(final TransactionTemplate transactionTemplate) {
+        m_transactionTemplate = transactionTemplate;
+    }
+}
@@ -67,6 +67,8 @@ public class Alarmd implements SpringServiceDaemon, DisposableBean {
     private List<Northbounder> m_northboundInterfaces;
 
     private AlarmPersister m_persister;
+
+    private AlarmReductionIndex m_reductionIndex;
     
     
     
@@ -86,7 +88,11 @@ public class Alarmd implements SpringServiceDaemon, DisposableBean {
     	
         OnmsAlarm alarm = m_persister.persist(e);
         
-        if (alarm != null) {
+        if (alarm != null && !m_northboundInterfaces.isEmpty()) {
+            if (m_reductionIndex != null) {
+                // an alarm reduced in memory may have been acknowledged or escalated since it was cached
+                m_reductionIndex.refresh(alarm);
+            }
         	NorthboundAlarm a = new NorthboundAlarm(alarm);
 
             for (Northbounder nbi : m_northboundInterfaces) {
@@ -145,6 +151,15 @@ public class Alarmd implements SpringServiceDaemon, DisposableBean {
         return m_persister;
     }
 
+    /**
+     * <p>setReductionIndex</p>
+     *
+     * @param reductionIndex a {@link org.opennms.netmgt.alarmd.AlarmReductionIndex} object.
+     */
+    public void setReductionIndex(AlarmReductionIndex reductionIndex) {
+        m_reductionIndex = reductionIndex;
+    }
+
     /**
      * <p>getEventForwarder</p>
      *
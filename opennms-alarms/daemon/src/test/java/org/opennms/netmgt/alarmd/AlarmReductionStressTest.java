@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opennms.core.spring.BeanUtils;
+import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
+import org.opennms.core.test.db.MockDatabase;
+import org.opennms.core.test.db.TemporaryDatabaseAware;
+import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
+import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.mock.MockEventUtil;
+import org.opennms.netmgt.mock.MockNetwork;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.AlarmData;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.test.JUnitConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+
+/**
+ * Replays a flapping, reduction heavy event stream (a few reduction keys
+ * receiving many events each) through alarmd, once with the database
+ * persister and once with the {@link AlarmReductionIndex}, and checks the
+ * resulting alarms. The two ignored rate tests replay longer streams and
+ * log the reductions per second and the rows written for each.
+ */
+@RunWith(OpenNMSJUnit4ClassRunner.class)
+@ContextConfiguration(locations={
+        "classpath:/META-INF/opennms/applicationContext-soa.xml",
+        "classpath:/META-INF/opennms/applicationContext-commonConfigs.xml",
+        "classpath:/META-INF/opennms/applicationContext-minimal-conf.xml",
+        "classpath:/META-INF/opennms/applicationContext-dao.xml",
+        "classpath*:/META-INF/opennms/component-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-daemon.xml",
+        "classpath:/META-INF/opennms/mockEventIpcManager.xml",
+        "classpath:/META-INF/opennms/applicationContext-alarmd.xml"
+})
+@JUnitConfigurationEnvironment
+@JUnitTemporaryDatabase(dirtiesContext=false,tempDbClass=MockDatabase.class)
+public class AlarmReductionStressTest implements TemporaryDatabaseAware<MockDatabase>, InitializingBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AlarmReductionStressTest.class);
+
+    private static final int KEYS = 5;
+
+    private static final int EVENTS_PER_KEY = 1000;
+
+    private MockNetwork m_mockNetwork = new MockNetwork();
+
+    @Autowired
+    private Alarmd m_alarmd;
+
+    @Autowired
+    private AlarmReductionIndex m_reductionIndex;
+
+    @Autowired
+    private NodeDao m_nodeDao;
+
+    @Autowired
+    private JdbcTemplate m_jdbcTemplate;
+
+    private MockDatabase m_database;
+
+    @Override
+    public void setTemporaryDatabase(final MockDatabase database) {
+        m_database = database;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        BeanUtils.assertAutowiring(this);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        m_mockNetwork.createStandardNetwork();
+
+        // Insert an empty node to avoid foreign-key violations on subsequent events/alarms
+        final OnmsNode node = new OnmsNode();
+        node.setId(1);
+        node.setLabel("node1");
+        m_nodeDao.save(node);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_reductionIndex.destroy();
+        m_reductionIndex.setEnabled(false);
+    }
+
+    @Test
+    @JUnitTemporaryDatabase(tempDbClass=MockDatabase.class)
+    public void testDatabaseReductions() throws Exception {
+        replay("database", false, 20, false);
+    }
+
+    @Test
+    @JUnitTemporaryDatabase(tempDbClass=MockDatabase.class)
+    public void testWriteBehindReductions() throws Exception {
+        replay("write-behind", true, 20, false);
+    }
+
+    @Test
+    @Ignore("stress run against the database persister")
+    @JUnitTemporaryDatabase(tempDbClass=MockDatabase.class)
+    public void testDatabaseReductionRate() throws Exception {
+        replay("database", false, EVENTS_PER_KEY, true);
+    }
+
+    @Test
+    @Ignore("stress run against the reduction index")
+    @JUnitTemporaryDatabase(tempDbClass=MockDatabase.class)
+    public void testWriteBehindReductionRate() throws Exception {
+        replay("write-behind", true, EVENTS_PER_KEY, true);
+    }
+
+    private void replay(final String mode, final boolean writeBehind, final int eventsPerKey, final boolean report) throws Exception {
+        m_reductionIndex.setEnabled(writeBehind);
+        m_reductionIndex.afterPropertiesSet();
+
+        // create the alarms
+        for (int k = 0; k < KEYS; k++) {
+            m_alarmd.onEvent(createEvent(k));
+        }
+
+        // write the events up front so that only alarmd is timed
+        final List<Event> events = new ArrayList<Event>(KEYS * eventsPerKey);
+        for (int i = 0; i < eventsPerKey; i++) {
+            for (int k = 0; k < KEYS; k++) {
+                events.add(createEvent(k));
+            }
+        }
+
+        final long alarmUpdatesBefore = report ? getRowsUpdated("alarms") : 0;
+        final long eventUpdatesBefore = report ? getRowsUpdated("events") : 0;
+
+        final long start = System.nanoTime();
+        for (final Event event : events) {
+            m_alarmd.onEvent(event);
+        }
+        m_reductionIndex.flush();
+        final long elapsed = System.nanoTime() - start;
+
+        for (int k = 0; k < KEYS; k++) {
+            assertEquals(eventsPerKey + 1, m_jdbcTemplate.queryForObject("select counter from alarms where reductionKey = ?", Integer.class, getReductionKey(k)).intValue());
+        }
+        assertEquals(0, m_jdbcTemplate.queryForObject("select count(*) from events where alarmId is null", Integer.class).intValue());
+
+        if (report) {
+            LOG.info("{}: {} reductions onto {} alarms in {} ms, {} reductions/sec, {} alarm rows and {} event rows updated, {} statements written behind",
+                     mode, events.size(), KEYS, elapsed / 1000000, Math.round(events.size() / (elapsed / 1e9)),
+                     getRowsUpdated("alarms") - alarmUpdatesBefore, getRowsUpdated("events") - eventUpdatesBefore,
+                     m_reductionIndex.getStatementCount());
+        }
+    }
+
+    /**
+     * Returns the number of rows updated in a table according to the
+     * statistics collector, which the backends report to about twice a
+     * second.
+     */
+    private long getRowsUpdated(final String table) throws InterruptedException {
+        Thread.sleep(1000);
+        m_jdbcTemplate.execute("select pg_stat_clear_snapshot()");
+        return m_jdbcTemplate.queryForObject("select n_tup_upd from pg_stat_user_tables where relname = ?", Long.class, table);
+    }
+
+    private static String getReductionKey(final int k) {
+        return "flapping:" + k;
+    }
+
+    private Event createEvent(final int k) {
+        final EventBuilder bldr = MockEventUtil.createNodeDownEventBuilder("Test", m_mockNetwork.getNode(1));
+        final AlarmData data = new AlarmData();
+        data.setAlarmType(1);
+        data.setReductionKey(getReductionKey(k));
+        bldr.setAlarmData(data);
+        bldr.setLogDest("logndisplay");
+        bldr.setLogMessage("testing");
+
+        final Event event = bldr.getEvent();
+        m_database.writeEvent(event);
+        return event;
+    }
+}
@@ -53,4 +53,5 @@ public interface CollectdConfigFactory {
 	boolean interfaceInFilter(String iface, Package pkg);
 	boolean interfaceInPackage(final String iface, Package pkg);
 	boolean interfaceInPackage(final OnmsIpInterface iface, Package pkg);
+	void rebuildPackageIpListMap();
 }
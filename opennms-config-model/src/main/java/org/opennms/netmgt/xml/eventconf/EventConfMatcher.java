@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.xml.eventconf;
+
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_EID;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_GENERIC;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_SPECIFIC;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_UEI;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.opennms.netmgt.xml.eventconf.Events.EventCallback;
+
+/**
+ * A decision tree over the event configuration that is compiled once when the
+ * configuration is (re)initialized and then used to find the first matching
+ * event definition for an incoming event.
+ *
+ * Each level of the tree branches on one of the mask element fields (uei,
+ * enterprise id, generic and specific).  Definitions that require an exact
+ * value for the field are placed under that value, all other definitions
+ * (no constraint, wildcard '%' or regex '~' values) are placed under the
+ * wildcard branch.  The remaining mask elements and varbinds, including any
+ * regular expressions, are evaluated at the leaves using
+ * {@link Event#matches(org.opennms.netmgt.xml.event.Event)}.
+ *
+ * Every definition is assigned a rank equal to its position in the
+ * {@link EventOrdering}, so the result is identical to a linear scan of the
+ * configuration in order.
+ *
+ * Instances are immutable and may be shared between threads.
+ */
+public class EventConfMatcher {
+
+    private static final String[] INDEXED_FIELDS = { TAG_UEI, TAG_SNMP_EID, TAG_SNMP_GENERIC, TAG_SNMP_SPECIFIC };
+
+    /**
+     * Branches containing no more than this many definitions are not split any further.
+     */
+    private static final int MAX_LEAF_SIZE = 4;
+
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+
+    private static class Node {
+        private final int m_level;
+        private final Map<String, Node> m_exact;
+        private final Node m_wildcard;
+        private final int[] m_ranks;
+
+        private Node(final int level, final Map<String, Node> exact, final Node wildcard) {
+            m_level = level;
+            m_exact = exact;
+            m_wildcard = wildcard;
+            m_ranks = null;
+        }
+
+        private Node(final int[] ranks) {
+            m_level = -1;
+            m_exact = null;
+            m_wildcard = null;
+            m_ranks = ranks;
+        }
+
+        private boolean isLeaf() {
+            return m_ranks != null;
+        }
+    }
+
+    private static class Candidate {
+        private final int m_rank;
+        private final List<List<String>> m_exactValues;
+
+        private Candidate(final int rank, final List<List<String>> exactValues) {
+            m_rank = rank;
+            m_exactValues = exactValues;
+        }
+    }
+
+    private final Field[] m_fields;
+    private final Event[] m_events;
+    private final Node m_root;
+
+    private EventConfMatcher(final Event[] events, final Node root) {
+        m_fields = new Field[INDEXED_FIELDS.length];
+        for (int i = 0; i < INDEXED_FIELDS.length; i++) {
+            m_fields[i] = EventMatchers.field(INDEXED_FIELDS[i]);
+        }
+        m_events = events;
+        m_root = root;
+    }
+
+    /**
+     * Compiles a matcher for the given events and all of the event files
+     * loaded by it.  The events must have been initialized first.
+     */
+    public static EventConfMatcher compile(final Events events) {
+        final List<Event> allEvents = events.forEachEvent(new ArrayList<Event>(), new EventCallback<List<Event>>() {
+            @Override
+            public List<Event> process(final List<Event> accum, final Event event) {
+                accum.add(event);
+                return accum;
+            }
+        });
+        Collections.sort(allEvents);
+
+        final List<Candidate> candidates = new ArrayList<Candidate>(allEvents.size());
+        for (int rank = 0; rank < allEvents.size(); rank++) {
+            final Event event = allEvents.get(rank);
+            if (event.getMask() == null || event.getMask().getMaskelementCount() <= 0) {
+                // unmasked definitions only ever match on the uei
+                if (event.getUei() == null) continue;
+                final List<List<String>> exactValues = new ArrayList<List<String>>(INDEXED_FIELDS.length);
+                exactValues.add(Collections.singletonList(event.getUei()));
+                for (int i = 1; i < INDEXED_FIELDS.length; i++) {
+                    exactValues.add(null);
+                }
+                candidates.add(new Candidate(rank, exactValues));
+            } else {
+                final List<List<String>> exactValues = new ArrayList<List<String>>(INDEXED_FIELDS.length);
+                for (final String field : INDEXED_FIELDS) {
+                    exactValues.add(getExactValues(event.getMaskElementValues(field)));
+                }
+                candidates.add(new Candidate(rank, exactValues));
+            }
+        }
+
+        return new EventConfMatcher(allEvents.toArray(new Event[allEvents.size()]), build(candidates, 0));
+    }
+
+    /**
+     * Returns the values of a mask element if all of them must be matched
+     * exactly or null if the mask element is absent or contains wildcards.
+     */
+    private static List<String> getExactValues(final List<String> values) {
+        if (values == null) return null;
+        final List<String> exactValues = new ArrayList<String>(values.size());
+        for (final String value : values) {
+            if (value == null) continue;
+            if (value.startsWith("~") || value.endsWith("%")) return null;
+            exactValues.add(value);
+        }
+        return exactValues.isEmpty() ? null : exactValues;
+    }
+
+    private static Node build(final List<Candidate> candidates, final int level) {
+        if (level >= INDEXED_FIELDS.length || candidates.size() <= MAX_LEAF_SIZE) {
+            final int[] ranks = new int[candidates.size()];
+            for (int i = 0; i < ranks.length; i++) {
+                ranks[i] = candidates.get(i).m_rank;
+            }
+            return new Node(ranks);
+        }
+
+        final Map<String, List<Candidate>> exact = new LinkedHashMap<String, List<Candidate>>();
+        final List<Candidate> wildcard = new ArrayList<Candidate>();
+        for (final Candidate candidate : candidates) {
+            final List<String> values = candidate.m_exactValues.get(level);
+            if (values == null) {
+                wildcard.add(candidate);
+                continue;
+            }
+            for (final String value : values) {
+                List<Candidate> bucket = exact.get(value);
+                if (bucket == null) {
+                    bucket = new ArrayList<Candidate>();
+                    exact.put(value, bucket);
+                } else if (bucket.get(bucket.size() - 1) == candidate) {
+                    // duplicate mask element value
+                    continue;
+                }
+                bucket.add(candidate);
+            }
+        }
+
+        if (exact.isEmpty()) {
+            // nothing to branch on at this level
+            return build(wildcard, level + 1);
+        }
+
+        final Map<String, Node> children = new HashMap<String, Node>(exact.size() * 2);
+        for (final Entry<String, List<Candidate>> entry : exact.entrySet()) {
+            children.put(entry.getKey(), build(entry.getValue(), level + 1));
+        }
+        return new Node(level, children, wildcard.isEmpty() ? null : build(wildcard, level + 1));
+    }
+
+    /**
+     * Returns the first event definition, in configuration order, that
+     * matches the given event or null if there is none.
+     */
+    public Event findFirstMatchingEvent(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+        final String[] values = new String[m_fields.length];
+        for (int i = 0; i < m_fields.length; i++) {
+            values[i] = m_fields[i].get(matchingEvent);
+        }
+        final int rank = search(m_root, values, matchingEvent, NO_MATCH);
+        return rank == NO_MATCH ? null : m_events[rank];
+    }
+
+    private int search(final Node node, final String[] values, final org.opennms.netmgt.xml.event.Event matchingEvent, int best) {
+        if (node.isLeaf()) {
+            for (final int rank : node.m_ranks) {
+                // ranks are sorted so nothing later in this leaf can beat the current best
+                if (rank >= best) break;
+                if (m_events[rank].matches(matchingEvent)) return rank;
+            }
+            return best;
+        }
+
+        final String value = values[node.m_level];
+        if (value != null) {
+            final Node child = node.m_exact.get(value);
+            if (child != null) {
+                best = search(child, values, matchingEvent, best);
+            }
+        }
+        if (node.m_wildcard != null) {
+            best = search(node.m_wildcard, values, matchingEvent, best);
+        }
+        return best;
+    }
+
+    /**
+     * @return the number of event definitions known to this matcher
+     */
+    public int getEventCount() {
+        return m_events.length;
+    }
+
+}
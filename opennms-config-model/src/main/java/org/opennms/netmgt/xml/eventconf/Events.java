@@ -115,6 +115,13 @@ public class Events implements Serializable {
         
 	@XmlTransient
 	private EventOrdering m_ordering;
+
+	/**
+	 * Compiled lookup for the events in this file and all loaded event files.
+	 * Only built for the root of the configuration.
+	 */
+	@XmlTransient
+	private transient volatile EventConfMatcher m_matcher;
 	
 	public EventOrdering getOrdering() {
 	    return m_ordering;
@@ -418,6 +425,19 @@ public class Events implements Serializable {
 	}
 	
 	public Event findFirstMatchingEvent(org.opennms.netmgt.xml.event.Event matchingEvent) {
+		final EventConfMatcher matcher = m_matcher;
+		if (matcher != null) {
+			return matcher.findFirstMatchingEvent(matchingEvent);
+		}
+		return findFirstMatchingEventByPartition(matchingEvent);
+	}
+
+	/**
+	 * Finds the first matching event by scanning the partitioned events of
+	 * this file followed by each of the loaded event files.  This is the
+	 * lookup used before the compiled {@link EventConfMatcher} is available.
+	 */
+	public Event findFirstMatchingEventByPartition(org.opennms.netmgt.xml.event.Event matchingEvent) {
 		String key = m_partition.group(matchingEvent);
 		SortedSet<Event> potentialMatches = new TreeSet<Event>(m_nullPartitionedEvents);
 		if (key != null) {
@@ -437,7 +457,7 @@ public class Events implements Serializable {
 		
 		for(Entry<String, Events> loadedEvents : m_loadedEventFiles.entrySet()) {
 			Events subEvents = loadedEvents.getValue();
-			Event event = subEvents.findFirstMatchingEvent(matchingEvent);
+			Event event = subEvents.findFirstMatchingEventByPartition(matchingEvent);
 			if (event != null) {
 				return event;
 			}
@@ -482,6 +502,11 @@ public class Events implements Serializable {
 	}
 	
 	public void initialize(Partition partition, EventOrdering eventOrdering) {
+		initializeEvents(partition, eventOrdering);
+		m_matcher = EventConfMatcher.compile(this);
+	}
+
+	private void initializeEvents(Partition partition, EventOrdering eventOrdering) {
 	    
 	        m_ordering = eventOrdering;
 	    
@@ -493,7 +518,8 @@ public class Events implements Serializable {
 		
 		for(Entry<String, Events> loadedEvents : m_loadedEventFiles.entrySet()) {
 			Events events = loadedEvents.getValue();
-			events.initialize(partition, m_ordering.subsequence());
+			events.initializeEvents(partition, m_ordering.subsequence());
+			events.m_matcher = null;
 		}
 
 	}
@@ -39,12 +39,21 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.InetAddress;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.io.IOUtils;
+import org.opennms.core.network.IpListFromUrl;
 import org.opennms.core.utils.ConfigFileConstants;
 import org.opennms.core.xml.JaxbUtils;
 import org.opennms.netmgt.config.collectd.CollectdConfiguration;
+import org.opennms.netmgt.config.collectd.ExcludeRange;
+import org.opennms.netmgt.config.collectd.IncludeRange;
 import org.opennms.netmgt.config.collectd.Package;
 import org.opennms.netmgt.filter.FilterDaoFactory;
 import org.opennms.netmgt.model.OnmsIpInterface;
@@ -56,8 +65,8 @@ import org.slf4j.LoggerFactory;
  * This is the singleton class used to load the configuration for the OpenNMS
  * Collection Daemon from the collectd-configuration.xml file.
  *
- * A mapping of the configured URLs to the IP list they contain is built at
- * init() time so as to avoid numerous file reads.
+ * An index of the specifics, include URLs and ranges of each package is
+ * built at init() time so as to avoid numerous file reads and range walks.
  *
  * <strong>Note: </strong>Users of this class should make sure the
  * <em>init()</em> is called before calling any other method to ensure the
@@ -74,6 +83,20 @@ public class CollectdConfigFactory implements org.opennms.netmgt.config.api.Coll
     private CollectdConfiguration m_collectdConfig;
     private final Object m_collectdConfigMutex = new Object();
 
+    /**
+     * The specifics, include URLs and ranges of the configured packages,
+     * keyed by package instance. Replaced as a whole when the configuration
+     * is loaded.
+     */
+    private volatile Map<Package, PackageAddressIndex> m_packageIndexes = Collections.emptyMap();
+
+    /**
+     * Hash sets of the filter results, keyed by filter rule. Filled as the
+     * rules are first evaluated and cleared when the configuration is loaded
+     * or {@link #rebuildPackageIpListMap()} is called.
+     */
+    private final ConcurrentMap<String, Set<InetAddress>> m_filterResults = new ConcurrentHashMap<String, Set<InetAddress>>();
+
     private final String m_fileName;
     private final String m_serverName;
     private final boolean m_verifyServer;
@@ -124,14 +147,57 @@ public class CollectdConfigFactory implements org.opennms.netmgt.config.api.Coll
         try {
             isr = new InputStreamReader(stream);
             CollectdConfiguration config = JaxbUtils.unmarshal(CollectdConfiguration.class, isr);
+            final Map<Package, PackageAddressIndex> packageIndexes = new IdentityHashMap<Package, PackageAddressIndex>();
+            for (final Package pkg : config.getPackages()) {
+                packageIndexes.put(pkg, createPackageIndex(pkg));
+            }
             synchronized (m_collectdConfigMutex) {
                 m_collectdConfig = config;
+                m_packageIndexes = packageIndexes;
             }
+            m_filterResults.clear();
         } finally {
             IOUtils.closeQuietly(isr);
         }
     }
 
+    /**
+     * Compiles the specifics, include URLs and ranges of a package into a
+     * {@link PackageAddressIndex}. The filter is evaluated separately since
+     * its result changes as interfaces are provisioned.
+     */
+    private static PackageAddressIndex createPackageIndex(final Package pkg) {
+        final PackageAddressIndex.Builder builder = PackageAddressIndex.builder()
+            .includeAll(pkg.getIncludeRanges().size() == 0 && pkg.getSpecifics().size() == 0);
+        for (final IncludeRange rng : pkg.getIncludeRanges()) {
+            // an empty range does not match anything here
+            if (rng.getBeginAsAddress().isLessThanOrEqualTo(rng.getEndAsAddress())) {
+                builder.addIncludeRange(rng.getBegin(), rng.getEnd());
+            }
+        }
+        for (final ExcludeRange rng : pkg.getExcludeRanges()) {
+            if (rng.getBeginAsAddress().isLessThanOrEqualTo(rng.getEndAsAddress())) {
+                builder.addExcludeRange(rng.getBegin(), rng.getEnd());
+            }
+        }
+        for (final String spec : pkg.getSpecifics()) {
+            builder.addSpecific(spec);
+        }
+        // URL entries are matched by address, just like the specifics
+        for (final String includeURL : pkg.getIncludeUrls()) {
+            for (final String includeAddr : IpListFromUrl.fetch(includeURL)) {
+                builder.addSpecific(includeAddr);
+            }
+        }
+        return builder.build();
+    }
+
+    private PackageAddressIndex getPackageIndex(final Package pkg) {
+        final PackageAddressIndex index = m_packageIndexes.get(pkg);
+        // packages that are not part of the loaded configuration are compiled on the fly
+        return index == null ? createPackageIndex(pkg) : index;
+    }
+
     /**
      * Reload the config from the default config file
      *
@@ -308,6 +374,32 @@ public class CollectdConfigFactory implements org.opennms.netmgt.config.api.Coll
         }
     }
 
+    /**
+     * Returns the addresses that pass a filter rule. The rule is only
+     * evaluated against the database the first time it is asked for after
+     * the cached results were cleared.
+     */
+    private Set<InetAddress> getFilterResult(final String filterRules) {
+        Set<InetAddress> ipSet = m_filterResults.get(filterRules);
+        if (ipSet == null) {
+            final List<InetAddress> ipList = FilterDaoFactory.getInstance().getActiveIPAddressList(filterRules);
+            LOG.debug("getFilterResult: filter rules {}: ipList size = {}", filterRules, ipList.size());
+            ipSet = new HashSet<InetAddress>(ipList);
+            m_filterResults.put(filterRules, ipSet);
+        }
+        return ipSet;
+    }
+
+    /**
+     * Clears the cached filter results, so that the filters of the packages
+     * are evaluated against the database again. Call this when interfaces
+     * may have been added to or changed in the database.
+     */
+    @Override
+    public void rebuildPackageIpListMap() {
+        m_filterResults.clear();
+    }
+
     private static String getFilterRule(String filter, String localServer, boolean verifyServer) {
         StringBuffer filterRules = new StringBuffer(filter);
     
@@ -328,9 +420,6 @@ public class CollectdConfigFactory implements org.opennms.netmgt.config.api.Coll
 
         boolean filterPassed = false;
 
-        // get list of IPs in this package
-        List<InetAddress> ipList = Collections.emptyList();
-
         //
         // Get a list of IP address per package against the filter rules from
         // database and populate the package, IP list map.
@@ -339,8 +428,7 @@ public class CollectdConfigFactory implements org.opennms.netmgt.config.api.Coll
         
         LOG.debug("interfaceInFilter: package is {}. filter rules are {}", pkg.getName(), filterRules);
         try {
-            ipList = FilterDaoFactory.getInstance().getActiveIPAddressList(filterRules);
-            filterPassed = ipList.contains(ifaceAddress);
+            filterPassed = getFilterResult(filterRules).contains(ifaceAddress);
             if (!filterPassed) {
                 LOG.debug("interfaceInFilter: Interface {} passed filter for package {}?: false", iface, pkg.getName());
             }
@@ -382,11 +470,10 @@ public class CollectdConfigFactory implements org.opennms.netmgt.config.api.Coll
 
         byte[] addr = toIpAddrBytes(iface);
 
-        boolean has_range_include = pkg.hasIncludeRange(iface);
-        boolean has_specific = pkg.hasSpecific(addr);
-
-        has_specific = pkg.hasSpecificUrl(iface, has_specific);
-        boolean has_range_exclude = pkg.hasExcludeRange(iface);
+        final PackageAddressIndex index = getPackageIndex(pkg);
+        boolean has_range_include = index.isIncluded(addr);
+        boolean has_specific = index.isSpecific(iface, addr);
+        boolean has_range_exclude = index.isExcluded(addr);
 
         boolean packagePassed = has_specific || (has_range_include && !has_range_exclude);
         if(packagePassed) {
@@ -64,7 +64,13 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
      */
     private String m_programmaticStoreRelativePath = DEFAULT_PROGRAMMATIC_STORE_RELATIVE_PATH;
 
-	private Events m_events;
+	/**
+	 * The current configuration.  A reload, and every change made through
+	 * this DAO, builds and initializes a new {@link Events} instance and then
+	 * publishes it here, so readers always see a complete configuration
+	 * without having to lock.
+	 */
+	private volatile Events m_events;
 
 	private Resource m_configResource;
 
@@ -174,40 +180,69 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 	}
 
 	@Override
-	public void addEvent(Event event) {
-		m_events.addEvent(event);
-		m_events.initialize(m_partition, new EventOrdering());
+	public synchronized void addEvent(Event event) {
+		Events events = copyEvents(m_events);
+		events.addEvent(event);
+		events.initialize(m_partition, new EventOrdering());
+
+		m_events = events;
 	}
 
 	@Override
-	public void addEventToProgrammaticStore(Event event) {
-		Events programmaticEvents = m_events.getLoadEventsByFile(m_programmaticStoreRelativePath);
-		if (programmaticEvents == null) {
-			programmaticEvents = new Events();
-			m_events.addLoadedEventFile(m_programmaticStoreRelativePath, programmaticEvents);
-		}
+	public synchronized void addEventToProgrammaticStore(Event event) {
+		Events events = copyEvents(m_events);
+		Events programmaticEvents = events.getLoadEventsByFile(m_programmaticStoreRelativePath);
+		programmaticEvents = programmaticEvents == null ? new Events() : copyEvents(programmaticEvents);
 
 		programmaticEvents.addEvent(event);
-		m_events.initialize(m_partition, new EventOrdering());
+		events.addLoadedEventFile(m_programmaticStoreRelativePath, programmaticEvents);
+		events.initialize(m_partition, new EventOrdering());
 
+		m_events = events;
 	}
 
 	@Override
-	public boolean removeEventFromProgrammaticStore(Event event) {
-		Events programmaticEvents = m_events.getLoadEventsByFile(m_programmaticStoreRelativePath);
+	public synchronized boolean removeEventFromProgrammaticStore(Event event) {
+		Events events = copyEvents(m_events);
+		Events programmaticEvents = events.getLoadEventsByFile(m_programmaticStoreRelativePath);
 		if (programmaticEvents == null) return false;
 
+		programmaticEvents = copyEvents(programmaticEvents);
 		programmaticEvents.removeEvent(event);
 		if (programmaticEvents.getEventCount() <= 0) {
-			m_events.removeLoadedEventFile(m_programmaticStoreRelativePath);
-		} 
+			events.removeLoadedEventFile(m_programmaticStoreRelativePath);
+		} else {
+			events.addLoadedEventFile(m_programmaticStoreRelativePath, programmaticEvents);
+		}
+
+		events.initialize(m_partition, new EventOrdering());
 
-		m_events.initialize(m_partition, new EventOrdering());
+		m_events = events;
 
 		return true;
 
 	}
 
+	/**
+	 * Copies the event lists and the loaded event files of the given
+	 * {@link Events}, so that they can be changed without affecting the
+	 * published configuration.  The events themselves are shared.
+	 */
+	private static Events copyEvents(Events events) {
+		Events copy = new Events();
+		copy.setGlobal(events.getGlobal());
+		copy.setEventCollection(events.getEventCollection());
+		for (String eventFile : events.getEventFile()) {
+			Events loadedEvents = events.getLoadEventsByFile(eventFile);
+			if (loadedEvents == null) {
+				copy.addEventFile(eventFile);
+			} else {
+				copy.addLoadedEventFile(eventFile, loadedEvents);
+			}
+		}
+		return copy;
+	}
+
 	@Override
 	public boolean isSecureTag(String tag) {
 		return m_events.isSecureTag(tag);
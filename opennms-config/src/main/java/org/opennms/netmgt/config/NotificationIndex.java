@@ -0,0 +1,304 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.netmgt.config.notifications.Notification;
+import org.opennms.netmgt.config.notifications.Notifications;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A routing index over the notifications in <code>notifications.xml</code>.
+ *
+ * Notifications with a literal UEI are kept in a hash map, the regular
+ * expressions of the <code>~</code> UEIs and of the event severities are
+ * compiled once, and the notifications that apply to a UEI are remembered
+ * so that the regular expressions are only run for the first event with
+ * that UEI. Candidates are always returned in the order in which they
+ * appear in the configuration.
+ *
+ * Every entry also carries a cache of the node/interface/service
+ * combinations that its filter rule was found to select or reject. The
+ * cache is emptied with {@link #invalidateMemberships(long)} when the
+ * inventory changes.
+ */
+public class NotificationIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationIndex.class);
+
+    /** the UEI of notifications that apply to all events */
+    public static final String MATCH_ANY_UEI = "MATCH-ANY-UEI";
+
+    /** the number of UEIs for which the candidates are remembered */
+    private static final int MAX_UEIS = 10000;
+
+    /** the number of memberships an entry remembers before it starts over */
+    private static final int MAX_MEMBERSHIPS = 10000;
+
+    private static final Comparator<Entry> POSITION_COMPARATOR = new Comparator<Entry>() {
+        @Override
+        public int compare(final Entry a, final Entry b) {
+            return Integer.compare(a.m_position, b.m_position);
+        }
+    };
+
+    /**
+     * A notification together with its compiled patterns and the cache of
+     * its filter rule results.
+     */
+    public static class Entry {
+        private final int m_position;
+        private final Notification m_notification;
+        private final Pattern m_severityPattern;
+        private final boolean m_validSeverity;
+
+        /** membership by node id and constraints, node id 0 for events without a node */
+        private final ConcurrentMap<Long, Map<String, Boolean>> m_memberships = new ConcurrentHashMap<Long, Map<String, Boolean>>();
+        private final AtomicInteger m_membershipCount = new AtomicInteger();
+
+        private Entry(final int position, final Notification notification) {
+            m_position = position;
+            m_notification = notification;
+
+            Pattern severityPattern = null;
+            boolean validSeverity = true;
+            if (notification.getEventSeverity() != null) {
+                try {
+                    severityPattern = Pattern.compile(notification.getEventSeverity().toLowerCase());
+                } catch (final PatternSyntaxException e) {
+                    LOG.error("Invalid event severity expression for notification {}: {}", notification.getName(), notification.getEventSeverity(), e);
+                    validSeverity = false;
+                }
+            }
+            m_severityPattern = severityPattern;
+            m_validSeverity = validSeverity;
+        }
+
+        /**
+         * <p>getNotification</p>
+         *
+         * @return a {@link org.opennms.netmgt.config.notifications.Notification} object.
+         */
+        public Notification getNotification() {
+            return m_notification;
+        }
+
+        /**
+         * Returns whether the severity of an event matches the event
+         * severity expression of the notification, if there is one.
+         *
+         * @param severity the severity of the event
+         * @return a boolean.
+         */
+        public boolean matchesSeverity(final String severity) {
+            if (m_severityPattern == null) {
+                return m_validSeverity;
+            }
+            return m_severityPattern.matcher(severity.toLowerCase()).matches();
+        }
+
+        /**
+         * Returns whether the filter rule was found to select a combination
+         * of node, interface and service.
+         *
+         * @param nodeId the node id of the event, or 0
+         * @param constraints the constraints that were added to the rule
+         * @return the result, or null if it is not known
+         */
+        public Boolean getMembership(final long nodeId, final String constraints) {
+            final Map<String, Boolean> memberships = m_memberships.get(nodeId);
+            return memberships == null ? null : memberships.get(constraints);
+        }
+
+        /**
+         * Remembers whether the filter rule selects a combination of node,
+         * interface and service.
+         *
+         * @param nodeId the node id of the event, or 0
+         * @param constraints the constraints that were added to the rule
+         * @param member the result of the filter rule
+         */
+        public void putMembership(final long nodeId, final String constraints, final boolean member) {
+            if (m_membershipCount.incrementAndGet() > MAX_MEMBERSHIPS) {
+                clearMemberships();
+            }
+            Map<String, Boolean> memberships = m_memberships.get(nodeId);
+            if (memberships == null) {
+                final Map<String, Boolean> created = new ConcurrentHashMap<String, Boolean>();
+                memberships = m_memberships.putIfAbsent(nodeId, created);
+                if (memberships == null) {
+                    memberships = created;
+                }
+            }
+            memberships.put(constraints, member);
+        }
+
+        private void clearMemberships() {
+            m_memberships.clear();
+            m_membershipCount.set(0);
+        }
+
+        private void removeMemberships(final long nodeId) {
+            m_memberships.remove(nodeId);
+            // events without a node id are matched against all nodes
+            m_memberships.remove(0L);
+        }
+    }
+
+    private final Notifications m_notifications;
+
+    private final Map<String, List<Entry>> m_exactEntries = new HashMap<String, List<Entry>>();
+
+    private final List<Entry> m_anyEntries = new ArrayList<Entry>();
+
+    private final List<Entry> m_regexEntries = new ArrayList<Entry>();
+
+    private final List<Pattern> m_regexPatterns = new ArrayList<Pattern>();
+
+    private final List<Entry> m_entries = new ArrayList<Entry>();
+
+    private final ConcurrentMap<String, List<Entry>> m_candidates = new ConcurrentHashMap<String, List<Entry>>();
+
+    /**
+     * <p>Constructor for NotificationIndex.</p>
+     *
+     * @param notifications the notification configuration
+     */
+    public NotificationIndex(final Notifications notifications) {
+        m_notifications = notifications;
+
+        int position = 0;
+        for (final Notification notification : notifications.getNotificationCollection()) {
+            final Entry entry = new Entry(position++, notification);
+            m_entries.add(entry);
+
+            final String uei = notification.getUei();
+            if (MATCH_ANY_UEI.equals(uei)) {
+                m_anyEntries.add(entry);
+            } else if (uei.length() > 0 && uei.charAt(0) == '~') {
+                try {
+                    m_regexPatterns.add(Pattern.compile(uei.substring(1)));
+                    m_regexEntries.add(entry);
+                } catch (final PatternSyntaxException e) {
+                    LOG.error("Invalid UEI expression for notification {}: {}", notification.getName(), uei, e);
+                }
+            } else {
+                List<Entry> entries = m_exactEntries.get(uei);
+                if (entries == null) {
+                    entries = new ArrayList<Entry>(1);
+                    m_exactEntries.put(uei, entries);
+                }
+                entries.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Returns the configuration the index was built from.
+     *
+     * @return a {@link org.opennms.netmgt.config.notifications.Notifications} object.
+     */
+    public Notifications getNotifications() {
+        return m_notifications;
+    }
+
+    /**
+     * Returns the notifications whose UEI matches an event UEI, in
+     * configuration order, whether they are turned on or not.
+     *
+     * @param uei the UEI of the event
+     * @return an unmodifiable list of entries
+     */
+    public List<Entry> getCandidates(final String uei) {
+        List<Entry> candidates = m_candidates.get(uei);
+        if (candidates == null) {
+            candidates = findCandidates(uei);
+            if (m_candidates.size() >= MAX_UEIS) {
+                m_candidates.clear();
+            }
+            m_candidates.put(uei, candidates);
+        }
+        return candidates;
+    }
+
+    private List<Entry> findCandidates(final String uei) {
+        final List<Entry> candidates = new ArrayList<Entry>();
+        final List<Entry> exactEntries = m_exactEntries.get(uei);
+        if (exactEntries != null) {
+            candidates.addAll(exactEntries);
+        }
+        candidates.addAll(m_anyEntries);
+        for (int i = 0; i < m_regexPatterns.size(); i++) {
+            if (m_regexPatterns.get(i).matcher(uei).matches()) {
+                candidates.add(m_regexEntries.get(i));
+            }
+        }
+        if (candidates.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Collections.sort(candidates, POSITION_COMPARATOR);
+        return Collections.unmodifiableList(candidates);
+    }
+
+    /**
+     * Returns whether any notification applies to a UEI.
+     *
+     * @param uei the UEI of the event
+     * @return a boolean.
+     */
+    public boolean hasUei(final String uei) {
+        return !getCandidates(uei).isEmpty();
+    }
+
+    /**
+     * Discards the cached filter rule results that involve a node.
+     *
+     * @param nodeId the node id, or 0 to discard all of them
+     */
+    public void invalidateMemberships(final long nodeId) {
+        for (final Entry entry : m_entries) {
+            if (nodeId == 0) {
+                entry.clearMemberships();
+            } else {
+                entry.removeMemberships(nodeId);
+            }
+        }
+    }
+}
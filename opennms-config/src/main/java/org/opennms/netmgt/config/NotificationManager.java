@@ -66,6 +66,7 @@ import org.opennms.netmgt.config.notifications.Notifications;
 import org.opennms.netmgt.config.notifications.Parameter;
 import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.filter.FilterDaoFactory;
+import org.opennms.netmgt.filter.FilterSnapshot;
 import org.opennms.netmgt.filter.api.FilterParseException;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Parm;
@@ -150,6 +151,11 @@ public abstract class NotificationManager {
     NotifdConfigManager m_configManager;
     private DataSource m_dataSource;
 
+    /** the routing index over m_notifications, rebuilt when the configuration changes */
+    private volatile NotificationIndex m_index;
+
+    private volatile boolean m_cacheMemberships = Boolean.getBoolean("org.opennms.netmgt.notifd.cacheMemberships");
+
     /**
      * A parameter expansion algorithm, designed to replace strings delimited by
      * percent signs '%' with a value supplied by a Map object.
@@ -223,18 +229,67 @@ public abstract class NotificationManager {
     public boolean hasUei(final String uei) throws IOException, MarshalException, ValidationException {
         update();
 
-        for (Notification notif : m_notifications.getNotificationCollection()) {
-            if (uei.equals(notif.getUei()) || "MATCH-ANY-UEI".equals(notif.getUei())) {
-                return true;
-            } else if (notif.getUei().charAt(0) == '~') {
-                if (uei.matches(notif.getUei().substring(1))) {
-                    return true;
-                }
+        return getNotificationIndex().hasUei(uei);
+    }
 
+    /**
+     * Returns the routing index over the current configuration, building it
+     * if the configuration has been (re)loaded since it was last built.
+     *
+     * @return a {@link org.opennms.netmgt.config.NotificationIndex} object.
+     */
+    protected NotificationIndex getNotificationIndex() {
+        NotificationIndex index = m_index;
+        if (index == null || index.getNotifications() != m_notifications) {
+            synchronized (this) {
+                index = m_index;
+                if (index == null || index.getNotifications() != m_notifications) {
+                    index = new NotificationIndex(m_notifications);
+                    m_index = index;
+                }
             }
         }
+        return index;
+    }
+
+    /**
+     * <p>isCacheMemberships</p>
+     *
+     * @return true if the results of the notification filter rules are cached
+     */
+    public boolean isCacheMemberships() {
+        return m_cacheMemberships;
+    }
+
+    /**
+     * <p>setCacheMemberships</p>
+     *
+     * @param cacheMemberships true to cache the results of the notification filter rules
+     */
+    public void setCacheMemberships(final boolean cacheMemberships) {
+        m_cacheMemberships = cacheMemberships;
+        final NotificationIndex index = m_index;
+        if (index != null) {
+            index.invalidateMemberships(0);
+        }
+    }
 
-        return false;
+    /**
+     * Discards the cached filter rule results that an inventory change may
+     * have made stale. Called for every event that notifd receives.
+     *
+     * @param event a {@link org.opennms.netmgt.xml.event.Event} object.
+     */
+    public void handleTopologyEvent(final Event event) {
+        final NotificationIndex index = m_index;
+        if (index == null || !FilterSnapshot.isTopologyEvent(event.getUei())) {
+            return;
+        }
+        if (event.hasNodeid() && !EventConstants.INTERFACE_REPARENTED_EVENT_UEI.equals(event.getUei())) {
+            index.invalidateMemberships(event.getNodeid());
+        } else {
+            index.invalidateMemberships(0);
+        }
     }
 
     /**
@@ -262,26 +317,12 @@ public abstract class NotificationManager {
             return null;
         }
 
-        for (Notification curNotif : m_notifications.getNotificationCollection()) {
+        // only the notifications whose UEI matches the event are candidates
+        for (NotificationIndex.Entry entry : getNotificationIndex().getCandidates(event.getUei())) {
+            final Notification curNotif = entry.getNotification();
 
             LOG.debug("Checking notification {} against event {} with UEI {}", curNotif.getUei(), event.getDbid(), event.getUei());
 
-            if (event.getUei().equals(curNotif.getUei()) || "MATCH-ANY-UEI".equals(curNotif.getUei())) {
-                // Match!
-            } else if (curNotif.getUei().charAt(0) == '~') {
-                if (event.getUei().matches(curNotif.getUei().substring(1))) {
-                    // Match!
-                } else {
-
-                    LOG.debug("Notification regex {} failed to match event UEI: {}", event.getUei(), curNotif.getUei());
-                    continue;
-                }
-            } else {
-
-                LOG.debug("Notification UEI {} did not match UEI of event {}: {}", curNotif.getUei(), event.getDbid(), event.getUei());
-                continue;
-            }
-
             /**
              * Check if event severity matches pattern in notification
              */
@@ -290,7 +331,7 @@ public abstract class NotificationManager {
             // parameter is optional, return true if not set
             if (curNotif.getEventSeverity() == null) {
                 // Skip matching on severity
-            } else if (event.getSeverity().toLowerCase().matches(curNotif.getEventSeverity().toLowerCase())) {
+            } else if (entry.matchesSeverity(event.getSeverity())) {
                 // Severities match
             } else {
 
@@ -305,7 +346,7 @@ public abstract class NotificationManager {
             // Then the service has to match if configured, the interface if configured, and the node if configured.
 
             if (curNotif.getStatus().equals("on")) {
-                if (nodeInterfaceServiceValid(curNotif, event)) {
+                if (nodeInterfaceServiceValid(curNotif, event, m_cacheMemberships ? entry : null)) {
                     boolean parmsmatched = getConfigManager().matchNotificationParameters(event, curNotif);
 
                     if (!parmsmatched) {
@@ -355,6 +396,10 @@ public abstract class NotificationManager {
      * @return a boolean.
      */
     protected boolean nodeInterfaceServiceValid(final Notification notif, final Event event) {
+        return nodeInterfaceServiceValid(notif, event, null);
+    }
+
+    private boolean nodeInterfaceServiceValid(final Notification notif, final Event event, final NotificationIndex.Entry cache) {
         Assert.notNull(notif, "notif argument must not be null");
         Assert.notNull(event, "event argument must not be null");
         Assert.notNull(notif.getRule(), "getRule() on notif argument must not return null");
@@ -389,9 +434,20 @@ public abstract class NotificationManager {
             }
         }
 
+        if (cache != null) {
+            final Boolean member = cache.getMembership(event.getNodeid(), constraints.toString());
+            if (member != null) {
+                return member.booleanValue();
+            }
+        }
+
         String rule = "((" + notif.getRule() + ")" + constraints + ")";
 
-        return isRuleMatchingFilter(notif, rule);
+        final boolean member = isRuleMatchingFilter(notif, rule);
+        if (cache != null) {
+            cache.putMembership(event.getNodeid(), constraints.toString(), member);
+        }
+        return member;
     }
 
     private boolean isRuleMatchingFilter(final Notification notif, final String rule) {
@@ -1119,6 +1175,8 @@ public abstract class NotificationManager {
         String xmlString = stringWriter.toString();
         saveXML(xmlString);
 
+        // the notifications were changed in place
+        m_index = null;
         update();
     }
 
@@ -0,0 +1,345 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.config;
+
+import static org.opennms.core.utils.InetAddressUtils.addr;
+import static org.opennms.core.utils.InetAddressUtils.toIpAddrBytes;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.opennms.core.utils.ByteArrayComparator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An immutable, pre-compiled view of the addresses selected by a poller,
+ * threshd or collectd package.
+ *
+ * The filter result is kept in a hash set, the specifics and the entries of
+ * the include URLs in hash sets and the include and exclude ranges are
+ * merged into sorted, non-overlapping intervals that are searched with a
+ * binary search. IPv4 and IPv6 addresses are ordered like the
+ * {@link ByteArrayComparator} orders them, so both kinds of ranges can live
+ * in the same index.
+ *
+ * An address is in the package if it passed the filter and it is either a
+ * specific (or listed in an include URL) or it is in an include range and
+ * not in an exclude range.
+ */
+public class PackageAddressIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(PackageAddressIndex.class);
+
+    private static final ByteArrayComparator COMPARATOR = new ByteArrayComparator();
+
+    /** addresses selected by the filter rule, or null if there is no filter */
+    private final Set<InetAddress> m_filterAddresses;
+
+    private final Set<ByteBuffer> m_specifics;
+
+    private final Set<String> m_urlEntries;
+
+    private final boolean m_includeAll;
+
+    private final RangeSet m_includeRanges;
+
+    private final RangeSet m_excludeRanges;
+
+    private PackageAddressIndex(final Builder builder) {
+        m_filterAddresses = builder.m_filterAddresses;
+        m_specifics = builder.m_specifics;
+        m_urlEntries = builder.m_urlEntries;
+        m_includeAll = builder.m_includeAll;
+        m_includeRanges = new RangeSet(builder.m_includeRanges);
+        m_excludeRanges = new RangeSet(builder.m_excludeRanges);
+    }
+
+    /**
+     * <p>builder</p>
+     *
+     * @return a new {@link Builder}
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns true if the address passed the package filter. An index
+     * without a filter lets every address pass.
+     *
+     * @param addr the address to check
+     * @return a boolean.
+     */
+    public boolean isInFilter(final InetAddress addr) {
+        return m_filterAddresses == null || m_filterAddresses.contains(addr);
+    }
+
+    /**
+     * Returns true if the address is a specific of the package or is listed
+     * in one of its include URLs.
+     *
+     * @param iface the address, as configured or as found in the database
+     * @param addr the address bytes of <code>iface</code>
+     * @return a boolean.
+     */
+    public boolean isSpecific(final String iface, final byte[] addr) {
+        return m_specifics.contains(ByteBuffer.wrap(addr)) || m_urlEntries.contains(iface);
+    }
+
+    /**
+     * Returns true if the address is covered by the include ranges, or if
+     * the package includes all addresses.
+     *
+     * @param addr the address bytes
+     * @return a boolean.
+     */
+    public boolean isIncluded(final byte[] addr) {
+        return m_includeAll || m_includeRanges.contains(addr);
+    }
+
+    /**
+     * Returns true if the address is covered by the exclude ranges.
+     *
+     * @param addr the address bytes
+     * @return a boolean.
+     */
+    public boolean isExcluded(final byte[] addr) {
+        return m_excludeRanges.contains(addr);
+    }
+
+    /**
+     * Returns true if the interface passed the filter and is either specific
+     * to the package or in an include range and not in an exclude range.
+     *
+     * @param iface the address of the interface
+     * @return a boolean.
+     */
+    public boolean contains(final String iface) {
+        if (iface == null) {
+            return false;
+        }
+        final InetAddress inetAddress = addr(iface);
+        if (!isInFilter(inetAddress)) {
+            return false;
+        }
+        final byte[] addr = inetAddress.getAddress();
+        return isSpecific(iface, addr) || (isIncluded(addr) && !isExcluded(addr));
+    }
+
+    /**
+     * <p>getFilterSize</p>
+     *
+     * @return the number of addresses selected by the filter, or -1 if there
+     *         is no filter
+     */
+    public int getFilterSize() {
+        return m_filterAddresses == null ? -1 : m_filterAddresses.size();
+    }
+
+    /**
+     * Builds a {@link PackageAddressIndex}. The builder is not thread safe
+     * and should not be reused once {@link #build()} has been called.
+     */
+    public static class Builder {
+        private Set<InetAddress> m_filterAddresses = null;
+        private final Set<ByteBuffer> m_specifics = new HashSet<ByteBuffer>();
+        private final Set<String> m_urlEntries = new HashSet<String>();
+        private boolean m_includeAll = false;
+        private final List<byte[][]> m_includeRanges = new ArrayList<byte[][]>();
+        private final List<byte[][]> m_excludeRanges = new ArrayList<byte[][]>();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the addresses selected by the package filter. If no filter
+         * addresses are given, the filter is not checked at all.
+         *
+         * @param addresses the addresses returned by the filter
+         * @return this builder
+         */
+        public Builder filterAddresses(final Collection<InetAddress> addresses) {
+            m_filterAddresses = new HashSet<InetAddress>(addresses);
+            return this;
+        }
+
+        /**
+         * Treats the package as if it had an include range covering every
+         * IPv4 and IPv6 address. The rule for when that applies differs
+         * between the daemons, so it is up to the caller.
+         *
+         * @param includeAll a boolean.
+         * @return this builder
+         */
+        public Builder includeAll(final boolean includeAll) {
+            m_includeAll = includeAll;
+            return this;
+        }
+
+        /**
+         * <p>addSpecific</p>
+         *
+         * @param specific an IP address
+         * @return this builder
+         */
+        public Builder addSpecific(final String specific) {
+            final byte[] addr = parse(specific);
+            if (addr != null) {
+                m_specifics.add(ByteBuffer.wrap(addr));
+            }
+            return this;
+        }
+
+        /**
+         * Adds the entries of an include URL. The entries are matched as
+         * they are written in the file, not by address.
+         *
+         * @param entries the lines read from the URL
+         * @return this builder
+         */
+        public Builder addUrlEntries(final Collection<String> entries) {
+            if (entries != null) {
+                m_urlEntries.addAll(entries);
+            }
+            return this;
+        }
+
+        /**
+         * Adds an include range. Like
+         * {@link org.opennms.core.utils.InetAddressUtils#isInetAddressInRange(String, String, String)},
+         * a range that ends before it begins only matches its first address.
+         *
+         * @param begin the first address of the range
+         * @param end the last address of the range
+         * @return this builder
+         */
+        public Builder addIncludeRange(final String begin, final String end) {
+            addRange(m_includeRanges, begin, end);
+            return this;
+        }
+
+        /**
+         * Adds an exclude range, see {@link #addIncludeRange(String, String)}.
+         *
+         * @param begin the first address of the range
+         * @param end the last address of the range
+         * @return this builder
+         */
+        public Builder addExcludeRange(final String begin, final String end) {
+            addRange(m_excludeRanges, begin, end);
+            return this;
+        }
+
+        /**
+         * <p>build</p>
+         *
+         * @return the index
+         */
+        public PackageAddressIndex build() {
+            return new PackageAddressIndex(this);
+        }
+
+        private static void addRange(final List<byte[][]> ranges, final String begin, final String end) {
+            final byte[] b = parse(begin);
+            final byte[] e = parse(end);
+            if (b == null || e == null) {
+                return;
+            }
+            ranges.add(new byte[][] { b, COMPARATOR.compare(b, e) > 0 ? b : e });
+        }
+
+        private static byte[] parse(final String address) {
+            try {
+                return toIpAddrBytes(address);
+            } catch (final IllegalArgumentException e) {
+                LOG.warn("Ignoring invalid address '{}' in package definition", address, e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Sorted, non-overlapping address intervals.
+     */
+    private static class RangeSet {
+        private final byte[][] m_begins;
+        private final byte[][] m_ends;
+
+        private RangeSet(final List<byte[][]> ranges) {
+            final List<byte[][]> sorted = new ArrayList<byte[][]>(ranges);
+            Collections.sort(sorted, new Comparator<byte[][]>() {
+                @Override
+                public int compare(final byte[][] a, final byte[][] b) {
+                    return COMPARATOR.compare(a[0], b[0]);
+                }
+            });
+
+            // merge overlapping ranges so that the ends are sorted, too
+            final List<byte[][]> merged = new ArrayList<byte[][]>(sorted.size());
+            for (final byte[][] range : sorted) {
+                final byte[][] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+                if (last != null && COMPARATOR.compare(range[0], last[1]) <= 0) {
+                    if (COMPARATOR.compare(range[1], last[1]) > 0) {
+                        last[1] = range[1];
+                    }
+                } else {
+                    merged.add(new byte[][] { range[0], range[1] });
+                }
+            }
+
+            m_begins = new byte[merged.size()][];
+            m_ends = new byte[merged.size()][];
+            for (int i = 0; i < merged.size(); i++) {
+                m_begins[i] = merged.get(i)[0];
+                m_ends[i] = merged.get(i)[1];
+            }
+        }
+
+        private boolean contains(final byte[] addr) {
+            if (m_begins.length == 0) {
+                return false;
+            }
+            // find the last range that begins at or before the address
+            final int pos = Arrays.binarySearch(m_begins, addr, COMPARATOR);
+            if (pos >= 0) {
+                return true;
+            }
+            final int i = -pos - 2;
+            return i >= 0 && COMPARATOR.compare(addr, m_ends[i]) <= 0;
+        }
+    }
+}
@@ -53,7 +53,6 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.io.IOUtils;
 import org.opennms.core.network.IpListFromUrl;
-import org.opennms.core.utils.ByteArrayComparator;
 import org.opennms.core.xml.JaxbUtils;
 import org.opennms.core.xml.MarshallingResourceFailureException;
 import org.opennms.netmgt.config.poller.CriticalService;
@@ -150,10 +149,11 @@ abstract public class PollerConfigManager implements PollerConfig {
      */
     private Map<String, List<String>> m_urlIPMap;
     /**
-     * A mapping of the configured package to a list of IPs selected via filter
-     * rules, so as to avoid repetitive database access.
+     * A mapping of the configured package to an index of the IPs selected via
+     * filter rules, specifics, URLs and ranges, so as to avoid repetitive
+     * database access and range walks.
      */
-    private AtomicReference<Map<Package, List<InetAddress>>> m_pkgIpMap = new AtomicReference<Map<Package, List<InetAddress>>>();;
+    private AtomicReference<Map<Package, PackageAddressIndex>> m_pkgIpMap = new AtomicReference<Map<Package, PackageAddressIndex>>();
     /**
      * A mapp of service names to service monitors. Constructed based on data in
      * the configuration file.
@@ -280,46 +280,6 @@ abstract public class PollerConfigManager implements PollerConfig {
         }
     }
 
-    /**
-     * This method is used to determine if the named interface is included in
-     * the passed package's url includes. If the interface is found in any of
-     * the URL files, then a value of true is returned, else a false value is
-     * returned.
-     * 
-     * <pre>
-     * 
-     *  The file URL is read and each entry in this file checked. Each line
-     *   in the URL file can be one of -
-     *   &lt;IP&gt;&lt;space&gt;#&lt;comments&gt;
-     *   or
-     *   &lt;IP&gt;
-     *   or
-     *   #&lt;comments&gt;
-     *  
-     *   Lines starting with a '#' are ignored and so are characters after
-     *   a '&lt;space&gt;#' in a line.
-     *  
-     * </pre>
-     * 
-     * @param addr
-     *            The interface to test against the package's URL
-     * @param url
-     *            The url file to read
-     * 
-     * @return True if the interface is included in the url, false otherwise.
-     */
-    private boolean interfaceInUrl(final String addr, final String url) {
-        boolean bRet = false;
-    
-        // get list of IPs in this URL
-        final List<String> iplist = m_urlIPMap.get(url);
-        if (iplist != null && iplist.size() > 0) {
-            bRet = iplist.contains(addr);
-        }
-    
-        return bRet;
-    }
-
     /**
      * This method returns the boolean flag xmlrpc to indicate if notification
      * to external xmlrpc server is needed.
@@ -436,7 +396,7 @@ abstract public class PollerConfigManager implements PollerConfig {
         getReadLock().lock();
         
         try {
-            Map<Package, List<InetAddress>> pkgIpMap = new HashMap<Package, List<InetAddress>>();
+            Map<Package, PackageAddressIndex> pkgIpMap = new HashMap<Package, PackageAddressIndex>();
             
             for(final Package pkg : packages()) {
         
@@ -448,7 +408,7 @@ abstract public class PollerConfigManager implements PollerConfig {
                     LOG.debug("createPackageIpMap: package {}: ipList size = {}", pkg.getName(), ipList.size());
         
                     if (ipList.size() > 0) {
-                        pkgIpMap.put(pkg, ipList);
+                        pkgIpMap.put(pkg, createPackageIndex(pkg, ipList));
                     }
                     
                 } catch (final Throwable t) {
@@ -464,6 +424,31 @@ abstract public class PollerConfigManager implements PollerConfig {
         }
     }
 
+    /**
+     * Compiles the filter result, specifics, include URLs and ranges of a
+     * package into a {@link PackageAddressIndex}.
+     */
+    private PackageAddressIndex createPackageIndex(final Package pkg, final List<InetAddress> ipList) {
+        // if there are NO include ranges then treat act as if the user include
+        // the range of all valid addresses (0.0.0.0 - 255.255.255.255, ::1 - ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff)
+        final PackageAddressIndex.Builder builder = PackageAddressIndex.builder()
+            .filterAddresses(ipList)
+            .includeAll(pkg.getIncludeRanges().size() == 0 && pkg.getSpecifics().size() == 0 && pkg.getIncludeUrls().size() == 0);
+        for (final IncludeRange rng : pkg.getIncludeRanges()) {
+            builder.addIncludeRange(rng.getBegin(), rng.getEnd());
+        }
+        for (final ExcludeRange rng : pkg.getExcludeRanges()) {
+            builder.addExcludeRange(rng.getBegin(), rng.getEnd());
+        }
+        for (final String spec : pkg.getSpecifics()) {
+            builder.addSpecific(spec);
+        }
+        for (final String includeUrl : pkg.getIncludeUrls()) {
+            builder.addUrlEntries(m_urlIPMap.get(includeUrl));
+        }
+        return builder.build();
+    }
+
     /** {@inheritDoc} */
     @Override
     public List<InetAddress> getIpList(final Package pkg) {
@@ -510,14 +495,9 @@ abstract public class PollerConfigManager implements PollerConfig {
      */
     @Override
     public boolean isInterfaceInPackage(final String iface, final Package pkg) {
-        boolean filterPassed = false;
-        final InetAddress ifaceAddr = addr(iface);
-    
-        // get list of IPs in this package
-        final List<InetAddress> ipList = m_pkgIpMap.get().get(pkg);
-        if (ipList != null && ipList.size() > 0) {
-			filterPassed = ipList.contains(ifaceAddr);
-        }
+        // get the index of the IPs in this package
+        final PackageAddressIndex index = m_pkgIpMap.get().get(pkg);
+        final boolean filterPassed = index != null && index.isInFilter(addr(iface));
 
         LOG.debug("interfaceInPackage: Interface {} passed filter for package {}?: {}", iface, pkg.getName(), Boolean.valueOf(filterPassed));
     
@@ -527,65 +507,19 @@ abstract public class PollerConfigManager implements PollerConfig {
         // Ensure that the interface is in the specific list or
         // that it is in the include range and is not excluded
         //
-        boolean has_specific = false;
-        boolean has_range_include = false;
-        boolean has_range_exclude = false;
- 
-        // if there are NO include ranges then treat act as if the user include
-        // the range of all valid addresses (0.0.0.0 - 255.255.255.255, ::1 - ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff)
-        has_range_include = pkg.getIncludeRanges().size() == 0 && pkg.getSpecifics().size() == 0 && pkg.getIncludeUrls().size() == 0;
-        
         final byte[] addr = toIpAddrBytes(iface);
 
-        for (final IncludeRange rng : pkg.getIncludeRanges()) {
-            int comparison = new ByteArrayComparator().compare(addr, toIpAddrBytes(rng.getBegin()));
-            if (comparison > 0) {
-                int endComparison = new ByteArrayComparator().compare(addr, toIpAddrBytes(rng.getEnd()));
-                if (endComparison <= 0) {
-                    has_range_include = true;
-                    break;
-                }
-            } else if (comparison == 0) {
-                has_range_include = true;
-                break;
-            }
-        }
-
-        for (final String spec : pkg.getSpecifics()) {
-            if (new ByteArrayComparator().compare(addr, toIpAddrBytes(spec)) == 0) {
-                has_specific = true;
-                LOG.debug("interfaceInPackage: Interface {} defined as 'specific'", iface);
-                break;
-            }
-        }
-    
-        for (final String includeUrl : pkg.getIncludeUrls()) {
-            if (interfaceInUrl(iface, includeUrl)) {
-                has_specific = true;
-                LOG.debug("interfaceInPackage: Interface {} exist on {}", iface, includeUrl);
-                break;
-            }
+        if (index.isSpecific(iface, addr)) {
+            LOG.debug("interfaceInPackage: Interface {} defined as 'specific' or exists in an include URL", iface);
+            return true;
         }
 
-        if (!has_specific) {
-            for (final ExcludeRange rng : pkg.getExcludeRanges()) {
-                int comparison = new ByteArrayComparator().compare(addr, toIpAddrBytes(rng.getBegin()));
-                if (comparison > 0) {
-                    int endComparison = new ByteArrayComparator().compare(addr, toIpAddrBytes(rng.getEnd()));
-                    if (endComparison <= 0) {
-                        LOG.debug("interfaceInPackage: Interface {} matches an exclude range", iface);
-                        has_range_exclude = true;
-                        break;
-                    }
-                } else if (comparison == 0) {
-                    LOG.debug("interfaceInPackage: Interface {} matches an exclude range", iface);
-                    has_range_exclude = true;
-                    break;
-                }
-            }
+        if (index.isExcluded(addr)) {
+            LOG.debug("interfaceInPackage: Interface {} matches an exclude range", iface);
+            return false;
         }
 
-        return has_specific || (has_range_include && !has_range_exclude);
+        return index.isIncluded(addr);
     }
 
     /**
@@ -32,7 +32,6 @@
 package org.opennms.netmgt.config;
 
 import static org.opennms.core.utils.InetAddressUtils.addr;
-import static org.opennms.core.utils.InetAddressUtils.isInetAddressInRange;
 import static org.opennms.core.utils.InetAddressUtils.toIpAddrBytes;
 
 import java.io.IOException;
@@ -48,7 +47,6 @@ import org.exolab.castor.xml.MarshalException;
 import org.exolab.castor.xml.Marshaller;
 import org.exolab.castor.xml.ValidationException;
 import org.opennms.core.network.IpListFromUrl;
-import org.opennms.core.utils.ByteArrayComparator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.opennms.core.xml.CastorUtils;
@@ -78,10 +76,11 @@ public abstract class ThreshdConfigManager {
      */
     private Map<String, List<String>> m_urlIPMap;
     /**
-     * A mapping of the configured package to a list of IPs selected via filter
-     * rules, so as to avoid repetitive database access.
+     * A mapping of the configured package to an index of the IPs selected via
+     * filter rules, specifics, URLs and ranges, so as to avoid repetitive
+     * database access and range walks.
      */
-    private Map<Package, List<InetAddress>> m_pkgIpMap;
+    private Map<Package, PackageAddressIndex> m_pkgIpMap;
     /**
      * A boolean flag to indicate If a filter rule against the local OpenNMS
      * server has to be used.
@@ -139,7 +138,7 @@ public abstract class ThreshdConfigManager {
      */
     protected void createPackageIpListMap() {
     
-        m_pkgIpMap = new HashMap<Package, List<InetAddress>>();
+        m_pkgIpMap = new HashMap<Package, PackageAddressIndex>();
     
         Enumeration<org.opennms.netmgt.config.threshd.Package> pkgEnum = m_config.enumeratePackage();
         while (pkgEnum.hasMoreElements()) {
@@ -166,7 +165,7 @@ public abstract class ThreshdConfigManager {
                 FilterDaoFactory.getInstance().flushActiveIpAddressListCache();
                 List<InetAddress> ipList = FilterDaoFactory.getInstance().getActiveIPAddressList(filterRules.toString());
                 if (ipList.size() > 0) {
-                    m_pkgIpMap.put(pkg, ipList);
+                    m_pkgIpMap.put(pkg, createPackageIndex(pkg, ipList));
                 }
             } catch (Throwable t) {
                 LOG.error("createPackageIpMap: failed to map package: {} to an IP List with filter \"{}\"", pkg.getName(), pkg.getFilter().getContent(), t);
@@ -174,6 +173,29 @@ public abstract class ThreshdConfigManager {
         }
     }
 
+    /**
+     * Compiles the filter result, specifics, include URLs and ranges of a
+     * package into a {@link PackageAddressIndex}.
+     */
+    private PackageAddressIndex createPackageIndex(Package pkg, List<InetAddress> ipList) {
+        PackageAddressIndex.Builder builder = PackageAddressIndex.builder()
+            .filterAddresses(ipList)
+            .includeAll(pkg.getIncludeRangeCount() == 0 && pkg.getSpecificCount() == 0);
+        for (IncludeRange rng : pkg.getIncludeRangeCollection()) {
+            builder.addIncludeRange(rng.getBegin(), rng.getEnd());
+        }
+        for (ExcludeRange rng : pkg.getExcludeRangeCollection()) {
+            builder.addExcludeRange(rng.getBegin(), rng.getEnd());
+        }
+        for (String spec : pkg.getSpecificCollection()) {
+            builder.addSpecific(spec);
+        }
+        for (String urlname : pkg.getIncludeUrlCollection()) {
+            builder.addUrlEntries(m_urlIPMap.get(urlname));
+        }
+        return builder.build();
+    }
+
     /**
      * This nethod is used to rebuild the package agaist iplist mapping when
      * needed. When a node gained service event occurs, threshd has to determine
@@ -249,44 +271,6 @@ public abstract class ThreshdConfigManager {
         return null;
      }
 
-    /**
-     * This method is used to determine if the named interface is included in
-     * the passed package's url includes. If the interface is found in any of
-     * the URL files, then a value of true is returned, else a false value is
-     * returned.
-     * 
-     * <pre>
-     * The file URL is read and each entry in this file checked. Each line
-     *  in the URL file can be one of -
-     *  &lt;IP&gt;&lt;space&gt;#&lt;comments&gt;
-     *  or
-     *  &lt;IP&gt;
-     *  or
-     *  #&lt;comments&gt;
-     * 
-     *  Lines starting with a '#' are ignored and so are characters after
-     *  a '&lt;space&gt;#' in a line.
-     * </pre>
-     * 
-     * @param addr
-     *            The interface to test against the package's URL
-     * @param url
-     *            The url file to read
-     * 
-     * @return True if the interface is included in the url, false otherwise.
-     */
-    private boolean interfaceInUrl(String addr, String url) {
-        boolean bRet = false;
-    
-        // get list of IPs in this URL
-        java.util.List<String> iplist = m_urlIPMap.get(url);
-        if (iplist != null && iplist.size() > 0) {
-            bRet = iplist.contains(addr);
-        }
-    
-        return bRet;
-    }
-
     /**
      * This method is used to determine if the named interface is included in
      * the passed package definition. If the interface belongs to the package
@@ -305,14 +289,9 @@ public abstract class ThreshdConfigManager {
      */
     public synchronized boolean interfaceInPackage(String iface, org.opennms.netmgt.config.threshd.Package pkg) {
     
-        final InetAddress ifaceAddr = addr(iface);
-        boolean filterPassed = false;
-    
-        // get list of IPs in this package
-        java.util.List<InetAddress> ipList = m_pkgIpMap.get(pkg);
-        if (ipList != null && ipList.size() > 0) {
-			filterPassed = ipList.contains(ifaceAddr);
-        }
+        // get the index of the IPs in this package
+        PackageAddressIndex index = m_pkgIpMap.get(pkg);
+        boolean filterPassed = index != null && index.isInFilter(addr(iface));
     
 
         LOG.debug("interfaceInPackage: Interface {} passed filter for package {}?: {}", filterPassed, iface, pkg.getName());
@@ -324,42 +303,9 @@ public abstract class ThreshdConfigManager {
         // Ensure that the interface is in the specific list or
         // that it is in the include range and is not excluded
         //
-        boolean has_specific = false;
-        boolean has_range_include = false;
-        boolean has_range_exclude = false;
-        
-        has_range_include = pkg.getIncludeRangeCount() == 0 && pkg.getSpecificCount() == 0;
-    
-        for (IncludeRange rng : pkg.getIncludeRangeCollection()) {
-            if (isInetAddressInRange(iface, rng.getBegin(), rng.getEnd())) {
-                has_range_include = true;
-                break;
-            }
-        }
-
         byte[] addr = toIpAddrBytes(iface);
 
-        for (String spec : pkg.getSpecificCollection()) {
-            byte[] speca = toIpAddrBytes(spec);
-            if (new ByteArrayComparator().compare(speca, addr) == 0) {
-                has_specific = true;
-                break;
-            }
-        }
-
-        Enumeration<String> eurl = pkg.enumerateIncludeUrl();
-        while (!has_specific && eurl.hasMoreElements()) {
-            has_specific = interfaceInUrl(iface, eurl.nextElement());
-        }
-    
-        for (ExcludeRange rng : pkg.getExcludeRangeCollection()) {
-            if (isInetAddressInRange(iface, rng.getBegin(), rng.getEnd())) {
-                has_range_exclude = true;
-                break;
-            }
-        }
-    
-        return has_specific || (has_range_include && !has_range_exclude);
+        return index.isSpecific(iface, addr) || (index.isIncluded(addr) && !index.isExcluded(addr));
     }
 
     /**
@@ -0,0 +1,660 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.opennms.core.utils.IPLike;
+import org.opennms.netmgt.filter.FilterSnapshot.ColumnType;
+import org.opennms.netmgt.filter.FilterSnapshot.InterfaceEntry;
+
+/**
+ * A filter rule compiled for evaluation against a {@link FilterSnapshot}.
+ *
+ * Rules are compiled from the SQL statement that {@link JdbcFilterDao}
+ * generates for them, so the filter aliases, the prefixed values and the
+ * IPLIKE translation are shared with the SQL path. Only the node,
+ * ipInterface, assets, service and categories tables joined the way the
+ * default database schema joins them are supported, with these predicates:
+ * <ul>
+ * <li>AND, OR, NOT and parentheses</li>
+ * <li>=, != and &lt;&gt; against text columns, and all comparisons between
+ * integer columns and integer values</li>
+ * <li>LIKE and NOT LIKE against text columns</li>
+ * <li>IS NULL and IS NOT NULL</li>
+ * <li>IPLIKE</li>
+ * <li>the sub-selects generated for <code>notis</code> and
+ * <code>catinc</code></li>
+ * </ul>
+ * For anything else {@link #compile(String, FilterSnapshot)} returns null
+ * and the rule has to be run as SQL.
+ *
+ * Evaluation follows the SQL three-valued logic: a comparison with a NULL
+ * column is unknown, and a row is only selected if its WHERE clause is true.
+ */
+final class CompiledFilterRule {
+
+    private static final Pattern INTEGER_PATTERN = Pattern.compile("-?\\d{1,18}");
+
+    /**
+     * The joins the default database schema generates for each table.
+     */
+    private static final String[][] JOINS = new String[][] {
+        { "node", "JOIN node ON (ipInterface.nodeID = node.nodeID)" },
+        { "assets", "JOIN assets ON (ipInterface.nodeID = assets.nodeID)" },
+        { "ifservices", "JOIN ifServices ON (ipInterface.id = ifServices.ipInterfaceId)" },
+        { "service", "JOIN service ON (ifServices.serviceID = service.serviceID)" },
+        { "category_node", "LEFT JOIN category_node ON (ipInterface.nodeID = category_node.nodeID)" },
+        { "categories", "LEFT JOIN categories ON (category_node.categoryID = categories.categoryID)" }
+    };
+
+    private static final String[] NOTIS_SUBSELECT = new String[] {
+        "(", "SELECT", "ifServices.ipAddr", "FROM", "ifServices", ",", "service", "WHERE", "service.serviceName", "=", null,
+        "AND", "service.serviceID", "=", "ifServices.serviceID", ")"
+    };
+
+    private static final String[] CATINC_SUBSELECT = new String[] {
+        "(", "SELECT", "category_node.nodeID", "FROM", "category_node", ",", "categories", "WHERE", "categories.categoryID", "=", "category_node.categoryID",
+        "AND", "categories.categoryName", "=", null, ")"
+    };
+
+    /**
+     * A node of the compiled WHERE clause. Returns {@link Boolean#TRUE},
+     * {@link Boolean#FALSE} or null for unknown.
+     */
+    private interface Predicate {
+        Boolean evaluate(Row row);
+    }
+
+    /**
+     * One row of the joined tables.
+     */
+    private static class Row {
+        private final InterfaceEntry m_iface;
+        private Map<String, Object> m_service;
+        private Map<String, Object> m_category;
+
+        private Row(final InterfaceEntry iface) {
+            m_iface = iface;
+        }
+    }
+
+    /**
+     * Thrown while compiling when the rule uses something that is not
+     * supported in memory.
+     */
+    private static class UnsupportedException extends Exception {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final Predicate m_where;
+
+    private final boolean m_joinsAssets;
+
+    private final boolean m_joinsServices;
+
+    private final boolean m_joinsCategories;
+
+    private CompiledFilterRule(final Predicate where, final boolean joinsAssets, final boolean joinsServices, final boolean joinsCategories) {
+        m_where = where;
+        m_joinsAssets = joinsAssets;
+        m_joinsServices = joinsServices;
+        m_joinsCategories = joinsCategories;
+    }
+
+    /**
+     * Compiles a statement generated by {@link JdbcFilterDao}.
+     *
+     * @param sql the SELECT statement for the rule
+     * @param snapshot the snapshot that provides the column types
+     * @return the compiled rule, or null if the statement is not supported
+     */
+    static CompiledFilterRule compile(final String sql, final FilterSnapshot snapshot) {
+        final int from = sql.indexOf(" FROM ");
+        final int where = sql.indexOf(" WHERE ");
+        if (from < 0 || where < from) {
+            return null;
+        }
+
+        // check that only known tables are joined, and that they are joined as usual
+        String joins = sql.substring(from + " FROM ".length(), where).trim();
+        if (!joins.regionMatches(true, 0, "ipInterface", 0, "ipInterface".length())) {
+            return null;
+        }
+        joins = joins.substring("ipInterface".length()).trim();
+        final List<String> tables = new ArrayList<String>();
+        while (joins.length() > 0) {
+            boolean found = false;
+            for (final String[] join : JOINS) {
+                if (joins.regionMatches(true, 0, join[1], 0, join[1].length())) {
+                    tables.add(join[0]);
+                    joins = joins.substring(join[1].length()).trim();
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return null;
+            }
+        }
+
+        try {
+            final Parser parser = new Parser(tokenize(sql.substring(where + " WHERE ".length())), snapshot);
+            final Predicate predicate = parser.parseOr();
+            if (!parser.atEnd()) {
+                return null;
+            }
+            return new CompiledFilterRule(predicate, tables.contains("assets"), tables.contains("ifservices"), tables.contains("category_node"));
+        } catch (final UnsupportedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns true if any row that the interface contributes to the join
+     * matches the rule.
+     */
+    boolean matches(final InterfaceEntry iface) {
+        if (m_joinsAssets && iface.getNode().getAssets() == null) {
+            return false;
+        }
+        final List<Map<String, Object>> services = m_joinsServices ? iface.getServices() : Collections.<Map<String, Object>>singletonList(null);
+        List<Map<String, Object>> categories = Collections.<Map<String, Object>>singletonList(null);
+        if (m_joinsCategories && !iface.getNode().getCategories().isEmpty()) {
+            categories = iface.getNode().getCategories();
+        }
+
+        final Row row = new Row(iface);
+        for (final Map<String, Object> service : services) {
+            row.m_service = service;
+            for (final Map<String, Object> category : categories) {
+                row.m_category = category;
+                if (Boolean.TRUE.equals(m_where.evaluate(row))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static List<String> tokenize(final String where) throws UnsupportedException {
+        final List<String> tokens = new ArrayList<String>();
+        int i = 0;
+        while (i < where.length()) {
+            final char c = where.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')' || c == ',') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '\'') {
+                // keep the quotes so that strings can be told apart from words
+                final StringBuilder value = new StringBuilder("'");
+                i++;
+                while (true) {
+                    if (i >= where.length()) {
+                        throw new UnsupportedException();
+                    }
+                    if (where.charAt(i) == '\'') {
+                        if (i + 1 < where.length() && where.charAt(i + 1) == '\'') {
+                            value.append('\'');
+                            i += 2;
+                            continue;
+                        }
+                        i++;
+                        break;
+                    }
+                    value.append(where.charAt(i++));
+                }
+                tokens.add(value.toString());
+            } else if (c == '=' || c == '<' || c == '>' || c == '!') {
+                int end = i + 1;
+                if (end < where.length() && (where.charAt(end) == '=' || (c == '<' && where.charAt(end) == '>'))) {
+                    end++;
+                }
+                final String op = where.substring(i, end);
+                if ("!".equals(op)) {
+                    throw new UnsupportedException();
+                }
+                tokens.add(op);
+                i = end;
+            } else if (Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.') {
+                int end = i;
+                while (end < where.length() && (Character.isLetterOrDigit(where.charAt(end)) || where.charAt(end) == '_' || where.charAt(end) == '-' || where.charAt(end) == '.')) {
+                    end++;
+                }
+                tokens.add(where.substring(i, end));
+                i = end;
+            } else {
+                // casts, arithmetic, double quotes, ...
+                throw new UnsupportedException();
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isString(final String token) {
+        return token != null && token.startsWith("'");
+    }
+
+    private static String stringValue(final String token) {
+        return token.substring(1);
+    }
+
+    /**
+     * A recursive descent parser for the generated WHERE clause, with the
+     * PostgreSQL operator precedence: OR, AND, NOT, then the predicates.
+     */
+    private static class Parser {
+        private final List<String> m_tokens;
+        private final FilterSnapshot m_snapshot;
+        private int m_pos = 0;
+
+        private Parser(final List<String> tokens, final FilterSnapshot snapshot) {
+            m_tokens = tokens;
+            m_snapshot = snapshot;
+        }
+
+        private boolean atEnd() {
+            return m_pos >= m_tokens.size();
+        }
+
+        private String peek() {
+            return atEnd() ? null : m_tokens.get(m_pos);
+        }
+
+        private String peek(final int offset) {
+            return m_pos + offset >= m_tokens.size() ? null : m_tokens.get(m_pos + offset);
+        }
+
+        private String next() throws UnsupportedException {
+            if (atEnd()) {
+                throw new UnsupportedException();
+            }
+            return m_tokens.get(m_pos++);
+        }
+
+        private boolean accept(final String keyword) {
+            final String token = peek();
+            if (token != null && !isString(token) && token.equalsIgnoreCase(keyword)) {
+                m_pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(final String keyword) throws UnsupportedException {
+            if (!accept(keyword)) {
+                throw new UnsupportedException();
+            }
+        }
+
+        private Predicate parseOr() throws UnsupportedException {
+            Predicate left = parseAnd();
+            while (accept("OR")) {
+                final Predicate a = left;
+                final Predicate b = parseAnd();
+                left = new Predicate() {
+                    @Override
+                    public Boolean evaluate(final Row row) {
+                        final Boolean x = a.evaluate(row);
+                        if (Boolean.TRUE.equals(x)) {
+                            return Boolean.TRUE;
+                        }
+                        final Boolean y = b.evaluate(row);
+                        if (Boolean.TRUE.equals(y)) {
+                            return Boolean.TRUE;
+                        }
+                        return x == null || y == null ? null : Boolean.FALSE;
+                    }
+                };
+            }
+            return left;
+        }
+
+        private Predicate parseAnd() throws UnsupportedException {
+            Predicate left = parseNot();
+            while (accept("AND")) {
+                final Predicate a = left;
+                final Predicate b = parseNot();
+                left = new Predicate() {
+                    @Override
+                    public Boolean evaluate(final Row row) {
+                        final Boolean x = a.evaluate(row);
+                        if (Boolean.FALSE.equals(x)) {
+                            return Boolean.FALSE;
+                        }
+                        final Boolean y = b.evaluate(row);
+                        if (Boolean.FALSE.equals(y)) {
+                            return Boolean.FALSE;
+                        }
+                        return x == null || y == null ? null : Boolean.TRUE;
+                    }
+                };
+            }
+            return left;
+        }
+
+        private Predicate parseNot() throws UnsupportedException {
+            if (accept("NOT")) {
+                final Predicate a = parseNot();
+                return new Predicate() {
+                    @Override
+                    public Boolean evaluate(final Row row) {
+                        final Boolean x = a.evaluate(row);
+                        return x == null ? null : Boolean.valueOf(!x.booleanValue());
+                    }
+                };
+            }
+            return parsePrimary();
+        }
+
+        private Predicate parsePrimary() throws UnsupportedException {
+            if (accept("(")) {
+                final Predicate inner = parseOr();
+                expect(")");
+                return inner;
+            }
+            if (accept("IPLIKE")) {
+                expect("(");
+                final Column column = parseColumn();
+                expect(",");
+                final String pattern = next();
+                expect(")");
+                return ipLike(column, pattern);
+            }
+
+            final Column column = parseColumn();
+            if (accept("IS")) {
+                final boolean not = accept("NOT");
+                expect("NULL");
+                return new Predicate() {
+                    @Override
+                    public Boolean evaluate(final Row row) {
+                        return Boolean.valueOf((column.value(row) == null) != not);
+                    }
+                };
+            }
+            if ("NOT".equalsIgnoreCase(peek()) && "IN".equalsIgnoreCase(peek(1))) {
+                m_pos += 2;
+                return notIs(column, matchSubselect(NOTIS_SUBSELECT));
+            }
+            if (accept("IN")) {
+                return catInc(column, matchSubselect(CATINC_SUBSELECT));
+            }
+            if ("NOT".equalsIgnoreCase(peek()) && "LIKE".equalsIgnoreCase(peek(1))) {
+                m_pos += 2;
+                return not(like(column, next()));
+            }
+            if (accept("LIKE")) {
+                return like(column, next());
+            }
+            return comparison(column, next(), next());
+        }
+
+        private Column parseColumn() throws UnsupportedException {
+            final String token = next();
+            final int dot = token.indexOf('.');
+            if (isString(token) || dot <= 0 || dot != token.lastIndexOf('.')) {
+                throw new UnsupportedException();
+            }
+            final String table = token.substring(0, dot).toLowerCase(Locale.ENGLISH);
+            final String name = token.substring(dot + 1).toLowerCase(Locale.ENGLISH);
+            final ColumnType type = m_snapshot.getColumnType(table, name);
+            if (type == null) {
+                throw new UnsupportedException();
+            }
+            return new Column(table, name, type);
+        }
+
+        /**
+         * Matches one of the sub-selects generated for the prefixed values
+         * and returns the value it selects on.
+         */
+        private String matchSubselect(final String[] template) throws UnsupportedException {
+            String value = null;
+            for (final String expected : template) {
+                final String token = next();
+                if (expected == null) {
+                    if (!isString(token)) {
+                        throw new UnsupportedException();
+                    }
+                    value = stringValue(token);
+                } else if (isString(token) || !expected.equalsIgnoreCase(token)) {
+                    throw new UnsupportedException();
+                }
+            }
+            return value;
+        }
+
+        private Predicate notIs(final Column column, final String serviceName) throws UnsupportedException {
+            if (!"ipinterface".equals(column.m_table) || !"ipaddr".equals(column.m_name)) {
+                throw new UnsupportedException();
+            }
+            final FilterSnapshot snapshot = m_snapshot;
+            return new Predicate() {
+                @Override
+                public Boolean evaluate(final Row row) {
+                    return Boolean.valueOf(!snapshot.addressHasService(row.m_iface.getAddress(), serviceName));
+                }
+            };
+        }
+
+        private Predicate catInc(final Column column, final String categoryName) throws UnsupportedException {
+            if (!("node".equals(column.m_table) || "ipinterface".equals(column.m_table)) || !"nodeid".equals(column.m_name)) {
+                throw new UnsupportedException();
+            }
+            return new Predicate() {
+                @Override
+                public Boolean evaluate(final Row row) {
+                    return Boolean.valueOf(row.m_iface.getNode().getCategoryNames().contains(categoryName));
+                }
+            };
+        }
+
+        private Predicate ipLike(final Column column, final String patternToken) throws UnsupportedException {
+            if (!isString(patternToken) || column.m_type == ColumnType.INTEGER || column.m_type == ColumnType.OTHER) {
+                throw new UnsupportedException();
+            }
+            final String pattern = stringValue(patternToken);
+            final boolean v6 = pattern.indexOf(':') >= 0;
+            // reject malformed expressions here, so that they fail in the database as they used to
+            if (pattern.split(v6 ? "\\:" : "\\.", 0).length != (v6 ? 8 : 4) || (!v6 && pattern.indexOf('%') >= 0)) {
+                throw new UnsupportedException();
+            }
+            return new Predicate() {
+                @Override
+                public Boolean evaluate(final Row row) {
+                    final String value = (String)column.value(row);
+                    if (value == null) {
+                        return null;
+                    }
+                    if ((value.indexOf(':') >= 0) != v6) {
+                        return Boolean.FALSE;
+                    }
+                    try {
+                        return Boolean.valueOf(IPLike.matches(value, pattern));
+                    } catch (final IllegalArgumentException e) {
+                        return Boolean.FALSE;
+                    }
+                }
+            };
+        }
+
+        private Predicate like(final Column column, final String patternToken) throws UnsupportedException {
+            if (!isString(patternToken) || column.m_type == ColumnType.INTEGER || column.m_type == ColumnType.OTHER) {
+                throw new UnsupportedException();
+            }
+            final Pattern regex = likeToRegex(stringValue(patternToken));
+            return new Predicate() {
+                @Override
+                public Boolean evaluate(final Row row) {
+                    final String value = (String)column.value(row);
+                    return value == null ? null : Boolean.valueOf(regex.matcher(value).matches());
+                }
+            };
+        }
+
+        private Predicate comparison(final Column column, final String op, final String valueToken) throws UnsupportedException {
+            final int sign;
+            final boolean negate;
+            if ("=".equals(op)) {
+                sign = 0; negate = false;
+            } else if ("!=".equals(op) || "<>".equals(op)) {
+                sign = 0; negate = true;
+            } else if ("<".equals(op)) {
+                sign = -1; negate = false;
+            } else if (">=".equals(op)) {
+                sign = -1; negate = true;
+            } else if (">".equals(op)) {
+                sign = 1; negate = false;
+            } else if ("<=".equals(op)) {
+                sign = 1; negate = true;
+            } else {
+                throw new UnsupportedException();
+            }
+
+            if (column.m_type == ColumnType.INTEGER) {
+                final String literal = isString(valueToken) ? stringValue(valueToken).trim() : valueToken;
+                if (!INTEGER_PATTERN.matcher(literal).matches()) {
+                    throw new UnsupportedException();
+                }
+                final long value = Long.parseLong(literal);
+                return new Predicate() {
+                    @Override
+                    public Boolean evaluate(final Row row) {
+                        final Long columnValue = (Long)column.value(row);
+                        if (columnValue == null) {
+                            return null;
+                        }
+                        final int cmp = Long.signum(Long.valueOf(columnValue.longValue()).compareTo(Long.valueOf(value)));
+                        return Boolean.valueOf((cmp == sign) != negate);
+                    }
+                };
+            }
+
+            // text is only compared for equality, since ordering depends on the database collation
+            if (sign != 0 || !isString(valueToken) || column.m_type == ColumnType.OTHER) {
+                throw new UnsupportedException();
+            }
+            final String value = column.m_type == ColumnType.CHAR ? rtrim(stringValue(valueToken)) : stringValue(valueToken);
+            return new Predicate() {
+                @Override
+                public Boolean evaluate(final Row row) {
+                    final String columnValue = (String)column.value(row);
+                    return columnValue == null ? null : Boolean.valueOf(columnValue.equals(value) != negate);
+                }
+            };
+        }
+
+        private static Predicate not(final Predicate a) {
+            return new Predicate() {
+                @Override
+                public Boolean evaluate(final Row row) {
+                    final Boolean x = a.evaluate(row);
+                    return x == null ? null : Boolean.valueOf(!x.booleanValue());
+                }
+            };
+        }
+    }
+
+    /**
+     * Converts a SQL LIKE pattern, with the default backslash escape, to a
+     * regular expression.
+     */
+    static Pattern likeToRegex(final String like) {
+        final StringBuilder regex = new StringBuilder();
+        final StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < like.length(); i++) {
+            final char c = like.charAt(i);
+            if (c == '\\' && i + 1 < like.length()) {
+                literal.append(like.charAt(++i));
+            } else if (c == '%' || c == '_') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '%' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    static String rtrim(final String value) {
+        int end = value.length();
+        while (end > 0 && value.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return value.substring(0, end);
+    }
+
+    /**
+     * A column reference, resolved against the row being evaluated.
+     */
+    private static class Column {
+        private final String m_table;
+        private final String m_name;
+        private final ColumnType m_type;
+
+        private Column(final String table, final String name, final ColumnType type) {
+            m_table = table;
+            m_name = name;
+            m_type = type;
+        }
+
+        private Object value(final Row row) {
+            final Map<String, Object> values;
+            if ("ipinterface".equals(m_table)) {
+                values = row.m_iface.getColumns();
+            } else if ("node".equals(m_table)) {
+                values = row.m_iface.getNode().getColumns();
+            } else if ("assets".equals(m_table)) {
+                values = row.m_iface.getNode().getAssets();
+            } else if ("service".equals(m_table)) {
+                values = row.m_service;
+            } else if ("categories".equals(m_table)) {
+                values = row.m_category;
+            } else {
+                values = null;
+            }
+            return values == null ? null : values.get(m_name);
+        }
+    }
+}
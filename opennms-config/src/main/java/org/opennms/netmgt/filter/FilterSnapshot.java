@@ -0,0 +1,726 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.filter;
+
+import static org.opennms.core.utils.InetAddressUtils.addr;
+
+import java.net.InetAddress;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.sql.DataSource;
+
+import org.opennms.core.utils.DBUtils;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventProcessor;
+import org.opennms.netmgt.events.api.EventProcessorException;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Header;
+import org.opennms.netmgt.xml.event.Parm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in-memory copy of the node, ipInterface, assets, service and
+ * categories tables used by {@link JdbcFilterDao} to answer filter rules
+ * without a database round trip.
+ *
+ * The copy is loaded on first use. Eventd passes every event through
+ * {@link #process(Header, Event)}, and the nodes named by topology, asset
+ * and category events are marked dirty and re-read before the next query;
+ * results are memoized until then. Events without a node ID cause a full
+ * reload. Changes that are made to the database without an event are not
+ * seen.
+ *
+ * Only the rules that {@link CompiledFilterRule} supports are evaluated in
+ * memory. For any other rule, or if the copy can not be loaded, the query
+ * methods return null and the caller runs the SQL statement instead.
+ *
+ * The snapshot is disabled unless the
+ * <code>org.opennms.netmgt.filter.inMemory</code> system property is set to
+ * true.
+ */
+public class FilterSnapshot implements EventProcessor {
+    private static final Logger LOG = LoggerFactory.getLogger(FilterSnapshot.class);
+
+    /**
+     * The types of column that rules are compiled for.
+     */
+    enum ColumnType {
+        /** integral numbers, compared numerically */
+        INTEGER,
+        /** fixed length text, compared without trailing blanks */
+        CHAR,
+        /** variable length text */
+        TEXT,
+        /** anything else, which can only be tested for NULL */
+        OTHER
+    }
+
+    /**
+     * A node with its asset record and categories.
+     */
+    static class NodeEntry {
+        private final Map<String, Object> m_columns;
+        private Map<String, Object> m_assets;
+        private final List<Map<String, Object>> m_categories = new ArrayList<Map<String, Object>>();
+        private final Set<String> m_categoryNames = new HashSet<String>();
+        private final List<InterfaceEntry> m_interfaces = new ArrayList<InterfaceEntry>();
+
+        private NodeEntry(final Map<String, Object> columns) {
+            m_columns = columns;
+        }
+
+        Map<String, Object> getColumns() {
+            return m_columns;
+        }
+
+        Map<String, Object> getAssets() {
+            return m_assets;
+        }
+
+        List<Map<String, Object>> getCategories() {
+            return m_categories;
+        }
+
+        Set<String> getCategoryNames() {
+            return m_categoryNames;
+        }
+    }
+
+    /**
+     * An IP interface with the services it supports.
+     */
+    static class InterfaceEntry {
+        private final NodeEntry m_node;
+        private final Map<String, Object> m_columns;
+        private final String m_address;
+        private final InetAddress m_inetAddress;
+        private final List<Map<String, Object>> m_services = new ArrayList<Map<String, Object>>();
+
+        private InterfaceEntry(final NodeEntry node, final Map<String, Object> columns) {
+            m_node = node;
+            m_columns = columns;
+            m_address = (String)columns.get("ipaddr");
+            m_inetAddress = m_address == null ? null : addr(m_address);
+        }
+
+        NodeEntry getNode() {
+            return m_node;
+        }
+
+        Map<String, Object> getColumns() {
+            return m_columns;
+        }
+
+        String getAddress() {
+            return m_address;
+        }
+
+        List<Map<String, Object>> getServices() {
+            return m_services;
+        }
+    }
+
+    /**
+     * Events that announce changes to the tables in the snapshot.
+     */
+    private static final Set<String> UEIS = new HashSet<String>();
+
+    static {
+        UEIS.add(EventConstants.NODE_ADDED_EVENT_UEI);
+        UEIS.add(EventConstants.NODE_UPDATED_EVENT_UEI);
+        UEIS.add(EventConstants.NODE_DELETED_EVENT_UEI);
+        UEIS.add(EventConstants.NODE_LABEL_CHANGED_EVENT_UEI);
+        UEIS.add(EventConstants.NODE_INFO_CHANGED_EVENT_UEI);
+        UEIS.add(EventConstants.NODE_CATEGORY_MEMBERSHIP_CHANGED_EVENT_UEI);
+        UEIS.add(EventConstants.ASSET_INFO_CHANGED_EVENT_UEI);
+        UEIS.add(EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI);
+        UEIS.add(EventConstants.INTERFACE_DELETED_EVENT_UEI);
+        UEIS.add(EventConstants.INTERFACE_REPARENTED_EVENT_UEI);
+        UEIS.add(EventConstants.INTERFACE_IP_HOSTNAME_CHANGED_EVENT_UEI);
+        UEIS.add(EventConstants.INTERFACE_SUPPORTS_SNMP_EVENT_UEI);
+        UEIS.add(EventConstants.PRIMARY_SNMP_INTERFACE_CHANGED_EVENT_UEI);
+        UEIS.add(EventConstants.NODE_GAINED_SERVICE_EVENT_UEI);
+        UEIS.add(EventConstants.SERVICE_DELETED_EVENT_UEI);
+        UEIS.add(EventConstants.SERVICE_UNMANAGED_EVENT_UEI);
+        UEIS.add(EventConstants.DUP_NODE_DELETED_EVENT_UEI);
+        UEIS.add(EventConstants.IMPORT_SUCCESSFUL_UEI);
+    }
+
+    /**
+     * Returns whether an event announces a change to the nodes, interfaces,
+     * services or categories that filter rules select.
+     *
+     * @param uei the UEI of the event
+     * @return a boolean.
+     */
+    public static boolean isTopologyEvent(final String uei) {
+        return uei != null && UEIS.contains(uei);
+    }
+
+    /**
+     * The number of memoized results kept before the memo is emptied.
+     */
+    private static final int MAX_RESULTS = 1000;
+
+    private volatile boolean m_enabled = Boolean.getBoolean("org.opennms.netmgt.filter.inMemory");
+
+    private DataSource m_dataSource;
+
+    private final ReadWriteLock m_lock = new ReentrantReadWriteLock();
+
+    /** guarded by m_lock */
+    private final Map<Long, NodeEntry> m_nodes = new HashMap<Long, NodeEntry>();
+
+    /** guarded by m_lock */
+    private final Map<String, List<InterfaceEntry>> m_interfacesByAddress = new HashMap<String, List<InterfaceEntry>>();
+
+    /** guarded by m_lock */
+    private final Map<InetAddress, List<InterfaceEntry>> m_interfacesByInetAddress = new HashMap<InetAddress, List<InterfaceEntry>>();
+
+    /** guarded by m_lock */
+    private Map<String, Map<String, ColumnType>> m_columnTypes = null;
+
+    private volatile boolean m_reload = true;
+
+    private final Set<Long> m_dirtyNodes = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+    private final ConcurrentMap<String, CompiledFilterRule> m_rules = new ConcurrentHashMap<String, CompiledFilterRule>();
+
+    private final Set<String> m_unsupportedRules = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final ConcurrentMap<String, List<InetAddress>> m_addressResults = new ConcurrentHashMap<String, List<InetAddress>>();
+
+    private final ConcurrentMap<String, SortedMap<Integer, String>> m_nodeResults = new ConcurrentHashMap<String, SortedMap<Integer, String>>();
+
+    /**
+     * <p>setDataSource</p>
+     *
+     * @param dataSource a {@link javax.sql.DataSource} object.
+     */
+    public void setDataSource(final DataSource dataSource) {
+        m_dataSource = dataSource;
+    }
+
+    /**
+     * <p>getDataSource</p>
+     *
+     * @return a {@link javax.sql.DataSource} object.
+     */
+    public DataSource getDataSource() {
+        return m_dataSource;
+    }
+
+    /**
+     * <p>isEnabled</p>
+     *
+     * @return true if rules are evaluated in memory
+     */
+    public boolean isEnabled() {
+        return m_enabled;
+    }
+
+    /**
+     * <p>setEnabled</p>
+     *
+     * @param enabled true to evaluate rules in memory
+     */
+    public void setEnabled(final boolean enabled) {
+        m_enabled = enabled;
+        invalidate();
+    }
+
+    /**
+     * Discards the snapshot. It is reloaded on the next query.
+     */
+    public void invalidate() {
+        m_reload = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Marks the nodes affected by the event as dirty.
+     */
+    @Override
+    public void process(final Header eventHeader, final Event event) throws EventProcessorException {
+        if (!m_enabled || !isTopologyEvent(event.getUei())) {
+            return;
+        }
+        if (!event.hasNodeid()) {
+            m_reload = true;
+            return;
+        }
+        m_dirtyNodes.add(event.getNodeid());
+        if (EventConstants.INTERFACE_REPARENTED_EVENT_UEI.equals(event.getUei())) {
+            final Parm oldNodeId = event.getParm(EventConstants.PARM_OLD_NODEID);
+            try {
+                m_dirtyNodes.add(Long.valueOf(oldNodeId.getValue().getContent()));
+            } catch (final RuntimeException e) {
+                m_reload = true;
+            }
+        }
+    }
+
+    /**
+     * Returns the distinct addresses selected by a statement generated by
+     * {@link JdbcFilterDao}.
+     *
+     * @param sql the statement
+     * @return the addresses, or null if the statement has to be run as SQL
+     */
+    public List<InetAddress> getIPAddressList(final String sql) {
+        if (!m_enabled || !refresh()) {
+            return null;
+        }
+        final List<InetAddress> memoized = m_addressResults.get(sql);
+        if (memoized != null) {
+            return new ArrayList<InetAddress>(memoized);
+        }
+
+        m_lock.readLock().lock();
+        try {
+            final CompiledFilterRule rule = getRule(sql);
+            if (rule == null) {
+                return null;
+            }
+            final Set<String> addresses = new LinkedHashSet<String>();
+            for (final NodeEntry node : m_nodes.values()) {
+                for (final InterfaceEntry iface : node.m_interfaces) {
+                    if (!addresses.contains(iface.getAddress()) && rule.matches(iface)) {
+                        addresses.add(iface.getAddress());
+                    }
+                }
+            }
+            final List<InetAddress> result = new ArrayList<InetAddress>(addresses.size());
+            for (final String address : addresses) {
+                result.add(addr(address));
+            }
+            memoize(m_addressResults, sql, Collections.unmodifiableList(result));
+            return new ArrayList<InetAddress>(result);
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the node IDs and labels selected by a statement generated by
+     * {@link JdbcFilterDao#getNodeMappingStatement(String)}.
+     *
+     * @param sql the statement
+     * @return the nodes, or null if the statement has to be run as SQL
+     */
+    public SortedMap<Integer, String> getNodeMap(final String sql) {
+        if (!m_enabled || !refresh()) {
+            return null;
+        }
+        final SortedMap<Integer, String> memoized = m_nodeResults.get(sql);
+        if (memoized != null) {
+            return memoized;
+        }
+
+        m_lock.readLock().lock();
+        try {
+            final CompiledFilterRule rule = getRule(sql);
+            if (rule == null) {
+                return null;
+            }
+            final SortedMap<Integer, String> result = new TreeMap<Integer, String>();
+            for (final NodeEntry node : m_nodes.values()) {
+                for (final InterfaceEntry iface : node.m_interfaces) {
+                    if (rule.matches(iface)) {
+                        final Long nodeId = (Long)node.getColumns().get("nodeid");
+                        result.put(Integer.valueOf(nodeId.intValue()), (String)node.getColumns().get("nodelabel"));
+                        break;
+                    }
+                }
+            }
+            final SortedMap<Integer, String> unmodifiable = Collections.unmodifiableSortedMap(result);
+            memoize(m_nodeResults, sql, unmodifiable);
+            return unmodifiable;
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether an address is selected by a statement generated by
+     * {@link JdbcFilterDao}.
+     *
+     * @param address the address
+     * @param sql the statement
+     * @return the result, or null if the statement has to be run as SQL
+     */
+    public Boolean isValid(final InetAddress address, final String sql) {
+        if (!m_enabled || !refresh()) {
+            return null;
+        }
+        final List<InetAddress> memoized = m_addressResults.get(sql);
+        if (memoized != null) {
+            return Boolean.valueOf(memoized.contains(address));
+        }
+
+        m_lock.readLock().lock();
+        try {
+            final CompiledFilterRule rule = getRule(sql);
+            if (rule == null) {
+                return null;
+            }
+            final List<InterfaceEntry> interfaces = m_interfacesByInetAddress.get(address);
+            if (interfaces != null) {
+                for (final InterfaceEntry iface : interfaces) {
+                    if (rule.matches(iface)) {
+                        return Boolean.TRUE;
+                    }
+                }
+            }
+            return Boolean.FALSE;
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the type of a column, or null if the table is not in the
+     * snapshot or has no such column. Called with the lock held.
+     */
+    ColumnType getColumnType(final String table, final String column) {
+        final Map<String, ColumnType> columns = m_columnTypes.get(table);
+        return columns == null ? null : columns.get(column);
+    }
+
+    /**
+     * Returns true if an interface with the address supports the service.
+     * Called with the lock held.
+     */
+    boolean addressHasService(final String address, final String serviceName) {
+        final List<InterfaceEntry> interfaces = m_interfacesByAddress.get(address);
+        if (interfaces != null) {
+            for (final InterfaceEntry iface : interfaces) {
+                for (final Map<String, Object> service : iface.getServices()) {
+                    if (serviceName.equals(service.get("servicename"))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private CompiledFilterRule getRule(final String sql) {
+        if (m_unsupportedRules.contains(sql)) {
+            return null;
+        }
+        CompiledFilterRule rule = m_rules.get(sql);
+        if (rule == null) {
+            rule = CompiledFilterRule.compile(sql, this);
+            if (rule == null) {
+                LOG.debug("Filter statement can not be evaluated in memory: {}", sql);
+                m_unsupportedRules.add(sql);
+                return null;
+            }
+            m_rules.putIfAbsent(sql, rule);
+        }
+        return rule;
+    }
+
+    private static <T> void memoize(final ConcurrentMap<String, T> results, final String sql, final T result) {
+        if (results.size() >= MAX_RESULTS) {
+            results.clear();
+        }
+        results.put(sql, result);
+    }
+
+    /**
+     * Brings the snapshot up to date.
+     *
+     * @return false if the snapshot could not be loaded
+     */
+    private boolean refresh() {
+        if (!m_reload && m_dirtyNodes.isEmpty()) {
+            return true;
+        }
+
+        boolean loaded = false;
+        m_lock.writeLock().lock();
+        try {
+            if (!m_reload && m_dirtyNodes.isEmpty()) {
+                // brought up to date by another thread while this one was waiting for the lock
+                loaded = true;
+                return true;
+            }
+            final Connection conn = m_dataSource.getConnection();
+            final DBUtils d = new DBUtils(getClass(), conn);
+            try {
+                if (m_reload) {
+                    // clear the flags first so that changes announced while loading are not lost
+                    m_reload = false;
+                    m_dirtyNodes.clear();
+                    load(conn);
+                } else {
+                    final Set<Long> nodeIds = new HashSet<Long>(m_dirtyNodes);
+                    m_dirtyNodes.removeAll(nodeIds);
+                    reload(conn, nodeIds);
+                }
+            } finally {
+                d.cleanUp();
+            }
+            m_addressResults.clear();
+            m_nodeResults.clear();
+            loaded = true;
+        } catch (final SQLException e) {
+            LOG.warn("Failed to load the filter snapshot, falling back to SQL.", e);
+        } finally {
+            if (!loaded) {
+                // do not leave a partially loaded snapshot behind
+                m_reload = true;
+            }
+            m_lock.writeLock().unlock();
+        }
+        return loaded;
+    }
+
+    private void load(final Connection conn) throws SQLException {
+        final long start = System.currentTimeMillis();
+        m_columnTypes = new HashMap<String, Map<String, ColumnType>>();
+        m_nodes.clear();
+        m_interfacesByAddress.clear();
+        m_interfacesByInetAddress.clear();
+        for (final NodeEntry node : loadNodes(conn, null)) {
+            add(node);
+        }
+        LOG.info("Loaded {} nodes into the filter snapshot in {} ms", m_nodes.size(), System.currentTimeMillis() - start);
+    }
+
+    private void reload(final Connection conn, final Set<Long> nodeIds) throws SQLException {
+        if (nodeIds.isEmpty()) {
+            return;
+        }
+        for (final Long nodeId : nodeIds) {
+            final NodeEntry node = m_nodes.remove(nodeId);
+            if (node != null) {
+                for (final InterfaceEntry iface : node.m_interfaces) {
+                    remove(m_interfacesByAddress, iface.getAddress(), iface);
+                    remove(m_interfacesByInetAddress, iface.m_inetAddress, iface);
+                }
+            }
+        }
+
+        final StringBuilder ids = new StringBuilder();
+        for (final Long nodeId : nodeIds) {
+            ids.append(ids.length() == 0 ? "" : ", ").append(nodeId.longValue());
+        }
+        for (final NodeEntry node : loadNodes(conn, ids.toString())) {
+            add(node);
+        }
+        LOG.debug("Reloaded nodes {} in the filter snapshot", nodeIds);
+    }
+
+    private void add(final NodeEntry node) {
+        m_nodes.put((Long)node.getColumns().get("nodeid"), node);
+        for (final InterfaceEntry iface : node.m_interfaces) {
+            put(m_interfacesByAddress, iface.getAddress(), iface);
+            put(m_interfacesByInetAddress, iface.m_inetAddress, iface);
+        }
+    }
+
+    private static <K> void put(final Map<K, List<InterfaceEntry>> index, final K key, final InterfaceEntry iface) {
+        if (key == null) {
+            return;
+        }
+        List<InterfaceEntry> interfaces = index.get(key);
+        if (interfaces == null) {
+            interfaces = new ArrayList<InterfaceEntry>(1);
+            index.put(key, interfaces);
+        }
+        interfaces.add(iface);
+    }
+
+    private static <K> void remove(final Map<K, List<InterfaceEntry>> index, final K key, final InterfaceEntry iface) {
+        final List<InterfaceEntry> interfaces = key == null ? null : index.get(key);
+        if (interfaces != null) {
+            interfaces.remove(iface);
+            if (interfaces.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Reads nodes with their interfaces, services, assets and categories.
+     *
+     * @param nodeIds a comma separated list of node IDs, or null for all nodes
+     */
+    private Collection<NodeEntry> loadNodes(final Connection conn, final String nodeIds) throws SQLException {
+        final Map<Long, NodeEntry> nodes = new HashMap<Long, NodeEntry>();
+        for (final Map<String, Object> row : query(conn, "node", "SELECT * FROM node" + (nodeIds == null ? "" : " WHERE nodeID IN (" + nodeIds + ")"))) {
+            nodes.put((Long)row.get("nodeid"), new NodeEntry(row));
+        }
+
+        for (final Map<String, Object> row : query(conn, "assets", "SELECT * FROM assets" + (nodeIds == null ? "" : " WHERE nodeID IN (" + nodeIds + ")"))) {
+            final NodeEntry node = nodes.get(row.get("nodeid"));
+            if (node != null) {
+                node.m_assets = row;
+            }
+        }
+
+        final Map<Long, InterfaceEntry> interfaces = new HashMap<Long, InterfaceEntry>();
+        for (final Map<String, Object> row : query(conn, "ipinterface", "SELECT * FROM ipInterface" + (nodeIds == null ? "" : " WHERE nodeID IN (" + nodeIds + ")"))) {
+            final NodeEntry node = nodes.get(row.get("nodeid"));
+            if (node != null) {
+                final InterfaceEntry iface = new InterfaceEntry(node, row);
+                node.m_interfaces.add(iface);
+                interfaces.put((Long)row.get("id"), iface);
+            }
+        }
+
+        for (final Map<String, Object> row : query(conn, "service", "SELECT ifServices.ipInterfaceId AS filter_ipinterfaceid, service.* FROM ifServices JOIN service ON (ifServices.serviceID = service.serviceID)"
+                + (nodeIds == null ? "" : " WHERE ifServices.ipInterfaceId IN (SELECT id FROM ipInterface WHERE nodeID IN (" + nodeIds + "))"))) {
+            final InterfaceEntry iface = interfaces.get(row.remove("filter_ipinterfaceid"));
+            if (iface != null) {
+                iface.m_services.add(row);
+            }
+        }
+
+        for (final Map<String, Object> row : query(conn, "categories", "SELECT category_node.nodeID AS filter_nodeid, categories.* FROM category_node JOIN categories ON (category_node.categoryID = categories.categoryID)"
+                + (nodeIds == null ? "" : " WHERE category_node.nodeID IN (" + nodeIds + ")"))) {
+            final NodeEntry node = nodes.get(row.remove("filter_nodeid"));
+            if (node != null) {
+                node.m_categories.add(row);
+                if (row.get("categoryname") != null) {
+                    node.m_categoryNames.add((String)row.get("categoryname"));
+                }
+            }
+        }
+        return nodes.values();
+    }
+
+    /**
+     * Runs a query and returns its rows keyed by lower case column names.
+     * The column types of the table are recorded on the first load.
+     */
+    private List<Map<String, Object>> query(final Connection conn, final String table, final String sql) throws SQLException {
+        final DBUtils d = new DBUtils(getClass());
+        try {
+            final Statement stmt = conn.createStatement();
+            d.watch(stmt);
+            final ResultSet rs = stmt.executeQuery(sql);
+            d.watch(rs);
+
+            final ResultSetMetaData metaData = rs.getMetaData();
+            final int count = metaData.getColumnCount();
+            final String[] names = new String[count + 1];
+            final ColumnType[] types = new ColumnType[count + 1];
+            Map<String, ColumnType> tableTypes = m_columnTypes.get(table);
+            if (tableTypes == null) {
+                tableTypes = new HashMap<String, ColumnType>();
+                m_columnTypes.put(table, tableTypes);
+            }
+            for (int i = 1; i <= count; i++) {
+                names[i] = metaData.getColumnLabel(i).toLowerCase(Locale.ENGLISH);
+                types[i] = getColumnType(metaData.getColumnType(i));
+                if (!names[i].startsWith("filter_") && !tableTypes.containsKey(names[i])) {
+                    tableTypes.put(names[i], types[i]);
+                }
+            }
+
+            final List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+            while (rs.next()) {
+                final Map<String, Object> row = new HashMap<String, Object>(count * 2);
+                for (int i = 1; i <= count; i++) {
+                    final Object value;
+                    switch (types[i]) {
+                    case INTEGER:
+                        final long l = rs.getLong(i);
+                        value = rs.wasNull() ? null : Long.valueOf(l);
+                        break;
+                    case CHAR:
+                        final String c = rs.getString(i);
+                        value = c == null ? null : CompiledFilterRule.rtrim(c);
+                        break;
+                    case TEXT:
+                        value = rs.getString(i);
+                        break;
+                    default:
+                        // only kept to answer IS NULL
+                        value = rs.getObject(i) == null ? null : Boolean.TRUE;
+                    }
+                    if (value != null) {
+                        row.put(names[i], value);
+                    }
+                }
+                rows.add(row);
+            }
+            return rows;
+        } finally {
+            d.cleanUp();
+        }
+    }
+
+    private static ColumnType getColumnType(final int sqlType) {
+        switch (sqlType) {
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+        case Types.BIGINT:
+            return ColumnType.INTEGER;
+        case Types.CHAR:
+        case Types.NCHAR:
+            return ColumnType.CHAR;
+        case Types.VARCHAR:
+        case Types.NVARCHAR:
+        case Types.LONGVARCHAR:
+        case Types.LONGNVARCHAR:
+            return ColumnType.TEXT;
+        default:
+            return ColumnType.OTHER;
+        }
+    }
+}
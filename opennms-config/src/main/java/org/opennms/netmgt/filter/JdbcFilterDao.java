@@ -81,6 +81,7 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
 
 	private DataSource m_dataSource;
     private DatabaseSchemaConfig m_databaseSchemaConfigFactory;
+    private FilterSnapshot m_filterSnapshot;
 
     /**
      * <p>setDataSource</p>
@@ -118,6 +119,24 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
         return m_databaseSchemaConfigFactory;
     }
 
+    /**
+     * <p>setFilterSnapshot</p>
+     *
+     * @param filterSnapshot a {@link org.opennms.netmgt.filter.FilterSnapshot} used to evaluate rules in memory, or null
+     */
+    public void setFilterSnapshot(final FilterSnapshot filterSnapshot) {
+        m_filterSnapshot = filterSnapshot;
+    }
+
+    /**
+     * <p>getFilterSnapshot</p>
+     *
+     * @return a {@link org.opennms.netmgt.filter.FilterSnapshot} object.
+     */
+    public FilterSnapshot getFilterSnapshot() {
+        return m_filterSnapshot;
+    }
+
     /**
      * <p>afterPropertiesSet</p>
      */
@@ -147,11 +166,19 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
         Connection conn = null;
         final DBUtils d = new DBUtils(getClass());
         try {
+            // parse the rule and get the sql select statement
+            sqlString = getNodeMappingStatement(rule);
+
+            if (m_filterSnapshot != null) {
+                final SortedMap<Integer, String> nodeMap = m_filterSnapshot.getNodeMap(sqlString);
+                if (nodeMap != null) {
+                    return nodeMap;
+                }
+            }
+
             conn = getDataSource().getConnection();
             d.watch(conn);
 
-            // parse the rule and get the sql select statement
-            sqlString = getNodeMappingStatement(rule);
             LOG.debug("Filter.getNodeMap({}): SQL statement: {}", rule, sqlString);
 
             // execute query
@@ -274,12 +301,14 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
         final DBUtils d = new DBUtils(getClass());
         try {
             // parse the rule and get the sql select statement
-            sqlString = getSQLStatement(rule);
+            sqlString = filterDeleted ? getActiveSQLStatement(rule) : getSQLStatement(rule);
 
-            if (filterDeleted) {
-            	if (!sqlString.contains("isManaged")) {
-            		sqlString += " AND (ipInterface.isManaged != 'D' or ipInterface.isManaged IS NULL)";
-            	}
+            if (m_filterSnapshot != null) {
+                final List<InetAddress> addresses = m_filterSnapshot.getIPAddressList(sqlString);
+                if (addresses != null) {
+                    LOG.debug("Filter.getIPAddressList({}): evaluated in memory, resultList = {}", rule, addresses);
+                    return addresses;
+                }
             }
 
             conn = getDataSource().getConnection();
@@ -331,6 +360,16 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
         if (rule.length() == 0) {
             return true;
         } else {
+            if (m_filterSnapshot != null && m_filterSnapshot.isEnabled()) {
+                try {
+                    final Boolean valid = m_filterSnapshot.isValid(addr(addr), getActiveSQLStatement(rule));
+                    if (valid != null) {
+                        return valid.booleanValue();
+                    }
+                } catch (final FilterParseException e) {
+                    // reported below
+                }
+            }
             /*
              * see if the ip address is contained in the list that the
              * rule returns
@@ -474,6 +513,18 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
         return "SELECT DISTINCT " + columns.toString() + " " + from + " " + where;
     }
 
+    /**
+     * Returns the SQL statement for a rule, restricted to interfaces that
+     * are not marked as deleted unless the rule tests isManaged itself.
+     */
+    private String getActiveSQLStatement(final String rule) throws FilterParseException {
+        final String sqlString = getSQLStatement(rule);
+        if (sqlString.contains("isManaged")) {
+            return sqlString;
+        }
+        return sqlString + " AND (ipInterface.isManaged != 'D' or ipInterface.isManaged IS NULL)";
+    }
+
     /**
      * This method should be called if you want to put constraints on the node,
      * interface or service that is returned in the rule. This is useful to see
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.config;
+
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.opennms.core.test.ConfigurationTestUtils;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Parm;
+import org.opennms.netmgt.xml.event.Snmp;
+import org.opennms.netmgt.xml.event.Value;
+import org.opennms.netmgt.xml.eventconf.Events;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * Replays a mix of traps and internal events built from the default event
+ * configuration against both the partitioned lookup and the compiled
+ * {@link org.opennms.netmgt.xml.eventconf.EventConfMatcher}, verifies that
+ * they agree. The ignored testLookupRate() logs the lookup rate of each.
+ */
+public class EventConfMatcherBenchmarkTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventConfMatcherBenchmarkTest.class);
+
+    private static final int ITERATIONS = 5;
+
+    private DefaultEventConfDao m_eventConfDao;
+
+    private List<Event> m_trapMix;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging(false);
+
+        m_eventConfDao = new DefaultEventConfDao();
+        m_eventConfDao.setConfigResource(new FileSystemResource(ConfigurationTestUtils.getFileForConfigFile("eventconf.xml")));
+        m_eventConfDao.afterPropertiesSet();
+
+        final Random random = new Random(42);
+        m_trapMix = new ArrayList<Event>();
+        for (final org.opennms.netmgt.xml.eventconf.Event eventConf : m_eventConfDao.getAllEvents()) {
+            final Event event = new Event();
+            final List<String> ids = eventConf.getMaskElementValues("id");
+            if (ids == null) {
+                event.setUei(eventConf.getUei());
+            } else {
+                final Snmp snmp = new Snmp();
+                snmp.setId(ids.get(0).replace("%", ".1").replace("~", ""));
+                snmp.setGeneric(firstInt(eventConf.getMaskElementValues("generic"), 6));
+                snmp.setSpecific(firstInt(eventConf.getMaskElementValues("specific"), random.nextInt(100)));
+                event.setUei("uei.opennms.org/default/trap");
+                event.setSnmp(snmp);
+                for (int i = 0; i < 3; i++) {
+                    final Parm parm = new Parm();
+                    parm.setParmName(snmp.getId() + "." + i);
+                    parm.setValue(new Value(Integer.toString(random.nextInt(10))));
+                    event.addParm(parm);
+                }
+            }
+            m_trapMix.add(event);
+
+            // and one that is unlikely to be known
+            final Event unknown = new Event();
+            final Snmp snmp = new Snmp();
+            snmp.setId(".1.3.6.1.4.1." + random.nextInt(100000));
+            snmp.setGeneric(6);
+            snmp.setSpecific(random.nextInt(100));
+            unknown.setUei("uei.opennms.org/default/trap");
+            unknown.setSnmp(snmp);
+            m_trapMix.add(unknown);
+        }
+        Collections.shuffle(m_trapMix, random);
+    }
+
+    private static int firstInt(final List<String> values, final int defaultValue) {
+        if (values != null) {
+            for (final String value : values) {
+                try {
+                    return Integer.parseInt(value);
+                } catch (final NumberFormatException e) {
+                    // wildcard, try the next one
+                }
+            }
+        }
+        return defaultValue;
+    }
+
+    @Test
+    public void testCompiledMatcherAgreesWithPartitionedLookup() {
+        final Events events = m_eventConfDao.getRootEvents();
+        for (final Event event : m_trapMix) {
+            assertSame(events.findFirstMatchingEventByPartition(event), events.findFirstMatchingEvent(event));
+        }
+    }
+
+    @Test
+    @Ignore("benchmark of the two lookups")
+    public void testLookupRate() {
+        final Events events = m_eventConfDao.getRootEvents();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (final Event event : m_trapMix) {
+                events.findFirstMatchingEventByPartition(event);
+            }
+        }
+        final long partitioned = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (final Event event : m_trapMix) {
+                events.findFirstMatchingEvent(event);
+            }
+        }
+        final long compiled = System.nanoTime() - start;
+
+        final long lookups = ITERATIONS * (long)m_trapMix.size();
+        LOG.info("{} lookups over {} event definitions: partitioned {}/s, compiled {}/s",
+                 lookups, m_eventConfDao.getAllEvents().size(),
+                 Math.round(lookups * 1e9 / partitioned), Math.round(lookups * 1e9 / compiled));
+    }
+}
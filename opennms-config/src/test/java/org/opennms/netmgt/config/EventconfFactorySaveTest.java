@@ -35,6 +35,9 @@ import junit.framework.TestCase;
 
 import org.apache.commons.io.FileUtils;
 import org.opennms.netmgt.xml.eventconf.Event;
+import org.opennms.netmgt.xml.eventconf.Events;
+import org.opennms.netmgt.xml.eventconf.Events.EventCallback;
+import org.opennms.netmgt.xml.eventconf.Events.EventCriteria;
 import org.opennms.netmgt.xml.eventconf.Logmsg;
 import org.opennms.test.FileAnticipator;
 import org.springframework.core.io.FileSystemResource;
@@ -235,6 +238,47 @@ public class EventconfFactorySaveTest extends TestCase {
         }
     }
     
+    /**
+     * Test that changes publish a new configuration and leave the one a
+     * reader already has untouched
+     */
+    public void testChangesDoNotModifyPublishedEvents() {
+        Events before=m_eventConfDao.getRootEvents();
+        int count=m_eventConfDao.getAllEvents().size();
+
+        Event event=getAddableEvent();
+        m_eventConfDao.addEventToProgrammaticStore(event);
+        Events added=m_eventConfDao.getRootEvents();
+        assertNotSame(before, added);
+        assertNull(before.getLoadEventsByFile("events/programmatic.events.xml"));
+        assertEquals(count, countEvents(before));
+        assertEquals(count + 1, countEvents(added));
+
+        assertTrue("remove should have returned true", m_eventConfDao.removeEventFromProgrammaticStore(event));
+        assertNotSame(added, m_eventConfDao.getRootEvents());
+        assertEquals(count + 1, countEvents(added));
+        assertNotNull(added.findFirstMatchingEvent(new EventCriteria() {
+            @Override
+            public boolean matches(Event e) {
+                return newUEI.equals(e.getUei());
+            }
+        }));
+        assertEquals(count, m_eventConfDao.getAllEvents().size());
+
+        m_eventConfDao.addEvent(getAddableEvent());
+        assertEquals(count, countEvents(before));
+        assertEquals(count + 1, m_eventConfDao.getAllEvents().size());
+    }
+
+    private static int countEvents(Events events) {
+        return events.forEachEvent(0, new EventCallback<Integer>() {
+            @Override
+            public Integer process(Integer count, Event event) {
+                return count + 1;
+            }
+        });
+    }
+
     public void testRemoveEventToProgrammaticStore() {
         Event event=getAddableEvent();
         
@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.opennms.netmgt.config.notifications.Notification;
+import org.opennms.netmgt.config.notifications.Notifications;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Verifies that the {@link NotificationIndex} selects the same
+ * notifications, in the same order, as the walk over all notifications
+ * that {@link NotificationManager} used to do. testRoutingTime() is
+ * ignored; it logs the time it takes to route events with both.
+ */
+public class NotificationIndexTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationIndexTest.class);
+
+    private static final int NOTIFICATIONS = 600;
+
+    private static final int EVENTS = 20000;
+
+    private static Notification notification(final String name, final String uei, final String severity) {
+        final Notification notification = new Notification();
+        notification.setName(name);
+        notification.setUei(uei);
+        notification.setEventSeverity(severity);
+        notification.setRule("IPADDR IPLIKE *.*.*.*");
+        notification.setStatus("on");
+        return notification;
+    }
+
+    private static List<String> names(final List<NotificationIndex.Entry> entries) {
+        final List<String> names = new ArrayList<String>();
+        for (final NotificationIndex.Entry entry : entries) {
+            names.add(entry.getNotification().getName());
+        }
+        return names;
+    }
+
+    /**
+     * The UEI matching of NotificationManager before the index.
+     */
+    private static List<String> linearMatch(final Notifications notifications, final String uei) {
+        final List<String> names = new ArrayList<String>();
+        for (final Notification notification : notifications.getNotificationCollection()) {
+            if (uei.equals(notification.getUei()) || "MATCH-ANY-UEI".equals(notification.getUei())) {
+                names.add(notification.getName());
+            } else if (notification.getUei().charAt(0) == '~' && uei.matches(notification.getUei().substring(1))) {
+                names.add(notification.getName());
+            }
+        }
+        return names;
+    }
+
+    @Test
+    public void testCandidatesInConfigurationOrder() {
+        final Notifications notifications = new Notifications();
+        notifications.addNotification(notification("regex", "~^uei\\.opennms\\.org/nodes/node.*$", null));
+        notifications.addNotification(notification("down", "uei.opennms.org/nodes/nodeDown", null));
+        notifications.addNotification(notification("any", "MATCH-ANY-UEI", null));
+        notifications.addNotification(notification("up", "uei.opennms.org/nodes/nodeUp", null));
+        notifications.addNotification(notification("down again", "uei.opennms.org/nodes/nodeDown", null));
+        notifications.addNotification(notification("invalid", "~uei.opennms.org/nodes/(", null));
+
+        final NotificationIndex index = new NotificationIndex(notifications);
+
+        assertEquals("[regex, down, any, down again]", names(index.getCandidates("uei.opennms.org/nodes/nodeDown")).toString());
+        assertEquals("[regex, any, up]", names(index.getCandidates("uei.opennms.org/nodes/nodeUp")).toString());
+        assertEquals("[any]", names(index.getCandidates("uei.opennms.org/internal/reloadDaemonConfig")).toString());
+        // remembered candidates are the same
+        assertEquals("[regex, down, any, down again]", names(index.getCandidates("uei.opennms.org/nodes/nodeDown")).toString());
+        assertTrue(index.hasUei("uei.opennms.org/foo"));
+
+        notifications.removeNotification(notifications.getNotification(2));
+        final NotificationIndex withoutAny = new NotificationIndex(notifications);
+        assertFalse(withoutAny.hasUei("uei.opennms.org/foo"));
+        assertTrue(withoutAny.hasUei("uei.opennms.org/nodes/nodeLostService"));
+    }
+
+    @Test
+    public void testSeverity() {
+        final Notifications notifications = new Notifications();
+        notifications.addNotification(notification("none", "uei.opennms.org/test", null));
+        notifications.addNotification(notification("major", "uei.opennms.org/test", "Major|Critical"));
+        notifications.addNotification(notification("invalid", "uei.opennms.org/test", "(Major"));
+
+        final List<NotificationIndex.Entry> entries = new NotificationIndex(notifications).getCandidates("uei.opennms.org/test");
+        assertTrue(entries.get(0).matchesSeverity("Normal"));
+        assertTrue(entries.get(1).matchesSeverity("CRITICAL"));
+        assertFalse(entries.get(1).matchesSeverity("Minor"));
+        assertFalse(entries.get(2).matchesSeverity("Major"));
+    }
+
+    @Test
+    public void testMemberships() {
+        final Notifications notifications = new Notifications();
+        notifications.addNotification(notification("down", "uei.opennms.org/nodes/nodeDown", null));
+
+        final NotificationIndex index = new NotificationIndex(notifications);
+        final NotificationIndex.Entry entry = index.getCandidates("uei.opennms.org/nodes/nodeDown").get(0);
+        entry.putMembership(1, " & (nodeId == 1)", true);
+        entry.putMembership(2, " & (nodeId == 2)", false);
+        entry.putMembership(0, " & (ipAddr == '192.168.1.1')", true);
+
+        assertEquals(Boolean.TRUE, entry.getMembership(1, " & (nodeId == 1)"));
+        assertEquals(Boolean.FALSE, entry.getMembership(2, " & (nodeId == 2)"));
+        assertNull(entry.getMembership(1, " & (nodeId == 1) & (ipAddr == '192.168.1.1')"));
+
+        index.invalidateMemberships(1);
+        assertNull(entry.getMembership(1, " & (nodeId == 1)"));
+        assertNull(entry.getMembership(0, " & (ipAddr == '192.168.1.1')"));
+        assertEquals(Boolean.FALSE, entry.getMembership(2, " & (nodeId == 2)"));
+
+        index.invalidateMemberships(0);
+        assertNull(entry.getMembership(2, " & (nodeId == 2)"));
+    }
+
+    @Test
+    public void testRoutingAgreesWithLinearMatch() {
+        final Notifications notifications = createNotifications();
+        final NotificationIndex index = new NotificationIndex(notifications);
+        for (final String uei : createEvents(2000)) {
+            assertEquals(uei, linearMatch(notifications, uei), names(index.getCandidates(uei)));
+        }
+    }
+
+    @Test
+    @Ignore("routing timing comparison")
+    public void testRoutingTime() {
+        final Notifications notifications = createNotifications();
+        final String[] events = createEvents(EVENTS);
+        final NotificationIndex index = new NotificationIndex(notifications);
+
+        long start = System.nanoTime();
+        for (final String uei : events) {
+            linearMatch(notifications, uei);
+        }
+        final long linear = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (final String uei : events) {
+            index.getCandidates(uei);
+        }
+        final long indexed = System.nanoTime() - start;
+
+        LOG.info("{} events against {} notifications: linear {} us/event, indexed {} us/event",
+                 EVENTS, NOTIFICATIONS, String.format("%.2f", linear / 1e3 / EVENTS), String.format("%.2f", indexed / 1e3 / EVENTS));
+    }
+
+    private static Notifications createNotifications() {
+        final Notifications notifications = new Notifications();
+        for (int i = 0; i < NOTIFICATIONS; i++) {
+            if (i % 50 == 0) {
+                notifications.addNotification(notification("regex" + i, "~^uei\\.opennms\\.org/vendor/" + (i % 20) + "/traps/.*$", null));
+            } else {
+                notifications.addNotification(notification("exact" + i, getUei(i), null));
+            }
+        }
+        return notifications;
+    }
+
+    private static String getUei(final int i) {
+        return "uei.opennms.org/vendor/" + (i % 20) + "/traps/trap" + i;
+    }
+
+    private static String[] createEvents(final int count) {
+        final Random random = new Random(42);
+        final String[] events = new String[count];
+        for (int i = 0; i < count; i++) {
+            events[i] = random.nextInt(10) == 0 ? "uei.opennms.org/generic/traps/unknown" + random.nextInt(100) : getUei(random.nextInt(NOTIFICATIONS));
+        }
+        return events;
+    }
+}
@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.opennms.core.utils.InetAddressUtils.addr;
+import static org.opennms.core.utils.InetAddressUtils.isInetAddressInRange;
+import static org.opennms.core.utils.InetAddressUtils.str;
+import static org.opennms.core.utils.InetAddressUtils.toIpAddrBytes;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.opennms.core.utils.ByteArrayComparator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Verifies that the {@link PackageAddressIndex} agrees with the linear walk
+ * over the package definition that the poller used to do. The ignored
+ * testSchedulingTime() logs the time it takes to match a large inventory
+ * against a set of packages with both.
+ */
+public class PackageAddressIndexTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PackageAddressIndexTest.class);
+
+    private static final int PACKAGES = 40;
+
+    private static final int INTERFACES = 150000;
+
+    /**
+     * A package definition as it appears in the configuration.
+     */
+    private static class PackageDefinition {
+        private final List<InetAddress> m_filter = new ArrayList<InetAddress>();
+        private final Set<InetAddress> m_filterSet = new HashSet<InetAddress>();
+        private final List<String[]> m_includeRanges = new ArrayList<String[]>();
+        private final List<String[]> m_excludeRanges = new ArrayList<String[]>();
+        private final List<String> m_specifics = new ArrayList<String>();
+
+        private PackageAddressIndex toIndex() {
+            final PackageAddressIndex.Builder builder = PackageAddressIndex.builder()
+                .filterAddresses(m_filter)
+                .includeAll(m_includeRanges.isEmpty() && m_specifics.isEmpty());
+            for (final String[] range : m_includeRanges) {
+                builder.addIncludeRange(range[0], range[1]);
+            }
+            for (final String[] range : m_excludeRanges) {
+                builder.addExcludeRange(range[0], range[1]);
+            }
+            for (final String specific : m_specifics) {
+                builder.addSpecific(specific);
+            }
+            return builder.build();
+        }
+
+        /**
+         * The matching logic of PollerConfigManager before the index. The
+         * filter result can be searched as a list, like it used to be, or
+         * as a set to keep the correctness checks fast.
+         */
+        private boolean contains(final String iface, final boolean filterList) {
+            if (!(filterList ? m_filter : m_filterSet).contains(addr(iface))) {
+                return false;
+            }
+            boolean hasRangeInclude = m_includeRanges.isEmpty() && m_specifics.isEmpty();
+            final byte[] addr = toIpAddrBytes(iface);
+            for (final String[] range : m_includeRanges) {
+                if (isInetAddressInRange(iface, range[0], range[1])) {
+                    hasRangeInclude = true;
+                    break;
+                }
+            }
+            for (final String spec : m_specifics) {
+                if (new ByteArrayComparator().compare(addr, toIpAddrBytes(spec)) == 0) {
+                    return true;
+                }
+            }
+            for (final String[] range : m_excludeRanges) {
+                if (isInetAddressInRange(iface, range[0], range[1])) {
+                    return false;
+                }
+            }
+            return hasRangeInclude;
+        }
+    }
+
+    private List<String> m_interfaces;
+
+    private List<PackageDefinition> m_packages;
+
+    private void createInventory(final int interfaces) throws UnknownHostException {
+        final Random random = new Random(42);
+
+        m_interfaces = new ArrayList<String>(interfaces);
+        final List<InetAddress> addresses = new ArrayList<InetAddress>(interfaces);
+        for (int i = 0; i < interfaces; i++) {
+            m_interfaces.add(randomAddress(random));
+            addresses.add(addr(m_interfaces.get(i)));
+        }
+
+        m_packages = new ArrayList<PackageDefinition>(PACKAGES);
+        for (int i = 0; i < PACKAGES; i++) {
+            final PackageDefinition pkg = new PackageDefinition();
+            for (final InetAddress address : addresses) {
+                if (random.nextInt(4) != 0) {
+                    pkg.m_filter.add(address);
+                }
+            }
+            pkg.m_filterSet.addAll(pkg.m_filter);
+            // some packages include everything that passes the filter
+            if (i % 5 != 0) {
+                for (int j = random.nextInt(20); j >= 0; j--) {
+                    pkg.m_includeRanges.add(randomRange(random));
+                }
+                for (int j = random.nextInt(10); j > 0; j--) {
+                    pkg.m_specifics.add(m_interfaces.get(random.nextInt(interfaces)));
+                }
+            }
+            for (int j = random.nextInt(5); j > 0; j--) {
+                pkg.m_excludeRanges.add(randomRange(random));
+            }
+            m_packages.add(pkg);
+        }
+    }
+
+    private static String randomAddress(final Random random) throws UnknownHostException {
+        final byte[] addr = new byte[random.nextInt(10) == 0 ? 16 : 4];
+        random.nextBytes(addr);
+        // keep the first octet small so that the ranges overlap the interfaces
+        addr[0] = (byte)random.nextInt(4);
+        return str(InetAddress.getByAddress(addr));
+    }
+
+    private static String[] randomRange(final Random random) throws UnknownHostException {
+        final String a = randomAddress(random);
+        String b = randomAddress(random);
+        // mostly ranges of the same address family
+        if (random.nextInt(10) != 0 && toIpAddrBytes(a).length != toIpAddrBytes(b).length) {
+            b = a;
+        }
+        return new String[] { a, b };
+    }
+
+    @Test
+    public void testRanges() {
+        final PackageAddressIndex index = PackageAddressIndex.builder()
+            .addIncludeRange("10.0.0.1", "10.0.0.100")
+            .addIncludeRange("10.0.0.50", "10.0.1.10")
+            .addIncludeRange("fe80::1", "fe80::ffff")
+            // a reversed range only matches its first address
+            .addIncludeRange("192.168.1.10", "192.168.1.1")
+            .addExcludeRange("10.0.0.20", "10.0.0.30")
+            .addSpecific("10.0.0.25")
+            .build();
+
+        assertFalse(index.contains("10.0.0.0"));
+        assertTrue(index.contains("10.0.0.1"));
+        assertTrue(index.contains("10.0.0.19"));
+        assertFalse(index.contains("10.0.0.20"));
+        assertTrue(index.contains("10.0.0.25"));
+        assertFalse(index.contains("10.0.0.30"));
+        assertTrue(index.contains("10.0.0.31"));
+        assertTrue(index.contains("10.0.0.200"));
+        assertTrue(index.contains("10.0.1.10"));
+        assertFalse(index.contains("10.0.1.11"));
+        assertFalse(index.contains("fe80::0"));
+        assertTrue(index.contains("fe80::1"));
+        assertTrue(index.contains("fe80::abcd"));
+        assertFalse(index.contains("fe80::1:0"));
+        assertTrue(index.contains("192.168.1.10"));
+        assertFalse(index.contains("192.168.1.5"));
+        assertFalse(index.contains(null));
+    }
+
+    @Test
+    public void testFilterAndUrlEntries() {
+        final PackageAddressIndex index = PackageAddressIndex.builder()
+            .filterAddresses(Collections.singletonList(addr("10.1.1.1")))
+            .includeAll(true)
+            .build();
+        assertTrue(index.contains("10.1.1.1"));
+        assertFalse(index.contains("10.1.1.2"));
+
+        final PackageAddressIndex urls = PackageAddressIndex.builder()
+            .addUrlEntries(Collections.singletonList("10.1.1.2"))
+            .addExcludeRange("10.0.0.0", "10.255.255.255")
+            .build();
+        assertTrue(urls.contains("10.1.1.2"));
+        assertFalse(urls.contains("10.1.1.3"));
+    }
+
+    @Test
+    public void testIndexAgreesWithLinearWalk() throws UnknownHostException {
+        createInventory(5000);
+        for (final PackageDefinition pkg : m_packages) {
+            final PackageAddressIndex index = pkg.toIndex();
+            for (final String iface : m_interfaces) {
+                assertEquals(iface, pkg.contains(iface, false), index.contains(iface));
+            }
+            for (final String[] range : pkg.m_includeRanges) {
+                assertEquals(range[0], pkg.contains(range[0], false), index.contains(range[0]));
+                assertEquals(range[1], pkg.contains(range[1], false), index.contains(range[1]));
+            }
+        }
+    }
+
+    @Test
+    @Ignore("times a large inventory")
+    public void testSchedulingTime() throws UnknownHostException {
+        createInventory(INTERFACES);
+
+        long start = System.nanoTime();
+        final List<PackageAddressIndex> indexes = new ArrayList<PackageAddressIndex>(PACKAGES);
+        for (final PackageDefinition pkg : m_packages) {
+            indexes.add(pkg.toIndex());
+        }
+        final long build = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int indexed = 0;
+        for (final String iface : m_interfaces) {
+            for (final PackageAddressIndex index : indexes) {
+                if (index.contains(iface)) {
+                    indexed++;
+                }
+            }
+        }
+        final long lookup = System.nanoTime() - start;
+
+        // the linear walk takes far too long for the whole inventory,
+        // so time a slice of it and extrapolate
+        final int slice = INTERFACES / 1000;
+        start = System.nanoTime();
+        int linear = 0;
+        for (final String iface : m_interfaces.subList(0, slice)) {
+            for (final PackageDefinition pkg : m_packages) {
+                if (pkg.contains(iface, true)) {
+                    linear++;
+                }
+            }
+        }
+        final long walk = (System.nanoTime() - start) * (INTERFACES / slice);
+
+        LOG.info("{} interfaces x {} packages: index built in {} ms, matched in {} ms ({} matches), linear walk ~{} ms ({} matches in the first {} interfaces)",
+                 INTERFACES, PACKAGES, build / 1000000, lookup / 1000000, indexed, walk / 1000000, linear, slice);
+    }
+}
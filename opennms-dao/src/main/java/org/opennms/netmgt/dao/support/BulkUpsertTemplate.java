@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.support;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opennms.netmgt.dao.api.OnmsDao;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * The set based counterpart of the {@link UpsertTemplate}: reconciles all of
+ * the rows found by a scan with the rows already in the database in a single
+ * transaction.
+ *
+ * The existing rows are read with one query and indexed by their key. Every
+ * scanned row then either updates the existing row with the same key or is
+ * inserted, and the existing rows that were not matched by any scanned row
+ * are deleted when {@link #isStale(Object)} says so. The session is flushed
+ * once at the end, instead of once per row.
+ *
+ * Unlike the {@link UpsertTemplate} this does not protect against another
+ * thread inserting the same key concurrently, so it is meant for rows that
+ * are owned by a single writer, for example the links of a node that are
+ * only written by the scan of that node.
+ */
+public abstract class BulkUpsertTemplate<T, K, D extends OnmsDao<T, ?>> {
+    protected final PlatformTransactionManager m_transactionManager;
+    protected final D m_dao;
+
+    private int m_inserted = 0;
+    private int m_updated = 0;
+    private int m_deleted = 0;
+
+    public BulkUpsertTemplate(PlatformTransactionManager transactionManager, D dao) {
+        m_transactionManager = transactionManager;
+        m_dao = dao;
+    }
+
+    /**
+     * After creating the BulkUpsertTemplate call this method to reconcile
+     * the scanned rows with the database.  When more than one scanned row has
+     * the same key the last one wins.
+     */
+    public void execute(final Collection<T> scanned) {
+        TransactionTemplate template = new TransactionTemplate(m_transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRED);
+        template.execute(new TransactionCallbackWithoutResult() {
+
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                doReconcile(scanned);
+            }
+        });
+    }
+
+    private void doReconcile(final Collection<T> scanned) {
+        final Map<K, T> existing = new LinkedHashMap<K, T>();
+        final List<T> duplicates = new ArrayList<T>();
+        for (final T dbObj : query()) {
+            final K key = getKey(dbObj);
+            if (existing.containsKey(key)) {
+                duplicates.add(dbObj);
+            } else {
+                existing.put(key, dbObj);
+            }
+        }
+
+        final Map<K, T> rows = new LinkedHashMap<K, T>();
+        for (final T row : scanned) {
+            rows.put(getKey(row), row);
+        }
+
+        for (final Map.Entry<K, T> entry : rows.entrySet()) {
+            final T dbObj = existing.remove(entry.getKey());
+            if (dbObj != null) {
+                doUpdate(dbObj, entry.getValue());
+                m_updated++;
+            } else if (doInsert(entry.getValue())) {
+                m_inserted++;
+            }
+        }
+
+        duplicates.addAll(existing.values());
+        for (final T dbObj : duplicates) {
+            if (isStale(dbObj)) {
+                m_dao.delete(dbObj);
+                m_deleted++;
+            }
+        }
+
+        m_dao.flush();
+    }
+
+    /**
+     * @return the number of rows inserted by {@link #execute(Collection)}
+     */
+    public int getInserted() {
+        return m_inserted;
+    }
+
+    /**
+     * @return the number of rows updated by {@link #execute(Collection)}
+     */
+    public int getUpdated() {
+        return m_updated;
+    }
+
+    /**
+     * @return the number of rows deleted by {@link #execute(Collection)}
+     */
+    public int getDeleted() {
+        return m_deleted;
+    }
+
+    /**
+     * Override this method to return all of the rows in the database that
+     * the scan is reconciled with.
+     */
+    protected abstract Collection<T> query();
+
+    /**
+     * Override this method to return the key that identifies a row, both for
+     * the rows in the database and for the scanned rows. Keys must implement
+     * equals and hashCode.
+     */
+    protected abstract K getKey(T row);
+
+    /**
+     * Override this method to update the row in the database with the
+     * scanned row that has the same key.
+     */
+    protected abstract void doUpdate(T dbObj, T row);
+
+    /**
+     * Override this method to insert a scanned row that is not in the
+     * database yet.
+     *
+     * @return false if the row was not inserted
+     */
+    protected abstract boolean doInsert(T row);
+
+    /**
+     * Override this method to decide if a row in the database that was not
+     * matched by any scanned row is deleted.
+     */
+    protected abstract boolean isStale(T dbObj);
+
+}
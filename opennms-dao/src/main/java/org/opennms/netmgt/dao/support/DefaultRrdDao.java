@@ -30,6 +30,7 @@ package org.opennms.netmgt.dao.support;
 
 import java.io.File;
 import java.io.InputStream;
+import java.util.Arrays;
 
 import org.opennms.netmgt.dao.api.RrdDao;
 import org.opennms.netmgt.model.OnmsAttribute;
@@ -87,7 +88,19 @@ public class DefaultRrdDao implements RrdDao, InitializingBean {
         }
         
         RrdGraphAttribute rrdAttribute = (RrdGraphAttribute) attribute;
-        
+
+        // consolidate the values directly if the strategy can, instead of rendering a graph
+        String rrdFile = new File(m_rrdBaseDirectory, rrdAttribute.getRrdRelativePath()).getAbsolutePath();
+        double[] aggregates;
+        try {
+            aggregates = m_rrdStrategy.fetchAggregates(rrdFile, attribute.getName(), rraConsolidationFunction, startTimeInMillis / 1000, endTimeInMillis / 1000, printFunctions);
+        } catch (Throwable e) {
+            throw new DataAccessResourceFailureException("Failure when fetching " + Arrays.toString(printFunctions) + " of " + attribute.getName() + " from '" + rrdFile + "'", e);
+        }
+        if (aggregates != null) {
+            return aggregates;
+        }
+
         String[] command = new String[] {
                 m_rrdBinaryPath,
                 "graph",
@@ -90,6 +90,12 @@ public class NullRrdStrategy implements RrdStrategy<Object,Object> {
 		return null;
 	}
 
+    @Override
+	public double[] fetchAggregates(String rrdFile, String ds, String consolidationFunction, long start, long end, String... aggregateFunctions)
+			throws RrdException {
+		return null;
+	}
+
     @Override
 	public String getStats() {
 		return null;
@@ -111,6 +117,11 @@ public class NullRrdStrategy implements RrdStrategy<Object,Object> {
 			throws Exception {
 	}
 
+    @Override
+    public void updateFile(Object rrd, String owner, long timestamp, double[] values)
+            throws Exception {
+    }
+
     @Override
     public int getGraphLeftOffset() {
         return 0;
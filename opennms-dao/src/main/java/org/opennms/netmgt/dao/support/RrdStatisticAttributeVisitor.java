@@ -28,6 +28,13 @@
 
 package org.opennms.netmgt.dao.support;
 
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 import org.opennms.netmgt.dao.api.RrdDao;
 import org.opennms.netmgt.model.AttributeStatisticVisitor;
 import org.opennms.netmgt.model.AttributeVisitor;
@@ -41,6 +48,11 @@ import org.springframework.util.Assert;
 /**
  * <p>RrdStatisticAttributeVisitor class.</p>
  *
+ * <p>If an executor is set, the statistics are fetched on its threads and
+ * {@link #waitForCompletion()} has to be called once all attributes have
+ * been visited. The statistic visitor is only called by one thread at a
+ * time.</p>
+ *
  * @author <a href="mailto:dj@opennms.org">DJ Gregor</a>
  * @version $Id: $
  */
@@ -51,15 +63,98 @@ public class RrdStatisticAttributeVisitor implements AttributeVisitor, Initializ
     private Long m_startTime;
     private Long m_endTime;
     private AttributeStatisticVisitor m_statisticVisitor;
+    private ExecutorService m_executor;
+    private final LinkedList<Future<?>> m_pending = new LinkedList<Future<?>>();
+    private RuntimeException m_failure;
     
     /** {@inheritDoc} */
     @Override
-    public void visit(OnmsAttribute attribute) {
+    public void visit(final OnmsAttribute attribute) {
         if (!RrdGraphAttribute.class.isAssignableFrom(attribute.getClass())) {
             // Nothing to do if we can't cast to an RrdGraphAttribute
             return;
         }
-        
+
+        if (m_executor == null) {
+            visitStatistic(attribute);
+            return;
+        }
+
+        final Future<?> future = m_executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                visitStatistic(attribute);
+            }
+        });
+        synchronized (m_pending) {
+            consumeCompleted();
+            m_pending.add(future);
+        }
+    }
+
+    /**
+     * Removes the statistics that have already been fetched from the head
+     * of the pending ones, so that the list does not grow with the number
+     * of visited attributes. The executor starts them in the order they
+     * were submitted, so checking the head is enough. The first failure is
+     * kept for {@link #waitForCompletion()}. Called with the pending list
+     * locked.
+     */
+    private void consumeCompleted() {
+        while (!m_pending.isEmpty() && m_pending.getFirst().isDone()) {
+            final Future<?> future = m_pending.removeFirst();
+            try {
+                future.get();
+            } catch (final InterruptedException e) {
+                // the future is done, so get() does not wait
+                Thread.currentThread().interrupt();
+            } catch (final ExecutionException e) {
+                if (m_failure == null) {
+                    m_failure = toRuntimeException(e);
+                }
+            }
+        }
+    }
+
+    private static RuntimeException toRuntimeException(final ExecutionException e) {
+        return e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : new IllegalStateException(e.getCause());
+    }
+
+    /**
+     * Waits until the statistics of all visited attributes have been
+     * passed to the statistic visitor. Does nothing if there is no executor.
+     *
+     * @throws java.lang.RuntimeException the first exception thrown while
+     *         fetching a statistic
+     */
+    public void waitForCompletion() {
+        final List<Future<?>> pending;
+        RuntimeException failure;
+        synchronized (m_pending) {
+            pending = new ArrayList<Future<?>>(m_pending);
+            m_pending.clear();
+            failure = m_failure;
+            m_failure = null;
+        }
+
+        for (final Future<?> future : pending) {
+            try {
+                future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for statistics", e);
+            } catch (final ExecutionException e) {
+                if (failure == null) {
+                    failure = toRuntimeException(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void visitStatistic(final OnmsAttribute attribute) {
         double statistic = m_rrdDao.getPrintValue(attribute, m_consolidationFunction, m_startTime, m_endTime);
         
         LOG.debug("The value of {} is {}", attribute, statistic);
@@ -76,7 +171,9 @@ public class RrdStatisticAttributeVisitor implements AttributeVisitor, Initializ
             return;
         }
         
-        m_statisticVisitor.visit(attribute, statistic);
+        synchronized (m_statisticVisitor) {
+            m_statisticVisitor.visit(attribute, statistic);
+        }
     }
 
     /**
@@ -129,6 +226,25 @@ public class RrdStatisticAttributeVisitor implements AttributeVisitor, Initializ
         m_statisticVisitor = statisticVisitor;
     }
 
+    /**
+     * <p>getExecutor</p>
+     *
+     * @return the executor the statistics are fetched on, or null
+     */
+    public ExecutorService getExecutor() {
+        return m_executor;
+    }
+
+    /**
+     * <p>setExecutor</p>
+     *
+     * @param executor the executor to fetch the statistics on, or null to
+     *        fetch them on the visiting thread
+     */
+    public void setExecutor(ExecutorService executor) {
+        m_executor = executor;
+    }
+
     /**
      * <p>getConsolidationFunction</p>
      *
@@ -181,6 +181,10 @@ public class DefaultRrdDaoTest extends TestCase {
         OnmsResource childResource = new OnmsResource("eth0", "Interface One: eth0", childResourceType, attributeSet);
         childResource.setParent(topResource);
         
+        // the mock can not fetch aggregates directly, so a graph is rendered
+        String absoluteFile = new File(m_dao.getRrdBaseDirectory(), rrdDir + File.separator + rrdFile).getAbsolutePath();
+        expect(m_rrdStrategy.fetchAggregates(absoluteFile, "ifInOctets", "AVERAGE", start / 1000, end / 1000, "AVERAGE")).andReturn(null);
+
         DefaultRrdGraphDetails details = new DefaultRrdGraphDetails();
         details.setPrintLines(new String[] { printLine });
         expect(m_rrdStrategy.createGraphReturnDetails(commandString, m_dao.getRrdBaseDirectory())).andReturn(details);
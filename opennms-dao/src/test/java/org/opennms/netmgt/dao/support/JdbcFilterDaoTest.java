@@ -31,14 +31,21 @@ package org.opennms.netmgt.dao.support;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.InputStream;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.sql.DataSource;
 
@@ -49,18 +56,22 @@ import org.opennms.core.spring.BeanUtils;
 import org.opennms.core.test.ConfigurationTestUtils;
 import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
 import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
+import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.config.DatabaseSchemaConfigFactory;
 import org.opennms.netmgt.dao.DatabasePopulator;
 import org.opennms.netmgt.dao.api.IpInterfaceDao;
 import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.netmgt.dao.api.ServiceTypeDao;
+import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.filter.FilterDaoFactory;
+import org.opennms.netmgt.filter.FilterSnapshot;
 import org.opennms.netmgt.filter.JdbcFilterDao;
 import org.opennms.netmgt.model.AbstractEntityVisitor;
 import org.opennms.netmgt.model.EntityVisitor;
 import org.opennms.netmgt.model.OnmsIpInterface;
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.OnmsServiceType;
+import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.test.JUnitConfigurationEnvironment;
 import org.opennms.test.ThrowableAnticipator;
 import org.springframework.beans.factory.InitializingBean;
@@ -327,4 +338,93 @@ public class JdbcFilterDaoTest implements InitializingBean {
         // Just make sure this one doesn't hurl
         m_dao.getInterfaceWithServiceStatement("serviceName == 'DiskUsage-/foo/bar'");
     }
+
+    @Test
+    @JUnitTemporaryDatabase
+    public void testInMemoryEvaluationAgreesWithSql() throws Exception {
+        final FilterSnapshot snapshot = new FilterSnapshot();
+        snapshot.setDataSource(m_dataSource);
+        snapshot.setEnabled(true);
+
+        final JdbcFilterDao inMemoryDao = new JdbcFilterDao();
+        inMemoryDao.setDataSource(m_dataSource);
+        inMemoryDao.setDatabaseSchemaConfigFactory(DatabaseSchemaConfigFactory.getInstance());
+        inMemoryDao.setFilterSnapshot(snapshot);
+        inMemoryDao.afterPropertiesSet();
+
+        final String[] rules = new String[] {
+                "ipaddr IPLIKE *.*.*.*",
+                "ipaddr IPLIKE 192.168.1-2.*",
+                "ipaddr == '192.168.1.1'",
+                "isICMP",
+                "isSNMP & !isHTTP",
+                "notisHTTP",
+                "catincIMP_mid",
+                "catincDEV_AC | catincServers",
+                "!catincDEV_AC",
+                "categoryName == 'Routers'",
+                "categoryName != 'Routers'",
+                "nodeLabel LIKE 'node%'",
+                "nodeLabel != 'node1' & isManaged == 'M'",
+                "isSnmpPrimary == 'P' | isSnmpPrimary == 'S'",
+                "(nodeId > 1) & (nodeId <= 3)",
+                "nodeSysOID IS NULL",
+                "assetNumber == '5'",
+                "ipHostname IS NOT NULL",
+                "(catincIMP_mid) & (catincDEV_AC) & (catincOPS_Online) & (ipAddr == '192.168.1.1') & (serviceName == 'ICMP')"
+        };
+        final List<InetAddress> allAddresses = m_dao.getIPAddressList("ipaddr IPLIKE *.*.*.*");
+        for (final String rule : rules) {
+            assertNotNull("in memory: " + rule, snapshot.getNodeMap(inMemoryDao.getNodeMappingStatement(rule)));
+            assertEquals(rule, new HashSet<InetAddress>(m_dao.getIPAddressList(rule)), new HashSet<InetAddress>(inMemoryDao.getIPAddressList(rule)));
+            assertEquals(rule, new HashSet<InetAddress>(m_dao.getActiveIPAddressList(rule)), new HashSet<InetAddress>(inMemoryDao.getActiveIPAddressList(rule)));
+            assertEquals(rule, m_dao.getNodeMap(rule), inMemoryDao.getNodeMap(rule));
+            for (final InetAddress address : allAddresses) {
+                final String addr = InetAddressUtils.str(address);
+                assertEquals(rule + ": " + addr, m_dao.isValid(addr, rule), inMemoryDao.isValid(addr, rule));
+            }
+        }
+
+        // rules on other tables are run as SQL
+        final String snmpRule = "snmpIfIndex == 1";
+        assertNull(snapshot.getNodeMap(inMemoryDao.getNodeMappingStatement(snmpRule)));
+        assertEquals(m_dao.getNodeMap(snmpRule), inMemoryDao.getNodeMap(snmpRule));
+
+        // changes are picked up once they are announced
+        final Integer nodeId = m_populator.getNode1().getId();
+        m_transTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                final OnmsNode node = m_nodeDao.get(nodeId);
+                node.setLabel("renamed");
+                m_nodeDao.update(node);
+                m_nodeDao.flush();
+            }
+        });
+        assertEquals("node1", inMemoryDao.getNodeMap("nodeLabel LIKE 'node%'").get(nodeId));
+        snapshot.process(null, new EventBuilder(EventConstants.NODE_LABEL_CHANGED_EVENT_UEI, "test").setNodeid(nodeId).getEvent());
+        assertFalse(inMemoryDao.getNodeMap("nodeLabel LIKE 'node%'").containsKey(nodeId));
+        assertEquals(m_dao.getNodeMap("nodeLabel LIKE 'node%'"), inMemoryDao.getNodeMap("nodeLabel LIKE 'node%'"));
+
+        // threads that wait while another one reloads the node must not fall back to SQL
+        snapshot.process(null, new EventBuilder(EventConstants.NODE_LABEL_CHANGED_EVENT_UEI, "test").setNodeid(nodeId).getEvent());
+        final String statement = inMemoryDao.getNodeMappingStatement("nodeLabel LIKE 'node%'");
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<SortedMap<Integer, String>>> futures = new ArrayList<Future<SortedMap<Integer, String>>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(new Callable<SortedMap<Integer, String>>() {
+                    @Override
+                    public SortedMap<Integer, String> call() {
+                        return snapshot.getNodeMap(statement);
+                    }
+                }));
+            }
+            for (final Future<SortedMap<Integer, String>> future : futures) {
+                assertEquals(m_dao.getNodeMap("nodeLabel LIKE 'node%'"), future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
@@ -61,8 +61,7 @@ public abstract class AbstractForeignSourceRepository implements ForeignSourceRe
         Assert.notNull(resource);
  
         LOG.debug("importing requisition from {}", resource);
-        final Requisition requisition = JaxbUtils.unmarshal(Requisition.class, resource);
-        requisition.setResource(resource);
+        final Requisition requisition = RequisitionStreamReader.read(resource);
         save(requisition);
         return requisition;
     }
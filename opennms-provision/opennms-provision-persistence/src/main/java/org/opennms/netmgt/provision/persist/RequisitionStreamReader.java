@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.provision.persist;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.ValidationEvent;
+import javax.xml.bind.ValidationEventHandler;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+import org.apache.commons.io.IOUtils;
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.provision.persist.requisition.Requisition;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+
+/**
+ * Reads a requisition with a StAX parser, one node at a time.
+ *
+ * Only the node elements are handed to JAXB, so the document is not
+ * validated against the schema and large requisitions are read without
+ * the overhead of the SAX filter chain used by {@link JaxbUtils}.
+ * Elements without a namespace are read as if they were in the
+ * model-import namespace, as the namespace filter of {@link JaxbUtils}
+ * does.
+ *
+ * The result is a complete {@link Requisition}: the import saves it to
+ * the repository, audits it as a whole and deletes the nodes that are
+ * missing from it.
+ */
+public abstract class RequisitionStreamReader {
+    private static final Logger LOG = LoggerFactory.getLogger(RequisitionStreamReader.class);
+
+    private static final String MODEL_IMPORT_NAMESPACE = "http://xmlns.opennms.org/xsd/config/model-import";
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private static XMLInputFactory createFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    /**
+     * Presents elements without a namespace in the model-import namespace.
+     */
+    private static class NamespaceDelegate extends StreamReaderDelegate {
+        private NamespaceDelegate(final XMLStreamReader reader) {
+            super(reader);
+        }
+
+        private boolean isUnqualifiedElement() {
+            final int event = getEventType();
+            if (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+            final String namespace = super.getNamespaceURI();
+            return namespace == null || namespace.isEmpty();
+        }
+
+        @Override
+        public String getNamespaceURI() {
+            return isUnqualifiedElement() ? MODEL_IMPORT_NAMESPACE : super.getNamespaceURI();
+        }
+
+        @Override
+        public QName getName() {
+            return isUnqualifiedElement() ? new QName(MODEL_IMPORT_NAMESPACE, getLocalName()) : super.getName();
+        }
+    }
+
+    /**
+     * <p>read</p>
+     *
+     * @param resource the requisition document
+     * @return the requisition, with its resource set
+     * @throws ForeignSourceRepositoryException if the document can not be read
+     */
+    public static Requisition read(final Resource resource) throws ForeignSourceRepositoryException {
+        InputStream stream = null;
+        try {
+            stream = resource.getInputStream();
+            final Requisition requisition = read(stream);
+            requisition.setResource(resource);
+            return requisition;
+        } catch (final IOException e) {
+            throw new ForeignSourceRepositoryException("unable to read requisition from " + resource, e);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * <p>read</p>
+     *
+     * @param stream the requisition document
+     * @return the requisition
+     * @throws ForeignSourceRepositoryException if the document can not be read
+     */
+    public static Requisition read(final InputStream stream) throws ForeignSourceRepositoryException {
+        XMLStreamReader reader = null;
+        try {
+            reader = new NamespaceDelegate(FACTORY.createXMLStreamReader(stream));
+
+            final Unmarshaller unmarshaller = JaxbUtils.getContextFor(Requisition.class).createUnmarshaller();
+            unmarshaller.setEventHandler(new ValidationEventHandler() {
+                @Override
+                public boolean handleEvent(final ValidationEvent event) {
+                    LOG.warn("Error reading requisition: {}", event, event.getLinkedException());
+                    return false;
+                }
+            });
+
+            Requisition requisition = null;
+            final List<RequisitionNode> nodes = new ArrayList<RequisitionNode>();
+            while (reader.hasNext()) {
+                if (!reader.isStartElement()) {
+                    reader.next();
+                } else if (requisition == null) {
+                    if (!"model-import".equals(reader.getLocalName())) {
+                        throw new ForeignSourceRepositoryException("expected a model-import document, but found " + reader.getName());
+                    }
+                    requisition = readRequisition(reader);
+                    reader.next();
+                } else if ("node".equals(reader.getLocalName())) {
+                    // leaves the reader on the event after the end of the node
+                    nodes.add(unmarshaller.unmarshal(reader, RequisitionNode.class).getValue());
+                } else {
+                    LOG.debug("Ignoring unexpected element {} in requisition {}", reader.getName(), requisition.getForeignSource());
+                    reader.next();
+                }
+            }
+
+            if (requisition == null) {
+                throw new ForeignSourceRepositoryException("the requisition document is empty");
+            }
+            requisition.setNodes(nodes);
+            return requisition;
+        } catch (final XMLStreamException e) {
+            throw new ForeignSourceRepositoryException("unable to parse requisition", e);
+        } catch (final JAXBException e) {
+            throw new ForeignSourceRepositoryException("unable to unmarshal requisition node", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final XMLStreamException e) {
+                    LOG.debug("Unable to close the requisition reader", e);
+                }
+            }
+        }
+    }
+
+    private static Requisition readRequisition(final XMLStreamReader reader) throws ForeignSourceRepositoryException {
+        final Requisition requisition = new Requisition();
+        requisition.setForeignSource(reader.getAttributeValue(null, "foreign-source"));
+        // like JAXB, keep the date stamp set by the constructor if there is none
+        final String dateStamp = reader.getAttributeValue(null, "date-stamp");
+        if (dateStamp != null) {
+            requisition.setDateStamp(toCalendar(dateStamp));
+        }
+        final String lastImport = reader.getAttributeValue(null, "last-import");
+        if (lastImport != null) {
+            requisition.setLastImport(toCalendar(lastImport));
+        }
+        return requisition;
+    }
+
+    private static XMLGregorianCalendar toCalendar(final String value) throws ForeignSourceRepositoryException {
+        try {
+            return DatatypeFactory.newInstance().newXMLGregorianCalendar(value.trim());
+        } catch (final DatatypeConfigurationException e) {
+            throw new ForeignSourceRepositoryException("unable to create a calendar", e);
+        } catch (final IllegalArgumentException e) {
+            throw new ForeignSourceRepositoryException("invalid date in requisition: " + value, e);
+        }
+    }
+}
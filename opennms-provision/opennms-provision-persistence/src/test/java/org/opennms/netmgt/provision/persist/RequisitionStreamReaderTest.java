@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.provision.persist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import org.junit.Test;
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.provision.persist.requisition.Requisition;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionInterface;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+
+public class RequisitionStreamReaderTest {
+
+    @Test
+    public void testReadsLikeJaxb() throws Exception {
+        final File[] files = new File("target/test-classes/1.8-upgrade-test").listFiles();
+        assertNotNull(files);
+        assertEquals(11, files.length);
+        for (final File file : files) {
+            final Requisition expected = JaxbUtils.unmarshal(Requisition.class, file);
+            final Requisition actual = RequisitionStreamReader.read(new FileSystemResource(file));
+            assertEquals(file.getName(), expected, actual);
+            assertEquals(file.getName(), expected.getNodeCount(), actual.getNodeCount());
+        }
+
+        final ClassPathResource resource = new ClassPathResource("/requisition-test.xml");
+        final Requisition actual = RequisitionStreamReader.read(resource);
+        assertEquals(JaxbUtils.unmarshal(Requisition.class, resource), actual);
+        assertEquals(resource, actual.getResource());
+    }
+
+    @Test
+    public void testReadsWithoutNamespace() throws Exception {
+        final String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<model-import foreign-source=\"test\" date-stamp=\"2015-06-01T12:00:00.000Z\">\n" +
+                "  <node node-label=\"node1\" foreign-id=\"1\" building=\"HQ\">\n" +
+                "    <interface ip-addr=\"192.0.2.1\" snmp-primary=\"P\" status=\"1\">\n" +
+                "      <monitored-service service-name=\"ICMP\"/>\n" +
+                "    </interface>\n" +
+                "    <category name=\"Servers\"/>\n" +
+                "    <asset name=\"city\" value=\"Pittsboro\"/>\n" +
+                "  </node>\n" +
+                "  <node node-label=\"node2\" foreign-id=\"2\"/>\n" +
+                "</model-import>\n";
+
+        final Requisition requisition = RequisitionStreamReader.read(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+        assertEquals("test", requisition.getForeignSource());
+        assertEquals(2015, requisition.getDateStamp().getYear());
+        assertNull(requisition.getLastImport());
+        assertEquals(2, requisition.getNodeCount());
+
+        final RequisitionNode node = requisition.getNode("1");
+        assertEquals("node1", node.getNodeLabel());
+        assertEquals("HQ", node.getBuilding());
+        assertEquals(1, node.getInterfaceCount());
+        final RequisitionInterface iface = node.getInterface("192.0.2.1");
+        assertEquals("ICMP", iface.getMonitoredServices().get(0).getServiceName());
+        assertEquals("Servers", node.getCategories().get(0).getName());
+        assertEquals("Pittsboro", node.getAsset("city").getValue());
+
+        assertEquals("node2", requisition.getNodes().get(1).getNodeLabel());
+
+        assertEquals(requisition, JaxbUtils.unmarshal(Requisition.class, xml));
+    }
+}
@@ -28,7 +28,9 @@
 
 package org.opennms.netmgt.provision.service;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import org.opennms.core.tasks.BatchTask;
@@ -44,6 +46,7 @@ import org.opennms.netmgt.provision.service.lifecycle.LifeCycleInstance;
 import org.opennms.netmgt.provision.service.lifecycle.Phase;
 import org.opennms.netmgt.provision.service.lifecycle.annotations.Activity;
 import org.opennms.netmgt.provision.service.lifecycle.annotations.ActivityProvider;
+import org.opennms.netmgt.provision.service.lifecycle.annotations.Attribute;
 import org.opennms.netmgt.provision.service.operations.ImportOperation;
 import org.opennms.netmgt.provision.service.operations.ImportOperationsManager;
 import org.opennms.netmgt.provision.service.operations.RequisitionImport;
@@ -58,6 +61,12 @@ import org.springframework.core.io.Resource;
 @ActivityProvider
 public class CoreImportActivities {
     private static final Logger LOG = LoggerFactory.getLogger(CoreImportActivities.class);
+
+    /**
+     * The number of import operations run by each nodeImport lifecycle. The
+     * batches are scanned and persisted in parallel on the import executor.
+     */
+    private static final int IMPORT_BATCH_SIZE = Math.max(1, Integer.getInteger("org.opennms.provisiond.importBatchSize", 20));
     
     ProvisionService m_provisionService;
     
@@ -103,7 +112,7 @@ public class CoreImportActivities {
         opsMgr.setForeignSource(foreignSource);
         opsMgr.auditNodes(specFile);
 
-        debug("Finished auditing nodes.");
+        info("Finished auditing nodes for requisition {}: {} to insert, {} to update, {} to delete, {} unchanged.", foreignSource, opsMgr.getInsertCount(), opsMgr.getUpdateCount(), opsMgr.getDeleteCount(), opsMgr.getUnchangedCount());
         
         return opsMgr;
     }
@@ -119,52 +128,79 @@ public class CoreImportActivities {
         
         final Collection<ImportOperation> operations = opsMgr.getOperations();
         
+        List<ImportOperation> batch = new ArrayList<ImportOperation>(IMPORT_BATCH_SIZE);
         for(final ImportOperation op : operations) {
-            final LifeCycleInstance nodeScan = currentPhase.createNestedLifeCycle("nodeImport");
-
-            debug("Created lifecycle {} for operation {}", nodeScan, op);
-            
-            nodeScan.setAttribute("operation", op);
-            nodeScan.setAttribute("requisitionImport", ri);
-            nodeScan.trigger();
+            batch.add(op);
+            if (batch.size() >= IMPORT_BATCH_SIZE) {
+                scheduleBatch(currentPhase, batch, ri);
+                batch = new ArrayList<ImportOperation>(IMPORT_BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            scheduleBatch(currentPhase, batch, ri);
         }
 
+    }
+
+    private void scheduleBatch(final Phase currentPhase, final List<ImportOperation> batch, final RequisitionImport ri) {
+        final LifeCycleInstance nodeScan = currentPhase.createNestedLifeCycle("nodeImport");
 
+        debug("Created lifecycle {} for {} operations", nodeScan, batch.size());
+
+        nodeScan.setAttribute("operations", batch);
+        nodeScan.setAttribute("requisitionImport", ri);
+        nodeScan.trigger();
     }
     
     
     @Activity( lifecycle = "nodeImport", phase = "scan", schedulingHint="import" )
-    public void scanNode(final ImportOperation operation, final RequisitionImport ri, final String rescanExisting) {
+    public void scanNode(@Attribute("operations") final List<ImportOperation> operations, final RequisitionImport ri, final String rescanExisting) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping scan phase nodeImport.");
             return;
         }
 
-        if (rescanExisting == null || Boolean.valueOf(rescanExisting)) {
-            info("Running scan phase of {}, the parameter {} was set to {} during import.", operation, EventConstants.PARM_IMPORT_RESCAN_EXISTING, rescanExisting);
-            operation.scan();
-    
-            info("Finished Running scan phase of {}", operation);
-        } else {
-            info("Skipping scan phase of {}, because the parameter {} was set to {} during import.", operation, EventConstants.PARM_IMPORT_RESCAN_EXISTING, rescanExisting);
+        for (final ImportOperation operation : operations) {
+            if (rescanExisting == null || Boolean.valueOf(rescanExisting)) {
+                info("Running scan phase of {}, the parameter {} was set to {} during import.", operation, EventConstants.PARM_IMPORT_RESCAN_EXISTING, rescanExisting);
+                try {
+                    operation.scan();
+                } catch (final RuntimeException e) {
+                    // do not let one node fail the rest of the batch
+                    LOG.error("Failed to run scan phase of {}", operation, e);
+                    continue;
+                }
+
+                info("Finished Running scan phase of {}", operation);
+            } else {
+                info("Skipping scan phase of {}, because the parameter {} was set to {} during import.", operation, EventConstants.PARM_IMPORT_RESCAN_EXISTING, rescanExisting);
+            }
         }
     }
     
     @Activity( lifecycle = "nodeImport", phase = "persist" , schedulingHint = "import" )
-    public void persistNode(final ImportOperation operation, final RequisitionImport ri) {
-        if (ri.isAborted()) {
-            info("The import has been aborted, skipping persist phase.");
-            return;
-        }
+    public void persistNode(@Attribute("operations") final List<ImportOperation> operations, final RequisitionImport ri) {
+        for (final ImportOperation operation : operations) {
+            if (ri.isAborted()) {
+                info("The import has been aborted, skipping persist phase.");
+                return;
+            }
 
-        info("Running persist phase of {}", operation);
-        operation.persist();
-        info("Finished Running persist phase of {}", operation);
+            info("Running persist phase of {}", operation);
+            try {
+                operation.persist();
+            } catch (final RuntimeException e) {
+                // do not let one node fail the rest of the batch
+                LOG.error("Failed to run persist phase of {}", operation, e);
+                continue;
+            }
+            info("Finished Running persist phase of {}", operation);
+        }
 
     }
     
     @Activity( lifecycle = "import", phase = "relate" , schedulingHint = "import" )
-    public void relateNodes(final BatchTask currentPhase, final RequisitionImport ri) {
+    public void relateNodes(final BatchTask currentPhase, final ImportOperationsManager opsMgr, final RequisitionImport ri) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping relate phase.");
             return;
@@ -176,6 +212,10 @@ public class CoreImportActivities {
         RequisitionVisitor visitor = new AbstractRequisitionVisitor() {
             @Override
             public void visitNode(final OnmsNodeRequisition nodeReq) {
+                // the parent of an unchanged node without a parent reference is already up to date
+                if (opsMgr.isUnchanged(nodeReq.getForeignId()) && nodeReq.getParentForeignId() == null && nodeReq.getParentNodeLabel() == null) {
+                    return;
+                }
                 LOG.debug("Scheduling relate of node {}", nodeReq);
                 currentPhase.add(parentSetter(m_provisionService, nodeReq, requisition.getForeignSource()));
             }
@@ -43,6 +43,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -184,6 +186,9 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
     private final ThreadLocal<Map<String, OnmsServiceType>> m_typeCache = new ThreadLocal<Map<String, OnmsServiceType>>();
     private final ThreadLocal<Map<String, OnmsCategory>> m_categoryCache = new ThreadLocal<Map<String, OnmsCategory>>();
 
+    /** hashes of the requisitioned content of nodes, by node id, as of their last import */
+    private final ConcurrentMap<Integer, String> m_requisitionedNodeHashes = new ConcurrentHashMap<Integer, String>();
+
     @Override
     public void afterPropertiesSet() throws Exception {
         BeanUtils.assertAutowiring(this);
@@ -271,6 +276,7 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         final OnmsNode node = m_nodeDao.get(nodeId);
 
         if (node != null && shouldDelete(node)) {
+            m_requisitionedNodeHashes.remove(nodeId);
             m_nodeDao.delete(node);
             m_nodeDao.flush();
             node.visit(new DeleteEventVisitor(m_eventForwarder));
@@ -300,6 +306,8 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
     public void deleteInterface(final Integer nodeId, final String ipAddr) {
         final OnmsIpInterface iface = m_ipInterfaceDao.findByNodeIdAndIpAddress(nodeId, ipAddr);
         if (iface != null && shouldDelete(iface)) {
+            // the next import has to restore the interface if it is still requisitioned
+            m_requisitionedNodeHashes.remove(nodeId);
             m_ipInterfaceDao.delete(iface);
             m_ipInterfaceDao.flush();
             iface.visit(new DeleteEventVisitor(m_eventForwarder));
@@ -331,6 +339,8 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         final OnmsMonitoredService monSvc = m_monitoredServiceDao.get(nodeId, addr, service);
         if (monSvc == null) return;
 
+        m_requisitionedNodeHashes.remove(nodeId);
+
         final DeleteEventVisitor visitor = new DeleteEventVisitor(m_eventForwarder);
         final String addrAsString = str(addr);
 
@@ -791,6 +801,36 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         return m_nodeDao.getForeignIdToNodeIdMap(foreignSource);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public ForeignSource getForeignSource(final String foreignSourceName) {
+        try {
+            return m_foreignSourceRepository.getForeignSource(foreignSourceName);
+        } catch (final ForeignSourceRepositoryException e) {
+            LOG.warn("unable to get foreign source '{}' from repository", foreignSourceName, e);
+            return null;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getRequisitionedNodeHash(final Integer nodeId) {
+        return nodeId == null ? null : m_requisitionedNodeHashes.get(nodeId);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setRequisitionedNodeHash(final Integer nodeId, final String hash) {
+        if (nodeId == null) {
+            return;
+        }
+        if (hash == null) {
+            m_requisitionedNodeHashes.remove(nodeId);
+        } else {
+            m_requisitionedNodeHashes.put(nodeId, hash);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     @Transactional
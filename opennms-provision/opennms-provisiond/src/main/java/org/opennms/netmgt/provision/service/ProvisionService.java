@@ -45,6 +45,7 @@ import org.opennms.netmgt.provision.NodePolicy;
 import org.opennms.netmgt.provision.ServiceDetector;
 import org.opennms.netmgt.provision.SnmpInterfacePolicy;
 import org.opennms.netmgt.provision.persist.ForeignSourceRepository;
+import org.opennms.netmgt.provision.persist.foreignsource.ForeignSource;
 import org.opennms.netmgt.provision.persist.requisition.Requisition;
 import org.springframework.core.io.Resource;
 import org.springframework.transaction.annotation.Transactional;
@@ -177,6 +178,26 @@ public interface ProvisionService {
     @Transactional(readOnly = true)
     Map<String, Integer> getForeignIdToNodeIdMap(String foreignSource);
 
+    /**
+     * Returns the foreign source definition used for a requisition, or null
+     * if it can not be read.
+     */
+    ForeignSource getForeignSource(String foreignSourceName);
+
+    /**
+     * Returns the hash of the requisitioned content of a node as of the last
+     * time the node was persisted by an import, or null if it is not known.
+     *
+     * @see org.opennms.netmgt.provision.service.operations.RequisitionNodeDigest
+     */
+    String getRequisitionedNodeHash(Integer nodeId);
+
+    /**
+     * Records the hash of the requisitioned content of a node after an
+     * import has persisted it. A null hash forgets the node.
+     */
+    void setRequisitionedNodeHash(Integer nodeId, String hash);
+
     /**
      * Sets the parent of the node and adds the relationship to the path
      * element for the node. The foreignId is used to reference the node and
@@ -625,6 +625,7 @@ public class Provisioner implements SpringServiceDaemon {
     @EventHandler(uei = EventConstants.NODE_UPDATED_EVENT_UEI)
     public void handleNodeUpdated(Event e) {
     	LOG.debug("Node updated event received: {}", e);
+    	forgetRequisitionedNodeHash(e);
     	
         if (!Boolean.valueOf(System.getProperty(SCHEDULE_RESCAN_FOR_UPDATED_NODES, "true"))) {
         	LOG.debug("Rescanning updated nodes is disabled via property: {}", SCHEDULE_RESCAN_FOR_UPDATED_NODES);
@@ -649,6 +650,34 @@ public class Provisioner implements SpringServiceDaemon {
         
     }
 
+    /**
+     * <p>handleNodeChanged</p>
+     * The label, assets or categories of a node were changed.
+     *
+     * @param e a {@link org.opennms.netmgt.xml.event.Event} object.
+     */
+    @EventHandler(ueis = {
+        EventConstants.NODE_LABEL_CHANGED_EVENT_UEI,
+        EventConstants.ASSET_INFO_CHANGED_EVENT_UEI,
+        EventConstants.NODE_CATEGORY_MEMBERSHIP_CHANGED_EVENT_UEI
+    })
+    public void handleNodeChanged(Event e) {
+        forgetRequisitionedNodeHash(e);
+    }
+
+    /**
+     * A node that was changed by someone other than an import (the web UI,
+     * ReST) may no longer match its requisition, so the next import must
+     * not skip it as unchanged.
+     */
+    private void forgetRequisitionedNodeHash(Event e) {
+        if (NAME.equals(e.getSource()) || !e.hasNodeid()) {
+            return;
+        }
+        LOG.debug("Node {} was changed by {}, it will be updated by the next import", e.getNodeid(), e.getSource());
+        getProvisionService().setRequisitionedNodeHash(e.getNodeid().intValue(), null);
+    }
+
     /**
      * <p>handleNodeDeletedEvent</p>
      *
@@ -33,11 +33,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -66,6 +68,11 @@ public class ImportOperationsManager {
      */
     private final List<ImportOperation> m_inserts = new LinkedList<ImportOperation>();
     private final List<ImportOperation> m_updates = new LinkedList<ImportOperation>();
+
+    /** foreign ids of existing nodes that have not changed since their last import */
+    private final Set<String> m_unchanged = new HashSet<String>();
+
+    private String m_policiesHash;
     
     private final ProvisionService m_provisionService;
     private final Map<String, Integer> m_foreignIdToNodeMap;
@@ -106,6 +113,56 @@ public class ImportOperationsManager {
         return ret;
     }
 
+    /**
+     * Like {@link #foundNode(String, String, String, String)}, but skips a
+     * node that exists and whose requisitioned content has the same hash as
+     * when it was last persisted, unless the import rescans existing nodes.
+     *
+     * @param foreignId a {@link java.lang.String} object.
+     * @param nodeLabel a {@link java.lang.String} object.
+     * @param building a {@link java.lang.String} object.
+     * @param city a {@link java.lang.String} object.
+     * @param requisitionHash the hash of the requisitioned node, see {@link RequisitionNodeDigest}
+     * @return the operation for the node, or null if the node is unchanged
+     */
+    public SaveOrUpdateOperation foundNode(String foreignId, String nodeLabel, String building, String city, String requisitionHash) {
+        if (nodeExists(foreignId) && isUnchanged(m_foreignIdToNodeMap.get(foreignId), requisitionHash)) {
+            processForeignId(foreignId);
+            m_unchanged.add(foreignId);
+            return null;
+        }
+        final SaveOrUpdateOperation ret = foundNode(foreignId, nodeLabel, building, city);
+        ret.setRequisitionHash(requisitionHash);
+        return ret;
+    }
+
+    private boolean isUnchanged(final Integer nodeId, final String requisitionHash) {
+        // a rescan of existing nodes has been asked for, so every node is scanned
+        if (m_rescanExisting == null || Boolean.valueOf(m_rescanExisting)) {
+            return false;
+        }
+        return requisitionHash != null && requisitionHash.equals(m_provisionService.getRequisitionedNodeHash(nodeId));
+    }
+
+    /**
+     * <p>isUnchanged</p>
+     *
+     * @param foreignId a {@link java.lang.String} object.
+     * @return true if the node was skipped because it has not changed
+     */
+    public boolean isUnchanged(final String foreignId) {
+        return m_unchanged.contains(foreignId);
+    }
+
+    /**
+     * <p>getUnchangedCount</p>
+     *
+     * @return the number of nodes that were skipped because they have not changed
+     */
+    public int getUnchangedCount() {
+        return m_unchanged.size();
+    }
+
     private boolean nodeExists(String foreignId) {
         return m_foreignIdToNodeMap.containsKey(foreignId);
     }
@@ -309,9 +366,19 @@ public class ImportOperationsManager {
      * @param requisition a {@link org.opennms.netmgt.provision.persist.requisition.Requisition} object.
      */
     public void auditNodes(Requisition requisition) {
+        m_policiesHash = RequisitionNodeDigest.digestPolicies(m_provisionService.getForeignSource(getForeignSource()));
         requisition.visit(new RequisitionAccountant(this));
     }
 
+    /**
+     * <p>getPoliciesHash</p>
+     *
+     * @return the hash of the policies of the foreign source, as of the start of the audit
+     */
+    public String getPoliciesHash() {
+        return m_policiesHash;
+    }
+
     @SuppressWarnings("unused")
     private Runnable persister(final ImportOperation oper) {
         Runnable r = new Runnable() {
@@ -60,6 +60,7 @@ public class InsertOperation extends SaveOrUpdateOperation {
     @Override
     protected void doPersist() {
         getProvisionService().insertNode(getNode());
+        recordRequisitionHash();
     }
 
 }
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.provision.service.operations;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+
+import org.opennms.netmgt.provision.persist.foreignsource.ForeignSource;
+import org.opennms.netmgt.provision.persist.foreignsource.PluginConfig;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionAsset;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionCategory;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionInterface;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionMonitoredService;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
+
+/**
+ * Computes a hash over everything a requisition says about a node, so that
+ * an import can tell whether a node has changed since it was last persisted.
+ *
+ * Interfaces, services, categories and assets are hashed in the order they
+ * appear in the requisition, so reordering them counts as a change. The
+ * policies of the foreign source are part of the hash too, since they are
+ * applied when the node is persisted: changing them changes every node.
+ */
+public abstract class RequisitionNodeDigest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final byte NULL = 0;
+
+    private static final byte VALUE = 1;
+
+    private static final byte END = 2;
+
+    /**
+     * Computes a hash over the policies of a foreign source definition, to
+     * be passed to {@link #digest(String, String, RequisitionNode)}.
+     *
+     * @param foreignSource the foreign source definition, may be null
+     * @return a hex encoded hash of the policies, or null if there is no definition
+     */
+    public static String digestPolicies(final ForeignSource foreignSource) {
+        if (foreignSource == null) {
+            return null;
+        }
+        final MessageDigest md = getMessageDigest();
+        if (foreignSource.getPolicies() != null) {
+            for (final PluginConfig policy : foreignSource.getPolicies()) {
+                update(md, policy.getName());
+                update(md, policy.getPluginClass());
+                for (final Map.Entry<String, String> parameter : policy.getParameterMap().entrySet()) {
+                    update(md, parameter.getKey());
+                    update(md, parameter.getValue());
+                }
+                md.update(END);
+            }
+        }
+        md.update(END);
+        return toHex(md.digest());
+    }
+
+    /**
+     * <p>digest</p>
+     *
+     * @param foreignSource the foreign source of the requisition
+     * @param policiesHash the hash of the policies of the foreign source, see {@link #digestPolicies(ForeignSource)}
+     * @param node the requisitioned node
+     * @return a hex encoded hash of the node
+     */
+    public static String digest(final String foreignSource, final String policiesHash, final RequisitionNode node) {
+        final MessageDigest md = getMessageDigest();
+        update(md, foreignSource);
+        update(md, policiesHash);
+        update(md, node.getForeignId());
+        update(md, node.getNodeLabel());
+        update(md, node.getBuilding());
+        update(md, node.getCity());
+        update(md, node.getParentForeignSource());
+        update(md, node.getParentForeignId());
+        update(md, node.getParentNodeLabel());
+
+        for (final RequisitionInterface iface : node.getInterfaces()) {
+            update(md, iface.getIpAddr());
+            update(md, iface.getDescr());
+            update(md, iface.getSnmpPrimary() == null ? null : iface.getSnmpPrimary().getCode());
+            update(md, iface.getStatus() == null ? null : iface.getStatus().toString());
+            update(md, Boolean.toString(iface.isManaged()));
+            for (final RequisitionMonitoredService svc : iface.getMonitoredServices()) {
+                update(md, svc.getServiceName());
+                updateCategories(md, svc.getCategories());
+            }
+            md.update(END);
+            updateCategories(md, iface.getCategories());
+        }
+        md.update(END);
+
+        updateCategories(md, node.getCategories());
+
+        for (final RequisitionAsset asset : node.getAssets()) {
+            update(md, asset.getName());
+            update(md, asset.getValue());
+        }
+        md.update(END);
+
+        return toHex(md.digest());
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private static void updateCategories(final MessageDigest md, final List<RequisitionCategory> categories) {
+        for (final RequisitionCategory category : categories) {
+            update(md, category.getName());
+        }
+        md.update(END);
+    }
+
+    private static void update(final MessageDigest md, final String value) {
+        if (value == null) {
+            md.update(NULL);
+        } else {
+            md.update(VALUE);
+            final byte[] bytes = value.getBytes(UTF_8);
+            // prefix the length so adjacent values can not run together
+            md.update((byte)(bytes.length >>> 24));
+            md.update((byte)(bytes.length >>> 16));
+            md.update((byte)(bytes.length >>> 8));
+            md.update((byte)bytes.length);
+            md.update(bytes);
+        }
+    }
+
+    private static MessageDigest getMessageDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+}
@@ -54,6 +54,7 @@ public abstract class SaveOrUpdateOperation extends ImportOperation {
     
     private ScanManager m_scanManager;
     private String m_rescanExisting = Boolean.TRUE.toString();
+    private String m_requisitionHash;
     
     /**
      * <p>Constructor for SaveOrUpdateOperation.</p>
@@ -195,6 +196,27 @@ public abstract class SaveOrUpdateOperation extends ImportOperation {
         return m_rescanExisting;
     }
 
+    /**
+     * <p>setRequisitionHash</p>
+     *
+     * @param requisitionHash the hash of the requisitioned node, recorded
+     * once the node has been persisted
+     */
+    public void setRequisitionHash(final String requisitionHash) {
+        m_requisitionHash = requisitionHash;
+    }
+
+    /**
+     * Records the hash of the requisitioned node so that the next import can
+     * skip the node if it has not changed. Called after the node has been
+     * persisted.
+     */
+    protected void recordRequisitionHash() {
+        if (m_requisitionHash != null) {
+            getProvisionService().setRequisitionedNodeHash(m_node.getId(), m_requisitionHash);
+        }
+    }
+
     /**
      * <p>foundAsset</p>
      *
@@ -63,5 +63,6 @@ public class UpdateOperation extends SaveOrUpdateOperation {
 	@Override
     protected void doPersist() {
         getProvisionService().updateNode(getNode(), getRescanExisting());
+        recordRequisitionHash();
     }
 }
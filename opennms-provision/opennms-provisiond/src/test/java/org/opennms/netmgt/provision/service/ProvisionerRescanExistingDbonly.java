@@ -37,6 +37,15 @@ public class ProvisionerRescanExistingDbonly extends ProvisionerRescanExistingFa
         executeTest("dbonly");
     }
 
+    /**
+     * Node a is changed in the second import, since an unchanged node would
+     * be skipped and not send a node updated event.
+     */
+    @Override
+    protected String getSecondImportResource() {
+        return "classpath:/testNoRescanOnImport-part2-dbonly.xml";
+    }
+
     @Override
     protected void anticipateNoRescanSecondNodeEvents() {
         super.anticipateNoRescanSecondNodeEvents();
@@ -213,7 +213,7 @@ public class ProvisionerRescanExistingFalse implements InitializingBean {
         setupLogging("DEBUG");
         m_eventAnticipator.reset();
         anticipateNoRescanSecondNodeEvents();
-        importFromResource("classpath:/testNoRescanOnImport-part2.xml", rescanExistingFlag);
+        importFromResource(getSecondImportResource(), rescanExistingFlag);
         m_eventAnticipator.verifyAnticipated();
         setupLogging("INFO");
 
@@ -230,6 +230,10 @@ public class ProvisionerRescanExistingFalse implements InitializingBean {
         setupLogging("ERROR");
     }
 
+    protected String getSecondImportResource() {
+        return "classpath:/testNoRescanOnImport-part2.xml";
+    }
+
     protected void anticipateNoRescanSecondNodeEvents() {
         final String name = this.getClass().getSimpleName();
 
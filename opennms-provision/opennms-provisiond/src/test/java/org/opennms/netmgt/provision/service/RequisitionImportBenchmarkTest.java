@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.provision.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.model.OnmsCategory;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.OnmsServiceType;
+import org.opennms.netmgt.model.PrimaryType;
+import org.opennms.netmgt.provision.persist.RequisitionStreamReader;
+import org.opennms.netmgt.provision.persist.foreignsource.ForeignSource;
+import org.opennms.netmgt.provision.persist.foreignsource.PluginConfig;
+import org.opennms.netmgt.provision.persist.requisition.Requisition;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionAsset;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionCategory;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionInterface;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionMonitoredService;
+import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
+import org.opennms.netmgt.provision.service.operations.ImportOperation;
+import org.opennms.netmgt.provision.service.operations.ImportOperationsManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Audits a synthetic requisition against an in-memory node store: a first
+ * import that inserts every node, an unchanged import that skips every
+ * node, and an import with a few changes. The ignored
+ * testImportLargeRequisition() audits a large requisition and logs the time
+ * taken to read the requisition and to audit it, with and without the node
+ * hashes.
+ */
+public class RequisitionImportBenchmarkTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RequisitionImportBenchmarkTest.class);
+
+    private static final int NODES = 20000;
+
+    private static final String FOREIGN_SOURCE = "benchmark";
+
+    /** foreign id to node id of the persisted nodes */
+    private final Map<String, Integer> m_nodes = new HashMap<String, Integer>();
+
+    private final Map<Integer, String> m_hashes = new HashMap<Integer, String>();
+
+    private int m_inserted;
+
+    private int m_updated;
+
+    private int m_deleted;
+
+    private final ForeignSource m_foreignSource = new ForeignSource(FOREIGN_SOURCE);
+
+    private ProvisionService m_provisionService;
+
+    @Before
+    public void setUp() {
+        m_provisionService = (ProvisionService)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ProvisionService.class }, new InvocationHandler() {
+            private int m_nextId = 1;
+
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                final String name = method.getName();
+                if ("insertNode".equals(name)) {
+                    final OnmsNode node = (OnmsNode)args[0];
+                    node.setId(m_nextId++);
+                    m_nodes.put(node.getForeignId(), node.getId());
+                    m_inserted++;
+                } else if ("updateNode".equals(name)) {
+                    m_updated++;
+                } else if ("deleteNode".equals(name)) {
+                    m_hashes.remove(args[0]);
+                    m_nodes.values().remove(args[0]);
+                    m_deleted++;
+                } else if ("getForeignSource".equals(name)) {
+                    return m_foreignSource;
+                } else if ("getRequisitionedNodeHash".equals(name)) {
+                    return m_hashes.get(args[0]);
+                } else if ("setRequisitionedNodeHash".equals(name)) {
+                    m_hashes.put((Integer)args[0], (String)args[1]);
+                } else if ("createServiceTypeIfNecessary".equals(name)) {
+                    return new OnmsServiceType((String)args[0]);
+                } else if ("createCategoryIfNecessary".equals(name)) {
+                    return new OnmsCategory((String)args[0]);
+                } else if (method.getReturnType() == Boolean.TYPE) {
+                    return Boolean.FALSE;
+                }
+                return null;
+            }
+        });
+    }
+
+    private static RequisitionNode createNode(final int i) {
+        final RequisitionNode node = new RequisitionNode();
+        node.setForeignId(Integer.toString(i));
+        node.setNodeLabel("node" + i);
+        node.setBuilding("building" + (i % 50));
+        for (int j = 0; j < 2; j++) {
+            final RequisitionInterface iface = new RequisitionInterface();
+            iface.setIpAddr("10." + (i >> 8 & 0xff) + "." + (i & 0xff) + "." + (j + 1));
+            iface.setSnmpPrimary(j == 0 ? PrimaryType.PRIMARY : PrimaryType.NOT_ELIGIBLE);
+            iface.setStatus(1);
+            iface.setDescr("interface" + j);
+            iface.putMonitoredService(new RequisitionMonitoredService("ICMP"));
+            iface.putMonitoredService(new RequisitionMonitoredService("SNMP"));
+            node.putInterface(iface);
+        }
+        node.putCategory(new RequisitionCategory("Servers"));
+        node.putCategory(new RequisitionCategory("Rack" + (i % 20)));
+        node.putAsset(new RequisitionAsset("manufacturer", "Vendor" + (i % 7)));
+        node.putAsset(new RequisitionAsset("comment", "synthetic node " + i));
+        return node;
+    }
+
+    private ImportOperationsManager audit(final Requisition requisition, final String rescanExisting) {
+        final ImportOperationsManager opsMgr = new ImportOperationsManager(m_nodes, m_provisionService, rescanExisting);
+        opsMgr.setForeignSource(FOREIGN_SOURCE);
+        opsMgr.auditNodes(requisition);
+        return opsMgr;
+    }
+
+    private void persist(final ImportOperationsManager opsMgr) {
+        for (final ImportOperation operation : opsMgr.getOperations()) {
+            operation.persist();
+        }
+    }
+
+    private static String createXml(final int size) {
+        final Requisition requisition = new Requisition(FOREIGN_SOURCE);
+        final List<RequisitionNode> nodes = new ArrayList<RequisitionNode>(size);
+        for (int i = 0; i < size; i++) {
+            nodes.add(createNode(i));
+        }
+        requisition.setNodes(nodes);
+        return JaxbUtils.marshal(requisition);
+    }
+
+    private static Requisition read(final String xml) {
+        return RequisitionStreamReader.read(new ByteArrayInputStream(xml.getBytes(Charset.forName("UTF-8"))));
+    }
+
+    /**
+     * Checks the audits of a requisition of a normal size.
+     */
+    @Test
+    public void testImport() {
+        runImport(createXml(500));
+    }
+
+    /**
+     * Reports the time taken to read and audit a large requisition.
+     */
+    @Test
+    @Ignore("audits 20000 nodes")
+    public void testImportLargeRequisition() {
+        final String xml = createXml(NODES);
+
+        // warm up
+        JaxbUtils.unmarshal(Requisition.class, xml);
+        read(xml);
+
+        final long[] times = runImport(xml);
+        LOG.info("{} nodes: read jaxb {} ms, stream {} ms; audit first {} ms, unchanged {} ms (0 operations), 1% changed {} ms ({} operations), without hashes {} ms ({} operations)",
+                 NODES, times[0] / 1000000, times[1] / 1000000, times[2] / 1000000, times[3] / 1000000,
+                 times[4] / 1000000, 3 * (NODES / 100), times[5] / 1000000, NODES);
+    }
+
+    /**
+     * Reads the requisition and runs a series of audits against it,
+     * checking the operations of each.
+     *
+     * @return the times taken to read the requisition with JAXB and with the
+     *         stream reader, and by the first, unchanged, changed and
+     *         baseline audits in nanoseconds
+     */
+    private long[] runImport(final String xml) {
+        long start = System.nanoTime();
+        final Requisition jaxb = JaxbUtils.unmarshal(Requisition.class, xml);
+        final long jaxbRead = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        Requisition requisition = read(xml);
+        final long streamRead = System.nanoTime() - start;
+        assertEquals(jaxb, requisition);
+        final int size = requisition.getNodeCount();
+
+        start = System.nanoTime();
+        ImportOperationsManager opsMgr = audit(requisition, Boolean.TRUE.toString());
+        final long firstAudit = System.nanoTime() - start;
+        assertEquals(size, opsMgr.getInsertCount());
+        persist(opsMgr);
+        assertEquals(size, m_inserted);
+        assertEquals(size, m_hashes.size());
+
+        // the same requisition again, every node is skipped
+        requisition = read(xml);
+        start = System.nanoTime();
+        opsMgr = audit(requisition, "dbonly");
+        final long unchangedAudit = System.nanoTime() - start;
+        assertEquals(0, opsMgr.getOperationCount());
+        assertEquals(size, opsMgr.getUnchangedCount());
+
+        // a policy change has to be applied to every node, even unchanged ones
+        final PluginConfig policy = new PluginConfig("setCategory", "org.opennms.netmgt.provision.persist.policies.NodeCategorySettingPolicy");
+        policy.addParameter("category", "Policy");
+        m_foreignSource.addPolicy(policy);
+        opsMgr = audit(requisition, "dbonly");
+        assertEquals(size, opsMgr.getUpdateCount());
+        persist(opsMgr);
+        assertEquals(size, m_updated);
+        m_updated = 0;
+
+        // a few changes, additions and removals
+        final int changes = size / 100;
+        for (int i = 0; i < changes; i++) {
+            requisition.getNode(Integer.toString(i)).setCity("changed");
+            requisition.deleteNode(Integer.toString(size - 1 - i));
+            requisition.putNode(createNode(size + i));
+        }
+        start = System.nanoTime();
+        opsMgr = audit(requisition, "dbonly");
+        final long changedAudit = System.nanoTime() - start;
+        assertEquals(changes, opsMgr.getInsertCount());
+        assertEquals(changes, opsMgr.getUpdateCount());
+        assertEquals(changes, opsMgr.getDeleteCount());
+        assertEquals(size - 2 * changes, opsMgr.getUnchangedCount());
+        persist(opsMgr);
+        assertEquals(size + changes, m_inserted);
+        assertEquals(changes, m_updated);
+        assertEquals(changes, m_deleted);
+        assertEquals(size, m_nodes.size());
+
+        // a rescan of existing nodes still updates every node
+        opsMgr = audit(requisition, Boolean.TRUE.toString());
+        assertEquals(size, opsMgr.getUpdateCount());
+
+        // without hashes, every existing node has to be updated
+        m_hashes.clear();
+        start = System.nanoTime();
+        opsMgr = audit(requisition, "dbonly");
+        final long baselineAudit = System.nanoTime() - start;
+        assertEquals(size, opsMgr.getOperationCount());
+        assertEquals(0, opsMgr.getUnchangedCount());
+
+        return new long[] { jaxbRead, streamRead, firstAudit, unchangedAudit, changedAudit, baselineAudit };
+    }
+}
@@ -180,6 +180,18 @@ public class MultiOutputRrdStrategy implements RrdStrategy<List<Object>,List<Obj
         return m_strategies.get(m_fetchStrategyIndex).fetchLastValueInRange(rrdFile, ds, interval, range);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Aggregates are read from the graphing strategy, since they stand in
+     * for the PRINT values of a graph.
+     */
+    @Override
+    public double[] fetchAggregates(String rrdFile, String ds, String consolidationFunction,
+            long start, long end, String... aggregateFunctions) throws RrdException {
+        return m_strategies.get(m_graphStrategyIndex).fetchAggregates(rrdFile, ds, consolidationFunction, start, end, aggregateFunctions);
+    }
+
     /**
      * <p>getDefaultFileExtension</p>
      *
@@ -260,4 +272,12 @@ public class MultiOutputRrdStrategy implements RrdStrategy<List<Object>,List<Obj
             m_strategies.get(i).updateFile(rrd.get(i), owner, data);
         }
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public void updateFile(List<Object> rrd, String owner, long timestamp, double[] values) throws Exception {
+        for (int i = 0; i < rrd.size(); i++) {
+            m_strategies.get(i).updateFile(rrd.get(i), owner, timestamp, values);
+        }
+    }
 }
@@ -33,13 +33,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.opennms.core.logging.Logging;
 import org.slf4j.Logger;
@@ -74,6 +78,11 @@ import org.slf4j.LoggerFactory;
  * updates are put at the lowest priority and are only written when the highest
  * priority updates have been written
  *
+ * The queue is split into stripes by file name. Enqueuing only touches the
+ * lock-free queue of the file's stripe and each stripe is worked on by at most
+ * one write thread at a time, so the collectors and the write threads never
+ * wait on a common lock.
+ *
  * This implementation delegates all the actual writing to another RrdStrategy
  * implementation.
  *
@@ -82,6 +91,11 @@ import org.slf4j.LoggerFactory;
  * org.opennms.rrd.queuing.writethreads: (default 2) The number of rrd write
  * threads that process the queue
  *
+ * org.opennms.rrd.queuing.stripes: (default 0) The number of stripes the queue
+ * is split into. Each file belongs to one stripe and a stripe is worked on by
+ * one write thread at a time. Zero uses four stripes per write thread, at
+ * least 16.
+ *
  * org.opennms.rrd.queuing.queueCreates: (default false) indicates whether rrd
  * file creates should be queued or processed synchronously
  *
@@ -135,6 +149,8 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
     private static final int UPDATE = 0;
     private static final int CREATE = 1;
 
+    private static final double[] ZERO_VALUES = new double[] { 0.0 };
+
     private String m_category = "queued";
 
     private int m_writeThreads = 0;
@@ -357,41 +373,57 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         m_writeThreadExitDelay = writeThreadExitDelay;
     }
 
-    LinkedList<String> filesWithSignificantWork = new LinkedList<String>();
+    /**
+     * <p>getStripes</p>
+     *
+     * @return a int.
+     */
+    public int getStripes() {
+        return m_stripeCount;
+    }
 
-    LinkedList<String> filesWithInsignificantWork = new LinkedList<String>();
+    /**
+     * <p>setStripes</p>
+     *
+     * @param stripes the number of stripes the queue is split into, rounded
+     *            up to a power of two; zero picks a value based on the number
+     *            of write threads
+     */
+    public void setStripes(int stripes) {
+        m_stripeCount = stripes;
+    }
 
-    Map<String, LinkedList<Operation>> pendingFileOperations = new HashMap<String, LinkedList<Operation>>();
+    private int m_stripeCount = 0;
 
-    Map<Thread, String> fileAssignments = new HashMap<Thread, String>();
+    private volatile Stripe[] m_stripes;
 
-    Set<String> reservedFiles = new HashSet<String>();
+    private final AtomicInteger m_nextStripe = new AtomicInteger();
 
-    private long m_totalOperationsPending = 0;
+    private final AtomicLong m_totalOperationsPending = new AtomicLong();
 
-    private long m_enqueuedOperations = 0;
+    private final AtomicLong m_enqueuedOperations = new AtomicLong();
 
-    private long m_dequeuedOperations = 0;
+    private final AtomicLong m_dequeuedOperations = new AtomicLong();
 
-    private long m_significantOpsEnqueued = 0;
+    private final AtomicLong m_significantOpsEnqueued = new AtomicLong();
 
-    private long m_significantOpsDequeued = 0;
+    private final AtomicLong m_significantOpsDequeued = new AtomicLong();
 
-    private long m_significantOpsCompleted = 0;
+    private final AtomicLong m_significantOpsCompleted = new AtomicLong();
 
-    private long m_dequeuedItems = 0;
+    private final AtomicLong m_dequeuedItems = new AtomicLong();
 
-    private long m_createsCompleted = 0;
+    private final AtomicLong m_createsCompleted = new AtomicLong();
 
-    private long m_updatesCompleted = 0;
+    private final AtomicLong m_updatesCompleted = new AtomicLong();
 
-    private long m_errors = 0;
+    private final AtomicLong m_errors = new AtomicLong();
 
-    int threadsRunning = 0;
+    private final AtomicInteger m_threadsRunning = new AtomicInteger();
 
-    private long m_startTime = 0;
+    private volatile long m_startTime = 0;
 
-    private long m_promotionCount = 0;
+    private final AtomicLong m_promotionCount = new AtomicLong();
 
     long lastLap = System.currentTimeMillis();
 
@@ -483,7 +515,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             m_delegate.createFile(getData(), attributeMappings);
 
             // keep stats
-            setCreatesCompleted(getCreatesCompleted() + 1);
+            m_createsCompleted.incrementAndGet();
 
             // return the file
             return rrd;
@@ -522,8 +554,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             }
 
             // keep stats
-            setUpdatesCompleted(getUpdatesCompleted() + 1);
-            if (getUpdatesCompleted() % m_modulus == 0) {
+            if (m_updatesCompleted.incrementAndGet() % m_modulus == 0) {
                 logStats();
             }
             // return the open rrd for further processing
@@ -533,6 +564,45 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
     }
 
+    /**
+     * Represents an update to a rrd file whose values are already in datasource
+     * order and do not have to be parsed.
+     */
+    public class TypedUpdateOperation extends Operation {
+
+        private final long timeStamp;
+
+        TypedUpdateOperation(String fileName, long timeStamp, double[] values) {
+            super(fileName, UPDATE, values, true);
+            this.timeStamp = timeStamp;
+        }
+
+        @Override
+        Object process(Object rrd) throws Exception {
+            // open the file if we need to
+            if (rrd == null) rrd = m_delegate.openFile(getFileName());
+
+            final double[] values = (double[]) getData();
+
+            try {
+                // process the update
+                m_delegate.updateFile(rrd, "", timeStamp, values);
+            } catch (final Throwable e) {
+                final String error = String.format("Error processing update for file %s: %s", getFileName(), RrdUtils.formatUpdate(timeStamp, values));
+                m_log.debug(error, e);
+                throw new Exception(error, e);
+            }
+
+            // keep stats
+            if (m_updatesCompleted.incrementAndGet() % m_modulus == 0) {
+                logStats();
+            }
+            // return the open rrd for further processing
+            return rrd;
+        }
+
+    }
+
     /**
      * Represents an update whose value is 0. These operations can be merged
      * together and take up less memory
@@ -559,18 +629,16 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                 if (rrd == null)
                     rrd = m_delegate.openFile(getFileName());
 
-                String update = ts + ":0";
                 try {
                     // process the update
-                    m_delegate.updateFile(rrd, "", update);
+                    m_delegate.updateFile(rrd, "", ts, ZERO_VALUES);
                 } catch (Throwable e) {
-                    throw new Exception("Error processing update " + i + " for file " + getFileName() + ": " + update, e);
+                    throw new Exception("Error processing update " + i + " for file " + getFileName() + ": " + ts + ":0", e);
                 }
                 ts += getInterval();
 
                 // keep stats
-                setUpdatesCompleted(getUpdatesCompleted() + 1);
-                if (getUpdatesCompleted() % m_modulus == 0) {
+                if (m_updatesCompleted.incrementAndGet() % m_modulus == 0) {
                     logStats();
                 }
             }
@@ -676,43 +744,273 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         return new UpdateOperation(fileName, update);
     }
 
+    /**
+     * <p>makeUpdateOperation</p>
+     *
+     * @param fileName a {@link java.lang.String} object.
+     * @param owner a {@link java.lang.String} object.
+     * @param timeStamp the timestamp in seconds
+     * @param values the values in datasource order
+     * @return a {@link org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation} object.
+     */
+    Operation makeUpdateOperation(String fileName, String owner, long timeStamp, double[] values) {
+        if (values.length == 1 && values[0] == 0.0) {
+            if (timeStamp == 0)
+                m_log.debug("ZERO ERROR: created a zero update with ts=0 for file: {}, data: {}", fileName, values);
+
+            return new ZeroUpdateOperation(fileName, timeStamp);
+        }
+        return new TypedUpdateOperation(fileName, timeStamp, values);
+    }
+
     //
     // Queue management functions.
     //
-    // TODO: Put this all in a class of its own. This is really ugly.
+    // Files are hashed onto a fixed set of stripes. Any thread can add work to
+    // a stripe through its lock-free incoming queue, but only the write thread
+    // that currently owns a stripe looks at its per file lists. Because every
+    // operation for a file lands on the same stripe, owning the stripe also
+    // guarantees that no other thread is writing the file.
     //
 
     /**
-     * Add an operation to the queue.
-     *
-     * @param op a {@link org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation} object.
+     * A partition of the queue.
      */
-    private void addOperation(final Operation op) {
-        synchronized (this) {
-            if (queueIsFull()) {
-                m_log.error("RRD Data Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
+    class Stripe {
+        /** operations added by the collectors that have not been sorted by file yet */
+        final Queue<Operation> incoming = new ConcurrentLinkedQueue<Operation>();
+
+        /** files passed to promoteEnqueuedFiles */
+        final Queue<String> promotions = new ConcurrentLinkedQueue<String>();
+
+        final AtomicBoolean owned = new AtomicBoolean(false);
+
+        /** operations enqueued on this stripe that have not been taken by a write thread */
+        final AtomicLong pending = new AtomicLong();
+
+        /** the part of pending that is written before insignificant work */
+        final AtomicLong significantPending = new AtomicLong();
+
+        /** size of filesWithSignificantWork when the stripe was last released */
+        volatile int significantFiles = 0;
+
+        /** number of files with pending work when the stripe was last released */
+        volatile int files = 0;
+
+        // only accessed by the owning thread
+        final LinkedList<String> filesWithSignificantWork = new LinkedList<String>();
+
+        final LinkedList<String> filesWithInsignificantWork = new LinkedList<String>();
+
+        final Map<String, LinkedList<Operation>> pendingFileOperations = new HashMap<String, LinkedList<Operation>>();
+
+        long promotionCount = 0;
+
+        boolean hasWork() {
+            return pending.get() > 0;
+        }
+
+        boolean hasSignificantWork() {
+            return significantPending.get() > 0 || significantFiles > 0 || !promotions.isEmpty();
+        }
+
+        boolean tryAcquire() {
+            return owned.compareAndSet(false, true);
+        }
+
+        void release() {
+            significantFiles = filesWithSignificantWork.size();
+            files = pendingFileOperations.size();
+            owned.set(false);
+        }
+
+        /**
+         * Sort the operations added since the stripe was last owned into the
+         * per file lists.
+         */
+        void drain() {
+            Operation op;
+            while ((op = incoming.poll()) != null) {
+                storeAssignment(op);
             }
 
-            if (op.isSignificant() && sigQueueIsFull()) {
-                m_log.error("RRD Data Significant Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
+            String fileName;
+            LinkedList<String> promoted = null;
+            while ((fileName = promotions.poll()) != null) {
+                if (pendingFileOperations.containsKey(fileName)) {
+                    if (promoted == null) promoted = new LinkedList<String>();
+                    promoted.add(fileName);
+                }
+            }
+            if (promoted != null) {
+                filesWithSignificantWork.addAll(0, promoted);
+            }
+        }
+
+        /**
+         * Add the operation to the pending operations of its file and queue
+         * the file on the list matching the significance of its work.
+         */
+        private void storeAssignment(Operation op) {
+            // look and see if there a pending ops list for this file
+            LinkedList<Operation> pendingOperations = pendingFileOperations.get(op.getFileName());
+
+            // if not then we create an ops list for the file and add the file to
+            // the work items list
+            if (pendingOperations == null) {
+                pendingOperations = new LinkedList<Operation>();
+                pendingFileOperations.put(op.getFileName(), pendingOperations);
+
+                // add the file to the correct list based on what type of work we
+                // are adding.  (if we aren't prioritizing then every file is counted as
+                // signficant
+                if (!m_prioritizeSignificantUpdates || op.isSignificant())
+                    filesWithSignificantWork.addLast(op.getFileName());
+                else
+                    filesWithInsignificantWork.addLast(op.getFileName());
+            } else if (m_prioritizeSignificantUpdates && op.isSignificant() && hasOnlyInsignificant(pendingOperations)) {
+                // only do this when we are prioritizing as this bumps files from inSig
+                // up to insig
+                // promote the file to the significant list if this is the first
+                // significant
+                filesWithSignificantWork.addLast(op.getFileName());
             }
 
-            if (!op.isSignificant() && inSigQueueIsFull()) {
-                m_log.error("RRD Insignificant Data Queue is Full!! Discarding operation for file {}", op.getFileName());
+            promoteAgedFiles();
+
+            op.addToPendingList(pendingOperations);
+        }
+
+        /**
+         * Ensure that files with insignificant changes are getting promoted if
+         * necessary
+         */
+        private void promoteAgedFiles() {
+
+            // no need to do this is we aren't prioritizing
+            if (!m_prioritizeSignificantUpdates) return;
+
+            // the num seconds to update files is 0 then use unfair prioritization
+            if (m_maxInsigUpdateSeconds == 0 || filesWithInsignificantWork.isEmpty())
                 return;
+
+            // calculate the elapsed time we first queued updates
+            long now = System.currentTimeMillis();
+            long elapsedMillis = Math.max(now - getStartTime(), 1);
+
+            // calculate the milliseconds between promotions necessary to age
+            // insignificant files of this stripe into the significant queue
+            double millisPerPromotion = ((m_maxInsigUpdateSeconds * 1000.0) / filesWithInsignificantWork.size());
+
+            // calculate the number of millis since start until the next file needs
+            // to be promotoed
+            long nextPromotionMillis = (long) (millisPerPromotion * promotionCount);
+
+            // if more time has elapsed than the next promotion time then promote a
+            // file
+            if (elapsedMillis > nextPromotionMillis) {
+                String file = filesWithInsignificantWork.removeFirst();
+                filesWithSignificantWork.addFirst(file);
+                promotionCount++;
+                m_promotionCount.incrementAndGet();
+            }
+        }
+
+        /**
+         * Take the operations for the next file that should be worked on.
+         * Files that have already been handled through another entry in the
+         * lists are skipped.
+         */
+        LinkedList<Operation> takeNext() {
+            String fileName;
+            while ((fileName = selectNewAssignment()) != null) {
+                final LinkedList<Operation> ops = pendingFileOperations.remove(fileName);
+                if (ops != null) {
+                    return ops;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Return the name of the next file with available work
+         */
+        private String selectNewAssignment() {
+            if (!filesWithSignificantWork.isEmpty()) {
+                return filesWithSignificantWork.removeFirst();
+            }
+            if (!filesWithInsignificantWork.isEmpty()) {
+                return filesWithInsignificantWork.removeFirst();
+            }
+            return null;
+        }
+    }
+
+    private Stripe[] getStripeArray() {
+        Stripe[] stripes = m_stripes;
+        if (stripes == null) {
+            synchronized (this) {
+                stripes = m_stripes;
+                if (stripes == null) {
+                    int count = m_stripeCount > 0 ? m_stripeCount : Math.max(16, m_writeThreads * 4);
+                    count = Integer.highestOneBit(count - 1) << 1;
+                    stripes = new Stripe[Math.max(count, 1)];
+                    for (int i = 0; i < stripes.length; i++) {
+                        stripes[i] = new Stripe();
+                    }
+                    m_stripes = stripes;
+                }
             }
+        }
+        return stripes;
+    }
 
-            storeAssignment(op);
+    private Stripe getStripe(final String fileName) {
+        final Stripe[] stripes = getStripeArray();
+        final int h = fileName.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * Whether the operation counts towards the work that is written first.
+     */
+    private boolean isPrioritized(final Operation op) {
+        return !m_prioritizeSignificantUpdates || op.isSignificant();
+    }
 
-            setTotalOperationsPending(getTotalOperationsPending() + 1);
-            setEnqueuedOperations(getEnqueuedOperations() + 1);
-            if (op.isSignificant())
-                setSignificantOpsEnqueued(getSignificantOpsEnqueued() + 1);
-            notifyAll();
-            ensureThreadsStarted();
+    /**
+     * Add an operation to the queue.
+     *
+     * @param op a {@link org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation} object.
+     */
+    private void addOperation(final Operation op) {
+        if (queueIsFull()) {
+            m_log.error("RRD Data Queue is Full!! Discarding operation for file {}", op.getFileName());
+            return;
+        }
+
+        if (op.isSignificant() && sigQueueIsFull()) {
+            m_log.error("RRD Data Significant Queue is Full!! Discarding operation for file {}", op.getFileName());
+            return;
+        }
+
+        if (!op.isSignificant() && inSigQueueIsFull()) {
+            m_log.error("RRD Insignificant Data Queue is Full!! Discarding operation for file {}", op.getFileName());
+            return;
         }
+
+        final Stripe stripe = getStripe(op.getFileName());
+
+        m_totalOperationsPending.incrementAndGet();
+        m_enqueuedOperations.incrementAndGet();
+        if (op.isSignificant())
+            m_significantOpsEnqueued.incrementAndGet();
+        stripe.pending.incrementAndGet();
+        if (isPrioritized(op))
+            stripe.significantPending.incrementAndGet();
+
+        stripe.incoming.add(op);
+        ensureThreadsStarted();
     }
 
 
@@ -740,134 +1038,88 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
     /**
      * Ensure that we have threads started to process the queue.
      */
-    private synchronized void ensureThreadsStarted() {
-        if (threadsRunning < m_writeThreads) {
-            threadsRunning++;
-            new Thread(this, this.getClass().getSimpleName() + "-" + threadsRunning).start();
+    private void ensureThreadsStarted() {
+        int running;
+        while ((running = m_threadsRunning.get()) < m_writeThreads) {
+            if (m_threadsRunning.compareAndSet(running, running + 1)) {
+                new Thread(this, this.getClass().getSimpleName() + "-" + (running + 1)).start();
+                return;
+            }
         }
     }
 
     /**
-     * Get the operations for the next file that should be worked on.
+     * Reserve a stripe that has work to do. When prioritizing, stripes with
+     * significant work are tried first.
      *
-     * @return a linkedList of operations to be processed all for the same file.
+     * @return the reserved stripe or null if every stripe with work is
+     *         already being worked on
      */
-    private LinkedList<Operation> getNext() {
-        LinkedList<Operation> ops = null;
-        synchronized (this) {
-
-            // turn in our previous assignment
-            completeAssignment();
-
-            String newAssignment;
-            // wait until there is work to do
-            while ((newAssignment = selectNewAssignment()) == null) {
-                try {
-                    wait();
-                } catch (InterruptedException e) {
-                }
-            }
-
-            // initialize start time for stats
-            if (getStartTime() == 0)
-                setStartTime(System.currentTimeMillis());
-
-            // reserve the assignment and take work items
-            ops = takeAssignment(newAssignment);
-
-            // keep stats
-            if (ops != null) {
-                for(Operation op : ops) {
-                    setTotalOperationsPending(getTotalOperationsPending()-op.getCount());
-                    setDequeuedOperations(getDequeuedOperations() + op.getCount());
-                    if (op.isSignificant()) {
-                        setSignificantOpsDequeued(getSignificantOpsDequeued() + op.getCount());
-                    }
+    private Stripe acquireStripe() {
+        final Stripe[] stripes = getStripeArray();
+        final int start = m_nextStripe.getAndIncrement() & (stripes.length - 1);
+        if (m_prioritizeSignificantUpdates) {
+            for (int i = 0; i < stripes.length; i++) {
+                final Stripe stripe = stripes[(start + i) & (stripes.length - 1)];
+                if (stripe.hasSignificantWork() && stripe.tryAcquire()) {
+                    return stripe;
                 }
-                setDequeuedItems(getDequeuedItems() + 1);
             }
         }
-
-        return ops;
-
-    }
-
-    /**
-     * We need to track which files are being processed by which threads so that
-     * we don't try to process updates for the same file on more than one
-     * thread.
-     */
-    private synchronized void storeAssignment(Operation op) {
-        // look and see if there a pending ops list for this file
-        LinkedList<Operation> pendingOperations = pendingFileOperations.get(op.getFileName());
-
-        // if not then we create an ops list for the file and add the file to
-        // the work items list
-        if (pendingOperations == null) {
-            pendingOperations = new LinkedList<Operation>();
-            pendingFileOperations.put(op.getFileName(), pendingOperations);
-
-            // add the file to the correct list based on what type of work we
-            // are adding.  (if we aren't prioritizing then every file is counted as
-            // signficant
-            if (!m_prioritizeSignificantUpdates || op.isSignificant())
-                filesWithSignificantWork.addLast(op.getFileName());
-            else
-                filesWithInsignificantWork.addLast(op.getFileName());
-        } else if (m_prioritizeSignificantUpdates && op.isSignificant() && hasOnlyInsignificant(pendingOperations)) {
-            // only do this when we are prioritizing as this bumps files from inSig
-            // up to insig
-            // promote the file to the significant list if this is the first
-            // significant
-            filesWithSignificantWork.addLast(op.getFileName());
+        for (int i = 0; i < stripes.length; i++) {
+            final Stripe stripe = stripes[(start + i) & (stripes.length - 1)];
+            if (stripe.hasWork() && stripe.tryAcquire()) {
+                return stripe;
+            }
         }
-
-        promoteAgedFiles();
-
-        op.addToPendingList(pendingOperations);
+        return null;
     }
 
     /**
-     * Ensure that files with insignificant changes are getting promoted if
-     * necessary
+     * Get the operations for the next file of a reserved stripe that should be
+     * worked on.
      *
+     * @return a linkedList of operations to be processed all for the same file.
      */
-    private synchronized void promoteAgedFiles() {
-
-        // no need to do this is we aren't prioritizing
-        if (!m_prioritizeSignificantUpdates) return;
-
-        // the num seconds to update files is 0 then use unfair prioritization
-        if (m_maxInsigUpdateSeconds == 0 || filesWithInsignificantWork.isEmpty())
-            return;
-
-        // calculate the elapsed time we first queued updates
-        long now = System.currentTimeMillis();
-        long elapsedMillis = Math.max(now - getStartTime(), 1);
-
-        // calculate the milliseconds between promotions necessary to age
-        // insignificant files into
-        // the significant queue
-        double millisPerPromotion = ((m_maxInsigUpdateSeconds * 1000.0) / filesWithInsignificantWork.size());
-
-        // calculate the number of millis since start until the next file needs
-        // to be promotoed
-        long nextPromotionMillis = (long) (millisPerPromotion * getPromotionCount());
-
-        // if more time has elapsed than the next promotion time then promote a
-        // file
-        if (elapsedMillis > nextPromotionMillis) {
-            String file = filesWithInsignificantWork.removeFirst();
-            filesWithSignificantWork.addFirst(file);
-            setPromotionCount(getPromotionCount() + 1);
+    private LinkedList<Operation> getNext(final Stripe stripe) {
+        // initialize start time for stats
+        if (getStartTime() == 0)
+            setStartTime(System.currentTimeMillis());
+
+        stripe.drain();
+        final LinkedList<Operation> ops = stripe.takeNext();
+
+        // keep stats
+        if (ops != null) {
+            long count = 0;
+            long significant = 0;
+            long prioritized = 0;
+            for (Operation op : ops) {
+                count += op.getCount();
+                if (op.isSignificant()) {
+                    significant += op.getCount();
+                }
+                if (isPrioritized(op)) {
+                    prioritized += op.getCount();
+                }
+            }
+            stripe.pending.addAndGet(-count);
+            stripe.significantPending.addAndGet(-prioritized);
+            m_totalOperationsPending.addAndGet(-count);
+            m_dequeuedOperations.addAndGet(count);
+            m_significantOpsDequeued.addAndGet(significant);
+            m_dequeuedItems.incrementAndGet();
         }
 
+        return ops;
     }
 
     /** {@inheritDoc} */
     @Override
-    public synchronized void promoteEnqueuedFiles(Collection<String> rrdFiles) {
-        filesWithSignificantWork.addAll(0, rrdFiles);
+    public void promoteEnqueuedFiles(Collection<String> rrdFiles) {
+        for (final String rrdFile : rrdFiles) {
+            getStripe(rrdFile).promotions.add(rrdFile);
+        }
         m_delegate.promoteEnqueuedFiles(rrdFiles);
     }
 
@@ -885,51 +1137,25 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
     }
 
     /**
-     * register the file that the currentThread is be working on. This enables
-     * us to ensure that another thread doesn't try to work on operations for
-     * that file.  Note: this is not synchronized as it is called from getNext which
-     * is thread safe
+     * <p>getStripeCount</p>
+     *
+     * @return the number of stripes the queue is split into
      */
-    private LinkedList<Operation> takeAssignment(String newAssignment) {
-
-        // make the file as reserved by the current thread
-        fileAssignments.put(Thread.currentThread(), newAssignment);
-        reservedFiles.add(newAssignment);
-
-        // get the assignments work list and return it
-        return pendingFileOperations.remove(newAssignment);
+    public int getStripeCount() {
+        return getStripeArray().length;
     }
 
     /**
-     * Return the name of the next file with available work
+     * <p>getMaxStripeDepth</p>
+     *
+     * @return the number of operations pending on the busiest stripe
      */
-    private String selectNewAssignment() {
-        for (Iterator<String> it = filesWithSignificantWork.iterator(); it.hasNext();) {
-            String fn = it.next();
-            if (!reservedFiles.contains(fn)) {
-                it.remove();
-                return fn;
-            }
+    public long getMaxStripeDepth() {
+        long max = 0;
+        for (final Stripe stripe : getStripeArray()) {
+            max = Math.max(max, stripe.pending.get());
         }
-        for (Iterator<String> it = filesWithInsignificantWork.iterator(); it.hasNext();) {
-            String fn = it.next();
-            if (!reservedFiles.contains(fn)) {
-                it.remove();
-                return fn;
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Record that fact that the current thread has finished process operations
-     * for its current assignment
-     */
-    private synchronized void completeAssignment() {
-        // remove any existing reservation of the current thread
-        String previousAssignment = fileAssignments.remove(Thread.currentThread());
-        if (previousAssignment != null)
-            reservedFiles.remove(previousAssignment);
+        return max;
     }
 
     /**
@@ -1023,6 +1249,12 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         addOperation(makeUpdateOperation((String) rrdFile, owner, data));
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void updateFile(String rrdFile, String owner, long timestamp, double[] values) throws Exception {
+        addOperation(makeUpdateOperation(rrdFile, owner, timestamp, values));
+    }
+
     /** {@inheritDoc} */
     @Override
     public Double fetchLastValue(String rrdFile, String ds, int interval) throws NumberFormatException, RrdException {
@@ -1050,6 +1282,12 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         return m_delegate.fetchLastValueInRange(rrdFile, ds, interval, range);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public double[] fetchAggregates(String rrdFile, String ds, String consolidationFunction, long start, long end, String... aggregateFunctions) throws RrdException {
+        return m_delegate.fetchAggregates(rrdFile, ds, consolidationFunction, start, end, aggregateFunctions);
+    }
+
     /** {@inheritDoc} */
     @Override
     public InputStream createGraph(String command, File workDir) throws IOException, RrdException {
@@ -1088,10 +1326,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
             }
         } finally {
-            synchronized (this) {
-                threadsRunning--;
-                completeAssignment();
-            }
+            m_threadsRunning.decrementAndGet();
         }
     }
 
@@ -1100,13 +1335,28 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * strategy
      */
     private void processPendingOperations() {
+        final Stripe stripe = acquireStripe();
+        if (stripe == null) {
+            // every stripe with work is being written by another thread
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            return;
+        }
+
+        try {
+            processPendingOperations(stripe);
+        } finally {
+            stripe.release();
+        }
+    }
+
+    private void processPendingOperations(final Stripe stripe) {
         Logging.withPrefix(m_category, new Runnable() {
             @Override public void run() {
                 Object rrd = null;
                 String fileName = null;
 
                 try {
-                    final LinkedList<Operation> ops = getNext();
+                    final LinkedList<Operation> ops = getNext(stripe);
                     if (ops == null) {
                         return;
                     }
@@ -1114,7 +1364,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                     // while we are processing
                     for (final Operation op : ops) {
                         if (op.isSignificant()) {
-                            setSignificantOpsCompleted(getSignificantOpsCompleted() + 1);
+                            m_significantOpsCompleted.incrementAndGet();
                         }
 
                     }
@@ -1124,7 +1374,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                         rrd = op.process(rrd);
                     }
                 } catch (final Throwable e) {
-                    setErrors(getErrors() + 1);
+                    m_errors.incrementAndGet();
                     logLapTime("Error updating file " + fileName + ": " + e.getMessage());
                     m_log.debug("Error updating file {}: {}", fileName, e.getMessage(), e);
                 } finally {
@@ -1142,7 +1392,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             try {
                 m_delegate.closeFile(rrd);
             } catch (final Throwable e) {
-                setErrors(getErrors() + 1);
+                m_errors.incrementAndGet();
                 logLapTime("Error closing rrd " + rrd + ": " + e.getMessage());
                 m_log.debug("Error closing rrd {}: {}", rrd, e.getMessage(), e);
             }
@@ -1158,6 +1408,18 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
     public String getStats() {
         long now = System.currentTimeMillis();
 
+        final Stripe[] stripes = getStripeArray();
+        long significantFiles = 0;
+        long files = 0;
+        long busyStripes = 0;
+        long maxStripeDepth = 0;
+        for (final Stripe stripe : stripes) {
+            significantFiles += stripe.significantFiles;
+            files += stripe.files;
+            if (stripe.owned.get()) busyStripes++;
+            maxStripeDepth = Math.max(maxStripeDepth, stripe.pending.get());
+        }
+
         long currentElapsedMillis = Math.max(now - lastStatsTime, 1);
         long totalElapsedMillis = Math.max(now - getStartTime(), 1);
 
@@ -1188,8 +1450,11 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
         String stats = "\nQS:\t" + "totalOperationsPending=" + getTotalOperationsPending() +
                 ", significantOpsPending=" + (getSignificantOpsEnqueued() - getSignificantOpsCompleted()) +
-                ", filesWithSignificantWork=" + filesWithSignificantWork.size() +
-                ", filesWithInsignificantWork=" + filesWithInsignificantWork.size()
+                ", filesWithSignificantWork=" + significantFiles +
+                ", filesWithInsignificantWork=" + (files - significantFiles) +
+                ", stripes=" + stripes.length +
+                ", busyStripes=" + busyStripes +
+                ", maxStripeDepth=" + maxStripeDepth
 
                 + "\nQS:\t" + ", createsCompleted=" + getCreatesCompleted() +
                 ", updatesCompleted=" + getUpdatesCompleted() +
@@ -1304,7 +1569,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getTotalOperationsPending() {
-        return m_totalOperationsPending;
+        return m_totalOperationsPending.get();
     }
 
     /**
@@ -1313,7 +1578,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param totalOperationsPending a long.
      */
     public void setTotalOperationsPending(long totalOperationsPending) {
-        m_totalOperationsPending = totalOperationsPending;
+        m_totalOperationsPending.set(totalOperationsPending);
     }
 
     /**
@@ -1322,7 +1587,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getCreatesCompleted() {
-        return m_createsCompleted;
+        return m_createsCompleted.get();
     }
 
     /**
@@ -1331,7 +1596,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param createsCompleted a long.
      */
     public void setCreatesCompleted(long createsCompleted) {
-        m_createsCompleted = createsCompleted;
+        m_createsCompleted.set(createsCompleted);
     }
 
     /**
@@ -1340,7 +1605,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getUpdatesCompleted() {
-        return m_updatesCompleted;
+        return m_updatesCompleted.get();
     }
 
     /**
@@ -1349,7 +1614,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param updatesCompleted a long.
      */
     public void setUpdatesCompleted(long updatesCompleted) {
-        m_updatesCompleted = updatesCompleted;
+        m_updatesCompleted.set(updatesCompleted);
     }
 
     /**
@@ -1358,7 +1623,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getErrors() {
-        return m_errors;
+        return m_errors.get();
     }
 
     /**
@@ -1367,7 +1632,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param errors a long.
      */
     public void setErrors(long errors) {
-        m_errors = errors;
+        m_errors.set(errors);
     }
 
     /**
@@ -1376,7 +1641,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getPromotionCount() {
-        return m_promotionCount;
+        return m_promotionCount.get();
     }
 
     /**
@@ -1385,7 +1650,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param promotionCount a long.
      */
     public void setPromotionCount(long promotionCount) {
-        m_promotionCount = promotionCount;
+        m_promotionCount.set(promotionCount);
     }
 
     /**
@@ -1394,7 +1659,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getSignificantOpsEnqueued() {
-        return m_significantOpsEnqueued;
+        return m_significantOpsEnqueued.get();
     }
 
     /**
@@ -1403,7 +1668,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param significantOpsEnqueued a long.
      */
     public void setSignificantOpsEnqueued(long significantOpsEnqueued) {
-        m_significantOpsEnqueued = significantOpsEnqueued;
+        m_significantOpsEnqueued.set(significantOpsEnqueued);
     }
 
     /**
@@ -1412,7 +1677,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getSignificantOpsDequeued() {
-        return m_significantOpsDequeued;
+        return m_significantOpsDequeued.get();
     }
 
     /**
@@ -1421,7 +1686,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param significantOpsDequeued a long.
      */
     public void setSignificantOpsDequeued(long significantOpsDequeued) {
-        m_significantOpsDequeued = significantOpsDequeued;
+        m_significantOpsDequeued.set(significantOpsDequeued);
     }
 
     /**
@@ -1430,7 +1695,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getEnqueuedOperations() {
-        return m_enqueuedOperations;
+        return m_enqueuedOperations.get();
     }
 
     /**
@@ -1439,7 +1704,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param enqueuedOperations a long.
      */
     public void setEnqueuedOperations(long enqueuedOperations) {
-        m_enqueuedOperations = enqueuedOperations;
+        m_enqueuedOperations.set(enqueuedOperations);
     }
 
     /**
@@ -1448,7 +1713,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getDequeuedOperations() {
-        return m_dequeuedOperations;
+        return m_dequeuedOperations.get();
     }
 
     /**
@@ -1457,7 +1722,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param dequeuedOperations a long.
      */
     public void setDequeuedOperations(long dequeuedOperations) {
-        m_dequeuedOperations = dequeuedOperations;
+        m_dequeuedOperations.set(dequeuedOperations);
     }
 
     /**
@@ -1466,7 +1731,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getDequeuedItems() {
-        return m_dequeuedItems;
+        return m_dequeuedItems.get();
     }
 
     /**
@@ -1475,7 +1740,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param dequeuedItems a long.
      */
     public void setDequeuedItems(long dequeuedItems) {
-        m_dequeuedItems = dequeuedItems;
+        m_dequeuedItems.set(dequeuedItems);
     }
 
     /**
@@ -1484,7 +1749,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getSignificantOpsCompleted() {
-        return m_significantOpsCompleted;
+        return m_significantOpsCompleted.get();
     }
 
     /**
@@ -1493,7 +1758,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param significantOpsCompleted a long.
      */
     public void setSignificantOpsCompleted(long significantOpsCompleted) {
-        m_significantOpsCompleted = significantOpsCompleted;
+        m_significantOpsCompleted.set(significantOpsCompleted);
     }
 
     /**
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Consolidates fetched RRD values the way the PRINT statements of an
+ * rrdtool graph do. Unknown values are ignored, and a function over a range
+ * without any known value is NaN.
+ */
+public final class RrdAggregator {
+
+    /** The functions supported by {@link #aggregate(double[], long, String...)}. */
+    private static final String[] FUNCTIONS = new String[] { "AVERAGE", "MIN", "MAX", "FIRST", "LAST", "TOTAL" };
+
+    private RrdAggregator() {
+    }
+
+    /**
+     * Returns true if all of the functions can be computed from fetched values.
+     *
+     * @param functions the aggregate functions, for example AVERAGE or MAX
+     * @param stepKnown true if the step of the fetched values is known
+     * @return true if the functions are supported
+     */
+    public static boolean isSupported(final boolean stepKnown, final String... functions) {
+        for (final String function : functions) {
+            final String name = function == null ? "" : function.toUpperCase(Locale.ENGLISH);
+            boolean found = false;
+            for (final String supported : FUNCTIONS) {
+                if (supported.equals(name)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found || (!stepKnown && "TOTAL".equals(name))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the aggregate functions over the fetched rows that overlap
+     * the range. Each row covers the step that ends at its timestamp, so
+     * the rows that end at or before the start of the range and the rows
+     * that begin at or after its end are left out. Fetching an archive
+     * returns such boundary rows, and every strategy has to leave them out
+     * the same way to return the same values for the same range.
+     *
+     * @param timestamps the timestamps of the fetched rows in seconds, oldest first
+     * @param values the fetched values, one per row
+     * @param step the step of the rows in seconds
+     * @param start the start of the range in seconds
+     * @param end the end of the range in seconds
+     * @param functions the aggregate functions, see {@link #isSupported(boolean, String...)}
+     * @return one value per function
+     */
+    public static double[] aggregate(final long[] timestamps, final double[] values, final long step, final long start, final long end, final String... functions) {
+        int from = 0;
+        while (from < timestamps.length && timestamps[from] <= start) {
+            from++;
+        }
+        int to = timestamps.length;
+        while (to > from && timestamps[to - 1] - step >= end) {
+            to--;
+        }
+        return aggregate(Arrays.copyOfRange(values, from, to), step, functions);
+    }
+
+    /**
+     * Computes the aggregate functions in a single pass over the values.
+     *
+     * @param values the fetched values, oldest first
+     * @param step the step of the values in seconds, used for TOTAL
+     * @param functions the aggregate functions, see {@link #isSupported(boolean, String...)}
+     * @return one value per function
+     */
+    public static double[] aggregate(final double[] values, final long step, final String... functions) {
+        double sum = 0.0;
+        double min = Double.NaN;
+        double max = Double.NaN;
+        double first = Double.NaN;
+        double last = Double.NaN;
+        int count = 0;
+        for (final double value : values) {
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            if (count == 0) {
+                first = value;
+                min = value;
+                max = value;
+            } else {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            last = value;
+            sum += value;
+            count++;
+        }
+
+        final double[] results = new double[functions.length];
+        for (int i = 0; i < functions.length; i++) {
+            final String function = functions[i].toUpperCase(Locale.ENGLISH);
+            if (count == 0) {
+                results[i] = Double.NaN;
+            } else if ("AVERAGE".equals(function)) {
+                results[i] = sum / count;
+            } else if ("MIN".equals(function)) {
+                results[i] = min;
+            } else if ("MAX".equals(function)) {
+                results[i] = max;
+            } else if ("FIRST".equals(function)) {
+                results[i] = first;
+            } else if ("LAST".equals(function)) {
+                results[i] = last;
+            } else if ("TOTAL".equals(function)) {
+                results[i] = sum * step;
+            } else {
+                throw new IllegalArgumentException("Unsupported aggregate function: " + functions[i]);
+            }
+        }
+        return results;
+    }
+}
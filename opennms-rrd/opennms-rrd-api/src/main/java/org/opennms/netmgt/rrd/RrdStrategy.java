@@ -130,6 +130,27 @@ public interface RrdStrategy<D extends Object,F extends Object> {
      */
     public void updateFile(F rrd, String owner, String data) throws Exception;
 
+    /**
+     * Updates the supplied round robin database with the given values
+     * without formatting them into a string first.
+     *
+     * @param rrd
+     *            an rrd object created using openFile
+     * @param owner
+     *            the owner of the rrd
+     * @param timestamp
+     *            the timestamp of the update in seconds since the epoch
+     * @param values
+     *            the values to store, indexed by datasource in the order the
+     *            datasources were declared when the file was created.
+     *            <code>Double.NaN</code> stores an unknown value. The array
+     *            may be retained by the strategy and must not be modified by
+     *            the caller afterwards.
+     * @throws java.lang.Exception
+     *             if an error occurs updating the file
+     */
+    public void updateFile(F rrd, String owner, long timestamp, double[] values) throws Exception;
+
     /**
      * This closes the supplied round robin database
      *
@@ -200,6 +221,29 @@ public interface RrdStrategy<D extends Object,F extends Object> {
      */
     public Double fetchLastValueInRange(String rrdFile, String ds, int interval, int range) throws NumberFormatException, RrdException;
     
+    /**
+     * Consolidates the values of a data source over a time range, like the
+     * PRINT statements of an rrdtool graph, but without rendering a graph.
+     *
+     * @param rrdFile
+     *            a name the represents a round robin database
+     * @param ds
+     *            a name the represents a data source to be used
+     * @param consolidationFunction
+     *            the consolidation function of the archive to read
+     * @param start
+     *            the start of the range in seconds
+     * @param end
+     *            the end of the range in seconds
+     * @param aggregateFunctions
+     *            AVERAGE, MIN, MAX, FIRST, LAST or TOTAL
+     * @return one value per aggregate function, NaN if there is no data in
+     *         the range, or null if the values can not be fetched directly
+     *         and a graph has to be rendered instead
+     * @throws org.opennms.netmgt.rrd.RrdException if any.
+     */
+    public double[] fetchAggregates(String rrdFile, String ds, String consolidationFunction, long start, long end, String... aggregateFunctions) throws RrdException;
+
     /**
      * Creates an InputStream representing the bytes of a graph created from
      * round robin data. It accepts an rrdtool graph command. The underlying
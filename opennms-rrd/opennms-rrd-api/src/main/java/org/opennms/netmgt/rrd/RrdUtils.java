@@ -31,6 +31,8 @@ package org.opennms.netmgt.rrd;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -74,6 +76,9 @@ public abstract class RrdUtils {
 
     private static RrdStrategy<?, ?> m_rrdStrategy = null;
 
+    /** The largest value of an unsigned 64-bit counter, 2^64. */
+    private static final double MAX_COUNTER64 = 18446744073709551616.0;
+
     /**
      * Use the {@link ClassPathXmlApplicationContext#ClassPathXmlApplicationContext(String[], Class)}
      * constructor so that we make sure to load the XML resources from the same classloader as the
@@ -353,6 +358,116 @@ public abstract class RrdUtils {
         LOG.debug("updateRRD: RRD update command completed.");
     }
 
+    /**
+     * Add datapoints to a round robin database without converting the values
+     * to a string.
+     *
+     * @param owner the owner of the file. This is used in log messages
+     * @param repositoryDir the directory the file resides in
+     * @param rrdName the name for the rrd file.
+     * @param timestamp the timestamp in millis to use for the rrd update (this
+     * gets rounded to the nearest second)
+     * @param values the values for the datasources of this rrd, in datasource
+     * order; <code>Double.NaN</code> for unknown values
+     * @throws org.opennms.netmgt.rrd.RrdException if any.
+     */
+    public static void updateRRD(String owner, String repositoryDir, String rrdName, long timestamp, double[] values) throws RrdException {
+        // Issue the RRD update
+        String rrdFile = repositoryDir + File.separator + rrdName + getExtension();
+        long time = (timestamp + 500L) / 1000L;
+
+        LOG.info("updateRRD: updating RRD file {} at {} with values {}", rrdFile, time, values);
+
+        Object rrd = null;
+        try {
+            rrd = getStrategy().openFile(rrdFile);
+            getStrategy().updateFile(rrd, owner, time, values);
+        } catch (Throwable e) {
+            final String updateVal = formatUpdate(time, values);
+            LOG.error("updateRRD: Error updating RRD file {} with values '{}'", rrdFile, updateVal, e);
+            throw new org.opennms.netmgt.rrd.RrdException("Error updating RRD file " + rrdFile + " with values '" + updateVal + "': " + e, e);
+        } finally {
+            try {
+                if (rrd != null) {
+                    getStrategy().closeFile(rrd);
+                }
+            } catch (Throwable e) {
+                LOG.error("updateRRD: Exception closing RRD file {}", rrdFile, e);
+                throw new org.opennms.netmgt.rrd.RrdException("Exception closing RRD file " + rrdFile + ": " + e, e);
+            }
+        }
+
+        LOG.debug("updateRRD: RRD update command completed.");
+    }
+
+    /**
+     * Formats a typed update as the <code>timestamp:value[:value...]</code>
+     * string accepted by {@link RrdStrategy#updateFile(Object, String, String)}.
+     * Unknown values are written as <code>U</code> and integral values are
+     * written without a fraction since rrdtool only accepts integers for
+     * COUNTER datasources.
+     *
+     * @param timestamp the timestamp in seconds
+     * @param values the values in datasource order
+     * @return the update string
+     */
+    public static String formatUpdate(long timestamp, double[] values) {
+        final StringBuilder sb = new StringBuilder(16 + values.length * 12);
+        sb.append(timestamp);
+        for (final double value : values) {
+            sb.append(':');
+            if (Double.isNaN(value)) {
+                sb.append('U');
+            } else if (value != Math.rint(value) || Math.abs(value) >= MAX_COUNTER64) {
+                sb.append(value);
+            } else if (Math.abs(value) < Long.MAX_VALUE) {
+                sb.append((long) value);
+            } else {
+                sb.append(new BigDecimal(value).toPlainString());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Tells whether the value is an integer that a double can not hold
+     * exactly, such as a Counter64 value above 2^53. Such values have to be
+     * passed to the strategy as strings to keep every digit.
+     *
+     * @param value the value to check
+     * @return true if the value would lose precision as a double
+     */
+    public static boolean isInexactInteger(String value) {
+        // 2^53 has 16 digits, anything shorter fits
+        if (value == null || value.length() < 16) {
+            return false;
+        }
+        for (int i = value.charAt(0) == '-' ? 1 : 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return new BigInteger(value).abs().bitLength() > 53;
+    }
+
+    /**
+     * Parses a single datasource value. Values that are null or not numbers,
+     * such as <code>U</code>, are returned as <code>Double.NaN</code>.
+     *
+     * @param value the value to parse
+     * @return the value or <code>Double.NaN</code>
+     */
+    public static double parseValue(String value) {
+        if (value == null || "U".equals(value)) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
     /**
      * This method issues an round robin fetch command to retrieve the last
      * value of the datasource stored in the specified RRD file. The retrieved
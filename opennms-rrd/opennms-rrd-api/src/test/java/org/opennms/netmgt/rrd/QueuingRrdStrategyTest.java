@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueuingRrdStrategyTest {
+
+    private static final int PRODUCERS = 8;
+    private static final int FILES = 1000;
+    private static final int ROUNDS = 20;
+
+    /**
+     * Records the updates written by the queue and counts files that are
+     * written by more than one thread at a time or out of order.
+     */
+    private static class RecordingDelegate implements InvocationHandler {
+        private final ConcurrentMap<String, AtomicInteger> m_openCount = new ConcurrentHashMap<String, AtomicInteger>();
+        private final ConcurrentMap<String, Long> m_lastTimestamp = new ConcurrentHashMap<String, Long>();
+        private final AtomicLong m_updates = new AtomicLong();
+        private final AtomicInteger m_violations = new AtomicInteger();
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            if ("openFile".equals(method.getName())) {
+                final String fileName = (String) args[0];
+                m_openCount.putIfAbsent(fileName, new AtomicInteger());
+                if (m_openCount.get(fileName).incrementAndGet() != 1) {
+                    m_violations.incrementAndGet();
+                }
+                return fileName;
+            } else if ("closeFile".equals(method.getName())) {
+                m_openCount.get(args[0]).decrementAndGet();
+            } else if ("updateFile".equals(method.getName())) {
+                final long timestamp = args.length == 4 ? (Long) args[2] : Long.parseLong(((String) args[2]).split(":")[0]);
+                final Long previous = m_lastTimestamp.put((String) args[0], timestamp);
+                if (previous != null && previous >= timestamp) {
+                    m_violations.incrementAndGet();
+                }
+                m_updates.incrementAndGet();
+            }
+            return null;
+        }
+    }
+
+    private RecordingDelegate m_delegate;
+
+    private QueuingRrdStrategy m_strategy;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        m_delegate = new RecordingDelegate();
+        m_strategy = new QueuingRrdStrategy((RrdStrategy<Object, Object>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { RrdStrategy.class }, m_delegate));
+        m_strategy.setWriteThreads(4);
+        m_strategy.setModulus(10000);
+        m_strategy.setWriteThreadSleepTime(5);
+        m_strategy.setWriteThreadExitDelay(1000);
+    }
+
+    private void enqueueConcurrently() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(PRODUCERS);
+        try {
+            final List<Callable<Void>> producers = new ArrayList<Callable<Void>>(PRODUCERS);
+            for (int i = 0; i < PRODUCERS; i++) {
+                final int first = i;
+                producers.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (long round = 1; round <= ROUNDS; round++) {
+                            for (int file = first; file < FILES; file += PRODUCERS) {
+                                if (file % 3 == 0) {
+                                    m_strategy.updateFile("file" + file, "test", round + ":0");
+                                } else {
+                                    m_strategy.updateFile("file" + file, "test", round, new double[] { round, file });
+                                }
+                            }
+                        }
+                        return null;
+                    }
+                });
+            }
+            for (final Future<Void> future : executor.invokeAll(producers)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        // the write threads finish a file after taking it off the queue
+        final long deadline = System.currentTimeMillis() + 30000;
+        while (m_delegate.m_updates.get() < FILES * ROUNDS && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testAllUpdatesWrittenInOrder() throws Exception {
+        enqueueConcurrently();
+
+        assertEquals(0, m_strategy.getTotalOperationsPending());
+        assertEquals(FILES * ROUNDS, m_strategy.getEnqueuedOperations());
+        assertEquals(FILES * ROUNDS, m_strategy.getDequeuedOperations());
+        assertEquals(0, m_strategy.getMaxStripeDepth());
+        assertEquals(FILES * ROUNDS, m_delegate.m_updates.get());
+        assertEquals(0, m_delegate.m_violations.get());
+    }
+
+    @Test
+    public void testAllUpdatesWrittenWhenPrioritizing() throws Exception {
+        m_strategy.setPrioritizeSignificantUpdates(true);
+        m_strategy.setMaxInsigUpdateSeconds(1);
+        enqueueConcurrently();
+
+        assertEquals(0, m_strategy.getTotalOperationsPending());
+        // every third file only gets zero, insignificant, updates
+        assertEquals((FILES - (FILES + 2) / 3) * ROUNDS, m_strategy.getSignificantOpsEnqueued());
+        assertEquals(m_strategy.getSignificantOpsEnqueued(), m_strategy.getSignificantOpsDequeued());
+        assertEquals(FILES * ROUNDS, m_delegate.m_updates.get());
+        assertEquals(0, m_delegate.m_violations.get());
+    }
+
+    @Test
+    public void testStripeCountRoundedToPowerOfTwo() {
+        m_strategy.setStripes(20);
+        assertEquals(32, m_strategy.getStripeCount());
+    }
+}
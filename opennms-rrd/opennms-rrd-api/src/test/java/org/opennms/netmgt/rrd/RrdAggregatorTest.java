@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RrdAggregatorTest {
+
+    private static final String[] FUNCTIONS = new String[] { "AVERAGE", "MIN", "MAX", "FIRST", "LAST", "TOTAL" };
+
+    @Test
+    public void testIsSupported() {
+        assertTrue(RrdAggregator.isSupported(true, FUNCTIONS));
+        assertTrue(RrdAggregator.isSupported(false, "average", "max"));
+        assertFalse(RrdAggregator.isSupported(false, "TOTAL"));
+        assertFalse(RrdAggregator.isSupported(true, "AVERAGE", "95"));
+    }
+
+    @Test
+    public void testAggregate() {
+        final double[] values = new double[] { Double.NaN, 4.0, 1.0, Double.NaN, 7.0 };
+        assertArrayEquals(new double[] { 4.0, 1.0, 7.0, 4.0, 7.0, 3600.0 }, RrdAggregator.aggregate(values, 300, FUNCTIONS), 0.0);
+    }
+
+    @Test
+    public void testAggregateWithoutValues() {
+        final double[] results = RrdAggregator.aggregate(new double[] { Double.NaN, Double.NaN }, 300, FUNCTIONS);
+        for (final double result : results) {
+            assertTrue(Double.isNaN(result));
+        }
+    }
+
+    @Test
+    public void testAggregateLeavesOutBoundaryRows() {
+        // rows cover (600,900], (900,1200], (1200,1500], (1500,1800] and (1800,2100]
+        final long[] timestamps = new long[] { 900, 1200, 1500, 1800, 2100 };
+        final double[] values = new double[] { 100.0, 1.0, 2.0, 3.0, 100.0 };
+
+        // the range (900,1800] overlaps the three rows in the middle only
+        assertArrayEquals(new double[] { 2.0, 1.0, 3.0, 1.0, 3.0, 1800.0 }, RrdAggregator.aggregate(timestamps, values, 300, 900, 1800, FUNCTIONS), 0.0);
+
+        // a range that is not aligned to the step includes the rows it overlaps partially
+        assertArrayEquals(new double[] { 1.0, 2.0 }, RrdAggregator.aggregate(timestamps, values, 300, 1000, 1300, "FIRST", "LAST"), 0.0);
+
+        // a range within a single row only includes that row
+        assertEquals(2.0, RrdAggregator.aggregate(timestamps, values, 300, 1250, 1300, "AVERAGE")[0], 0.0);
+
+        // nothing overlaps a range after the last row
+        assertTrue(Double.isNaN(RrdAggregator.aggregate(timestamps, values, 300, 2100, 2400, "AVERAGE")[0]));
+    }
+}
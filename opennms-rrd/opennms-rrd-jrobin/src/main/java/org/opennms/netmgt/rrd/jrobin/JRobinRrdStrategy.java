@@ -52,6 +52,7 @@ import org.jrobin.data.DataProcessor;
 import org.jrobin.data.Plottable;
 import org.jrobin.graph.RrdGraph;
 import org.jrobin.graph.RrdGraphDef;
+import org.opennms.netmgt.rrd.RrdAggregator;
 import org.opennms.netmgt.rrd.RrdDataSource;
 import org.opennms.netmgt.rrd.RrdGraphDetails;
 import org.opennms.netmgt.rrd.RrdStrategy;
@@ -73,6 +74,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     private static final Logger LOG = LoggerFactory.getLogger(JRobinRrdStrategy.class);
     private static final String BACKEND_FACTORY_PROPERTY = "org.jrobin.core.RrdBackendFactory";
     private static final String DEFAULT_BACKEND_FACTORY = "FILE";
+    private static final String OPEN_FILE_CACHE_SIZE_PROPERTY = "org.opennms.rrd.jrobin.openFileCacheSize";
 
     /*
      * Ensure that we only initialize certain things *once* per
@@ -82,6 +84,12 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
 
     private Properties m_configurationProperties;
 
+    /**
+     * Open files shared between updates and fetches, null when the
+     * cache is disabled.
+     */
+    private volatile RrdDbCache m_cache;
+
     /**
      * An extremely simple Plottable for holding static datasources that
      * can't be represented with an SDEF -- currently used only for PERCENT
@@ -138,17 +146,40 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
                 LOG.error("Could not set default JRobin RRD factory", e);
             }
         }
+
+        int cacheSize = 0;
+        if (m_configurationProperties != null) {
+            final String value = m_configurationProperties.getProperty(OPEN_FILE_CACHE_SIZE_PROPERTY);
+            if (value != null && !"".equals(value.trim())) {
+                try {
+                    cacheSize = Integer.parseInt(value.trim());
+                } catch (final NumberFormatException e) {
+                    LOG.warn("Invalid value for {}: {}, disabling the open file cache", OPEN_FILE_CACHE_SIZE_PROPERTY, value);
+                }
+            }
+        }
+        final RrdDbCache previous = m_cache;
+        m_cache = cacheSize > 0 ? new RrdDbCache(cacheSize) : null;
+        if (previous != null) {
+            previous.clear();
+        }
     }
 
     /**
-     * Closes the JRobin RrdDb.
+     * Closes the JRobin RrdDb, or returns it to the open file cache it was
+     * acquired from, which may have been replaced in the meantime.
      *
      * @param rrdFile a {@link org.jrobin.core.RrdDb} object.
      * @throws java.lang.Exception if any.
      */
     @Override
     public void closeFile(final RrdDb rrdFile) throws Exception {
-        rrdFile.close();
+        final RrdDbCache cache = RrdDbCache.getOwner(rrdFile);
+        if (cache == null) {
+            rrdFile.close();
+        } else {
+            cache.release(rrdFile);
+        }
     }
 
     /** {@inheritDoc} */
@@ -203,6 +234,12 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         }
         LOG.info("createRRD: creating RRD file {}", rrdDef.getPath());
 
+        final RrdDbCache cache = m_cache;
+        if (cache != null) {
+            // don't hand out a handle to the file being replaced
+            cache.invalidate(rrdDef.getPath());
+        }
+
         RrdDb rrd = new RrdDb(rrdDef);
         rrd.close();
 
@@ -219,11 +256,13 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     /**
      * {@inheritDoc}
      *
-     * Opens the JRobin RrdDb by name and returns it.
+     * Opens the JRobin RrdDb by name and returns it. When the open file
+     * cache is enabled the handle may be shared with other callers.
      */
     @Override
     public RrdDb openFile(final String fileName) throws Exception {
-        return new RrdDb(fileName);
+        final RrdDbCache cache = m_cache;
+        return cache == null ? new RrdDb(fileName) : cache.acquire(fileName);
     }
 
     /**
@@ -237,6 +276,18 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         sample.setAndUpdate(data);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The values are copied straight into the JRobin sample.
+     */
+    @Override
+    public void updateFile(final RrdDb rrdFile, final String owner, final long timestamp, final double[] values) throws Exception {
+        Sample sample = rrdFile.createSample(timestamp);
+        sample.setValues(values);
+        sample.update();
+    }
+
     /**
      * Initialized the RrdDb to use the FILE factory because the NIO factory
      * uses too much memory for our implementation.
@@ -262,11 +313,12 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     @Override
     public Double fetchLastValue(final String fileName, final String ds, final String consolidationFunction, final int interval)
             throws org.opennms.netmgt.rrd.RrdException {
+        final RrdDbCache cache = m_cache;
         RrdDb rrd = null;
         try {
             long now = System.currentTimeMillis();
             long collectTime = (now - (now % interval)) / 1000L;
-            rrd = new RrdDb(fileName, true);
+            rrd = cache == null ? new RrdDb(fileName, true) : cache.acquire(fileName);
             FetchData data = rrd.createFetchRequest(consolidationFunction, collectTime, collectTime).fetchData();
             LOG.debug(data.toString());
             double[] vals = data.getValues(ds);
@@ -279,7 +331,9 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         } catch (RrdException e) {
             throw new org.opennms.netmgt.rrd.RrdException("Exception occurred fetching data from " + fileName, e);
         } finally {
-            if (rrd != null) {
+            if (rrd != null && cache != null) {
+                cache.release(rrd);
+            } else if (rrd != null) {
                 try {
                     rrd.close();
                 } catch (IOException e) {
@@ -292,9 +346,10 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     /** {@inheritDoc} */
     @Override
     public Double fetchLastValueInRange(final String fileName, final String ds, final int interval, final int range) throws NumberFormatException, org.opennms.netmgt.rrd.RrdException {
+        final RrdDbCache cache = m_cache;
         RrdDb rrd = null;
         try {
-        	rrd = new RrdDb(fileName, true);
+        	rrd = cache == null ? new RrdDb(fileName, true) : cache.acquire(fileName);
          	long now = System.currentTimeMillis();
             long latestUpdateTime = (now - (now % interval)) / 1000L;
             long earliestUpdateTime = ((now - (now % interval)) - range) / 1000L;
@@ -321,7 +376,43 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         } catch (RrdException e) {
             throw new org.opennms.netmgt.rrd.RrdException("Exception occurred fetching data from " + fileName, e);
         } finally {
-            if (rrd != null) {
+            if (rrd != null && cache != null) {
+                cache.release(rrd);
+            } else if (rrd != null) {
+                try {
+                    rrd.close();
+                } catch (IOException e) {
+                    LOG.error("Failed to close rrd file: {}", fileName, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Reads the archive directly and consolidates the rows that overlap the
+     * range.
+     */
+    @Override
+    public double[] fetchAggregates(final String fileName, final String ds, final String consolidationFunction, final long start, final long end, final String... aggregateFunctions) throws org.opennms.netmgt.rrd.RrdException {
+        if (!RrdAggregator.isSupported(true, aggregateFunctions)) {
+            return null;
+        }
+        final RrdDbCache cache = m_cache;
+        RrdDb rrd = null;
+        try {
+            rrd = cache == null ? new RrdDb(fileName, true) : cache.acquire(fileName);
+            final FetchData data = rrd.createFetchRequest(consolidationFunction, start, end).fetchData();
+            return RrdAggregator.aggregate(data.getTimestamps(), data.getValues(ds), data.getArcStep(), start, end, aggregateFunctions);
+        } catch (IOException e) {
+            throw new org.opennms.netmgt.rrd.RrdException("Exception occurred fetching data from " + fileName, e);
+        } catch (RrdException e) {
+            throw new org.opennms.netmgt.rrd.RrdException("Exception occurred fetching data from " + fileName, e);
+        } finally {
+            if (rrd != null && cache != null) {
+                cache.release(rrd);
+            } else if (rrd != null) {
                 try {
                     rrd.close();
                 } catch (IOException e) {
@@ -871,13 +962,15 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     }
 
     /**
-     * This implementation does not track any stats.
+     * Returns the open file cache statistics, or an empty string if the
+     * cache is disabled.
      *
      * @return a {@link java.lang.String} object.
      */
     @Override
     public String getStats() {
-        return "";
+        final RrdDbCache cache = m_cache;
+        return cache == null ? "" : cache.getStats();
     }
 
     /*
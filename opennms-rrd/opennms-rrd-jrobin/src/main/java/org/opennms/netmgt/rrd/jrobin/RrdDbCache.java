@@ -0,0 +1,315 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded cache of open {@link RrdDb} handles keyed by path.
+ *
+ * Handles are reference counted: every {@link #acquire(String)} must be
+ * followed by a {@link #release(RrdDb)}. A handle that is evicted while it
+ * is still in use stays open until its last user releases it. The cache is
+ * split into segments, each with its own lock and LRU order, and files are
+ * opened outside of the locks.
+ *
+ * JRobin synchronizes updates and fetches on the {@link RrdDb} itself, so
+ * the same handle can be shared by the write threads and the readers.
+ *
+ * Every handle remembers the cache it was acquired from, see
+ * {@link #getOwner(RrdDb)}, so that it can be released to that cache even
+ * after the cache has been replaced.
+ */
+class RrdDbCache {
+    private static final Logger LOG = LoggerFactory.getLogger(RrdDbCache.class);
+
+    private static final int SEGMENTS = 16;
+
+    private static class CachedRrdDb extends RrdDb {
+        private final RrdDbCache m_owner;
+
+        private CachedRrdDb(final String path, final RrdDbCache owner) throws IOException, RrdException {
+            super(path);
+            m_owner = owner;
+        }
+    }
+
+    private static class Entry {
+        private final RrdDb m_rrdDb;
+        private int m_references = 0;
+
+        private Entry(final RrdDb rrdDb) {
+            m_rrdDb = rrdDb;
+        }
+    }
+
+    private class Segment {
+        private final int m_capacity;
+
+        /** cached handles in access order, least recently used first */
+        private final LinkedHashMap<String, Entry> m_entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+        /** handles removed from the cache that are still in use */
+        private final Map<RrdDb, Entry> m_retired = new IdentityHashMap<RrdDb, Entry>();
+
+        private Segment(final int capacity) {
+            m_capacity = capacity;
+        }
+
+        private RrdDb acquire(final String path) throws IOException, RrdException {
+            synchronized (this) {
+                final Entry entry = m_entries.get(path);
+                if (entry != null) {
+                    entry.m_references++;
+                    m_hits.incrementAndGet();
+                    return entry.m_rrdDb;
+                }
+            }
+
+            m_misses.incrementAndGet();
+            final RrdDb rrdDb = new CachedRrdDb(path, RrdDbCache.this);
+
+            RrdDb duplicate = null;
+            final RrdDb result;
+            synchronized (this) {
+                Entry entry = m_entries.get(path);
+                if (entry == null) {
+                    entry = new Entry(rrdDb);
+                    m_entries.put(path, entry);
+                    evict();
+                } else {
+                    // another thread opened it in the meantime
+                    duplicate = rrdDb;
+                }
+                entry.m_references++;
+                result = entry.m_rrdDb;
+            }
+            if (duplicate != null) {
+                close(duplicate);
+            }
+            return result;
+        }
+
+        private void release(final RrdDb rrdDb) {
+            boolean close = false;
+            synchronized (this) {
+                final Entry entry = m_entries.get(rrdDb.getPath());
+                if (entry != null && entry.m_rrdDb == rrdDb) {
+                    entry.m_references--;
+                } else {
+                    final Entry retired = m_retired.get(rrdDb);
+                    if (retired == null) {
+                        LOG.warn("Released RRD file {} that is not in the cache", rrdDb.getPath());
+                        close = true;
+                    } else if (--retired.m_references <= 0) {
+                        m_retired.remove(rrdDb);
+                        close = true;
+                    }
+                }
+            }
+            if (close) {
+                close(rrdDb);
+            }
+        }
+
+        private void invalidate(final String path) {
+            RrdDb closeable = null;
+            synchronized (this) {
+                final Entry entry = m_entries.remove(path);
+                if (entry != null) {
+                    if (entry.m_references > 0) {
+                        m_retired.put(entry.m_rrdDb, entry);
+                    } else {
+                        closeable = entry.m_rrdDb;
+                    }
+                }
+            }
+            if (closeable != null) {
+                close(closeable);
+            }
+        }
+
+        /**
+         * Remove the least recently used handles until the segment is back
+         * within its capacity. Must be called with the segment locked.
+         */
+        private void evict() {
+            for (final Iterator<Entry> it = m_entries.values().iterator(); m_entries.size() > m_capacity && it.hasNext();) {
+                final Entry entry = it.next();
+                it.remove();
+                m_evictions.incrementAndGet();
+                if (entry.m_references > 0) {
+                    m_retired.put(entry.m_rrdDb, entry);
+                } else {
+                    close(entry.m_rrdDb);
+                }
+            }
+        }
+
+        private synchronized int size() {
+            return m_entries.size();
+        }
+
+        private void clear() {
+            synchronized (this) {
+                for (final Iterator<Entry> it = m_entries.values().iterator(); it.hasNext();) {
+                    final Entry entry = it.next();
+                    it.remove();
+                    if (entry.m_references > 0) {
+                        m_retired.put(entry.m_rrdDb, entry);
+                    } else {
+                        close(entry.m_rrdDb);
+                    }
+                }
+            }
+        }
+    }
+
+    private final Segment[] m_segments;
+
+    private final AtomicLong m_hits = new AtomicLong();
+
+    private final AtomicLong m_misses = new AtomicLong();
+
+    private final AtomicLong m_evictions = new AtomicLong();
+
+    /**
+     * <p>Constructor for RrdDbCache.</p>
+     *
+     * @param capacity the maximum number of handles kept open
+     */
+    RrdDbCache(final int capacity) {
+        final int segments = Math.min(SEGMENTS, capacity);
+        m_segments = new Segment[segments];
+        for (int i = 0; i < segments; i++) {
+            // spread the remainder so the capacities add up
+            m_segments[i] = new Segment(capacity / segments + (i < capacity % segments ? 1 : 0));
+        }
+    }
+
+    private Segment getSegment(final String path) {
+        final int h = path.hashCode();
+        return m_segments[((h ^ (h >>> 16)) & 0x7fffffff) % m_segments.length];
+    }
+
+    /**
+     * Returns an open handle for the file, opening it if necessary.
+     *
+     * @param path the path of the rrd file
+     * @return the handle, to be passed to {@link #release(RrdDb)} when done
+     * @throws IOException if the file can not be opened
+     * @throws RrdException if the file is not a valid rrd file
+     */
+    RrdDb acquire(final String path) throws IOException, RrdException {
+        return getSegment(path).acquire(path);
+    }
+
+    /**
+     * Returns the cache a handle was acquired from.
+     *
+     * @param rrdDb the handle
+     * @return the cache, or null if the handle was not acquired from a cache
+     */
+    static RrdDbCache getOwner(final RrdDb rrdDb) {
+        return rrdDb instanceof CachedRrdDb ? ((CachedRrdDb) rrdDb).m_owner : null;
+    }
+
+    /**
+     * Returns a handle obtained from {@link #acquire(String)}.
+     *
+     * @param rrdDb the handle
+     */
+    void release(final RrdDb rrdDb) {
+        getSegment(rrdDb.getPath()).release(rrdDb);
+    }
+
+    /**
+     * Removes the handle for a file, for example because the file has been
+     * re-created. The handle is closed once it is no longer in use.
+     *
+     * @param path the path of the rrd file
+     */
+    void invalidate(final String path) {
+        getSegment(path).invalidate(path);
+    }
+
+    /**
+     * Closes all handles that are not in use and empties the cache.
+     */
+    void clear() {
+        for (final Segment segment : m_segments) {
+            segment.clear();
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (final Segment segment : m_segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    long getHits() {
+        return m_hits.get();
+    }
+
+    long getMisses() {
+        return m_misses.get();
+    }
+
+    long getEvictions() {
+        return m_evictions.get();
+    }
+
+    String getStats() {
+        return "JRobin open file cache: size=" + size() +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses() +
+                ", evictions=" + getEvictions();
+    }
+
+    private static void close(final RrdDb rrdDb) {
+        try {
+            rrdDb.close();
+        } catch (final IOException e) {
+            LOG.error("Failed to close rrd file: {}", rrdDb.getPath(), e);
+        }
+    }
+}
@@ -37,6 +37,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Properties;
 
 import org.jrobin.core.RrdDb;
 import org.jrobin.core.RrdDef;
@@ -173,6 +174,91 @@ public class JRobinRrdStrategyTest {
         m_strategy.closeFile(openedFile);
     }
 
+    @Test
+    public void testTypedUpdate() throws Exception {
+        File rrdFile = createRrdFile();
+        long timestamp = System.currentTimeMillis() / 1000L;
+
+        RrdDb openedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+        m_strategy.updateFile(openedFile, "huh?", timestamp, new double[] { 1.234234 });
+        assertEquals("last update time", timestamp, openedFile.getLastUpdateTime());
+        assertEquals("last value", 1.234234, openedFile.getDatasource(0).getLastValue(), 0.0);
+        m_strategy.closeFile(openedFile);
+    }
+
+    @Test
+    public void testOpenFileCache() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("org.jrobin.core.RrdBackendFactory", "FILE");
+        properties.setProperty("org.opennms.rrd.jrobin.openFileCacheSize", "1");
+        m_strategy.setConfigurationProperties(properties);
+
+        File rrdFile = createRrdFile();
+        long timestamp = System.currentTimeMillis() / 1000L;
+
+        RrdDb writer = m_strategy.openFile(rrdFile.getAbsolutePath());
+        RrdDb reader = m_strategy.openFile(rrdFile.getAbsolutePath());
+        assertTrue("handle is shared", writer == reader);
+        m_strategy.updateFile(writer, "huh?", timestamp, new double[] { 1.234234 });
+        m_strategy.closeFile(writer);
+        assertFalse("handle is still open", reader.isClosed());
+        m_strategy.closeFile(reader);
+        assertEquals("JRobin open file cache: size=1, hits=1, misses=1, evictions=0", m_strategy.getStats());
+
+        // re-creating the file drops the cached handle
+        RrdDef def = m_strategy.createDefinition("hello!", rrdFile.getParent(), "baz", 300, Arrays.asList(new RrdDataSource("bar", "GAUGE", 3000, "U", "U")), Arrays.asList("RRA:AVERAGE:0.5:1:2016"));
+        m_strategy.createFile(def, null);
+        m_fileAnticipator.expecting("baz" + RrdUtils.getExtension());
+        RrdDb other = m_strategy.openFile(def.getPath());
+        m_strategy.closeFile(other);
+        assertTrue("evicted handle is closed", reader.isClosed());
+        assertEquals("JRobin open file cache: size=1, hits=1, misses=2, evictions=1", m_strategy.getStats());
+
+        properties.setProperty("org.opennms.rrd.jrobin.openFileCacheSize", "0");
+        m_strategy.setConfigurationProperties(properties);
+        assertTrue("handle is closed when the cache is disabled", other.isClosed());
+        assertEquals("", m_strategy.getStats());
+    }
+
+    @Test
+    public void testOpenFileCacheReconfiguredWhileInUse() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("org.jrobin.core.RrdBackendFactory", "FILE");
+        properties.setProperty("org.opennms.rrd.jrobin.openFileCacheSize", "2");
+        m_strategy.setConfigurationProperties(properties);
+
+        File rrdFile = createRrdFile();
+        RrdDb writer = m_strategy.openFile(rrdFile.getAbsolutePath());
+        RrdDb reader = m_strategy.openFile(rrdFile.getAbsolutePath());
+
+        // a new cache, the handles in use stay with the old one
+        properties.setProperty("org.opennms.rrd.jrobin.openFileCacheSize", "4");
+        m_strategy.setConfigurationProperties(properties);
+        assertFalse("handle in use is still open", writer.isClosed());
+
+        m_strategy.closeFile(writer);
+        assertFalse("handle is still in use", reader.isClosed());
+        m_strategy.closeFile(reader);
+        assertTrue("handle is closed by the old cache once released", reader.isClosed());
+
+        // the new cache does not know about the old handle
+        RrdDb other = m_strategy.openFile(rrdFile.getAbsolutePath());
+        assertFalse("new cache opens a new handle", other == reader);
+        m_strategy.closeFile(other);
+        assertFalse("handle is kept open by the new cache", other.isClosed());
+        assertEquals("JRobin open file cache: size=1, hits=0, misses=1, evictions=0", m_strategy.getStats());
+
+        // and a handle opened without a cache is closed, even when a cache is enabled in the meantime
+        properties.setProperty("org.opennms.rrd.jrobin.openFileCacheSize", "0");
+        m_strategy.setConfigurationProperties(properties);
+        RrdDb uncached = m_strategy.openFile(rrdFile.getAbsolutePath());
+        properties.setProperty("org.opennms.rrd.jrobin.openFileCacheSize", "4");
+        m_strategy.setConfigurationProperties(properties);
+        m_strategy.closeFile(uncached);
+        assertTrue("uncached handle is closed", uncached.isClosed());
+        assertEquals("JRobin open file cache: size=0, hits=0, misses=0, evictions=0", m_strategy.getStats());
+    }
+
     @Test
     public void testSampleSetFloatingPointValueGood() throws Exception {
         File rrdFile = createRrdFile();
@@ -287,6 +373,57 @@ public class JRobinRrdStrategyTest {
         
     }
 
+    @Test
+    public void testFetchAggregatesMatchesPrint() throws Exception {
+        File rrdFile = createRrdFile();
+        RrdDb openedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+
+        // This file's step size is 300
+        long endTime = System.currentTimeMillis() / 1000;
+        endTime -= (endTime % 300);
+        long startTime = endTime - (100 * 300);
+
+        // Got to throw away the first sample
+        m_strategy.updateFile(openedFile, "huh?", (startTime - 300) + ":" + "0.0");
+
+        // the rows that end at the start and at the end of the range hold the
+        // smallest and the largest values, so a boundary row that is wrongly
+        // included or left out changes the result
+        long sampleTime = startTime;
+        for (int i = 0; i <= 100; i++) {
+            double value = (i == 0) ? 1.0 : (i == 100) ? 5000.0 : 10.0 + ((i * 37) % 101);
+            m_strategy.updateFile(openedFile, "huh?", sampleTime + ":" + value);
+            sampleTime += 300;
+        }
+        m_strategy.closeFile(openedFile);
+
+        String[] functions = new String[] { "AVERAGE", "MIN", "MAX", "FIRST", "LAST", "TOTAL" };
+        long[][] ranges = new long[][] {
+                { startTime, endTime },
+                { startTime - 600, endTime + 600 },
+                { startTime + 3000, endTime - 3000 }
+        };
+        for (long[] range : ranges) {
+            List<String> command = new ArrayList<String>();
+            command.add("--start=" + range[0]);
+            command.add("--end=" + range[1]);
+            command.add("DEF:ds=" + rrdFile.getAbsolutePath().replace("\\", "\\\\") + ":bar:AVERAGE");
+            for (String function : functions) {
+                command.add("PRINT:ds:" + function + ":\"%le\"");
+            }
+            String[] printLines = m_strategy.createGraphReturnDetails(StringUtils.collectionToDelimitedString(command, " "), new File("")).getPrintLines();
+            double[] aggregates = m_strategy.fetchAggregates(rrdFile.getAbsolutePath(), "bar", "AVERAGE", range[0], range[1], functions);
+
+            assertEquals("print lines", functions.length, printLines.length);
+            assertEquals("aggregates", functions.length, aggregates.length);
+            for (int i = 0; i < functions.length; i++) {
+                double printed = Double.parseDouble(printLines[i]);
+                // PRINT only has seven significant digits
+                assertEquals(functions[i] + " from " + range[0] + " to " + range[1], printed, aggregates[i], Math.abs(printed) * 1e-6);
+            }
+        }
+    }
+
     /**
      * This test fails because of
      * <a href="http://bugzilla.opennms.org/show_bug.cgi?id=2272">bug #2272</a>
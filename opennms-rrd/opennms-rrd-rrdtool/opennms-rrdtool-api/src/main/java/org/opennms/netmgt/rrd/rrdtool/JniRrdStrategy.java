@@ -219,6 +219,17 @@ public class JniRrdStrategy implements RrdStrategy<JniRrdStrategy.CreateCommand
         rrd.append(data);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * rrdtool only accepts updates as strings so the values are formatted and
+     * appended like any other update.
+     */
+    @Override
+    public void updateFile(StringBuffer rrd, String owner, long timestamp, double[] values) throws Exception {
+        updateFile(rrd, owner, RrdUtils.formatUpdate(timestamp, values));
+    }
+
     /**
      * Initialized the JNI Interface
      *
@@ -412,6 +423,18 @@ public class JniRrdStrategy implements RrdStrategy<JniRrdStrategy.CreateCommand
         
         return null;
     }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The rows returned by the JNI interface carry no timestamps, so the
+     * rows at the edges of the range and the step of the archive are not
+     * known. The values are left to the graphing code.
+     */
+    @Override
+    public double[] fetchAggregates(String rrdFile, String ds, String consolidationFunction, long start, long end, String... aggregateFunctions) {
+        return null;
+    }
     
     /**
      * {@inheritDoc}
@@ -72,9 +72,9 @@ import org.opennms.netmgt.model.OnmsMonitoredService;
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.model.events.EventUtils;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.SchedulerFactory;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Parm;
 import org.opennms.netmgt.xml.event.Value;
@@ -308,7 +308,7 @@ public class Collectd extends AbstractServiceDaemon implements
                 // Create a scheduler
                 try {
                     LOG.debug("init: Creating collectd scheduler");
-                    setScheduler(new LegacyScheduler("Collectd", m_collectdConfigFactory.getCollectdConfig().getThreads()));
+                    setScheduler(SchedulerFactory.createScheduler("Collectd", m_collectdConfigFactory.getCollectdConfig().getThreads()));
                 } catch (final RuntimeException e) {
                     LOG.error("init: Failed to create collectd scheduler", e);
                     throw e;
@@ -359,6 +359,7 @@ public class Collectd extends AbstractServiceDaemon implements
         
         instrumentation().beginScheduleExistingInterfaces();
         try {
+            m_collectdConfigFactory.rebuildPackageIpListMap();
 
             m_transTemplate.execute(new TransactionCallbackWithoutResult() {
 
@@ -702,12 +703,16 @@ public class Collectd extends AbstractServiceDaemon implements
             } else if (event.getUei().equals(EventConstants.CONFIGURE_SNMP_EVENT_UEI)) {
                 handleConfigureSNMP(event);
             } else if (event.getUei().equals(EventConstants.NODE_GAINED_SERVICE_EVENT_UEI)) {
+                m_collectdConfigFactory.rebuildPackageIpListMap();
                 handleNodeGainedService(event);
             } else if (event.getUei().equals(EventConstants.PRIMARY_SNMP_INTERFACE_CHANGED_EVENT_UEI)) {
+                m_collectdConfigFactory.rebuildPackageIpListMap();
                 handlePrimarySnmpInterfaceChanged(event);
             } else if (event.getUei().equals(EventConstants.REINITIALIZE_PRIMARY_SNMP_INTERFACE_EVENT_UEI)) {
+                m_collectdConfigFactory.rebuildPackageIpListMap();
                 handleReinitializePrimarySnmpInterface(event);
             } else if (event.getUei().equals(EventConstants.INTERFACE_REPARENTED_EVENT_UEI)) {
+                m_collectdConfigFactory.rebuildPackageIpListMap();
                 handleInterfaceReparented(event);
             } else if (event.getUei().equals(EventConstants.NODE_DELETED_EVENT_UEI)) {
                 handleNodeDeleted(event);
@@ -720,6 +725,7 @@ public class Collectd extends AbstractServiceDaemon implements
             } else if (event.getUei().equals(EventConstants.RELOAD_DAEMON_CONFIG_UEI)) {
                 handleReloadDaemonConfig(event);
             } else if (event.getUei().equals(EventConstants.NODE_CATEGORY_MEMBERSHIP_CHANGED_EVENT_UEI)) {
+                m_collectdConfigFactory.rebuildPackageIpListMap();
                 handleNodeCategoryMembershipChanged(event);
             }
         } catch (InsufficientInformationException e) {
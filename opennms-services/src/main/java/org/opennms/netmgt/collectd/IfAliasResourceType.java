@@ -100,6 +100,12 @@ public class IfAliasResourceType extends ResourceType {
         return m_ifResourceType.getCollectionInstances();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    protected int getInstanceCount() {
+        return m_ifResourceType.getInstanceCount();
+    }
+
     /**
      * <p>loadAttributeTypes</p>
      *
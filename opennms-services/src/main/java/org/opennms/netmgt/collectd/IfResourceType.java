@@ -92,6 +92,17 @@ public class IfResourceType extends ResourceType {
         return instances.toArray(new SnmpInstId[instances.size()]);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The larger of the number of interfaces known for the node and the
+     * ifNumber of the last collection.
+     */
+    @Override
+    protected int getInstanceCount() {
+        return Math.max(m_ifMap.size(), getAgent().getSavedIfCount());
+    }
+
     /** {@inheritDoc} */
     @Override
     public SnmpCollectionResource findResource(SnmpInstId inst) {
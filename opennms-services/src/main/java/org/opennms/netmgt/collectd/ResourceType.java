@@ -125,6 +125,53 @@ public abstract class ResourceType {
         return null;
     }
 
+    /**
+     * Returns the number of instances the agent has in the table of this
+     * type, as far as it is known.
+     *
+     * @return the number of instances, or -1 if it is not known
+     */
+    protected int getInstanceCount() {
+        return -1;
+    }
+
+    /**
+     * Returns the instances the attributes of this type should be requested
+     * for one by one, or null if the whole table should be walked.
+     *
+     * With org.opennms.netmgt.collectd.SnmpCollector.limitCollectionToInstances
+     * set to true, the collection is always limited to the instances of
+     * {@link #getCollectionInstances()}. Set to auto, it is only limited when
+     * the selected instances are at most the ratio given by
+     * org.opennms.netmgt.collectd.SnmpCollector.limitCollectionRatio of all the
+     * instances of the table, as getting a few instances is cheaper than
+     * walking a large table, while walking is cheaper when most of the table
+     * is collected anyway.
+     *
+     * @return an array of {@link org.opennms.netmgt.snmp.SnmpInstId} objects, or null.
+     */
+    public SnmpInstId[] getInstancesToCollect() {
+        final String limit = System.getProperty("org.opennms.netmgt.collectd.SnmpCollector.limitCollectionToInstances", "false");
+        if (Boolean.parseBoolean(limit)) {
+            return getCollectionInstances();
+        } else if (!"auto".equalsIgnoreCase(limit)) {
+            return null;
+        }
+
+        final SnmpInstId[] instances = getCollectionInstances();
+        final int total = getInstanceCount();
+        if (instances == null || total <= 0) {
+            return null;
+        }
+        final double ratio = Double.parseDouble(System.getProperty("org.opennms.netmgt.collectd.SnmpCollector.limitCollectionRatio", "0.25"));
+        if (instances.length > total * ratio) {
+            LOG.debug("getInstancesToCollect: walking the table for {} on {}, {} of {} instances are collected", getClass().getSimpleName(), getAgent(), instances.length, total);
+            return null;
+        }
+        LOG.debug("getInstancesToCollect: limiting {} on {} to {} of {} instances", getClass().getSimpleName(), getAgent(), instances.length, total);
+        return instances;
+    }
+
     /**
      * <p>findResource</p>
      *
@@ -30,7 +30,9 @@ package org.opennms.netmgt.collectd;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.opennms.netmgt.collection.api.AttributeGroupType;
 import org.opennms.netmgt.collection.api.CollectionAttribute;
@@ -98,16 +100,20 @@ public abstract class SnmpAttributeType extends AbstractCollectionAttributeType
      */
     public static List<Collectable> getCollectionTrackers(Collection<SnmpAttributeType> objList) {
         ArrayList<Collectable> trackers = new ArrayList<Collectable>(objList.size());
+        // decide once per resource type whether to walk its table or get its instances
+        Map<ResourceType, SnmpInstId[]> instancesByType = new HashMap<ResourceType, SnmpInstId[]>();
         for (SnmpAttributeType attrType : objList) {
-            trackers.add(attrType.getCollectionTracker());
+            if (!instancesByType.containsKey(attrType.m_resourceType)) {
+                instancesByType.put(attrType.m_resourceType, attrType.m_resourceType.getInstancesToCollect());
+            }
+            trackers.add(attrType.getCollectionTracker(instancesByType.get(attrType.m_resourceType)));
         }
         
         return trackers;
     }
     
-    private CollectionTracker getCollectionTracker() {
-        SnmpInstId[] instances = m_resourceType.getCollectionInstances();
-        if (instances != null && Boolean.getBoolean("org.opennms.netmgt.collectd.SnmpCollector.limitCollectionToInstances")) {
+    private CollectionTracker getCollectionTracker(SnmpInstId[] instances) {
+        if (instances != null) {
             return m_mibObj.getCollectionTracker(instances);
         } else {
             return m_mibObj.getCollectionTracker();
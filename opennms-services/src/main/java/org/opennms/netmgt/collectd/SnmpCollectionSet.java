@@ -89,6 +89,9 @@ public class SnmpCollectionSet implements Collectable, CollectionSet {
     private int m_status=ServiceCollector.COLLECTION_FAILED;
     private boolean m_ignorePersist;
     private Date m_timestamp;
+    private int m_pdusSent;
+    private long m_varbindsReceived;
+    private long m_bytesReceived;
 
     /**
      * <p>toString</p>
@@ -345,8 +348,11 @@ public class SnmpCollectionSet implements Collectable, CollectionSet {
         LOG.debug("collect: successfully instantiated SnmpNodeCollector() for {}", getCollectionAgent().getHostAddress());
     }
 
-    private void logFinishedWalker() {
-        LOG.info("collect: node SNMP query for address {} complete.", getCollectionAgent().getHostAddress());
+    private void logFinishedWalker(SnmpWalker walker) {
+        m_pdusSent = walker.getPdusSent();
+        m_varbindsReceived = walker.getVarbindsReceived();
+        m_bytesReceived = walker.getBytesReceived();
+        LOG.info("collect: node SNMP query for address {} complete: {} PDUs sent, {} varbinds and {} bytes received.", getCollectionAgent().getHostAddress(), m_pdusSent, m_varbindsReceived, m_bytesReceived);
     }
 
     /**
@@ -383,7 +389,7 @@ public class SnmpCollectionSet implements Collectable, CollectionSet {
             // wait for collection to finish
             walker.waitFor();
 
-            logFinishedWalker();
+            logFinishedWalker(walker);
 
             // Was the collection successful?
             verifySuccessfulWalk(walker);
@@ -579,6 +585,34 @@ public class SnmpCollectionSet implements Collectable, CollectionSet {
         return m_ignorePersist;
     }
 
+    /**
+     * <p>getPdusSent</p>
+     *
+     * @return the number of requests sent to the agent by the last collection
+     */
+    public int getPdusSent() {
+        return m_pdusSent;
+    }
+
+    /**
+     * <p>getVarbindsReceived</p>
+     *
+     * @return the number of variable bindings received from the agent by the last collection
+     */
+    public long getVarbindsReceived() {
+        return m_varbindsReceived;
+    }
+
+    /**
+     * <p>getBytesReceived</p>
+     *
+     * @return the encoded size of the responses received from the agent by the
+     * last collection, 0 if the SNMP strategy does not report it
+     */
+    public long getBytesReceived() {
+        return m_bytesReceived;
+    }
+
 	@Override
 	public Date getCollectionTimestamp() {
 		return m_timestamp;
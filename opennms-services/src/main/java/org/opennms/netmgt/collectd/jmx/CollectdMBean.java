@@ -76,4 +76,9 @@ public interface CollectdMBean extends BaseOnmsMBean {
      * @return The number of collectable services currently seen by Collectd
      */
     public long getCollectableServiceCount();
+
+    /**
+     * @return The scheduler lateness histograms, one entry per scheduling interval
+     */
+    public String[] getSchedulerLateness();
 }
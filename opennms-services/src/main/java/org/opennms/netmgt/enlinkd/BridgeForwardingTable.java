@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.enlinkd;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The mac addresses learned on each port of a bridge, with the ports kept
+ * in a sorted int array and the mac addresses of each port encoded as
+ * longs in a sorted long array.
+ *
+ * This class is not thread safe.
+ */
+public class BridgeForwardingTable {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** the bridge ports in ascending order */
+    private int[] m_ports = new int[INITIAL_CAPACITY];
+
+    /** the mac addresses of each port, the first m_macCounts[i] are in use */
+    private long[][] m_macs = new long[INITIAL_CAPACITY][];
+
+    private int[] m_macCounts = new int[INITIAL_CAPACITY];
+
+    private int m_portCount = 0;
+
+    /** whether the mac addresses of every port are sorted and unique */
+    private boolean m_compact = true;
+
+    /**
+     * Encodes a mac address of 12 hexadecimal digits, as stored in
+     * {@link org.opennms.netmgt.model.BridgeMacLink}, as a long.
+     *
+     * @param mac the mac address
+     * @return the encoded mac address
+     * @throws IllegalArgumentException if the mac address is not valid
+     */
+    public static long encode(final String mac) {
+        if (mac == null || mac.length() != 12) {
+            throw new IllegalArgumentException("Invalid mac address: " + mac);
+        }
+        long value = 0;
+        for (int i = 0; i < 12; i++) {
+            final int digit = Character.digit(mac.charAt(i), 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid mac address: " + mac);
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    /**
+     * Decodes a mac address encoded with {@link #encode(String)} to 12
+     * lower case hexadecimal digits.
+     *
+     * @param mac the encoded mac address
+     * @return the mac address
+     */
+    public static String decode(long mac) {
+        final char[] chars = new char[12];
+        for (int i = 11; i >= 0; i--) {
+            chars[i] = HEX_DIGITS[(int) (mac & 0xf)];
+            mac >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    public void add(final int bridgePort, final String mac) {
+        add(bridgePort, encode(mac));
+    }
+
+    public void add(final int bridgePort, final long mac) {
+        int index = Arrays.binarySearch(m_ports, 0, m_portCount, bridgePort);
+        if (index < 0) {
+            index = -index - 1;
+            insertPort(index, bridgePort);
+        }
+        long[] macs = m_macs[index];
+        final int count = m_macCounts[index];
+        if (count == macs.length) {
+            macs = Arrays.copyOf(macs, count * 2);
+            m_macs[index] = macs;
+        }
+        // adding in ascending order keeps the table compact
+        if (count > 0 && macs[count - 1] >= mac) {
+            m_compact = false;
+        }
+        macs[count] = mac;
+        m_macCounts[index] = count + 1;
+    }
+
+    /**
+     * Adds the entries of another table to this table.
+     *
+     * @param other the other table, may be null
+     */
+    public void addAll(final BridgeForwardingTable other) {
+        if (other == null) {
+            return;
+        }
+        for (final int bridgePort : other.getBridgePorts()) {
+            for (final long mac : other.getMacs(bridgePort)) {
+                add(bridgePort, mac);
+            }
+        }
+    }
+
+    private void insertPort(final int index, final int bridgePort) {
+        if (m_portCount == m_ports.length) {
+            m_ports = Arrays.copyOf(m_ports, m_portCount * 2);
+            m_macs = Arrays.copyOf(m_macs, m_portCount * 2);
+            m_macCounts = Arrays.copyOf(m_macCounts, m_portCount * 2);
+        }
+        final int moved = m_portCount - index;
+        System.arraycopy(m_ports, index, m_ports, index + 1, moved);
+        System.arraycopy(m_macs, index, m_macs, index + 1, moved);
+        System.arraycopy(m_macCounts, index, m_macCounts, index + 1, moved);
+        m_ports[index] = bridgePort;
+        m_macs[index] = new long[INITIAL_CAPACITY];
+        m_macCounts[index] = 0;
+        m_portCount++;
+    }
+
+    /**
+     * Sorts the mac addresses of every port, removes the duplicates and
+     * releases the unused capacity.
+     */
+    private void compact() {
+        if (m_compact) {
+            return;
+        }
+        for (int i = 0; i < m_portCount; i++) {
+            final long[] macs = m_macs[i];
+            final int count = m_macCounts[i];
+            Arrays.sort(macs, 0, count);
+            int unique = 0;
+            for (int j = 0; j < count; j++) {
+                if (unique == 0 || macs[unique - 1] != macs[j]) {
+                    macs[unique++] = macs[j];
+                }
+            }
+            if (unique < macs.length / 2) {
+                m_macs[i] = Arrays.copyOf(macs, unique);
+            }
+            m_macCounts[i] = unique;
+        }
+        m_compact = true;
+    }
+
+    /**
+     * <p>getBridgePorts</p>
+     *
+     * @return the bridge ports that have mac addresses, in ascending order
+     */
+    public int[] getBridgePorts() {
+        return Arrays.copyOf(m_ports, m_portCount);
+    }
+
+    /**
+     * <p>getMacs</p>
+     *
+     * @param bridgePort the bridge port
+     * @return the mac addresses learned on the port, in ascending order
+     */
+    public long[] getMacs(final int bridgePort) {
+        compact();
+        final int index = Arrays.binarySearch(m_ports, 0, m_portCount, bridgePort);
+        if (index < 0) {
+            return new long[0];
+        }
+        return Arrays.copyOf(m_macs[index], m_macCounts[index]);
+    }
+
+    public boolean contains(final int bridgePort, final long mac) {
+        compact();
+        final int index = Arrays.binarySearch(m_ports, 0, m_portCount, bridgePort);
+        return index >= 0 && Arrays.binarySearch(m_macs[index], 0, m_macCounts[index], mac) >= 0;
+    }
+
+    /**
+     * <p>size</p>
+     *
+     * @return the number of port and mac address entries
+     */
+    public int size() {
+        compact();
+        int size = 0;
+        for (int i = 0; i < m_portCount; i++) {
+            size += m_macCounts[i];
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return m_portCount == 0;
+    }
+
+    /**
+     * Returns the entries of this table that are not in the other table.
+     *
+     * @param other the other table, may be null
+     * @return a new table
+     */
+    public BridgeForwardingTable subtract(final BridgeForwardingTable other) {
+        compact();
+        if (other != null) {
+            other.compact();
+        }
+        final BridgeForwardingTable result = new BridgeForwardingTable();
+        for (int i = 0; i < m_portCount; i++) {
+            final long[] macs = m_macs[i];
+            final int count = m_macCounts[i];
+            final int otherIndex = other == null ? -1 : Arrays.binarySearch(other.m_ports, 0, other.m_portCount, m_ports[i]);
+            if (otherIndex < 0) {
+                for (int j = 0; j < count; j++) {
+                    result.add(m_ports[i], macs[j]);
+                }
+                continue;
+            }
+            final long[] otherMacs = other.m_macs[otherIndex];
+            final int otherCount = other.m_macCounts[otherIndex];
+            int k = 0;
+            for (int j = 0; j < count; j++) {
+                while (k < otherCount && otherMacs[k] < macs[j]) {
+                    k++;
+                }
+                if (k == otherCount || otherMacs[k] != macs[j]) {
+                    result.add(m_ports[i], macs[j]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the table in the form used by
+     * {@link org.opennms.netmgt.model.topology.BridgeTopology}.
+     *
+     * @return the mac addresses by bridge port
+     */
+    public Map<Integer, Set<String>> toMap() {
+        compact();
+        final Map<Integer, Set<String>> map = new HashMap<Integer, Set<String>>();
+        for (int i = 0; i < m_portCount; i++) {
+            final Set<String> macs = new HashSet<String>();
+            for (int j = 0; j < m_macCounts[i]; j++) {
+                macs.add(decode(m_macs[i][j]));
+            }
+            map.put(m_ports[i], macs);
+        }
+        return map;
+    }
+}
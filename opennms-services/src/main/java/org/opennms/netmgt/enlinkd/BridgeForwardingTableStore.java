@@ -0,0 +1,280 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.enlinkd;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.opennms.netmgt.model.BridgeMacLink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the bridge forwarding tables collected by the bridge discovery
+ * until they are reconciled, and the bridge forwarding tables of the
+ * topology that is saved as bridge mac links, so that the saved topology
+ * does not have to be read back from the database on every reconcile.
+ *
+ * The saved tables are indexed by mac address, so that a reconcile can
+ * find the bridges that share mac addresses with the reconciled node, and
+ * the last collected table of each reconciled node is kept, so that a
+ * reconcile can tell whether the table of the node has changed.
+ */
+public class BridgeForwardingTableStore {
+    private static final Logger LOG = LoggerFactory.getLogger(BridgeForwardingTableStore.class);
+
+    /** the tables collected since the last reconcile, by node id */
+    private final Map<Integer, BridgeForwardingTable> m_collected = new HashMap<Integer, BridgeForwardingTable>();
+
+    /** the saved tables by node id, null until they are loaded */
+    private Map<Integer, BridgeForwardingTable> m_saved = null;
+
+    /** the number of bridge mac links the saved tables stand for */
+    private int m_savedLinkCount = 0;
+
+    /** the ids of the nodes whose saved tables contain a mac address, by mac address */
+    private final Map<Long, Set<Integer>> m_macNodes = new HashMap<Long, Set<Integer>>();
+
+    /** the last collected table of each reconciled node, by node id */
+    private final Map<Integer, BridgeForwardingTable> m_reconciled = new HashMap<Integer, BridgeForwardingTable>();
+
+    public synchronized void addCollected(final int nodeId, final int bridgePort, final String mac) {
+        final long encoded;
+        try {
+            encoded = BridgeForwardingTable.encode(mac);
+        } catch (final IllegalArgumentException e) {
+            LOG.warn("addCollected: skipping mac address {} on bridge port {} of node {}: {}", mac, bridgePort, nodeId, e.getMessage());
+            return;
+        }
+        BridgeForwardingTable bft = m_collected.get(nodeId);
+        if (bft == null) {
+            bft = new BridgeForwardingTable();
+            m_collected.put(nodeId, bft);
+        }
+        bft.add(bridgePort, encoded);
+    }
+
+    /**
+     * Removes the table collected for a node.
+     *
+     * @param nodeId the node id
+     * @return the table, or null if nothing was collected
+     */
+    public synchronized BridgeForwardingTable removeCollected(final int nodeId) {
+        return m_collected.remove(nodeId);
+    }
+
+    public synchronized boolean isLoaded() {
+        return m_saved != null;
+    }
+
+    /**
+     * Replaces the saved tables with the given bridge mac links.
+     *
+     * @param links all saved bridge mac links
+     */
+    public synchronized void load(final Collection<BridgeMacLink> links) {
+        m_saved = new HashMap<Integer, BridgeForwardingTable>();
+        m_savedLinkCount = links.size();
+        m_macNodes.clear();
+        // the topology is computed again from the loaded tables
+        m_reconciled.clear();
+        for (final BridgeMacLink link : links) {
+            final long encoded;
+            try {
+                encoded = BridgeForwardingTable.encode(link.getMacAddress());
+            } catch (final IllegalArgumentException e) {
+                LOG.warn("load: skipping bridge mac link {}: {}", link.getId(), e.getMessage());
+                continue;
+            }
+            final Integer nodeId = link.getNode().getId();
+            BridgeForwardingTable bft = m_saved.get(nodeId);
+            if (bft == null) {
+                bft = new BridgeForwardingTable();
+                m_saved.put(nodeId, bft);
+            }
+            bft.add(link.getBridgePort(), encoded);
+        }
+        for (final Map.Entry<Integer, BridgeForwardingTable> entry : m_saved.entrySet()) {
+            index(entry.getKey(), entry.getValue());
+        }
+        LOG.info("load: loaded {} bridge mac links of {} nodes", links.size(), m_saved.size());
+    }
+
+    /**
+     * Returns the number of bridge mac links in the database if the saved
+     * tables are in sync with it. A different number means that the links
+     * were changed by someone else and the tables must be loaded again.
+     *
+     * @return the number of bridge mac links
+     */
+    public synchronized int getSavedLinkCount() {
+        return m_savedLinkCount;
+    }
+
+    /**
+     * <p>getSaved</p>
+     *
+     * @return a copy of the map of the saved tables by node id
+     */
+    public synchronized Map<Integer, BridgeForwardingTable> getSaved() {
+        if (m_saved == null) {
+            return new HashMap<Integer, BridgeForwardingTable>();
+        }
+        return new HashMap<Integer, BridgeForwardingTable>(m_saved);
+    }
+
+    /**
+     * Replaces the saved table of a node after its bridge mac links have
+     * been saved.
+     *
+     * @param nodeId the node id
+     * @param bft the table, null or empty if the node has no bridge mac links
+     */
+    public synchronized void setSaved(final int nodeId, final BridgeForwardingTable bft) {
+        if (m_saved == null) {
+            return;
+        }
+        final BridgeForwardingTable old;
+        if (bft == null || bft.isEmpty()) {
+            old = m_saved.remove(nodeId);
+        } else {
+            old = m_saved.put(nodeId, bft);
+            m_savedLinkCount += bft.size();
+        }
+        if (old != null) {
+            m_savedLinkCount -= old.size();
+            unindex(nodeId, old);
+        }
+        if (bft != null) {
+            index(nodeId, bft);
+        }
+    }
+
+    /**
+     * Returns the nodes, other than the given node, whose saved tables
+     * contain any of the mac addresses of the given tables.
+     *
+     * @param nodeId the node id
+     * @param bfts the tables, may contain nulls
+     * @return the ids of the nodes
+     */
+    public synchronized Set<Integer> getNodesSharingMacs(final int nodeId, final BridgeForwardingTable... bfts) {
+        final Set<Integer> nodes = new HashSet<Integer>();
+        for (final BridgeForwardingTable bft : bfts) {
+            if (bft == null) {
+                continue;
+            }
+            for (final int bridgePort : bft.getBridgePorts()) {
+                for (final long mac : bft.getMacs(bridgePort)) {
+                    final Set<Integer> macNodes = m_macNodes.get(mac);
+                    if (macNodes != null) {
+                        nodes.addAll(macNodes);
+                    }
+                }
+            }
+        }
+        nodes.remove(nodeId);
+        return nodes;
+    }
+
+    /**
+     * Tells whether a node has been reconciled with the same table before,
+     * since the saved tables were last loaded.
+     *
+     * @param nodeId the node id
+     * @param bft the collected table
+     * @return true if the table of the node has not changed
+     */
+    public synchronized boolean isReconciled(final int nodeId, final BridgeForwardingTable bft) {
+        final BridgeForwardingTable reconciled = m_reconciled.get(nodeId);
+        return reconciled != null && reconciled.size() == bft.size() && bft.subtract(reconciled).isEmpty();
+    }
+
+    public synchronized void setReconciled(final int nodeId, final BridgeForwardingTable bft) {
+        m_reconciled.put(nodeId, bft);
+    }
+
+    private void index(final int nodeId, final BridgeForwardingTable bft) {
+        for (final int bridgePort : bft.getBridgePorts()) {
+            for (final long mac : bft.getMacs(bridgePort)) {
+                Set<Integer> nodes = m_macNodes.get(mac);
+                if (nodes == null) {
+                    nodes = new HashSet<Integer>(2);
+                    m_macNodes.put(mac, nodes);
+                }
+                nodes.add(nodeId);
+            }
+        }
+    }
+
+    private void unindex(final int nodeId, final BridgeForwardingTable bft) {
+        for (final int bridgePort : bft.getBridgePorts()) {
+            for (final long mac : bft.getMacs(bridgePort)) {
+                final Set<Integer> nodes = m_macNodes.get(mac);
+                if (nodes != null && nodes.remove(nodeId) && nodes.isEmpty()) {
+                    m_macNodes.remove(mac);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets all tables of a node, for example because it was deleted.
+     *
+     * @param nodeId the node id
+     */
+    public synchronized void remove(final int nodeId) {
+        m_collected.remove(nodeId);
+        m_reconciled.remove(nodeId);
+        if (m_saved != null) {
+            final BridgeForwardingTable old = m_saved.remove(nodeId);
+            if (old != null) {
+                m_savedLinkCount -= old.size();
+                unindex(nodeId, old);
+            }
+        }
+    }
+
+    public synchronized String getStats() {
+        int entries = 0;
+        if (m_saved != null) {
+            for (final BridgeForwardingTable bft : m_saved.values()) {
+                entries += bft.size();
+            }
+        }
+        return "Bridge forwarding tables: collected=" + m_collected.size() +
+                ", saved nodes=" + (m_saved == null ? 0 : m_saved.size()) +
+                ", saved entries=" + entries +
+                ", indexed macs=" + m_macNodes.size();
+    }
+}
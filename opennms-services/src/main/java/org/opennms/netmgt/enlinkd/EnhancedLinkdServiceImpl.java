@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.enlinkd;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -37,6 +38,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import javax.sql.DataSource;
+
 import org.opennms.core.criteria.Alias;
 import org.opennms.core.criteria.Criteria;
 import org.opennms.core.criteria.Alias.JoinType;
@@ -55,6 +58,7 @@ import org.opennms.netmgt.dao.api.LldpLinkDao;
 import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.netmgt.dao.api.OspfElementDao;
 import org.opennms.netmgt.dao.api.OspfLinkDao;
+import org.opennms.netmgt.dao.support.BulkUpsertTemplate;
 import org.opennms.netmgt.dao.support.UpsertTemplate;
 import org.opennms.netmgt.model.BridgeBridgeLink;
 import org.opennms.netmgt.model.BridgeElement;
@@ -75,12 +79,14 @@ import org.opennms.netmgt.model.PrimaryType;
 import org.opennms.netmgt.model.topology.BridgeTopology;
 import org.opennms.netmgt.model.topology.BridgeTopology.BridgeTopologyLink;
 import org.opennms.netmgt.model.topology.LinkableSnmpNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
 public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 		
-//	private final static Logger LOG = LoggerFactory.getLogger(EnhancedLinkdServiceImpl.class);
+	private final static Logger LOG = LoggerFactory.getLogger(EnhancedLinkdServiceImpl.class);
 
     @Autowired
     private PlatformTransactionManager m_transactionManager;
@@ -113,7 +119,20 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 	
 	private BridgeStpLinkDao m_bridgeStpLinkDao; 
 	
-	volatile Map<Integer,Map<Integer,Set<String>>> m_bftMap = new HashMap<Integer, Map<Integer,Set<String>>>();
+	private final BridgeForwardingTableStore m_bftStore = new BridgeForwardingTableStore();
+
+	private final JdbcIpNetToMediaWriter m_ipNetToMediaWriter = new JdbcIpNetToMediaWriter();
+
+	// walk results collected per node until the scan is reconciled
+	private final Map<Integer,List<CdpLink>> m_cdpLinks = new HashMap<Integer, List<CdpLink>>();
+
+	private final Map<Integer,List<LldpLink>> m_lldpLinks = new HashMap<Integer, List<LldpLink>>();
+
+	private final Map<Integer,List<OspfLink>> m_ospfLinks = new HashMap<Integer, List<OspfLink>>();
+
+	private final Map<Integer,List<IsIsLink>> m_isisLinks = new HashMap<Integer, List<IsIsLink>>();
+
+	private final Map<Integer,List<IpNetToMedia>> m_ipNetToMedia = new HashMap<Integer, List<IpNetToMedia>>();
 
 	volatile Map<Integer,Map<Integer,Integer>> m_nodebridgeportifindex = new HashMap<Integer, Map<Integer,Integer>>();
 
@@ -125,20 +144,6 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 		m_nodebridgeportifindex.put(nodeid, bridgeportifindex);
 	}
 	
-	private void addBridgeForwardingTableEntry(Integer nodeid,Integer bridgeport, String mac) {
-		Map<Integer,Set<String>> bft = new HashMap<Integer, Set<String>>();
-        if (m_bftMap.containsKey(nodeid))
-        	bft = m_bftMap.get(nodeid);
-        Set<String> macs = new HashSet<String>();
-        if (bft.containsKey(bridgeport)) {
-            macs = bft.get(bridgeport);
-        }
-        macs.add(mac);
-
-        bft.put(bridgeport, macs);
-        m_bftMap.put(nodeid, bft);
-	}
-
     @Override
 	public List<LinkableSnmpNode> getSnmpNodeList() {
 		final List<LinkableSnmpNode> nodes = new ArrayList<LinkableSnmpNode>();
@@ -182,6 +187,7 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 		reconcileOspf(nodeId, now);
 		reconcileIpNetToMedia(nodeId, now);
 		reconcileBridge(nodeId, now);
+		m_bftStore.remove(nodeId);
 	}
 
 	@Override
@@ -191,8 +197,7 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 			m_lldpElementDao.delete(element);
 			m_lldpElementDao.flush();
 		}
-		m_lldpLinkDao.deleteByNodeIdOlderThen(nodeId, now);
-		m_lldpLinkDao.flush();
+		saveLldpLinks(nodeId, collected(m_lldpLinks, nodeId, now), now);
 	}
 
 	@Override
@@ -202,8 +207,7 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 			m_ospfElementDao.delete(element);
 			m_ospfElementDao.flush();
 		}
-		m_ospfLinkDao.deleteByNodeIdOlderThen(nodeId, now);
-		m_ospfLinkDao.flush();
+		saveOspfLinks(nodeId, collected(m_ospfLinks, nodeId, now), now);
 	}
 
 	@Override
@@ -213,8 +217,7 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 			m_isisElementDao.delete(element);
 			m_isisElementDao.flush();
 		}
-		m_isisLinkDao.deleteByNodeIdOlderThen(nodeId, now);
-		m_isisLinkDao.flush();
+		saveIsisLinks(nodeId, collected(m_isisLinks, nodeId, now), now);
 	}
 
 	@Override
@@ -224,92 +227,155 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 			m_cdpElementDao.delete(element);
 			m_cdpElementDao.flush();
 		}
-		m_cdpLinkDao.deleteByNodeIdOlderThen(nodeId, now);
-		m_cdpLinkDao.flush();
+		saveCdpLinks(nodeId, collected(m_cdpLinks, nodeId, now), now);
 	}
 
 	@Override
 	public void reconcileIpNetToMedia(int nodeId, Date now) {
-		m_ipNetToMediaDao.deleteBySourceNodeIdOlderThen(nodeId, now);
-		m_ipNetToMediaDao.flush();
+		List<IpNetToMedia> entries = collected(m_ipNetToMedia, nodeId, now);
+		if (!entries.isEmpty() && m_nodeDao.get(nodeId) == null)
+			entries.clear();
+		try {
+			m_ipNetToMediaWriter.reconcile(nodeId, entries, now);
+		} catch (SQLException e) {
+			LOG.error("reconcileIpNetToMedia: failed to save {} ipNetToMedia entries for node {}", entries.size(), nodeId, e);
+		}
+	}
+
+	private static <T> void collect(Map<Integer,List<T>> collected, int nodeId, T row) {
+		synchronized (collected) {
+			List<T> rows = collected.get(nodeId);
+			if (rows == null) {
+				rows = new ArrayList<T>();
+				collected.put(nodeId, rows);
+			}
+			rows.add(row);
+		}
+	}
+
+	/**
+	 * Removes the rows collected for the node. Rows left over from an
+	 * earlier scan that was aborted before it was reconciled are dropped.
+	 */
+	private static <T> List<T> collected(Map<Integer,List<T>> collected, int nodeId, Date now) {
+		final List<T> rows;
+		synchronized (collected) {
+			rows = collected.remove(nodeId);
+		}
+		if (rows == null)
+			return new ArrayList<T>();
+		final List<T> current = new ArrayList<T>(rows.size());
+		for (T row : rows) {
+			if (!getCreateTime(row).before(now))
+				current.add(row);
+		}
+		return current;
+	}
+
+	private static Date getCreateTime(Object row) {
+		if (row instanceof CdpLink)
+			return ((CdpLink)row).getCdpLinkCreateTime();
+		if (row instanceof LldpLink)
+			return ((LldpLink)row).getLldpLinkCreateTime();
+		if (row instanceof OspfLink)
+			return ((OspfLink)row).getOspfLinkCreateTime();
+		if (row instanceof IsIsLink)
+			return ((IsIsLink)row).getIsisLinkCreateTime();
+		return ((IpNetToMedia)row).getCreateTime();
 	}
 
 	@Override
 	public void store(int nodeId, CdpLink link) {
 		if (link == null)
 			return;
-		saveCdpLink(nodeId, link);
+		collect(m_cdpLinks, nodeId, link);
 	}
 
-	@Transactional
-    protected void saveCdpLink(final int nodeId, final CdpLink saveMe) {
-		new UpsertTemplate<CdpLink, CdpLinkDao>(m_transactionManager,m_cdpLinkDao) {
+	private void saveCdpLinks(final int nodeId, final List<CdpLink> links, final Date now) {
+		BulkUpsertTemplate<CdpLink, List<Object>, CdpLinkDao> template = new BulkUpsertTemplate<CdpLink, List<Object>, CdpLinkDao>(m_transactionManager,m_cdpLinkDao) {
+
+			@Override
+			protected List<CdpLink> query() {
+				return m_dao.findByNodeId(nodeId);
+			}
 
 			@Override
-			protected CdpLink query() {
-				return m_dao.get(nodeId, saveMe.getCdpCacheIfIndex(), saveMe.getCdpCacheDeviceIndex());
+			protected List<Object> getKey(CdpLink link) {
+				return Arrays.<Object>asList(link.getCdpCacheIfIndex(), link.getCdpCacheDeviceIndex());
 			}
 
 			@Override
-			protected CdpLink doUpdate(CdpLink dbCdpLink) {
-				dbCdpLink.merge(saveMe);
+			protected void doUpdate(CdpLink dbCdpLink, CdpLink link) {
+				dbCdpLink.merge(link);
 				m_dao.update(dbCdpLink);
-				m_dao.flush();
-				return dbCdpLink;
 			}
 
 			@Override
-			protected CdpLink doInsert() {
+			protected boolean doInsert(CdpLink link) {
 				final OnmsNode node = m_nodeDao.get(nodeId);
 				if ( node == null )
-					return null;
-				saveMe.setNode(node);
-				saveMe.setCdpLinkLastPollTime(saveMe.getCdpLinkCreateTime());
-				m_dao.saveOrUpdate(saveMe);
-				m_dao.flush();
-				return saveMe;
+					return false;
+				link.setNode(node);
+				link.setCdpLinkLastPollTime(link.getCdpLinkCreateTime());
+				m_dao.saveOrUpdate(link);
+				return true;
 			}
-			
-		}.execute();
+
+			@Override
+			protected boolean isStale(CdpLink dbCdpLink) {
+				return dbCdpLink.getCdpLinkLastPollTime().before(now);
+			}
+
+		};
+		template.execute(links);
+		LOG.debug("saveCdpLinks: node {}: {} links, {} updated, {} inserted, {} deleted", nodeId, links.size(), template.getUpdated(), template.getInserted(), template.getDeleted());
 	}
 
 	@Override
 	public void store(int nodeId, LldpLink link) {
 		if (link == null)
 			return;
-		saveLldpLink(nodeId, link);
+		collect(m_lldpLinks, nodeId, link);
 	}
 
-	@Transactional
-    protected void saveLldpLink(final int nodeId, final LldpLink saveMe) {
-		new UpsertTemplate<LldpLink, LldpLinkDao>(m_transactionManager,m_lldpLinkDao) {
+	private void saveLldpLinks(final int nodeId, final List<LldpLink> links, final Date now) {
+		BulkUpsertTemplate<LldpLink, List<Object>, LldpLinkDao> template = new BulkUpsertTemplate<LldpLink, List<Object>, LldpLinkDao>(m_transactionManager,m_lldpLinkDao) {
 
 			@Override
-			protected LldpLink query() {
-				return m_dao.get(nodeId, saveMe.getLldpLocalPortNum());
+			protected List<LldpLink> query() {
+				return m_dao.findByNodeId(nodeId);
 			}
 
 			@Override
-			protected LldpLink doUpdate(LldpLink dbLldpLink) {
-				dbLldpLink.merge(saveMe);
+			protected List<Object> getKey(LldpLink link) {
+				return Arrays.<Object>asList(link.getLldpLocalPortNum());
+			}
+
+			@Override
+			protected void doUpdate(LldpLink dbLldpLink, LldpLink link) {
+				dbLldpLink.merge(link);
 				m_dao.update(dbLldpLink);
-				m_dao.flush();
-				return dbLldpLink;
 			}
 
 			@Override
-			protected LldpLink doInsert() {
+			protected boolean doInsert(LldpLink link) {
 				final OnmsNode node = m_nodeDao.get(nodeId);
 				if ( node == null )
-					return null;
-				saveMe.setNode(node);
-				saveMe.setLldpLinkLastPollTime(saveMe.getLldpLinkCreateTime());
-				m_dao.saveOrUpdate(saveMe);
-				m_dao.flush();
-				return saveMe;
+					return false;
+				link.setNode(node);
+				link.setLldpLinkLastPollTime(link.getLldpLinkCreateTime());
+				m_dao.saveOrUpdate(link);
+				return true;
 			}
-			
-		}.execute();
+
+			@Override
+			protected boolean isStale(LldpLink dbLldpLink) {
+				return dbLldpLink.getLldpLinkLastPollTime().before(now);
+			}
+
+		};
+		template.execute(links);
+		LOG.debug("saveLldpLinks: node {}: {} links, {} updated, {} inserted, {} deleted", nodeId, links.size(), template.getUpdated(), template.getInserted(), template.getDeleted());
 	}
 
 	@Override
@@ -363,78 +429,94 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 	public void store(int nodeId, OspfLink link) {
 		if (link == null)
 			return;
-		saveOspfLink(nodeId, link);
+		collect(m_ospfLinks, nodeId, link);
 	}
-	
-	private void saveOspfLink(final int nodeId, final OspfLink saveMe) {
-		new UpsertTemplate<OspfLink, OspfLinkDao>(m_transactionManager,m_ospfLinkDao) {
+
+	private void saveOspfLinks(final int nodeId, final List<OspfLink> links, final Date now) {
+		BulkUpsertTemplate<OspfLink, List<Object>, OspfLinkDao> template = new BulkUpsertTemplate<OspfLink, List<Object>, OspfLinkDao>(m_transactionManager,m_ospfLinkDao) {
 
 			@Override
-			protected OspfLink query() {
-				return m_dao.get(nodeId, saveMe.getOspfRemRouterId(),saveMe.getOspfRemIpAddr(),saveMe.getOspfRemAddressLessIndex());
+			protected List<OspfLink> query() {
+				return m_dao.findByNodeId(nodeId);
 			}
 
 			@Override
-			protected OspfLink doUpdate(OspfLink dbOspfLink) {
-				dbOspfLink.merge(saveMe);
+			protected List<Object> getKey(OspfLink link) {
+				return Arrays.<Object>asList(link.getOspfRemRouterId(), link.getOspfRemIpAddr(), link.getOspfRemAddressLessIndex());
+			}
+
+			@Override
+			protected void doUpdate(OspfLink dbOspfLink, OspfLink link) {
+				dbOspfLink.merge(link);
 				m_dao.update(dbOspfLink);
-				m_dao.flush();
-				return dbOspfLink;
 			}
 
 			@Override
-			protected OspfLink doInsert() {
+			protected boolean doInsert(OspfLink link) {
 				final OnmsNode node = m_nodeDao.get(nodeId);
 				if ( node == null )
-					return null;
-				saveMe.setNode(node);
-				saveMe.setOspfLinkLastPollTime(saveMe.getOspfLinkCreateTime());
-				m_dao.saveOrUpdate(saveMe);
-				m_dao.flush();
-				return saveMe;
+					return false;
+				link.setNode(node);
+				link.setOspfLinkLastPollTime(link.getOspfLinkCreateTime());
+				m_dao.saveOrUpdate(link);
+				return true;
 			}
-			
-		}.execute();
-		
+
+			@Override
+			protected boolean isStale(OspfLink dbOspfLink) {
+				return dbOspfLink.getOspfLinkLastPollTime().before(now);
+			}
+
+		};
+		template.execute(links);
+		LOG.debug("saveOspfLinks: node {}: {} links, {} updated, {} inserted, {} deleted", nodeId, links.size(), template.getUpdated(), template.getInserted(), template.getDeleted());
 	}
 
 	@Override
 	public void store(int nodeId, IsIsLink link) {
 		if (link == null)
 			return;
-		saveIsisLink(nodeId, link);
+		collect(m_isisLinks, nodeId, link);
 	}
 
-	@Transactional
-    protected void saveIsisLink(final int nodeId, final IsIsLink saveMe) {
-		new UpsertTemplate<IsIsLink, IsIsLinkDao>(m_transactionManager,m_isisLinkDao) {
+	private void saveIsisLinks(final int nodeId, final List<IsIsLink> links, final Date now) {
+		BulkUpsertTemplate<IsIsLink, List<Object>, IsIsLinkDao> template = new BulkUpsertTemplate<IsIsLink, List<Object>, IsIsLinkDao>(m_transactionManager,m_isisLinkDao) {
 
 			@Override
-			protected IsIsLink query() {
-				return m_dao.get(nodeId, saveMe.getIsisCircIndex(),saveMe.getIsisISAdjIndex());
+			protected List<IsIsLink> query() {
+				return m_dao.findByNodeId(nodeId);
 			}
 
 			@Override
-			protected IsIsLink doUpdate(IsIsLink dbIsIsLink) {
-				dbIsIsLink.merge(saveMe);
+			protected List<Object> getKey(IsIsLink link) {
+				return Arrays.<Object>asList(link.getIsisCircIndex(), link.getIsisISAdjIndex());
+			}
+
+			@Override
+			protected void doUpdate(IsIsLink dbIsIsLink, IsIsLink link) {
+				dbIsIsLink.merge(link);
 				m_dao.update(dbIsIsLink);
-				m_dao.flush();
-				return dbIsIsLink;
 			}
 
 			@Override
-			protected IsIsLink doInsert() {
+			protected boolean doInsert(IsIsLink link) {
 				final OnmsNode node = m_nodeDao.get(nodeId);
 				if ( node == null )
-					return null;
-				saveMe.setNode(node);
-				saveMe.setIsisLinkLastPollTime(saveMe.getIsisLinkCreateTime());
-				m_dao.saveOrUpdate(saveMe);
-				m_dao.flush();
-				return saveMe;
+					return false;
+				link.setNode(node);
+				link.setIsisLinkLastPollTime(link.getIsisLinkCreateTime());
+				m_dao.saveOrUpdate(link);
+				return true;
 			}
-			
-		}.execute();
+
+			@Override
+			protected boolean isStale(IsIsLink dbIsIsLink) {
+				return dbIsIsLink.getIsisLinkLastPollTime().before(now);
+			}
+
+		};
+		template.execute(links);
+		LOG.debug("saveIsisLinks: node {}: {} links, {} updated, {} inserted, {} deleted", nodeId, links.size(), template.getUpdated(), template.getInserted(), template.getDeleted());
 	}
 
 	@Override
@@ -568,7 +650,7 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 	public void store(int nodeId, BridgeMacLink link) {
 		if (link == null)
 			return;
-		addBridgeForwardingTableEntry(nodeId, link.getBridgePort(), link.getMacAddress());
+		m_bftStore.addCollected(nodeId, link.getBridgePort(), link.getMacAddress());
 		if (link.getBridgePortIfIndex() != null)
 			addBridgePortIfIndexEntry(nodeId, link.getBridgePort(), link.getBridgePortIfIndex());
 	}
@@ -582,28 +664,33 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 		m_bridgeStpLinkDao.flush();
 		
 		Map<Integer,Integer> bridgeportifindex = m_nodebridgeportifindex.get(nodeId);
-		Map<Integer,Set<String>> bft = m_bftMap.remove(nodeId);
+		BridgeForwardingTable bft = m_bftStore.removeCollected(nodeId);
 		if (bft == null || bft.isEmpty())
 			return;
-		Set<String> macs = new HashSet<String>();
-		for (Set<String> portmacs: bft.values()) 
-			macs.addAll(portmacs);
-		
-		Map<Integer,Map<Integer,Set<String>>> savedtopology = new HashMap<Integer, Map<Integer,Set<String>>>();
-		for (BridgeMacLink maclink: m_bridgeMacLinkDao.findAll()) {
-			if (maclink.getNode().getId().intValue() == nodeId)
-				continue;
-			Map<Integer,Set<String>> nodesavedtopology = new HashMap<Integer, Set<String>>();
-			if (savedtopology.containsKey(maclink.getNode().getId())) 
-				nodesavedtopology = savedtopology.get(maclink.getNode().getId());
-			Set<String> macsonport = new HashSet<String>();
-			if (nodesavedtopology.containsKey(maclink.getBridgePort()))
-				macsonport = nodesavedtopology.get(maclink.getBridgePort());
-			macsonport.add(maclink.getMacAddress());
-			nodesavedtopology.put(maclink.getBridgePort(), macsonport);
-			savedtopology.put(maclink.getNode().getId(), nodesavedtopology);
+
+		// the saved topology is read from the database only when it was
+		// changed by someone else, and else kept up to date with the
+		// changes saved by each reconcile
+		if (!m_bftStore.isLoaded() || m_bftStore.getSavedLinkCount() != m_bridgeMacLinkDao.countAll())
+			m_bftStore.load(m_bridgeMacLinkDao.findAll());
+		if (bridgeportifindex == null)
+			bridgeportifindex = new HashMap<Integer, Integer>();
+
+		// the same forwarding table gives the same topology,
+		// so only the links of the node are polled again
+		if (m_bftStore.isReconciled(nodeId, bft)) {
+			int refreshed = refreshBridgeMacLinks(nodeId, now, bridgeportifindex);
+			refreshBridgeBridgeLinks(nodeId, now);
+			LOG.debug("reconcileBridge: node {}: forwarding table unchanged, refreshed {} bridge mac links. {}", nodeId, refreshed, m_bftStore.getStats());
+			return;
 		}
-		
+
+		// only the bridges that share mac addresses with the old or the
+		// new forwarding table of the node can change with it, the saved
+		// links of the other bridges are left as they are
+		Map<Integer,BridgeForwardingTable> savedtopology = m_bftStore.getSaved();
+		Set<Integer> parsednodes = m_bftStore.getNodesSharingMacs(nodeId, bft, savedtopology.get(nodeId));
+
 		BridgeTopology topology = new BridgeTopology();
 		Set<Integer> targets = new HashSet<Integer>();
 		targets.add(nodeId);
@@ -617,22 +704,42 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 			nodesavedtopology.put(bblink.getBridgePort(), new HashSet<String>());
 			topology.addTopology(bblink.getNode().getId(), nodesavedtopology, targets);
 		}
-		for (Integer savednode: savedtopology.keySet()) {
-			topology.parseBFT(savednode, savedtopology.get(savednode));
+		for (Integer savednode: parsednodes) {
+			topology.parseBFT(savednode, savedtopology.get(savednode).toMap());
 		}
-		topology.parseBFT(nodeId, bft);
+		topology.parseBFT(nodeId, bft.toMap());
+		parsednodes.add(nodeId);
 
-		// now check the topology with the old one
-		// delete the not found links
+		// collect the mac links of the new topology and save the bridge links
+		Map<Integer,BridgeForwardingTable> newtopology = new HashMap<Integer, BridgeForwardingTable>();
 		for (BridgeTopologyLink btl: topology.getTopology()) {
-			saveLink(btl, nodeId, bridgeportifindex);
+			saveLink(btl, nodeId, bridgeportifindex, newtopology);
 		}
-		
-		for (Integer curNodeId: savedtopology.keySet()) {
-			m_bridgeMacLinkDao.deleteByNodeIdOlderThen(curNodeId, now);
+
+		// now check the topology with the old one
+		// only the mac links that changed are saved or deleted
+		Set<Integer> nodes = new HashSet<Integer>(parsednodes);
+		nodes.addAll(newtopology.keySet());
+		int added = 0;
+		int deleted = 0;
+		for (Integer curNodeId: nodes) {
+			BridgeForwardingTable oldlinks = savedtopology.get(curNodeId);
+			BridgeForwardingTable newlinks = newtopology.get(curNodeId);
+			if (!parsednodes.contains(curNodeId)) {
+				// the table of a bridge that was not parsed is only added to
+				if (oldlinks != null)
+					newlinks.addAll(oldlinks);
+			} else if (oldlinks != null) {
+				deleted += deleteBridgeMacLinks(curNodeId, oldlinks.subtract(newlinks));
+			}
+			if (newlinks != null)
+				added += saveBridgeMacLinks(curNodeId, newlinks.subtract(oldlinks), nodeId, bridgeportifindex);
+			m_bftStore.setSaved(curNodeId, newlinks);
 		}
-		m_bridgeMacLinkDao.deleteByNodeIdOlderThen(nodeId, now);
 		m_bridgeMacLinkDao.flush();
+		m_bftStore.setReconciled(nodeId, bft);
+		int refreshed = refreshBridgeMacLinks(nodeId, now, bridgeportifindex);
+		LOG.debug("reconcileBridge: node {}: parsed {} bridges, added {}, deleted {} and refreshed {} bridge mac links. {}", nodeId, parsednodes.size(), added, deleted, refreshed, m_bftStore.getStats());
 
 		// What about bridge bridge topology
 		// The changes could only be regarding the nodeId
@@ -641,8 +748,38 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 		m_bridgeBridgeLinkDao.flush();
 
 	}
+
+	/**
+	 * Sets the last poll time and the bridge port ifIndex of the saved
+	 * bridge mac links of a node, as the links are not saved again when
+	 * they have not changed.
+	 */
+	private int refreshBridgeMacLinks(int nodeId, Date now, Map<Integer,Integer> bridgeportifindex) {
+		int refreshed = 0;
+		for (BridgeMacLink maclink: m_bridgeMacLinkDao.findByNodeId(nodeId)) {
+			if (maclink.getBridgeMacLinkLastPollTime() != null && !maclink.getBridgeMacLinkLastPollTime().before(now))
+				continue;
+			maclink.setBridgeMacLinkLastPollTime(now);
+			if (bridgeportifindex.containsKey(maclink.getBridgePort()))
+				maclink.setBridgePortIfIndex(bridgeportifindex.get(maclink.getBridgePort()));
+			m_bridgeMacLinkDao.update(maclink);
+			refreshed++;
+		}
+		m_bridgeMacLinkDao.flush();
+		return refreshed;
+	}
+
+	private void refreshBridgeBridgeLinks(int nodeId, Date now) {
+		List<BridgeBridgeLink> bblinks = new ArrayList<BridgeBridgeLink>(m_bridgeBridgeLinkDao.findByNodeId(nodeId));
+		bblinks.addAll(m_bridgeBridgeLinkDao.findByDesignatedNodeId(nodeId));
+		for (BridgeBridgeLink bblink: bblinks) {
+			bblink.setBridgeBridgeLinkLastPollTime(now);
+			m_bridgeBridgeLinkDao.update(bblink);
+		}
+		m_bridgeBridgeLinkDao.flush();
+	}
 	
-	protected void saveLink(final BridgeTopologyLink bridgelink, Integer nodeId, Map<Integer,Integer> bridgeportIfIndex) {
+	protected void saveLink(final BridgeTopologyLink bridgelink, Integer nodeId, Map<Integer,Integer> bridgeportIfIndex, Map<Integer,BridgeForwardingTable> maclinks) {
 		if (bridgelink == null)
 			return;
 		if (bridgeportIfIndex == null)
@@ -671,25 +808,57 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 			return;
 		} 
 		for (String mac: bridgelink.getMacs()) {
-			BridgeMacLink maclink1 = new BridgeMacLink();
-			maclink1.setNode(node);
-			maclink1.setBridgePort(bridgelink.getBridgeTopologyPort().getBridgePort());
-			if (node.getId().intValue() == nodeId.intValue() && bridgelink.getBridgeTopologyPort() != null && bridgeportIfIndex.containsKey(bridgelink.getBridgeTopologyPort().getBridgePort())) {
-				maclink1.setBridgePortIfIndex(bridgeportIfIndex.get(bridgelink.getBridgeTopologyPort().getBridgePort()));
-			}
-			maclink1.setMacAddress(mac);
-			saveBridgeMacLink(maclink1);
+			addMacLink(maclinks, node.getId(), bridgelink.getBridgeTopologyPort().getBridgePort(), mac);
 			if (designatenode == null)
 				continue;
-			BridgeMacLink maclink2 = new BridgeMacLink();
-			maclink2.setNode(designatenode);
-			maclink2.setBridgePort(bridgelink.getDesignateBridgePort().getBridgePort());
-			if (designatenode.getId().intValue() == nodeId.intValue() && bridgelink.getDesignateBridgePort() != null && bridgeportIfIndex.containsKey(bridgelink.getDesignateBridgePort().getBridgePort())) {
-				maclink2.setBridgePortIfIndex(bridgeportIfIndex.get(bridgelink.getDesignateBridgePort().getBridgePort()));
-			}
-			maclink2.setMacAddress(mac);
-			saveBridgeMacLink(maclink2);
+			addMacLink(maclinks, designatenode.getId(), bridgelink.getDesignateBridgePort().getBridgePort(), mac);
+		}
+	}
+
+	private static void addMacLink(Map<Integer,BridgeForwardingTable> maclinks, Integer nodeId, Integer bridgePort, String mac) {
+		BridgeForwardingTable bft = maclinks.get(nodeId);
+		if (bft == null) {
+			bft = new BridgeForwardingTable();
+			maclinks.put(nodeId, bft);
+		}
+		bft.add(bridgePort, mac);
+	}
+
+	private int saveBridgeMacLinks(Integer curNodeId, BridgeForwardingTable maclinks, Integer nodeId, Map<Integer,Integer> bridgeportIfIndex) {
+		if (maclinks.isEmpty())
+			return 0;
+		OnmsNode node = m_nodeDao.get(curNodeId);
+		if (node == null)
+			return 0;
+		int saved = 0;
+		for (int bridgeport: maclinks.getBridgePorts()) {
+			for (long mac: maclinks.getMacs(bridgeport)) {
+				BridgeMacLink maclink = new BridgeMacLink();
+				maclink.setNode(node);
+				maclink.setBridgePort(bridgeport);
+				if (curNodeId.intValue() == nodeId.intValue() && bridgeportIfIndex.containsKey(bridgeport)) {
+					maclink.setBridgePortIfIndex(bridgeportIfIndex.get(bridgeport));
+				}
+				maclink.setMacAddress(BridgeForwardingTable.decode(mac));
+				saveBridgeMacLink(maclink);
+				saved++;
+			}
+		}
+		return saved;
+	}
+
+	private int deleteBridgeMacLinks(Integer curNodeId, BridgeForwardingTable maclinks) {
+		int deleted = 0;
+		for (int bridgeport: maclinks.getBridgePorts()) {
+			for (long mac: maclinks.getMacs(bridgeport)) {
+				BridgeMacLink maclink = m_bridgeMacLinkDao.getByNodeIdBridgePortMac(curNodeId, bridgeport, BridgeForwardingTable.decode(mac));
+				if (maclink != null) {
+					m_bridgeMacLinkDao.delete(maclink);
+					deleted++;
+				}
+			}
 		}
+		return deleted;
 	}
 
 	@Transactional
@@ -753,43 +922,7 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 	public void store(int nodeId, IpNetToMedia ipnettomedia) {
 		if (ipnettomedia == null)
 			return;
-		saveIpNetToMedia(nodeId, ipnettomedia);
-	}
-
-	@Transactional
-    protected void saveIpNetToMedia(final int nodeId, final IpNetToMedia saveMe) {
-		new UpsertTemplate<IpNetToMedia, IpNetToMediaDao>(m_transactionManager,m_ipNetToMediaDao) {
-
-			@Override
-			protected IpNetToMedia query() {
-				return m_dao.getByNetAndPhysAddress(saveMe.getNetAddress(),saveMe.getPhysAddress());
-			}
-
-			@Override
-			protected IpNetToMedia doUpdate(IpNetToMedia dbIpNetToMedia) {
-				final OnmsNode node = m_nodeDao.get(nodeId);
-				if (node == null)
-					return null;
-				saveMe.setSourceNode(node);
-				dbIpNetToMedia.merge(saveMe);
-				m_dao.update(dbIpNetToMedia);
-				m_dao.flush();
-				return dbIpNetToMedia;
-			}
-
-			@Override
-			protected IpNetToMedia doInsert() {
-				final OnmsNode node = m_nodeDao.get(nodeId);
-				if ( node == null )
-					return null;
-				saveMe.setSourceNode(node);
-				saveMe.setLastPollTime(saveMe.getCreateTime());
-				m_dao.saveOrUpdate(saveMe);
-				m_dao.flush();
-				return saveMe;
-			}
-			
-		}.execute();
+		collect(m_ipNetToMedia, nodeId, ipnettomedia);
 	}
 
 	public CdpLinkDao getCdpLinkDao() {
@@ -904,4 +1037,12 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 		m_ipNetToMediaDao = ipNetToMediaDao;
 	}
 
+	public DataSource getDataSource() {
+		return m_ipNetToMediaWriter.getDataSource();
+	}
+
+	public void setDataSource(DataSource dataSource) {
+		m_ipNetToMediaWriter.setDataSource(dataSource);
+	}
+
 }
@@ -0,0 +1,294 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.enlinkd;
+
+import static org.opennms.core.utils.InetAddressUtils.str;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.opennms.core.utils.DBUtils;
+import org.opennms.netmgt.model.IpNetToMedia;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reconciles the ARP table walked from a node with the ipNetToMedia table
+ * using JDBC batches in a single transaction.
+ *
+ * The rows that belong to the node, or that have one of the scanned IP
+ * addresses, are read with one query and matched in memory by IP and MAC
+ * address. Rows that are matched and still belong to the same node and
+ * interface only need their lastPollTime refreshed, which is done with a
+ * single statement; rows that moved to this node or to another interface
+ * are updated with a batch, new entries are inserted with a batch and the
+ * rows of the node that were not seen any more are deleted with a single
+ * statement.
+ *
+ * IP and MAC address pairs are not unique per node, so writers are
+ * serialized to keep two nodes that see the same pair from both inserting
+ * it.
+ */
+public class JdbcIpNetToMediaWriter {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbcIpNetToMediaWriter.class);
+
+    /**
+     * Hibernate allocates the ids of the entities that use the opennmsNxtId
+     * sequence in blocks of this size, taking the block number from the
+     * sequence. New rows take their ids in the same way so that they never
+     * collide with rows written through Hibernate.
+     */
+    static final int ID_BLOCK_SIZE = 50;
+
+    private static final String SQL_SELECT = "SELECT id, netaddress, physaddress, sourcenodeid, sourceifindex, lastpolltime FROM ipnettomedia WHERE sourcenodeid = ? OR netaddress = ANY(?)";
+
+    private static final String SQL_NEXT_IDS = "SELECT nextval('opennmsNxtId') FROM generate_series(1, ?)";
+
+    private static final String SQL_INSERT = "INSERT INTO ipnettomedia (id, netaddress, physaddress, sourcenodeid, sourceifindex, createtime, lastpolltime) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SQL_UPDATE = "UPDATE ipnettomedia SET sourcenodeid = ?, sourceifindex = ?, lastpolltime = ? WHERE id = ?";
+
+    private static final String SQL_TOUCH = "UPDATE ipnettomedia SET lastpolltime = ? WHERE id = ANY(?)";
+
+    private static final String SQL_DELETE = "DELETE FROM ipnettomedia WHERE id = ANY(?)";
+
+    private static class Row {
+        private final int m_id;
+        private final int m_sourceNodeId;
+        private final int m_sourceIfIndex;
+        private final Timestamp m_lastPollTime;
+
+        private Row(final ResultSet rs) throws SQLException {
+            m_id = rs.getInt(1);
+            m_sourceNodeId = rs.getInt(4);
+            m_sourceIfIndex = rs.getInt(5);
+            m_lastPollTime = rs.getTimestamp(6);
+        }
+    }
+
+    private DataSource m_dataSource;
+
+    /**
+     * Reconciles the entries walked from a node with the database.
+     *
+     * @param nodeId the node the ARP table was walked from
+     * @param entries the entries that were walked, an empty collection
+     *        removes all of the entries of the node older than now
+     * @param now the time the walk was started; rows of the node that were
+     *        not walked are deleted when their lastPollTime is older
+     * @throws SQLException if the table could not be updated, in which case
+     *         nothing has been changed
+     */
+    public synchronized void reconcile(final int nodeId, final Collection<IpNetToMedia> entries, final Date now) throws SQLException {
+        final long start = System.currentTimeMillis();
+
+        final Map<String, IpNetToMedia> scanned = new LinkedHashMap<String, IpNetToMedia>();
+        Date lastPollTime = now;
+        for (final IpNetToMedia entry : entries) {
+            scanned.put(getKey(str(entry.getNetAddress()), entry.getPhysAddress()), entry);
+            if (entry.getCreateTime().after(lastPollTime)) {
+                lastPollTime = entry.getCreateTime();
+            }
+        }
+        final Timestamp pollTime = new Timestamp(lastPollTime.getTime());
+
+        final List<Integer> touched = new ArrayList<Integer>();
+        final List<Integer> stale = new ArrayList<Integer>();
+        final Map<Integer, IpNetToMedia> moved = new LinkedHashMap<Integer, IpNetToMedia>();
+        final List<IpNetToMedia> inserted = new ArrayList<IpNetToMedia>();
+
+        final DBUtils d = new DBUtils(getClass());
+        try {
+            final Connection connection = getDataSource().getConnection();
+            d.watch(connection);
+            connection.setAutoCommit(false);
+
+            try {
+                final PreparedStatement select = connection.prepareStatement(SQL_SELECT);
+                d.watch(select);
+                select.setInt(1, nodeId);
+                select.setArray(2, connection.createArrayOf("text", getNetAddresses(scanned.values())));
+                final ResultSet rs = select.executeQuery();
+                d.watch(rs);
+
+                final Map<String, Row> existing = new HashMap<String, Row>();
+                while (rs.next()) {
+                    final Row row = new Row(rs);
+                    final String key = getKey(rs.getString(2), rs.getString(3));
+                    if (scanned.containsKey(key) && !existing.containsKey(key)) {
+                        existing.put(key, row);
+                    } else if (row.m_sourceNodeId == nodeId && row.m_lastPollTime.before(now)) {
+                        stale.add(row.m_id);
+                    }
+                }
+
+                for (final Map.Entry<String, IpNetToMedia> entry : scanned.entrySet()) {
+                    final Row row = existing.get(entry.getKey());
+                    final IpNetToMedia saveMe = entry.getValue();
+                    if (row == null) {
+                        inserted.add(saveMe);
+                    } else if (row.m_sourceNodeId == nodeId && row.m_sourceIfIndex == saveMe.getSourceIfIndex()) {
+                        touched.add(row.m_id);
+                    } else {
+                        moved.put(row.m_id, saveMe);
+                    }
+                }
+
+                if (!touched.isEmpty()) {
+                    final PreparedStatement touch = connection.prepareStatement(SQL_TOUCH);
+                    d.watch(touch);
+                    touch.setTimestamp(1, pollTime);
+                    touch.setArray(2, connection.createArrayOf("int4", touched.toArray()));
+                    touch.executeUpdate();
+                }
+
+                if (!moved.isEmpty()) {
+                    final PreparedStatement update = connection.prepareStatement(SQL_UPDATE);
+                    d.watch(update);
+                    for (final Map.Entry<Integer, IpNetToMedia> entry : moved.entrySet()) {
+                        update.setInt(1, nodeId);
+                        update.setInt(2, entry.getValue().getSourceIfIndex());
+                        update.setTimestamp(3, new Timestamp(entry.getValue().getCreateTime().getTime()));
+                        update.setInt(4, entry.getKey());
+                        update.addBatch();
+                    }
+                    update.executeBatch();
+                }
+
+                if (!inserted.isEmpty()) {
+                    final int[] ids = nextIds(d, connection, inserted.size());
+                    final PreparedStatement insert = connection.prepareStatement(SQL_INSERT);
+                    d.watch(insert);
+                    for (int i = 0; i < ids.length; i++) {
+                        final IpNetToMedia saveMe = inserted.get(i);
+                        final Timestamp createTime = new Timestamp(saveMe.getCreateTime().getTime());
+                        insert.setInt(1, ids[i]);
+                        insert.setString(2, str(saveMe.getNetAddress()));
+                        insert.setString(3, saveMe.getPhysAddress());
+                        insert.setInt(4, nodeId);
+                        insert.setInt(5, saveMe.getSourceIfIndex());
+                        insert.setTimestamp(6, createTime);
+                        insert.setTimestamp(7, createTime);
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                }
+
+                if (!stale.isEmpty()) {
+                    final PreparedStatement delete = connection.prepareStatement(SQL_DELETE);
+                    d.watch(delete);
+                    delete.setArray(1, connection.createArrayOf("int4", stale.toArray()));
+                    delete.executeUpdate();
+                }
+
+                connection.commit();
+            } catch (final SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (final Throwable e2) {
+                    LOG.warn("Rollback of transaction failed.", e2);
+                }
+                throw e;
+            }
+        } finally {
+            d.cleanUp();
+        }
+
+        LOG.debug("reconcile: node {}: {} ipNetToMedia entries, {} refreshed, {} updated, {} inserted, {} deleted in {}ms",
+                  nodeId, scanned.size(), touched.size(), moved.size(), inserted.size(), stale.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Allocates ids the same way Hibernate does: every value taken from the
+     * sequence is the number of a block of {@link #ID_BLOCK_SIZE} ids.
+     */
+    private static int[] nextIds(final DBUtils d, final Connection connection, final int count) throws SQLException {
+        final PreparedStatement next = connection.prepareStatement(SQL_NEXT_IDS);
+        d.watch(next);
+        next.setInt(1, (count + ID_BLOCK_SIZE - 1) / ID_BLOCK_SIZE);
+        final ResultSet rs = next.executeQuery();
+        d.watch(rs);
+
+        final int[] ids = new int[count];
+        int i = 0;
+        while (rs.next() && i < count) {
+            final long block = rs.getLong(1);
+            for (int lo = 0; lo < ID_BLOCK_SIZE && i < count; lo++) {
+                ids[i++] = (int)(block * ID_BLOCK_SIZE + lo);
+            }
+        }
+        if (i < count) {
+            throw new SQLException("Could only allocate " + i + " of " + count + " ipNetToMedia ids");
+        }
+        return ids;
+    }
+
+    private static String[] getNetAddresses(final Collection<IpNetToMedia> entries) {
+        final String[] addresses = new String[entries.size()];
+        int i = 0;
+        for (final IpNetToMedia entry : entries) {
+            addresses[i++] = str(entry.getNetAddress());
+        }
+        return addresses;
+    }
+
+    private static String getKey(final String netAddress, final String physAddress) {
+        return netAddress + "/" + physAddress;
+    }
+
+    /**
+     * <p>getDataSource</p>
+     *
+     * @return a {@link javax.sql.DataSource} object.
+     */
+    public DataSource getDataSource() {
+        return m_dataSource;
+    }
+
+    /**
+     * <p>setDataSource</p>
+     *
+     * @param dataSource a {@link javax.sql.DataSource} object.
+     */
+    public void setDataSource(final DataSource dataSource) {
+        m_dataSource = dataSource;
+    }
+}
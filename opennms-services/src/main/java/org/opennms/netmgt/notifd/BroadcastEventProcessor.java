@@ -172,6 +172,8 @@ public final class BroadcastEventProcessor implements EventListener {
     public void onEvent(Event event) {
         if (event == null) return;
 
+        m_notificationManager.handleTopologyEvent(event);
+
         if (isReloadConfigEvent(event)) {
             LOG.info("onEvent: handling reload configuration event...");
             EventBuilder ebldr = null;
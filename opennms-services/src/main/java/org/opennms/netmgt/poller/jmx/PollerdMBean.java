@@ -74,4 +74,9 @@ public interface PollerdMBean extends BaseOnmsMBean {
      * @return The maximum number of threads allowed in the poller's thread pool
      */
     public long getMaxPoolThreads();
+
+    /**
+     * @return The scheduler lateness histograms, one entry per scheduling interval
+     */
+    public String[] getSchedulerLateness();
 }
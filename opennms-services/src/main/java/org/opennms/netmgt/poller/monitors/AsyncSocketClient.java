@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.utils.TimeoutTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs short request/response exchanges with TCP services on asynchronous
+ * socket channels, so that the asynchronous monitors do not hold a thread
+ * while they wait for a connection or a response.
+ *
+ * All channels share one channel group, sized to the number of processors,
+ * and one timer thread that enforces the connection timeouts.  The
+ * conversation callbacks are invoked on the threads of the channel group and
+ * must not block.
+ */
+final class AsyncSocketClient {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncSocketClient.class);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The protocol specific part of an exchange. Exactly one of
+     * {@link #completed(String)} and {@link #failed(Throwable)} is called.
+     */
+    interface Conversation {
+        /**
+         * Called once the connection has been established.
+         *
+         * @return the request to send, or null to only read
+         */
+        byte[] connected();
+
+        /**
+         * @param response what has been received so far
+         * @return true once enough of the response has been received
+         */
+        boolean isComplete(CharSequence response);
+
+        /**
+         * @param response what has been received, possibly empty if the
+         *            service closed the connection without sending anything
+         */
+        void completed(String response);
+
+        void failed(Throwable t);
+    }
+
+    private static class Resources {
+        private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(daemon(new LogPreservingThreadFactory("AsyncSocketClient.timer", 1)));
+
+        private static final AsynchronousChannelGroup GROUP = createGroup();
+
+        private static AsynchronousChannelGroup createGroup() {
+            final int threads = Runtime.getRuntime().availableProcessors();
+            try {
+                return AsynchronousChannelGroup.withFixedThreadPool(threads, daemon(new LogPreservingThreadFactory("AsyncSocketClient.worker", threads)));
+            } catch (final IOException e) {
+                throw new IllegalStateException("Unable to create the asynchronous channel group", e);
+            }
+        }
+
+        private static ThreadFactory daemon(final ThreadFactory factory) {
+            return new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = factory.newThread(r);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+        }
+    }
+
+    private AsyncSocketClient() {
+    }
+
+    /**
+     * Runs the next attempt of a poll, after the delay that the tracker
+     * requires for strict timeouts, without blocking the calling thread.
+     *
+     * @param tracker the timeout tracker of the poll
+     * @param attempt starts the attempt
+     */
+    static void nextAttempt(final TimeoutTracker tracker, final Runnable attempt) {
+        final long delay = tracker.getNextAttemptDelayInMillis();
+        if (delay == 0) {
+            attempt.run();
+        } else {
+            Resources.TIMER.schedule(attempt, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Connects to the address and runs the conversation.
+     *
+     * @param address the address of the service
+     * @param connectTimeout the connection timeout in milliseconds
+     * @param readTimeout the timeout in milliseconds of every read and write
+     * @param conversation the protocol specific part of the exchange
+     */
+    static void exchange(final InetSocketAddress address, final int connectTimeout, final int readTimeout, final Conversation conversation) {
+        final AsynchronousSocketChannel channel;
+        try {
+            channel = AsynchronousSocketChannel.open(Resources.GROUP);
+        } catch (final Throwable t) {
+            conversation.failed(t);
+            return;
+        }
+        new Exchange(channel, readTimeout, conversation).connect(address, connectTimeout);
+    }
+
+    private static class Exchange {
+        private final AsynchronousSocketChannel m_channel;
+        private final int m_readTimeout;
+        private final Conversation m_conversation;
+        private final AtomicBoolean m_done = new AtomicBoolean(false);
+        private final ByteBuffer m_bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CharBuffer m_chars = CharBuffer.allocate(BUFFER_SIZE);
+        private final CharsetDecoder m_decoder = Charset.defaultCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final StringBuilder m_response = new StringBuilder();
+
+        private Exchange(final AsynchronousSocketChannel channel, final int readTimeout, final Conversation conversation) {
+            m_channel = channel;
+            m_readTimeout = readTimeout;
+            m_conversation = conversation;
+        }
+
+        private void connect(final InetSocketAddress address, final int connectTimeout) {
+            final ScheduledFuture<?> timeout = Resources.TIMER.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    fail(new SocketTimeoutException("connect timed out"));
+                }
+            }, connectTimeout, TimeUnit.MILLISECONDS);
+
+            try {
+                m_channel.connect(address, null, new CompletionHandler<Void, Void>() {
+                    @Override
+                    public void completed(final Void result, final Void attachment) {
+                        timeout.cancel(false);
+                        if (m_done.get()) {
+                            return;
+                        }
+                        try {
+                            final byte[] request = m_conversation.connected();
+                            if (request == null) {
+                                readOrComplete();
+                            } else {
+                                write(ByteBuffer.wrap(request));
+                            }
+                        } catch (final Throwable t) {
+                            fail(t);
+                        }
+                    }
+
+                    @Override
+                    public void failed(final Throwable t, final Void attachment) {
+                        timeout.cancel(false);
+                        fail(t);
+                    }
+                });
+            } catch (final Throwable t) {
+                timeout.cancel(false);
+                fail(t);
+            }
+        }
+
+        private void write(final ByteBuffer request) {
+            m_channel.write(request, m_readTimeout, TimeUnit.MILLISECONDS, null, new CompletionHandler<Integer, Void>() {
+                @Override
+                public void completed(final Integer result, final Void attachment) {
+                    try {
+                        if (request.hasRemaining()) {
+                            write(request);
+                        } else {
+                            readOrComplete();
+                        }
+                    } catch (final Throwable t) {
+                        fail(t);
+                    }
+                }
+
+                @Override
+                public void failed(final Throwable t, final Void attachment) {
+                    fail(t);
+                }
+            });
+        }
+
+        private void readOrComplete() {
+            if (m_conversation.isComplete(m_response)) {
+                complete();
+                return;
+            }
+            m_channel.read(m_bytes, m_readTimeout, TimeUnit.MILLISECONDS, null, new CompletionHandler<Integer, Void>() {
+                @Override
+                public void completed(final Integer result, final Void attachment) {
+                    try {
+                        if (result < 0) {
+                            complete();
+                        } else {
+                            decode(false);
+                            readOrComplete();
+                        }
+                    } catch (final Throwable t) {
+                        fail(t);
+                    }
+                }
+
+                @Override
+                public void failed(final Throwable t, final Void attachment) {
+                    fail(t);
+                }
+            });
+        }
+
+        private void decode(final boolean endOfInput) {
+            m_bytes.flip();
+            m_decoder.decode(m_bytes, m_chars, endOfInput);
+            if (endOfInput) {
+                m_decoder.flush(m_chars);
+            }
+            m_chars.flip();
+            m_response.append(m_chars);
+            m_chars.clear();
+            m_bytes.compact();
+        }
+
+        private void complete() {
+            if (m_done.compareAndSet(false, true)) {
+                decode(true);
+                close();
+                m_conversation.completed(m_response.toString());
+            }
+        }
+
+        private void fail(final Throwable t) {
+            if (m_done.compareAndSet(false, true)) {
+                close();
+                if (t instanceof InterruptedByTimeoutException) {
+                    m_conversation.failed(new SocketTimeoutException("Read timed out"));
+                } else {
+                    m_conversation.failed(t);
+                }
+            }
+        }
+
+        private void close() {
+            try {
+                m_channel.close();
+            } catch (final IOException e) {
+                LOG.debug("Error closing channel.", e);
+            }
+        }
+    }
+}
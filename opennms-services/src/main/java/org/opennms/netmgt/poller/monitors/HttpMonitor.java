@@ -32,6 +32,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
+import java.io.StringReader;
 import java.net.ConnectException;
 import java.net.Inet6Address;
 import java.net.InetAddress;
@@ -53,10 +54,12 @@ import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.core.utils.SocketWrapper;
 import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.Distributable;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.NetworkInterface;
 import org.opennms.netmgt.poller.NetworkInterfaceNotSupportedException;
+import org.opennms.netmgt.poller.PollFuture;
 import org.opennms.netmgt.poller.PollStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -72,7 +75,7 @@ import org.slf4j.LoggerFactory;
  * @author <a href="mailto:david@opennms.org">David Hustace</a>
  */
 @Distributable
-public class HttpMonitor extends AbstractServiceMonitor {
+public class HttpMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
     
     public static final Logger LOG = LoggerFactory.getLogger(HttpMonitor.class);
     
@@ -166,22 +169,7 @@ public class HttpMonitor extends AbstractServiceMonitor {
                     httpClient.setResponseTime(httpClient.getTimeoutTracker().elapsedTimeInMillis());
                     logResponseTimes(httpClient.getResponseTime(), httpClient.getCurrentLine());
 
-                    if (httpClient.getPollStatus() == PollStatus.SERVICE_AVAILABLE && StringUtils.isNotBlank(httpClient.getResponseText())) {
-                        httpClient.setPollStatus(PollStatus.SERVICE_UNAVAILABLE);
-                        httpClient.readLinedMatching();
-                        
-                        if (httpClient.isEndOfStream()) {
-                            continue;
-                        }
-
-                        httpClient.read();
-
-                        if (!httpClient.isResponseTextFound()) {
-                            String message = "Matching text: ["+httpClient.getResponseText()+"] not found in body of HTTP response for " + serviceInfo;
-                            LOG.debug(message);
-                            httpClient.setReason("Matching text: ["+httpClient.getResponseText()+"] not found in body of HTTP response");
-                        }
-                    }
+                    checkResponseText(httpClient, serviceInfo);
                     
                 } catch (NoRouteToHostException e) {
                     LOG.warn("checkStatus: No route to host exception while polling {}", serviceInfo, e);
@@ -214,6 +202,157 @@ public class HttpMonitor extends AbstractServiceMonitor {
 
     }
 
+    private static void checkResponseText(final HttpMonitorClient httpClient, final String serviceInfo) throws IOException {
+        if (httpClient.getPollStatus() == PollStatus.SERVICE_AVAILABLE && StringUtils.isNotBlank(httpClient.getResponseText())) {
+            httpClient.setPollStatus(PollStatus.SERVICE_UNAVAILABLE);
+            httpClient.readLinedMatching();
+
+            if (httpClient.isEndOfStream()) {
+                return;
+            }
+
+            httpClient.read();
+
+            if (!httpClient.isResponseTextFound()) {
+                String message = "Matching text: ["+httpClient.getResponseText()+"] not found in body of HTTP response for " + serviceInfo;
+                LOG.debug(message);
+                httpClient.setReason("Matching text: ["+httpClient.getResponseText()+"] not found in body of HTTP response");
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Same as {@link #poll(MonitoredService, Map)}, with the request sent and
+     * the response read on an asynchronous socket channel.  The response is
+     * then checked by the same code as a blocking poll.  Monitors that wrap
+     * the socket, like the {@link HttpsMonitor}, poll synchronously.
+     */
+    @Override
+    public PollFuture pollAsync(final MonitoredService svc, final Map<String, Object> parameters) {
+        if (!(getSocketWrapper() instanceof DefaultSocketWrapper)) {
+            return DefaultPollFuture.completed(this, poll(svc, parameters));
+        }
+
+        final NetworkInterface<InetAddress> iface = svc.getNetInterface();
+        if (iface.getType() != NetworkInterface.TYPE_INET) {
+            throw new NetworkInterfaceNotSupportedException("Unsupported interface type, only TYPE_INET currently supported");
+        }
+
+        final HttpMonitorClient httpClient = new HttpMonitorClient(svc.getNodeLabel(), iface, new TreeMap<String, Object>(parameters));
+        final DefaultPollFuture future = new DefaultPollFuture(this);
+        pollPort(future, svc, parameters, httpClient, 0);
+        return future;
+    }
+
+    private void pollPort(final DefaultPollFuture future, final MonitoredService svc, final Map<String, Object> parameters, final HttpMonitorClient httpClient, final int portIndex) {
+        final int[] ports = determinePorts(httpClient.getParameters());
+        if (portIndex >= ports.length || httpClient.getPollStatus() == PollStatus.SERVICE_AVAILABLE) {
+            future.setStatus(httpClient.determinePollStatusResponse());
+            return;
+        }
+
+        final NetworkInterface<InetAddress> iface = svc.getNetInterface();
+        final int currentPort = ports[portIndex];
+        httpClient.setTimeoutTracker(new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT));
+        LOG.debug("Port = {}, Address = {}, {}", currentPort, (iface.getAddress()), httpClient.getTimeoutTracker());
+        httpClient.setCurrentPort(currentPort);
+
+        final String serviceInfo = new StringBuilder(iface.getAddress().toString())
+        .append(":").append(svc.getSvcName()).append(":").append(currentPort)
+        .toString();
+
+        httpClient.getTimeoutTracker().reset();
+        attempt(future, svc, parameters, httpClient, portIndex, serviceInfo);
+    }
+
+    private void attempt(final DefaultPollFuture future, final MonitoredService svc, final Map<String, Object> parameters, final HttpMonitorClient httpClient, final int portIndex, final String serviceInfo) {
+        final TimeoutTracker tracker = httpClient.getTimeoutTracker();
+        if (!tracker.shouldRetry() || httpClient.getPollStatus() == PollStatus.SERVICE_AVAILABLE) {
+            pollPort(future, svc, parameters, httpClient, portIndex + 1);
+            return;
+        }
+
+        final InetAddress address = svc.getNetInterface().getAddress();
+        AsyncSocketClient.nextAttempt(tracker, new Runnable() {
+            @Override
+            public void run() {
+                tracker.startAttempt();
+                AsyncSocketClient.exchange(new InetSocketAddress(address, httpClient.getCurrentPort()), tracker.getConnectionTimeout(), tracker.getSoTimeout(), new AsyncSocketClient.Conversation() {
+                    private double m_responseTime = -1;
+
+                    @Override
+                    public byte[] connected() {
+                        httpClient.setPollStatus(PollStatus.SERVICE_UNRESPONSIVE);
+                        LOG.debug("HttpMonitor: connected to host: {} on port: {}", address, httpClient.getCurrentPort());
+                        return httpClient.getHttpCommand().getBytes();
+                    }
+
+                    @Override
+                    public boolean isComplete(final CharSequence response) {
+                        if (m_responseTime < 0) {
+                            for (int i = 0; i < response.length(); i++) {
+                                if (response.charAt(i) == '\n' || response.charAt(i) == '\r') {
+                                    m_responseTime = tracker.elapsedTimeInMillis();
+                                    break;
+                                }
+                            }
+                        }
+                        // the body is only needed to look for the response text
+                        return m_responseTime >= 0 && StringUtils.isBlank(httpClient.getResponseText());
+                    }
+
+                    @Override
+                    public void completed(final String response) {
+                        try {
+                            httpClient.readHttpResponse(new BufferedReader(new StringReader(response)));
+                            if (!httpClient.isEndOfStream()) {
+                                httpClient.setResponseTime(m_responseTime < 0 ? tracker.elapsedTimeInMillis() : m_responseTime);
+                                logResponseTimes(httpClient.getResponseTime(), httpClient.getCurrentLine());
+                                checkResponseText(httpClient, serviceInfo);
+                            }
+                        } catch (final Throwable t) {
+                            failed(t);
+                            return;
+                        }
+                        nextAttempt();
+                    }
+
+                    @Override
+                    public void failed(final Throwable t) {
+                        if (t instanceof NoRouteToHostException) {
+                            LOG.warn("checkStatus: No route to host exception while polling {}", serviceInfo, t);
+                            httpClient.setReason("No route to host exception");
+                            future.setStatus(httpClient.determinePollStatusResponse());
+                            return;
+                        } else if (t instanceof SocketTimeoutException) {
+                            LOG.info("checkStatus: HTTP socket connection for service {} timed out with {}", serviceInfo, tracker.toString());
+                            httpClient.setReason("HTTP connection timeout");
+                        } else if (t instanceof ConnectException) {
+                            LOG.warn("Connection exception for {}", serviceInfo, t);
+                            httpClient.setReason("HTTP connection exception on port: "+httpClient.getCurrentPort()+": "+t.getMessage());
+                        } else if (t instanceof IOException) {
+                            String exceptionClass = t.getClass().getSimpleName();
+                            LOG.warn("{} while polling {}", exceptionClass, serviceInfo, t);
+                            httpClient.setReason("IOException while polling address: "+address+": "+t.getMessage());
+                        } else {
+                            String exceptionClass = t.getClass().getSimpleName();
+                            LOG.warn("Unexpected {} while polling {}", exceptionClass, serviceInfo, t);
+                            httpClient.setReason("Unexpected exception while polling address: "+address+": "+t.getMessage());
+                        }
+                        nextAttempt();
+                    }
+
+                    private void nextAttempt() {
+                        tracker.nextAttempt();
+                        attempt(future, svc, parameters, httpClient, portIndex, serviceInfo);
+                    }
+                });
+            }
+        });
+    }
+
     private void logResponseTimes(Double responseTime, String line) {
         LOG.debug("poll: response= {}", line);
         LOG.debug("poll: responseTime= {}ms", responseTime);
@@ -545,7 +684,18 @@ public class HttpMonitor extends AbstractServiceMonitor {
                 HttpMonitor.LOG.debug("Sending HTTP command: {}", m_httpCmd);
             }
             m_httpSocket.getOutputStream().write(m_httpCmd.getBytes());
-            m_lineRdr = new BufferedReader(new InputStreamReader(m_httpSocket.getInputStream()));
+            readHttpResponse(new BufferedReader(new InputStreamReader(m_httpSocket.getInputStream())));
+        }
+
+        public String getHttpCommand() {
+            return m_httpCmd;
+        }
+
+        /**
+         * Reads the status line of the response from the given reader.
+         */
+        public void readHttpResponse(final BufferedReader lineRdr) throws IOException {
+            m_lineRdr = lineRdr;
             readLine();
             if (determineVerbosity(m_parameters)) {
                 HttpMonitor.LOG.debug("Server response: {}", m_currentLine);
@@ -40,15 +40,22 @@ import org.opennms.core.utils.ParameterMap;
 import org.opennms.core.utils.PropertiesUtils;
 import org.opennms.core.utils.TimeoutTracker;
 import org.opennms.netmgt.config.SnmpPeerFactory;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.Distributable;
 import org.opennms.netmgt.poller.DistributionContext;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.NetworkInterface;
+import org.opennms.netmgt.poller.PollFuture;
 import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.snmp.SingleInstanceTracker;
 import org.opennms.netmgt.snmp.SnmpAgentConfig;
+import org.opennms.netmgt.snmp.SnmpInstId;
 import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpResult;
 import org.opennms.netmgt.snmp.SnmpUtils;
 import org.opennms.netmgt.snmp.SnmpValue;
+import org.opennms.netmgt.snmp.SnmpWalkCallback;
+import org.opennms.netmgt.snmp.SnmpWalker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -68,7 +75,7 @@ import org.slf4j.LoggerFactory;
  * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  */
 @Distributable(DistributionContext.DAEMON)
-public class SnmpMonitor extends SnmpMonitorStrategy {
+public class SnmpMonitor extends SnmpMonitorStrategy implements AsyncServiceMonitor {
     
     public static final Logger LOG = LoggerFactory.getLogger(SnmpMonitor.class);
     
@@ -159,10 +166,8 @@ public class SnmpMonitor extends SnmpMonitorStrategy {
 
         // Retrieve this interface's SNMP peer object
         //
-        SnmpAgentConfig agentConfig = SnmpPeerFactory.getInstance().getAgentConfig(ipaddr);
-        if (agentConfig == null) throw new RuntimeException("SnmpAgentConfig object not available for interface " + ipaddr);
+        SnmpAgentConfig agentConfig = getAgentConfig(ipaddr, parameters);
         final String hostAddress = InetAddressUtils.str(ipaddr);
-		LOG.debug("poll: setting SNMP peer attribute for interface {}", hostAddress);
 
         // Get configuration parameters
         //
@@ -174,30 +179,9 @@ public class SnmpMonitor extends SnmpMonitorStrategy {
         int countMin = ParameterMap.getKeyedInteger(parameters, "minimum", 0);
         int countMax = ParameterMap.getKeyedInteger(parameters, "maximum", 0);
         String reasonTemplate = ParameterMap.getKeyedString(parameters, "reason-template", DEFAULT_REASON_TEMPLATE);
-        String hexstr = ParameterMap.getKeyedString(parameters, "hex", "false");
-
-        hex = "true".equalsIgnoreCase(hexstr);
-        // set timeout and retries on SNMP peer object
-        //
-        agentConfig.setTimeout(ParameterMap.getKeyedInteger(parameters, "timeout", agentConfig.getTimeout()));
-        agentConfig.setRetries(ParameterMap.getKeyedInteger(parameters, "retry", ParameterMap.getKeyedInteger(parameters, "retries", agentConfig.getRetries())));
-        agentConfig.setPort(ParameterMap.getKeyedInteger(parameters, "port", agentConfig.getPort()));
 
         // Squirrel the configuration parameters away in a Properties for later expansion if service is down
-        Properties svcParams = new Properties();
-        svcParams.setProperty("oid", oid);
-        svcParams.setProperty("operator", String.valueOf(operator));
-        svcParams.setProperty("operand", String.valueOf(operand));
-        svcParams.setProperty("walk", walkstr);
-        svcParams.setProperty("matchAll", matchstr);
-        svcParams.setProperty("minimum", String.valueOf(countMin));
-        svcParams.setProperty("maximum", String.valueOf(countMax));
-        svcParams.setProperty("timeout", String.valueOf(agentConfig.getTimeout()));
-        svcParams.setProperty("retry", String.valueOf(agentConfig.getRetries()));
-        svcParams.setProperty("retries", svcParams.getProperty("retry"));
-        svcParams.setProperty("ipaddr", hostAddress);
-        svcParams.setProperty("port", String.valueOf(agentConfig.getPort()));
-        svcParams.setProperty("hex", hexstr);
+        Properties svcParams = getServiceParameters(parameters, agentConfig, hostAddress);
 
         LOG.debug("poll: service= SNMP address= {}", agentConfig);
 
@@ -264,47 +248,158 @@ public class SnmpMonitor extends SnmpMonitorStrategy {
                 }
 
             } else {
-                if (DEFAULT_REASON_TEMPLATE.equals(reasonTemplate)) {
-                    if (operator != null) {
-                        reasonTemplate = "Observed value '${observedValue}' does not meet criteria '${operator} ${operand}'";
-                    } else {
-                        reasonTemplate = "Observed value '${observedValue}' was null";
-                    }
-                }
-
                 SnmpValue result = SnmpUtils.get(agentConfig, snmpObjectId);
+                status = checkValue(result, hostAddress, oid, operator, operand, reasonTemplate, svcParams, tracker);
+            }
 
-                if (result != null) {
-                    svcParams.setProperty("observedValue", getStringValue(result));
-                    LOG.debug("poll: SNMP poll succeeded, addr={} oid={} value={}", hostAddress, oid, result);
-                    
-                    if (meetsCriteria(result, operator, operand)) {
-                        status = PollStatus.available(tracker.elapsedTimeInMillis());
-                    } else {
-                        status = PollStatus.unavailable(PropertiesUtils.substitute(reasonTemplate, svcParams));
-                    }
-                } else {
-                    String reason = "SNMP poll failed, addr=" + hostAddress + " oid=" + oid;
-                    LOG.debug(reason);
-                    status = PollStatus.unavailable(reason);
-                }
+        } catch (Throwable t) {
+            status = handleException(t, hostAddress);
+        }
+
+        return status;
+    }
+
+    private SnmpAgentConfig getAgentConfig(final InetAddress ipaddr, final Map<String, Object> parameters) {
+        SnmpAgentConfig agentConfig = SnmpPeerFactory.getInstance().getAgentConfig(ipaddr);
+        if (agentConfig == null) throw new RuntimeException("SnmpAgentConfig object not available for interface " + ipaddr);
+        LOG.debug("poll: setting SNMP peer attribute for interface {}", InetAddressUtils.str(ipaddr));
+
+        hex = "true".equalsIgnoreCase(ParameterMap.getKeyedString(parameters, "hex", "false"));
+        // set timeout and retries on SNMP peer object
+        //
+        agentConfig.setTimeout(ParameterMap.getKeyedInteger(parameters, "timeout", agentConfig.getTimeout()));
+        agentConfig.setRetries(ParameterMap.getKeyedInteger(parameters, "retry", ParameterMap.getKeyedInteger(parameters, "retries", agentConfig.getRetries())));
+        agentConfig.setPort(ParameterMap.getKeyedInteger(parameters, "port", agentConfig.getPort()));
+        return agentConfig;
+    }
+
+    private static Properties getServiceParameters(final Map<String, Object> parameters, final SnmpAgentConfig agentConfig, final String hostAddress) {
+        Properties svcParams = new Properties();
+        svcParams.setProperty("oid", ParameterMap.getKeyedString(parameters, "oid", DEFAULT_OBJECT_IDENTIFIER));
+        svcParams.setProperty("operator", String.valueOf(ParameterMap.getKeyedString(parameters, "operator", null)));
+        svcParams.setProperty("operand", String.valueOf(ParameterMap.getKeyedString(parameters, "operand", null)));
+        svcParams.setProperty("walk", ParameterMap.getKeyedString(parameters, "walk", "false"));
+        svcParams.setProperty("matchAll", ParameterMap.getKeyedString(parameters, "match-all", "true"));
+        svcParams.setProperty("minimum", String.valueOf(ParameterMap.getKeyedInteger(parameters, "minimum", 0)));
+        svcParams.setProperty("maximum", String.valueOf(ParameterMap.getKeyedInteger(parameters, "maximum", 0)));
+        svcParams.setProperty("timeout", String.valueOf(agentConfig.getTimeout()));
+        svcParams.setProperty("retry", String.valueOf(agentConfig.getRetries()));
+        svcParams.setProperty("retries", svcParams.getProperty("retry"));
+        svcParams.setProperty("ipaddr", hostAddress);
+        svcParams.setProperty("port", String.valueOf(agentConfig.getPort()));
+        svcParams.setProperty("hex", ParameterMap.getKeyedString(parameters, "hex", "false"));
+        return svcParams;
+    }
+
+    private PollStatus checkValue(final SnmpValue result, final String hostAddress, final String oid, final String operator, final String operand, String reasonTemplate, final Properties svcParams, final TimeoutTracker tracker) {
+        if (DEFAULT_REASON_TEMPLATE.equals(reasonTemplate)) {
+            if (operator != null) {
+                reasonTemplate = "Observed value '${observedValue}' does not meet criteria '${operator} ${operand}'";
+            } else {
+                reasonTemplate = "Observed value '${observedValue}' was null";
             }
+        }
+
+        if (result != null) {
+            svcParams.setProperty("observedValue", getStringValue(result));
+            LOG.debug("poll: SNMP poll succeeded, addr={} oid={} value={}", hostAddress, oid, result);
 
-        } catch (NumberFormatException e) {
-            String reason = "Number operator used on a non-number " + e.getMessage();
+            if (meetsCriteria(result, operator, operand)) {
+                return PollStatus.available(tracker.elapsedTimeInMillis());
+            } else {
+                return PollStatus.unavailable(PropertiesUtils.substitute(reasonTemplate, svcParams));
+            }
+        } else {
+            String reason = "SNMP poll failed, addr=" + hostAddress + " oid=" + oid;
             LOG.debug(reason);
-            status = PollStatus.unavailable(reason);
-        } catch (IllegalArgumentException e) {
-            String reason = "Invalid SNMP Criteria: " + e.getMessage();
+            return PollStatus.unavailable(reason);
+        }
+    }
+
+    private static PollStatus handleException(final Throwable t, final String hostAddress) {
+        if (t instanceof NumberFormatException) {
+            String reason = "Number operator used on a non-number " + t.getMessage();
             LOG.debug(reason);
-            status = PollStatus.unavailable(reason);
-        } catch (Throwable t) {
+            return PollStatus.unavailable(reason);
+        } else if (t instanceof IllegalArgumentException) {
+            String reason = "Invalid SNMP Criteria: " + t.getMessage();
+            LOG.debug(reason);
+            return PollStatus.unavailable(reason);
+        } else {
             String reason = "Unexpected exception during SNMP poll of interface " + hostAddress;
             LOG.debug(reason, t);
-            status = PollStatus.unavailable(reason);
+            return PollStatus.unavailable(reason);
         }
+    }
 
-        return status;
+    /**
+     * {@inheritDoc}
+     *
+     * <P>
+     * Polls a single value with a walker, which completes through a callback
+     * instead of blocking on the response. The value is requested with a
+     * GETNEXT for the preceding instance, so an object that does not exist is
+     * reported as a failed poll instead of a noSuchObject value. Walks and
+     * counts are done synchronously.
+     * </P>
+     */
+    @Override
+    public PollFuture pollAsync(final MonitoredService svc, final Map<String, Object> parameters) {
+        final String walkstr = ParameterMap.getKeyedString(parameters, "walk", "false");
+        final String matchstr = ParameterMap.getKeyedString(parameters, "match-all", "true");
+        if ("count".equals(matchstr) || "true".equals(walkstr)) {
+            return DefaultPollFuture.completed(this, poll(svc, parameters));
+        }
+
+        final InetAddress ipaddr = svc.getNetInterface().getAddress();
+        final SnmpAgentConfig agentConfig = getAgentConfig(ipaddr, parameters);
+        final String hostAddress = InetAddressUtils.str(ipaddr);
+
+        final String oid = ParameterMap.getKeyedString(parameters, "oid", DEFAULT_OBJECT_IDENTIFIER);
+        final String operator = ParameterMap.getKeyedString(parameters, "operator", null);
+        final String operand = ParameterMap.getKeyedString(parameters, "operand", null);
+        final String reasonTemplate = ParameterMap.getKeyedString(parameters, "reason-template", DEFAULT_REASON_TEMPLATE);
+        final Properties svcParams = getServiceParameters(parameters, agentConfig, hostAddress);
+
+        LOG.debug("pollAsync: service= SNMP address= {}", agentConfig);
+
+        final DefaultPollFuture future = new DefaultPollFuture(this);
+        try {
+            final TimeoutTracker tracker = new TimeoutTracker(parameters, agentConfig.getRetries(), agentConfig.getTimeout());
+            tracker.reset();
+            tracker.startAttempt();
+
+            final SnmpObjId snmpObjectId = SnmpObjId.get(oid);
+            final SnmpValue[] result = new SnmpValue[1];
+            final SingleInstanceTracker instanceTracker = new SingleInstanceTracker(snmpObjectId.getPrefix(snmpObjectId.length() - 1), new SnmpInstId(snmpObjectId.getLastSubId())) {
+                @Override
+                protected void storeResult(final SnmpResult res) {
+                    result[0] = res.getValue();
+                }
+            };
+
+            final SnmpWalker walker = SnmpUtils.createWalker(agentConfig, "snmpPoller", instanceTracker);
+            walker.setCallback(new SnmpWalkCallback() {
+                @Override
+                public void complete(final SnmpWalker completed) {
+                    try {
+                        if (completed.failed()) {
+                            final String reason = "SNMP poll failed, addr=" + hostAddress + " oid=" + oid;
+                            LOG.debug("{}: {}", reason, completed.getErrorMessage());
+                            future.setStatus(PollStatus.unavailable(reason));
+                        } else {
+                            future.setStatus(checkValue(result[0], hostAddress, oid, operator, operand, reasonTemplate, svcParams, tracker));
+                        }
+                    } catch (final Throwable t) {
+                        future.setStatus(handleException(t, hostAddress));
+                    }
+                }
+            });
+            walker.start();
+        } catch (final Throwable t) {
+            future.setStatus(handleException(t, hostAddress));
+        }
+        return future;
     }
 
 }
@@ -32,6 +32,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
+import java.io.StringReader;
 import java.net.ConnectException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -42,10 +43,12 @@ import java.util.Map;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.Distributable;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.NetworkInterface;
 import org.opennms.netmgt.poller.NetworkInterfaceNotSupportedException;
+import org.opennms.netmgt.poller.PollFuture;
 import org.opennms.netmgt.poller.PollStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -63,7 +66,7 @@ import org.slf4j.LoggerFactory;
  */
 
 @Distributable
-final public class TcpMonitor extends AbstractServiceMonitor {
+final public class TcpMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
     
     
     public static final Logger LOG = LoggerFactory.getLogger(TcpMonitor.class);
@@ -170,21 +173,7 @@ final public class TcpMonitor extends AbstractServiceMonitor {
                 LOG.debug("poll: banner = {}", response);
                 LOG.debug("poll: responseTime= {}ms", responseTime);
 
-                //Could it be a regex?
-                if (strBannerMatch.charAt(0)=='~'){
-                  if (!response.matches(strBannerMatch.substring(1)))
-                    serviceStatus = PollStatus.unavailable("Banner does not match Regex '"+strBannerMatch+"'");
-                  else
-                    serviceStatus = PollStatus.available(responseTime);
-                }
-                else {
-                  if (response.indexOf(strBannerMatch) > -1) {
-                    serviceStatus = PollStatus.available(responseTime);
-                  }
-                  else {
-                    serviceStatus = PollStatus.unavailable("Banner: '"+response+"' does not contain match string '"+strBannerMatch+"'");
-                  }
-                }
+                serviceStatus = checkBanner(response, strBannerMatch, responseTime);
 
             } catch (NoRouteToHostException e) {
             	String reason = "No route to host exception for address " + hostAddress;
@@ -221,4 +210,147 @@ final public class TcpMonitor extends AbstractServiceMonitor {
         return serviceStatus;
     }
 
+    private static PollStatus checkBanner(final String response, final String strBannerMatch, final double responseTime) {
+        //Could it be a regex?
+        if (strBannerMatch.charAt(0)=='~'){
+          if (!response.matches(strBannerMatch.substring(1)))
+            return PollStatus.unavailable("Banner does not match Regex '"+strBannerMatch+"'");
+          else
+            return PollStatus.available(responseTime);
+        }
+        else {
+          if (response.indexOf(strBannerMatch) > -1) {
+            return PollStatus.available(responseTime);
+          }
+          else {
+            return PollStatus.unavailable("Banner: '"+response+"' does not contain match string '"+strBannerMatch+"'");
+          }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Same as {@link #poll(MonitoredService, Map)}, with the connection and
+     * the banner read done on an asynchronous socket channel.
+     */
+    @Override
+    public PollFuture pollAsync(final MonitoredService svc, final Map<String, Object> parameters) {
+        final NetworkInterface<InetAddress> iface = svc.getNetInterface();
+
+        if (iface.getType() != NetworkInterface.TYPE_INET)
+            throw new NetworkInterfaceNotSupportedException("Unsupported interface type, only TYPE_INET currently supported");
+
+        final TimeoutTracker tracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
+
+        final int port = ParameterMap.getKeyedInteger(parameters, PARAMETER_PORT, DEFAULT_PORT);
+        if (port == DEFAULT_PORT) {
+            throw new RuntimeException("TcpMonitor: required parameter 'port' is not present in supplied properties.");
+        }
+
+        final String strBannerMatch = ParameterMap.getKeyedString(parameters, PARAMETER_BANNER, null);
+        final InetAddress ipv4Addr = (InetAddress) iface.getAddress();
+        LOG.debug("pollAsync: address = {}, port = {}, {}", InetAddressUtils.str(ipv4Addr), port, tracker);
+
+        final DefaultPollFuture future = new DefaultPollFuture(this);
+        tracker.reset();
+        attempt(future, tracker, new InetSocketAddress(ipv4Addr, port), strBannerMatch, PollStatus.unavailable());
+        return future;
+    }
+
+    private void attempt(final DefaultPollFuture future, final TimeoutTracker tracker, final InetSocketAddress address, final String strBannerMatch, final PollStatus lastStatus) {
+        if (!tracker.shouldRetry()) {
+            future.setStatus(lastStatus);
+            return;
+        }
+
+        AsyncSocketClient.nextAttempt(tracker, new Runnable() {
+            @Override
+            public void run() {
+                tracker.startAttempt();
+                AsyncSocketClient.exchange(address, tracker.getConnectionTimeout(), tracker.getSoTimeout(), new AsyncSocketClient.Conversation() {
+                    @Override
+                    public byte[] connected() {
+                        LOG.debug("TcpMonitor: connected to host: {} on port: {}", address.getAddress(), address.getPort());
+                        return null;
+                    }
+
+                    @Override
+                    public boolean isComplete(final CharSequence response) {
+                        if (strBannerMatch == null || strBannerMatch.length() == 0 || strBannerMatch.equals("*")) {
+                            return true;
+                        }
+                        for (int i = 0; i < response.length(); i++) {
+                            if (response.charAt(i) == '\n' || response.charAt(i) == '\r') {
+                                return true;
+                            }
+                        }
+                        return false;
+                    }
+
+                    @Override
+                    public void completed(final String received) {
+                        if (strBannerMatch == null || strBannerMatch.length() == 0 || strBannerMatch.equals("*")) {
+                            future.setStatus(PollStatus.available(tracker.elapsedTimeInMillis()));
+                            return;
+                        }
+
+                        final double responseTime = tracker.elapsedTimeInMillis();
+                        final String response;
+                        try {
+                            response = new BufferedReader(new StringReader(received)).readLine();
+                        } catch (final IOException e) {
+                            failed(e);
+                            return;
+                        }
+
+                        if (response == null) {
+                            // connected, but no banner
+                            retry(PollStatus.unresponsive());
+                            return;
+                        }
+                        LOG.debug("poll: banner = {}", response);
+                        LOG.debug("poll: responseTime= {}ms", responseTime);
+
+                        final PollStatus serviceStatus = checkBanner(response, strBannerMatch, responseTime);
+                        if (serviceStatus.isAvailable()) {
+                            future.setStatus(serviceStatus);
+                        } else {
+                            retry(serviceStatus);
+                        }
+                    }
+
+                    @Override
+                    public void failed(final Throwable t) {
+                        final String reason;
+                        if (t instanceof NoRouteToHostException) {
+                            reason = "No route to host exception for address " + InetAddressUtils.str(address.getAddress());
+                            LOG.debug(reason, t);
+                            future.setStatus(PollStatus.unavailable(reason));
+                            return;
+                        } else if (t instanceof InterruptedIOException) {
+                            reason = "did not connect to host with " + tracker;
+                            LOG.debug(reason);
+                        } else if (t instanceof ConnectException) {
+                            reason = "Connection exception for address: " + address.getAddress();
+                            LOG.debug(reason, t);
+                        } else if (t instanceof IOException) {
+                            reason = "IOException while polling address: " + address.getAddress();
+                            LOG.debug(reason, t);
+                        } else {
+                            reason = "Unexpected exception while polling address: " + address.getAddress();
+                            LOG.warn(reason, t);
+                        }
+                        retry(PollStatus.unavailable(reason));
+                    }
+
+                    private void retry(final PollStatus serviceStatus) {
+                        tracker.nextAttempt();
+                        attempt(future, tracker, address, strBannerMatch, serviceStatus);
+                    }
+                });
+            }
+        });
+    }
+
 }
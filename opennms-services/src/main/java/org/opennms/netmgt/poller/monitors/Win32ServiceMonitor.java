@@ -32,6 +32,7 @@ import java.util.Map;
 
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollFuture;
 import org.opennms.netmgt.poller.PollStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +51,18 @@ public class Win32ServiceMonitor extends SnmpMonitor {
 	/** {@inheritDoc} */
         @Override
 	public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+		setServiceParameters(parameters);
+		return super.poll(svc, parameters);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public PollFuture pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+		setServiceParameters(parameters);
+		return super.pollAsync(svc, parameters);
+	}
+
+	private static void setServiceParameters(Map<String, Object> parameters) {
 		String serviceName = ParameterMap.getKeyedString(parameters, "service-name", DEFAULT_SERVICE_NAME);
 		int snLength = serviceName.length();
 		
@@ -64,7 +77,5 @@ public class Win32ServiceMonitor extends SnmpMonitor {
 		parameters.put("oid", serviceOidBuf.toString());
 		parameters.put("operator", "=");
 		parameters.put("operand", "1");
-		
-		return super.poll(svc, parameters);
 	}
 }
@@ -43,7 +43,9 @@ import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.netmgt.config.PollerConfig;
 import org.opennms.netmgt.config.poller.Package;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollFuture;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.ServiceMonitor;
 import org.opennms.netmgt.rrd.RrdDataSource;
@@ -108,8 +110,42 @@ public class LatencyStoringServiceMonitorAdaptor implements ServiceMonitor {
     /** {@inheritDoc} */
     @Override
     public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
-        PollStatus status = m_serviceMonitor.poll(svc, parameters);
+        return handlePollResult(svc, parameters, m_serviceMonitor.poll(svc, parameters));
+    }
+
+    /**
+     * <p>isAsync</p>
+     *
+     * @return true if the wrapped monitor implements {@link AsyncServiceMonitor}
+     */
+    public boolean isAsync() {
+        return m_serviceMonitor instanceof AsyncServiceMonitor;
+    }
+
+    /**
+     * Starts a poll on the wrapped monitor. The status of the returned
+     * future has not been stored or inverted yet, the caller passes it to
+     * {@link #handlePollResult(MonitoredService, Map, PollStatus)} once the
+     * poll is done.
+     *
+     * @param svc a {@link org.opennms.netmgt.poller.MonitoredService} object.
+     * @param parameters a {@link java.util.Map} object.
+     * @return a {@link org.opennms.netmgt.poller.PollFuture} object.
+     */
+    public PollFuture pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+        return ((AsyncServiceMonitor)m_serviceMonitor).pollAsync(svc, parameters);
+    }
 
+    /**
+     * Stores the response times of a poll and applies the invert-status
+     * parameter.
+     *
+     * @param svc a {@link org.opennms.netmgt.poller.MonitoredService} object.
+     * @param parameters a {@link java.util.Map} object.
+     * @param status the status returned by the wrapped monitor
+     * @return a {@link org.opennms.netmgt.poller.PollStatus} object.
+     */
+    public PollStatus handlePollResult(MonitoredService svc, Map<String, Object> parameters, PollStatus status) {
         if (!status.getProperties().isEmpty()) {
             storeResponseTime(svc, new LinkedHashMap<String, Number>(status.getProperties()), parameters);
         }
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.poller.pollables;
 
+import org.opennms.netmgt.poller.PollFuture;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.scheduler.Timer;
 
@@ -47,6 +48,23 @@ public interface PollConfig extends Timer {
      */
     public PollStatus poll();
 
+    /**
+     * Starts a poll without waiting for the service monitor to respond.
+     *
+     * @return the pending poll, or null if the service monitor can only poll
+     *         synchronously
+     */
+    public PollFuture pollAsync();
+
+    /**
+     * Processes the raw status of a poll started with {@link #pollAsync()}
+     * the same way {@link #poll()} processes the result of a blocking poll.
+     *
+     * @param status the status reported by the service monitor
+     * @return a {@link org.opennms.netmgt.poller.PollStatus} object.
+     */
+    public PollStatus completePoll(PollStatus status);
+
     /**
      * <p>getCurrentTime</p>
      *
@@ -31,12 +31,17 @@ package org.opennms.netmgt.poller.pollables;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Date;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.opennms.core.logging.Logging;
 import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.poller.InetNetworkInterface;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.NetworkInterface;
+import org.opennms.netmgt.poller.PollFuture;
+import org.opennms.netmgt.poller.PollFutureListener;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.scheduler.PostponeNecessary;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
@@ -75,6 +80,10 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
     private volatile PollStatus m_oldStatus;
     private volatile Schedule m_schedule;
     private volatile long m_statusChangeTime = 0L;
+    private volatile Executor m_asyncExecutor;
+    private final AtomicBoolean m_asyncPollPending = new AtomicBoolean(false);
+    /** status of a completed asynchronous poll, used instead of polling again */
+    private final AtomicReference<PollStatus> m_prefetchedStatus = new AtomicReference<PollStatus>();
     /**
      * <p>Constructor for PollableService.</p>
      *
@@ -180,6 +189,18 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
         m_pollConfig = pollConfig;
     }
 
+    /**
+     * Sets the executor that processes the results of asynchronous polls.
+     * When set, scheduled polls of services whose monitor supports it are
+     * started without holding a thread or the tree lock, and the status is
+     * processed on the executor once the monitor responds.
+     *
+     * @param executor the executor, or null to always poll synchronously
+     */
+    public void setAsyncExecutor(Executor executor) {
+        m_asyncExecutor = executor;
+    }
+
     /**
      * <p>poll</p>
      *
@@ -187,7 +208,10 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
      */
     @Override
     public PollStatus poll() {
-        PollStatus newStatus = m_pollConfig.poll();
+        PollStatus newStatus = m_prefetchedStatus.getAndSet(null);
+        if (newStatus == null) {
+            newStatus = m_pollConfig.poll();
+        }
         if (!newStatus.isUnknown()) { 
             updateStatus(newStatus);
         }
@@ -384,8 +408,96 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
      */
     @Override
     public void run() {
+        if (m_asyncExecutor != null && runAsync()) {
+            return;
+        }
         doRun(500);
     }
+
+    /**
+     * Starts an asynchronous poll, the status is processed by
+     * {@link #completeAsyncPoll(PollStatus)} on the async executor. The
+     * service is rescheduled once the status is known, so that the interval
+     * of the downtime model matches the result of this poll.
+     *
+     * @return false if the service has to be polled synchronously
+     */
+    private boolean runAsync() {
+        if (!m_asyncPollPending.compareAndSet(false, true)) {
+            LOG.info("Skipping poll of {}, the previous poll has not completed yet", this);
+            return true;
+        }
+
+        final PollFuture future;
+        try {
+            future = m_pollConfig.pollAsync();
+        } catch (RuntimeException e) {
+            m_asyncPollPending.set(false);
+            throw e;
+        }
+        if (future == null) {
+            m_asyncPollPending.set(false);
+            return false;
+        }
+
+        LOG.debug("Started asynchronous poll of service {}", this);
+        final Schedule schedule = getSchedule();
+        if (schedule != null) {
+            schedule.deferSchedule();
+        }
+        future.addListener(new PollFutureListener() {
+            @Override
+            public void operationComplete(final PollFuture completed) {
+                try {
+                    m_asyncExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            completeAsyncPoll(completed.getStatus());
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    LOG.error("Unable to process the result of the poll of {}", PollableService.this, e);
+                    m_asyncPollPending.set(false);
+                    rescheduleAfterAsyncPoll(false);
+                }
+            }
+        });
+        return true;
+    }
+
+    private void completeAsyncPoll(PollStatus status) {
+        boolean postponed = false;
+        try {
+            m_prefetchedStatus.set(m_pollConfig.completePoll(status));
+            try {
+                doRun(0);
+            } catch (PostponeNecessary e) {
+                // wait for the tree lock like a synchronous poll instead of dropping the status
+                doRun(500);
+            }
+        } catch (PostponeNecessary e) {
+            LOG.info("Dropping the result of the poll of {}, the tree lock is not available. Polling again later.", this);
+            postponed = true;
+        } catch (Throwable e) {
+            LOG.error("Unexpected exception while processing the poll of {}", this, e);
+        } finally {
+            m_prefetchedStatus.set(null);
+            m_asyncPollPending.set(false);
+            rescheduleAfterAsyncPoll(postponed);
+        }
+    }
+
+    private void rescheduleAfterAsyncPoll(boolean postponed) {
+        final Schedule schedule = getSchedule();
+        if (schedule == null) {
+            return;
+        }
+        if (postponed) {
+            schedule.postpone();
+        } else {
+            schedule.adjustSchedule();
+        }
+    }
     
     /**
      * <p>doRun</p>
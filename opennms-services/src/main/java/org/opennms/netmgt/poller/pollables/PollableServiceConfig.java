@@ -38,8 +38,11 @@ import org.opennms.netmgt.config.poller.Downtime;
 import org.opennms.netmgt.config.poller.Package;
 import org.opennms.netmgt.config.poller.Parameter;
 import org.opennms.netmgt.config.poller.Service;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.PollFuture;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.ServiceMonitor;
+import org.opennms.netmgt.poller.monitors.DefaultPollFuture;
 import org.opennms.netmgt.scheduler.ScheduleInterval;
 import org.opennms.netmgt.scheduler.Timer;
 import org.slf4j.Logger;
@@ -122,6 +125,50 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
         }
     }
 
+    /**
+     * <p>pollAsync</p>
+     *
+     * @return a {@link org.opennms.netmgt.poller.PollFuture} object, or null if the monitor can not poll asynchronously.
+     */
+    @Override
+    public PollFuture pollAsync() {
+        String packageName = null;
+        synchronized(this) {
+            packageName = m_pkg.getName();
+        }
+        ServiceMonitor monitor = getServiceMonitor();
+        try {
+            if (monitor instanceof LatencyStoringServiceMonitorAdaptor && ((LatencyStoringServiceMonitorAdaptor)monitor).isAsync()) {
+                LOG.debug("Polling {} asynchronously using pkg {}", m_service, packageName);
+                return ((LatencyStoringServiceMonitorAdaptor)monitor).pollAsync(m_service, getParameters());
+            } else if (monitor instanceof AsyncServiceMonitor) {
+                LOG.debug("Polling {} asynchronously using pkg {}", m_service, packageName);
+                return ((AsyncServiceMonitor)monitor).pollAsync(m_service, getParameters());
+            }
+            return null;
+        } catch (Throwable e) {
+            LOG.error("Unexpected exception while polling {}. Marking service as DOWN", m_service, e);
+            return DefaultPollFuture.completed(null, PollStatus.down("Unexpected exception while polling "+m_service+". "+e));
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public PollStatus completePoll(PollStatus status) {
+        try {
+            ServiceMonitor monitor = getServiceMonitor();
+            PollStatus result = status;
+            if (monitor instanceof LatencyStoringServiceMonitorAdaptor) {
+                result = ((LatencyStoringServiceMonitorAdaptor)monitor).handlePollResult(m_service, getParameters(), status);
+            }
+            LOG.debug("Finish polling {} result = {}", m_service, result);
+            return result;
+        } catch (Throwable e) {
+            LOG.error("Unexpected exception while polling {}. Marking service as DOWN", m_service, e);
+            return PollStatus.down("Unexpected exception while polling "+m_service+". "+e);
+        }
+    }
+
     private synchronized ServiceMonitor getServiceMonitor() {
         if (m_serviceMonitor == null) {
             ServiceMonitor monitor = m_pollerConfig.getServiceMonitor(m_service.getSvcName());
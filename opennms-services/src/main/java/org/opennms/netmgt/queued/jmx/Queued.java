@@ -247,5 +247,33 @@ public class Queued extends AbstractSpringContextJmxServiceDaemon<org.opennms.ne
         }
     }
 
+    /**
+     * <p>getStripes</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getStripes() {
+        if (getStatsStatus()) {
+            return getRrdStrategy().getStripeCount();
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * <p>getMaxStripeDepth</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getMaxStripeDepth() {
+        if (getStatsStatus()) {
+            return getRrdStrategy().getMaxStripeDepth();
+        } else {
+            return 0;
+        }
+    }
+
 
 }
@@ -115,5 +115,17 @@ public interface QueuedMBean extends BaseOnmsMBean {
 	 * @return a long.
 	 */
 	public long getStartTime();
+	/**
+	 * <p>getStripes</p>
+	 *
+	 * @return the number of stripes the queue is split into
+	 */
+	public long getStripes();
+	/**
+	 * <p>getMaxStripeDepth</p>
+	 *
+	 * @return the number of operations pending on the busiest stripe
+	 */
+	public long getMaxStripeDepth();
 
 }
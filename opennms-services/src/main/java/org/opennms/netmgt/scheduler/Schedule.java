@@ -149,6 +149,24 @@ public class Schedule {
         schedule(m_interval.getInterval());
     }
 
+    /**
+     * Expires the entry that is running, so that it is not rescheduled
+     * when it returns. The schedulable has to call {@link #adjustSchedule()}
+     * or {@link #postpone()} once it knows when it should run next, for
+     * example because its work completes asynchronously.
+     */
+    public void deferSchedule() {
+        m_currentExpirationCode++;
+    }
+
+    /**
+     * Schedules the next run in 5 to 14 seconds, as when a run throws
+     * {@link PostponeNecessary}.
+     */
+    public void postpone() {
+        schedule(random.nextInt(10)*1000+5000);
+    }
+
     /**
      * <p>unschedule</p>
      */
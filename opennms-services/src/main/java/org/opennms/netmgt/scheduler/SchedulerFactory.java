@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Creates the {@link Scheduler} used by the daemons.  The implementation is
+ * selected with the <code>org.opennms.netmgt.scheduler.type</code> system
+ * property: <code>legacy</code> (the default) for {@link LegacyScheduler} or
+ * <code>timingwheel</code> for {@link TimingWheelScheduler}.
+ */
+public abstract class SchedulerFactory {
+
+    public static final String TYPE_PROPERTY = "org.opennms.netmgt.scheduler.type";
+
+    public static final String TICK_DURATION_PROPERTY = "org.opennms.netmgt.scheduler.tickDuration";
+
+    public static final String STARTUP_SPREAD_PROPERTY = "org.opennms.netmgt.scheduler.startupSpread";
+
+    public static final String TYPE_LEGACY = "legacy";
+
+    public static final String TYPE_TIMING_WHEEL = "timingwheel";
+
+    /**
+     * Creates a scheduler of the configured type.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     * @return a new scheduler
+     */
+    public static Scheduler createScheduler(final String parent, final int maxSize) {
+        final String type = System.getProperty(TYPE_PROPERTY, TYPE_LEGACY);
+        if (TYPE_TIMING_WHEEL.equalsIgnoreCase(type)) {
+            return new TimingWheelScheduler(parent, maxSize,
+                                            Long.getLong(TICK_DURATION_PROPERTY, TimingWheelScheduler.DEFAULT_TICK_DURATION),
+                                            Long.getLong(STARTUP_SPREAD_PROPERTY, 0L));
+        }
+        return new LegacyScheduler(parent, maxSize);
+    }
+
+    /**
+     * Returns the thread pool of a scheduler created by this factory.
+     *
+     * @param scheduler a scheduler
+     * @return the thread pool or null if the scheduler does not have one
+     */
+    public static ExecutorService getRunner(final Scheduler scheduler) {
+        if (scheduler instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) scheduler).getRunner();
+        } else if (scheduler instanceof LegacyScheduler) {
+            return ((LegacyScheduler) scheduler).getRunner();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the lateness histograms of a scheduler created by this factory,
+     * formatted one line per interval.
+     *
+     * @param scheduler a scheduler
+     * @return the histograms, empty if the scheduler does not record them
+     */
+    public static String[] getLatenessHistograms(final Scheduler scheduler) {
+        if (scheduler instanceof TimingWheelScheduler) {
+            return ((TimingWheelScheduler) scheduler).getLatenessHistogramsAsStrings();
+        }
+        return new String[0];
+    }
+}
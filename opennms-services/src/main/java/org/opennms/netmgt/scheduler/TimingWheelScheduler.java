@@ -0,0 +1,498 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.fiber.PausableFiber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link Scheduler} based on a hierarchical hashed timing wheel.
+ *
+ * <p>Each level of the wheel has {@link #WHEEL_SIZE} slots; a slot of level
+ * 0 covers one tick, a slot of level <em>n</em> covers
+ * <code>WHEEL_SIZE<sup>n</sup></code> ticks.  A task is placed in the lowest
+ * level that can hold its deadline and is cascaded into the lower levels as
+ * the wheel turns, so both scheduling and expiring a task are O(1).</p>
+ *
+ * <p>Callers never touch the wheel: {@link #schedule(long, ReadyRunnable)}
+ * only appends to a lock-free queue that the worker thread drains on every
+ * tick.  Expired tasks that are ready are handed to the thread pool, those
+ * that are not are checked again on the next tick.</p>
+ *
+ * <p>Tasks scheduled with an interval of 0, which is how {@link Schedule}
+ * starts every schedule, can be spread over a window of time so that a
+ * daemon does not start all of its polls at once.</p>
+ *
+ * <p>The time between the deadline of a task and the moment it is handed to
+ * the thread pool is recorded in a histogram per interval, see
+ * {@link #getLatenessHistograms()}.</p>
+ */
+public class TimingWheelScheduler implements Runnable, PausableFiber, Scheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelScheduler.class);
+
+    /**
+     * The default duration of a tick in milliseconds.
+     */
+    public static final long DEFAULT_TICK_DURATION = 100L;
+
+    private static final int WHEEL_BITS = 8;
+
+    /**
+     * The number of slots in each level of the wheel.
+     */
+    public static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    /**
+     * Four levels of 256 slots cover 2^32 ticks, which is more than 13 years
+     * at the default tick duration.
+     */
+    private static final int LEVELS = 4;
+
+    /**
+     * Upper bounds, in milliseconds, of the lateness histogram buckets.  The
+     * last bucket counts everything later than the last bound.
+     */
+    public static final long[] LATENESS_BUCKETS = { 10L, 100L, 1000L, 10000L, 60000L };
+
+    private static final class Timeout {
+        private final ReadyRunnable m_runnable;
+        private final long m_interval;
+        private final long m_due;
+        private long m_tick;
+        private Timeout m_next;
+
+        private Timeout(final ReadyRunnable runnable, final long interval, final long due) {
+            m_runnable = runnable;
+            m_interval = interval;
+            m_due = due;
+        }
+    }
+
+    private final long m_tickDuration;
+
+    private final long m_startupSpread;
+
+    /**
+     * Tasks handed to the scheduler that have not been placed on the wheel yet.
+     */
+    private final Queue<Timeout> m_pending = new ConcurrentLinkedQueue<Timeout>();
+
+    /**
+     * The slots of the wheel, only ever accessed by the worker thread.
+     */
+    private final Timeout[][] m_wheel = new Timeout[LEVELS][WHEEL_SIZE];
+
+    private final ConcurrentMap<Long, AtomicLongArray> m_lateness = new ConcurrentHashMap<Long, AtomicLongArray>();
+
+    private final AtomicInteger m_scheduled = new AtomicInteger(0);
+
+    private final AtomicLong m_numTasksExecuted = new AtomicLong(0);
+
+    private final ExecutorService m_runner;
+
+    private volatile int m_status;
+
+    private volatile Thread m_worker;
+
+    private volatile long m_startTime;
+
+    private long m_currentTick;
+
+    /**
+     * Constructs a new scheduler with a thread pool of the given size and
+     * the default tick duration.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize) {
+        this(parent, maxSize, DEFAULT_TICK_DURATION, 0L);
+    }
+
+    /**
+     * Constructs a new scheduler.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     * @param tickDuration
+     *            The resolution of the wheel in milliseconds.
+     * @param startupSpread
+     *            The window in milliseconds over which tasks scheduled with
+     *            an interval of 0 are spread, 0 to run them immediately.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize, final long tickDuration, final long startupSpread) {
+        Assert.isTrue(tickDuration > 0, "tickDuration must be greater than 0");
+        Assert.isTrue(startupSpread >= 0, "startupSpread must not be negative");
+        m_tickDuration = tickDuration;
+        m_startupSpread = startupSpread;
+        m_runner = Executors.newFixedThreadPool(maxSize, new LogPreservingThreadFactory(parent, maxSize));
+        m_status = START_PENDING;
+        m_startTime = System.currentTimeMillis();
+        m_currentTick = 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void schedule(final long interval, final ReadyRunnable runnable) {
+        long delay = interval;
+        if (delay <= 0 && m_startupSpread > 0) {
+            delay = (System.identityHashCode(runnable) & 0x7fffffff) % m_startupSpread;
+        }
+        LOG.debug("schedule: Adding ready runnable {} at interval {} (delay {})", runnable, interval, delay);
+
+        m_pending.add(new Timeout(runnable, interval, getCurrentTime() + Math.max(0, delay)));
+        m_scheduled.incrementAndGet();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void start() {
+        Assert.state(m_worker == null, "The fiber has already run or is running");
+
+        m_worker = new Thread(this, getName());
+        m_worker.start();
+        m_status = STARTING;
+
+        LOG.info("start: scheduler started");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void stop() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+
+        m_status = STOP_PENDING;
+        m_worker.interrupt();
+        m_runner.shutdown();
+
+        LOG.info("stop: scheduler stopped");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void pause() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == PAUSED) {
+            return;
+        }
+
+        m_status = PAUSE_PENDING;
+        notifyAll();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void resume() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == RUNNING) {
+            return;
+        }
+
+        m_status = RESUME_PENDING;
+        notifyAll();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized int getStatus() {
+        if (m_worker != null && m_worker.isAlive() == false) {
+            m_status = STOPPED;
+        }
+        return m_status;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+        return m_runner.toString();
+    }
+
+    /**
+     * Returns total number of elements currently scheduled.
+     *
+     * @return the number of tasks waiting on the wheel
+     */
+    public int getScheduled() {
+        return m_scheduled.get();
+    }
+
+    /**
+     * Returns the pool of threads that are used to executed the runnable
+     * instances scheduled by the class' instance.
+     *
+     * @return thread pool
+     */
+    public ExecutorService getRunner() {
+        return m_runner;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNumTasksExecuted() {
+        return m_numTasksExecuted.get();
+    }
+
+    /**
+     * Returns a copy of the lateness histograms keyed by the interval the
+     * tasks were scheduled with.  Each histogram has one more entry than
+     * {@link #LATENESS_BUCKETS}.
+     *
+     * @return the lateness histograms
+     */
+    public Map<Long, long[]> getLatenessHistograms() {
+        final Map<Long, long[]> histograms = new TreeMap<Long, long[]>();
+        for (final Entry<Long, AtomicLongArray> entry : m_lateness.entrySet()) {
+            final AtomicLongArray counts = entry.getValue();
+            final long[] copy = new long[counts.length()];
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = counts.get(i);
+            }
+            histograms.put(entry.getKey(), copy);
+        }
+        return histograms;
+    }
+
+    /**
+     * Formats the lateness histograms for display, one line per interval.
+     *
+     * @return the formatted histograms
+     */
+    public String[] getLatenessHistogramsAsStrings() {
+        final List<String> lines = new ArrayList<String>();
+        for (final Entry<Long, long[]> entry : getLatenessHistograms().entrySet()) {
+            final StringBuilder buf = new StringBuilder();
+            buf.append("interval=").append(entry.getKey()).append("ms");
+            final long[] counts = entry.getValue();
+            for (int i = 0; i < counts.length; i++) {
+                buf.append(' ');
+                if (i < LATENESS_BUCKETS.length) {
+                    buf.append("<").append(LATENESS_BUCKETS[i]).append("ms");
+                } else {
+                    buf.append(">=").append(LATENESS_BUCKETS[LATENESS_BUCKETS.length - 1]).append("ms");
+                }
+                buf.append('=').append(counts[i]);
+            }
+            lines.add(buf.toString());
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /**
+     * The main method of the scheduler.  Turns the wheel once per tick,
+     * handing the expired tasks to the thread pool.
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            m_status = RUNNING;
+        }
+
+        LOG.debug("run: scheduler running");
+
+        m_startTime = getCurrentTime();
+        m_currentTick = 0;
+
+        for (;;) {
+            synchronized (this) {
+                if (m_status != RUNNING && m_status != PAUSED && m_status != PAUSE_PENDING && m_status != RESUME_PENDING) {
+                    LOG.debug("run: status = {}, time to exit", m_status);
+                    break;
+                }
+
+                // if paused or pause pending then block
+                while (m_status == PAUSE_PENDING || m_status == PAUSED) {
+                    if (m_status == PAUSE_PENDING) {
+                        LOG.debug("run: pausing.");
+                    }
+                    m_status = PAUSED;
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        // exit
+                        break;
+                    }
+                }
+
+                // if resume pending then change to running
+                if (m_status == RESUME_PENDING) {
+                    LOG.debug("run: resuming.");
+                    m_status = RUNNING;
+                }
+            }
+
+            final long sleep = m_startTime + (m_currentTick + 1) * m_tickDuration - getCurrentTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                continue;
+            }
+
+            m_currentTick++;
+            try {
+                cascade();
+                drainPending();
+                expire(m_wheel[0], (int)(m_currentTick & WHEEL_MASK));
+            } catch (RejectedExecutionException e) {
+                if (m_runner.isShutdown()) {
+                    break;
+                }
+                LOG.warn("run: unable to execute scheduled task", e);
+            }
+        }
+
+        LOG.debug("run: scheduler exiting, state = STOPPED");
+        synchronized (this) {
+            m_status = STOPPED;
+        }
+    }
+
+    /**
+     * Moves the tasks of the higher level slots that begin at the current
+     * tick down the wheel.
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            final int shift = WHEEL_BITS * level;
+            if ((m_currentTick & ((1L << shift) - 1)) != 0) {
+                break;
+            }
+            final int slot = (int)((m_currentTick >>> shift) & WHEEL_MASK);
+            Timeout timeout = m_wheel[level][slot];
+            m_wheel[level][slot] = null;
+            while (timeout != null) {
+                final Timeout next = timeout.m_next;
+                place(timeout, timeout.m_tick);
+                timeout = next;
+            }
+        }
+    }
+
+    private void drainPending() {
+        Timeout timeout;
+        while ((timeout = m_pending.poll()) != null) {
+            place(timeout, toTick(timeout.m_due));
+        }
+    }
+
+    private long toTick(final long time) {
+        final long elapsed = time - m_startTime;
+        return elapsed <= 0 ? 0 : (elapsed + m_tickDuration - 1) / m_tickDuration;
+    }
+
+    private void place(final Timeout timeout, final long tick) {
+        timeout.m_tick = Math.max(tick, m_currentTick);
+        final long delta = timeout.m_tick - m_currentTick;
+
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (WHEEL_BITS * (level + 1)))) {
+            level++;
+        }
+        final int slot = (int)((timeout.m_tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        timeout.m_next = m_wheel[level][slot];
+        m_wheel[level][slot] = timeout;
+    }
+
+    private void expire(final Timeout[] wheel, final int slot) {
+        Timeout timeout = wheel[slot];
+        wheel[slot] = null;
+        while (timeout != null) {
+            final Timeout next = timeout.m_next;
+            if (timeout.m_runnable.isReady()) {
+                LOG.debug("run: found ready runnable {}", timeout.m_runnable);
+                m_scheduled.decrementAndGet();
+                recordLateness(timeout);
+                m_runner.execute(timeout.m_runnable);
+                m_numTasksExecuted.incrementAndGet();
+            } else {
+                // check again on the next tick
+                place(timeout, m_currentTick + 1);
+            }
+            timeout = next;
+        }
+    }
+
+    private void recordLateness(final Timeout timeout) {
+        final Long key = Long.valueOf(timeout.m_interval);
+        AtomicLongArray counts = m_lateness.get(key);
+        if (counts == null) {
+            final AtomicLongArray newCounts = new AtomicLongArray(LATENESS_BUCKETS.length + 1);
+            counts = m_lateness.putIfAbsent(key, newCounts);
+            if (counts == null) {
+                counts = newCounts;
+            }
+        }
+
+        final long lateness = Math.max(0, getCurrentTime() - timeout.m_due);
+        int bucket = 0;
+        while (bucket < LATENESS_BUCKETS.length && lateness >= LATENESS_BUCKETS[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+    }
+}
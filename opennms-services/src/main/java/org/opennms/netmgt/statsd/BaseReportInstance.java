@@ -30,7 +30,10 @@ package org.opennms.netmgt.statsd;
 
 import java.util.Date;
 import java.util.SortedSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.netmgt.dao.api.ResourceDao;
 import org.opennms.netmgt.dao.api.RrdDao;
 import org.opennms.netmgt.dao.support.AttributeMatchingResourceVisitor;
@@ -50,6 +53,11 @@ import org.springframework.beans.factory.InitializingBean;
  * @author <a href="mailto:dj@opennms.org">DJ Gregor</a>
  */
 public abstract class BaseReportInstance extends AbstractReportInstance implements InitializingBean {
+    /**
+     * The number of threads that fetch statistics while a report is walked.
+     */
+    private static final int THREADS = Integer.getInteger("org.opennms.netmgt.statsd.threads", Runtime.getRuntime().availableProcessors());
+
     private final AttributeStatisticVisitorWithResults m_attributeStatisticVisitor;
     private final RrdStatisticAttributeVisitor m_rrdVisitor = new RrdStatisticAttributeVisitor();
     private final AttributeMatchingResourceVisitor m_attributeVisitor = new AttributeMatchingResourceVisitor();
@@ -93,7 +101,19 @@ public abstract class BaseReportInstance extends AbstractReportInstance implemen
     @Override
     public void walk() {
         setJobStartedDate(new Date());
-        getWalker().walk();
+        if (THREADS > 1) {
+            final ExecutorService executor = Executors.newFixedThreadPool(THREADS, new LogPreservingThreadFactory(getClass().getSimpleName(), THREADS));
+            m_rrdVisitor.setExecutor(executor);
+            try {
+                getWalker().walk();
+                m_rrdVisitor.waitForCompletion();
+            } finally {
+                m_rrdVisitor.setExecutor(null);
+                executor.shutdownNow();
+            }
+        } else {
+            getWalker().walk();
+        }
         setJobCompletedDate(new Date());
     }
 
@@ -0,0 +1,721 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hand-written parser for RFC 5424 and BSD style (RFC 3164 and
+ * Syslog-NG) messages that works on the received bytes instead of
+ * running regular expressions over a decoded string.
+ *
+ * {@link #find()} only walks the header and records where each field
+ * starts and ends; the header strings are created by {@link #parse()},
+ * the message text is only decoded when
+ * {@link SyslogMessage#getMessage()} is first called, and the structured
+ * data of an RFC 5424 message is only decoded when
+ * {@link #getStructuredData()} is called.
+ *
+ * BSD style messages may have an identifier in front of the timestamp
+ * (<code>&lt;6&gt;main: 2010-08-19 ...</code>), a timestamp in the
+ * traditional (<code>Mar  1 00:05:31</code>, optionally with a year or
+ * fractional seconds) or in the ISO 8601 format, and no host name if the
+ * first token after the timestamp is already the tag, as Cisco devices
+ * send them. Messages without a recognizable timestamp are not matched.
+ *
+ * Like the {@link SyslogNGParser} and the {@link Rfc5424SyslogParser}, it
+ * ignores forwarding-regexp, matching-group-host and matching-group-message.
+ */
+public class ByteBufferSyslogParser extends SyslogParser {
+    private static final Logger LOG = LoggerFactory.getLogger(ByteBufferSyslogParser.class);
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String MONTHS = "janfebmaraprmayjunjulaugsepoctnovdec";
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private final ByteBuffer m_buffer;
+
+    private final int m_start;
+
+    private final int m_end;
+
+    private Boolean m_found = null;
+
+    private int m_priority = -1;
+
+    private int m_version = -1;
+
+    private boolean m_hasDate = false;
+
+    private long m_date;
+
+    /* start and end offsets of the header fields, -1 if a field is absent */
+    private int m_hostStart = -1;
+    private int m_hostEnd;
+    private int m_appStart = -1;
+    private int m_appEnd;
+    private int m_procIdStart = -1;
+    private int m_procIdEnd;
+    private int m_msgIdStart = -1;
+    private int m_msgIdEnd;
+    private int m_sdStart = -1;
+    private int m_sdEnd;
+    private int m_msgStart = -1;
+    private boolean m_utf8 = false;
+
+    private Map<String, Map<String, String>> m_structuredData = null;
+
+    /**
+     * <p>Constructor for ByteBufferSyslogParser.</p>
+     *
+     * @param buffer the message, between the position and the limit of the
+     *            buffer. The buffer is not modified, and must not be
+     *            modified while the parser or the messages it returns are
+     *            in use.
+     */
+    protected ByteBufferSyslogParser(final ByteBuffer buffer) {
+        super(null);
+        m_buffer = buffer;
+        m_start = buffer.position();
+
+        // ignore the trailing NUL and line terminators that some senders append
+        int end = buffer.limit();
+        while (end > m_start && (buffer.get(end - 1) == 0 || buffer.get(end - 1) == '\n' || buffer.get(end - 1) == '\r')) {
+            end--;
+        }
+        m_end = end;
+    }
+
+    public static SyslogParser getParser(final ByteBuffer buffer) {
+        return new ByteBufferSyslogParser(buffer);
+    }
+
+    public static SyslogParser getParser(final String text) {
+        return new ByteBufferSyslogParser(ByteBuffer.wrap(text.getBytes(US_ASCII)));
+    }
+
+    @Override
+    protected String getText() {
+        return decode(m_start, m_end, US_ASCII);
+    }
+
+    @Override
+    public boolean find() {
+        if (m_found == null) {
+            m_found = parseHeader();
+        }
+        return m_found;
+    }
+
+    @Override
+    public boolean matches() {
+        return find();
+    }
+
+    @Override
+    public SyslogMessage parse() throws SyslogParserException {
+        if (!find()) {
+            if (traceEnabled()) {
+                LOG.trace("Unable to parse the header of '{}'", getText());
+            }
+            return null;
+        }
+
+        final ByteBufferSyslogMessage message = new ByteBufferSyslogMessage();
+        message.setParserClass(getClass());
+        message.setFacility(SyslogFacility.getFacilityForCode(m_priority));
+        message.setSeverity(SyslogSeverity.getSeverityForCode(m_priority));
+        if (m_version >= 0) {
+            message.setVersion(m_version);
+        }
+        if (m_hasDate) {
+            message.setDate(new Date(m_date));
+        }
+        if (m_hostStart >= 0) {
+            message.setHostName(decode(m_hostStart, m_hostEnd, US_ASCII));
+        }
+        if (m_appStart >= 0) {
+            message.setProcessName(decode(m_appStart, m_appEnd, US_ASCII));
+        }
+        if (m_procIdStart >= 0) {
+            final int processId = parseNumber(m_procIdStart, m_procIdEnd, 9);
+            if (processId >= 0) {
+                message.setProcessId(processId);
+            } else {
+                LOG.debug("Unable to parse process ID '{}' as a number.", decode(m_procIdStart, m_procIdEnd, US_ASCII));
+            }
+        }
+        if (m_msgIdStart >= 0) {
+            message.setMessageID(decode(m_msgIdStart, m_msgIdEnd, US_ASCII));
+        }
+
+        int start = m_msgStart;
+        int end = m_end;
+        while (start < end && byteAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && byteAt(end - 1) <= ' ') {
+            end--;
+        }
+        message.setMessage(start, end, m_utf8 ? UTF_8 : US_ASCII);
+
+        return message;
+    }
+
+    /**
+     * A message whose text is decoded from the received bytes when it is
+     * first needed.
+     */
+    private class ByteBufferSyslogMessage extends SyslogMessage {
+        private int m_messageStart = -1;
+        private int m_messageEnd;
+        private Charset m_charset;
+
+        private void setMessage(final int start, final int end, final Charset charset) {
+            m_messageStart = start;
+            m_messageEnd = end;
+            m_charset = charset;
+        }
+
+        @Override
+        public String getMessage() {
+            if (m_messageStart >= 0) {
+                super.setMessage(decode(m_messageStart, m_messageEnd, m_charset));
+                m_messageStart = -1;
+            }
+            return super.getMessage();
+        }
+
+        @Override
+        public void setMessage(final String message) {
+            m_messageStart = -1;
+            super.setMessage(message);
+        }
+    }
+
+    /**
+     * Returns the structured data of an RFC 5424 message.
+     *
+     * @return the parameters of each SD-ELEMENT by SD-ID, in the order in
+     *         which they appear in the message, or an empty map if there
+     *         is no structured data
+     */
+    public Map<String, Map<String, String>> getStructuredData() {
+        if (m_structuredData == null) {
+            if (!find() || m_sdStart < 0) {
+                m_structuredData = Collections.emptyMap();
+            } else {
+                m_structuredData = parseStructuredData();
+            }
+        }
+        return m_structuredData;
+    }
+
+    private boolean parseHeader() {
+        int i = m_start;
+        if (i >= m_end || byteAt(i) != '<') {
+            return false;
+        }
+        final int priEnd = digitsEnd(++i);
+        if (priEnd == i || priEnd - i > 3 || priEnd >= m_end || byteAt(priEnd) != '>') {
+            return false;
+        }
+        m_priority = parseNumber(i, priEnd, 3);
+        if (m_priority > 191) {
+            return false;
+        }
+        i = priEnd + 1;
+
+        // RFC 5424 messages continue with an (optional) version and an ISO 8601 timestamp or NILVALUE
+        final int versionEnd = digitsEnd(i);
+        if (versionEnd - i <= 2 && versionEnd < m_end && byteAt(versionEnd) == ' ') {
+            final int timestampStart = versionEnd + 1;
+            final int timestampEnd = tokenEnd(timestampStart);
+            if (isNil(timestampStart, timestampEnd)
+                    || (timestampEnd - timestampStart > 10 && parseIsoTimestamp(timestampStart, timestampEnd) == timestampEnd)) {
+                if (versionEnd > i) {
+                    m_version = parseNumber(i, versionEnd, 2);
+                }
+                return parseRfc5424(timestampEnd);
+            }
+        }
+        return parseBsd(i);
+    }
+
+    /**
+     * Parses the fields after the timestamp of an RFC 5424 message.
+     */
+    private boolean parseRfc5424(int i) {
+        // HOSTNAME APP-NAME PROCID MSGID
+        for (int field = 0; field < 4; field++) {
+            if (i >= m_end || byteAt(i) != ' ') {
+                return false;
+            }
+            final int start = i + 1;
+            final int end = tokenEnd(start);
+            if (end == start) {
+                return false;
+            }
+            if (!isNil(start, end)) {
+                switch (field) {
+                case 0: m_hostStart = start; m_hostEnd = end; break;
+                case 1: m_appStart = start; m_appEnd = end; break;
+                case 2: m_procIdStart = start; m_procIdEnd = end; break;
+                default: m_msgIdStart = start; m_msgIdEnd = end; break;
+                }
+            }
+            i = end;
+        }
+
+        // STRUCTURED-DATA
+        if (i >= m_end || byteAt(i) != ' ') {
+            return false;
+        }
+        i++;
+        if (i < m_end && byteAt(i) == '-') {
+            i++;
+        } else {
+            final int sdStart = i;
+            while (i < m_end && byteAt(i) == '[') {
+                i = sdElementEnd(i);
+                if (i < 0) {
+                    return false;
+                }
+            }
+            if (i == sdStart) {
+                return false;
+            }
+            m_sdStart = sdStart;
+            m_sdEnd = i;
+        }
+
+        // MSG, which may start with a UTF-8 byte order mark
+        if (i < m_end) {
+            if (byteAt(i) != ' ') {
+                return false;
+            }
+            i++;
+            if (i + 2 < m_end && byteAt(i) == 0xef && byteAt(i + 1) == 0xbb && byteAt(i + 2) == 0xbf) {
+                m_utf8 = true;
+                i += 3;
+            }
+        }
+        m_msgStart = i;
+        return true;
+    }
+
+    /**
+     * Parses the header of a BSD style message, starting after the PRI.
+     */
+    private boolean parseBsd(int i) {
+        i = skipSpaces(i);
+        int timestampEnd = parseTimestamp(i);
+        if (timestampEnd < 0) {
+            // an identifier in front of the timestamp, such as "main: " or a Cisco sequence number
+            final int identEnd = tokenEnd(i);
+            if (identEnd - i > 1 && identEnd < m_end && byteAt(identEnd - 1) == ':') {
+                timestampEnd = parseTimestamp(skipSpaces(identEnd));
+                if (timestampEnd >= 0) {
+                    m_msgIdStart = i;
+                    m_msgIdEnd = identEnd - 1;
+                }
+            }
+            if (timestampEnd < 0) {
+                return false;
+            }
+        }
+        i = timestampEnd;
+        if (i < m_end && byteAt(i) == ':') {
+            i++;
+        }
+        if (i < m_end && byteAt(i) != ' ') {
+            return false;
+        }
+        i = skipSpaces(i);
+
+        // the host name, unless the timestamp is directly followed by the tag
+        int end = tokenEnd(i);
+        if (end > i && !isTag(i, end)) {
+            m_hostStart = i;
+            m_hostEnd = end;
+            i = skipSpaces(end);
+            end = tokenEnd(i);
+        }
+
+        // the tag: "process[pid]: " or "process: "
+        if (end > i && end < m_end && isTag(i, end)) {
+            int nameEnd = end - 1;
+            if (byteAt(nameEnd - 1) == ']') {
+                int bracket = nameEnd - 2;
+                while (bracket > i && byteAt(bracket) != '[') {
+                    bracket--;
+                }
+                if (bracket > i && digitsEnd(bracket + 1) == nameEnd - 1 && bracket + 1 < nameEnd - 1) {
+                    m_procIdStart = bracket + 1;
+                    m_procIdEnd = nameEnd - 1;
+                    nameEnd = bracket;
+                }
+            }
+            m_appStart = i;
+            m_appEnd = nameEnd;
+            i = skipSpaces(end);
+        }
+
+        m_msgStart = i;
+        return true;
+    }
+
+    /**
+     * Parses a BSD or an ISO 8601 timestamp.
+     *
+     * @return the offset after the timestamp, or -1 if there is none
+     */
+    private int parseTimestamp(int i) {
+        // Cisco marks timestamps of devices with an unsynchronized clock
+        if (i < m_end && (byteAt(i) == '*' || byteAt(i) == '.')) {
+            i++;
+        }
+        if (digitsEnd(i) == i + 4) {
+            final int end = parseIsoTimestamp(i, tokenEnd(i));
+            return end < 0 || (end < m_end && byteAt(end) != ' ' && byteAt(end) != ':') ? -1 : end;
+        }
+        return parseBsdTimestamp(i);
+    }
+
+    /**
+     * Parses a timestamp such as <code>Mar  1 00:05:31</code>, optionally
+     * with a year after the day and fractional seconds. Without a year, the
+     * current year is used.
+     */
+    private int parseBsdTimestamp(int i) {
+        if (i + 3 >= m_end) {
+            return -1;
+        }
+        final int month = monthOf(i);
+        if (month < 0 || byteAt(i + 3) != ' ') {
+            return -1;
+        }
+        i = skipSpaces(i + 3);
+        int end = digitsEnd(i);
+        if (end == i || end - i > 2 || end >= m_end || byteAt(end) != ' ') {
+            return -1;
+        }
+        final int day = parseNumber(i, end, 2);
+        i = end + 1;
+
+        int year = -1;
+        end = digitsEnd(i);
+        if (end - i == 4 && end < m_end && byteAt(end) == ' ') {
+            year = parseNumber(i, end, 4);
+            i = end + 1;
+        }
+
+        final long time = parseTime(i);
+        if (time < 0) {
+            return -1;
+        }
+        if (year < 0) {
+            year = currentYear();
+        }
+        if (day < 1 || day > 31) {
+            return -1;
+        }
+        m_date = daysFromCivil(year, month, day) * MILLIS_PER_DAY + (time & 0xffffffffL);
+        m_hasDate = true;
+        return (int)(time >>> 32);
+    }
+
+    /**
+     * Parses <code>YYYY-MM-DD</code>, optionally followed by
+     * <code>Thh:mm:ss[.fraction](Z|+hh:mm|-hh:mm)</code>.
+     *
+     * @return the offset after the timestamp, or -1 if it is not valid
+     */
+    private int parseIsoTimestamp(int i, final int limit) {
+        if (limit - i < 10 || byteAt(i + 4) != '-' || byteAt(i + 7) != '-'
+                || digitsEnd(i) != i + 4 || digitsEnd(i + 5) != i + 7 || digitsEnd(i + 8) != i + 10) {
+            return -1;
+        }
+        final int year = parseNumber(i, i + 4, 4);
+        final int month = parseNumber(i + 5, i + 7, 2);
+        final int day = parseNumber(i + 8, i + 10, 2);
+        if (month < 1 || month > 12 || day < 1 || day > 31) {
+            return -1;
+        }
+        long date = daysFromCivil(year, month, day) * MILLIS_PER_DAY;
+        i += 10;
+
+        if (i < limit && byteAt(i) == 'T') {
+            final long time = parseTime(i + 1);
+            if (time < 0) {
+                return -1;
+            }
+            date += time & 0xffffffffL;
+            i = (int)(time >>> 32);
+            if (i >= limit) {
+                return -1;
+            }
+            final int sign = byteAt(i);
+            if (sign == 'Z') {
+                i++;
+            } else if (sign == '+' || sign == '-') {
+                // +hh:mm or +hhmm
+                final int hours = digitsEnd(i + 1) >= i + 3 ? parseNumber(i + 1, i + 3, 2) : -1;
+                int minutesStart = i + 3;
+                if (minutesStart < limit && byteAt(minutesStart) == ':') {
+                    minutesStart++;
+                }
+                if (hours < 0 || digitsEnd(minutesStart) < minutesStart + 2) {
+                    return -1;
+                }
+                final int minutes = parseNumber(minutesStart, minutesStart + 2, 2);
+                final long offset = (hours * 60L + minutes) * 60 * 1000;
+                date += sign == '+' ? -offset : offset;
+                i = minutesStart + 2;
+            } else {
+                return -1;
+            }
+        }
+        m_date = date;
+        m_hasDate = true;
+        return i;
+    }
+
+    /**
+     * Parses <code>hh:mm:ss[.fraction]</code>.
+     *
+     * @return the offset after the time in the upper and the milliseconds
+     *         since midnight in the lower 32 bits, or -1 if it is not valid
+     */
+    private long parseTime(int i) {
+        if (i + 8 > m_end || byteAt(i + 2) != ':' || byteAt(i + 5) != ':'
+                || digitsEnd(i) != i + 2 || digitsEnd(i + 3) != i + 5 || digitsEnd(i + 6) < i + 8) {
+            return -1;
+        }
+        final int hours = parseNumber(i, i + 2, 2);
+        final int minutes = parseNumber(i + 3, i + 5, 2);
+        final int seconds = parseNumber(i + 6, i + 8, 2);
+        if (hours > 23 || minutes > 59 || seconds > 60) {
+            return -1;
+        }
+        long millis = ((hours * 60L + minutes) * 60 + seconds) * 1000;
+        i += 8;
+        if (i < m_end && byteAt(i) == '.') {
+            final int end = digitsEnd(i + 1);
+            if (end == i + 1) {
+                return -1;
+            }
+            // milliseconds, ignoring any finer resolution
+            int fraction = 0;
+            for (int j = i + 1; j < i + 4; j++) {
+                fraction = fraction * 10 + (j < end ? byteAt(j) - '0' : 0);
+            }
+            millis += fraction;
+            i = end;
+        }
+        return ((long)i << 32) | millis;
+    }
+
+    private int monthOf(final int i) {
+        for (int month = 0; month < 12; month++) {
+            if (lower(byteAt(i)) == MONTHS.charAt(month * 3)
+                    && lower(byteAt(i + 1)) == MONTHS.charAt(month * 3 + 1)
+                    && lower(byteAt(i + 2)) == MONTHS.charAt(month * 3 + 2)) {
+                return month + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int lower(final int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    private static int currentYear() {
+        final long days = Math.floorDiv(System.currentTimeMillis(), MILLIS_PER_DAY);
+        // civil from days, see daysFromCivil()
+        final long z = days + 719468;
+        final long era = Math.floorDiv(z, 146097);
+        final long doe = z - era * 146097;
+        final long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        final long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        final long mp = (5 * doy + 2) / 153;
+        return (int)(yoe + era * 400 + (mp >= 10 ? 1 : 0));
+    }
+
+    /**
+     * Returns the number of days since 1970-01-01 of a date in the
+     * proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(final int year, final int month, final int day) {
+        final long y = month <= 2 ? year - 1 : year;
+        final long era = Math.floorDiv(y, 400);
+        final long yoe = y - era * 400;
+        final long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    /**
+     * Returns the offset after an SD-ELEMENT, or -1 if it is not closed.
+     */
+    private int sdElementEnd(int i) {
+        boolean quoted = false;
+        for (i++; i < m_end; i++) {
+            final int c = byteAt(i);
+            if (quoted) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ']') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private Map<String, Map<String, String>> parseStructuredData() {
+        final Map<String, Map<String, String>> structuredData = new LinkedHashMap<String, Map<String, String>>();
+        int i = m_sdStart;
+        while (i < m_sdEnd && byteAt(i) == '[') {
+            final int end = sdElementEnd(i);
+            int j = i + 1;
+            int idEnd = j;
+            while (idEnd < end - 1 && byteAt(idEnd) != ' ' && byteAt(idEnd) != ']') {
+                idEnd++;
+            }
+            final Map<String, String> params = new LinkedHashMap<String, String>();
+            structuredData.put(decode(j, idEnd, US_ASCII), params);
+
+            j = idEnd;
+            while (j < end - 1) {
+                j = skipSpaces(j);
+                int nameEnd = j;
+                while (nameEnd < end - 1 && byteAt(nameEnd) != '=') {
+                    nameEnd++;
+                }
+                if (nameEnd + 1 >= end - 1 || byteAt(nameEnd + 1) != '"') {
+                    break;
+                }
+                final byte[] value = new byte[end - nameEnd];
+                int length = 0;
+                int k = nameEnd + 2;
+                for (; k < end - 1 && byteAt(k) != '"'; k++) {
+                    // only \", \\ and \] are escapes, other backslashes are kept
+                    if (byteAt(k) == '\\' && k + 1 < end - 1 && (byteAt(k + 1) == '"' || byteAt(k + 1) == '\\' || byteAt(k + 1) == ']')) {
+                        k++;
+                    }
+                    value[length++] = m_buffer.get(k);
+                }
+                params.put(decode(j, nameEnd, US_ASCII), new String(value, 0, length, UTF_8));
+                j = k + 1;
+            }
+            i = end;
+        }
+        return structuredData;
+    }
+
+    private int byteAt(final int i) {
+        return m_buffer.get(i) & 0xff;
+    }
+
+    private int digitsEnd(int i) {
+        while (i < m_end && byteAt(i) >= '0' && byteAt(i) <= '9') {
+            i++;
+        }
+        return i;
+    }
+
+    private int tokenEnd(int i) {
+        while (i < m_end && byteAt(i) != ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private int skipSpaces(int i) {
+        while (i < m_end && byteAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private boolean isNil(final int start, final int end) {
+        return end == start + 1 && byteAt(start) == '-';
+    }
+
+    private boolean isTag(final int start, final int end) {
+        return end - start > 1 && byteAt(end - 1) == ':';
+    }
+
+    /**
+     * Returns the value of a run of at most maxDigits digits, or -1.
+     */
+    private int parseNumber(final int start, final int end, final int maxDigits) {
+        if (end == start || end - start > maxDigits) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            final int c = byteAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private String decode(final int start, final int end, final Charset charset) {
+        if (m_buffer.hasArray()) {
+            return new String(m_buffer.array(), m_buffer.arrayOffset() + start, end - start, charset);
+        }
+        final byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            bytes[i - start] = m_buffer.get(i);
+        }
+        return new String(bytes, charset);
+    }
+}
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * An Aho-Corasick automaton that finds which of a set of strings occur in
+ * a text in a single pass over the text, regardless of how many strings
+ * there are.
+ */
+final class SubstringAutomaton {
+    private static final int ROOT = 0;
+
+    /** transitions of the root for ASCII characters, the most common case */
+    private final int[] m_rootNext = new int[128];
+
+    /** the characters with a transition from each node, sorted */
+    private final char[][] m_keys;
+
+    /** the targets of the transitions, in the order of {@link #m_keys} */
+    private final int[][] m_next;
+
+    /** the node of the longest proper suffix that is also in the trie */
+    private final int[] m_fail;
+
+    /** the index of the string that ends at each node, or -1 */
+    private final int[] m_output;
+
+    /** the next node on the suffix chain that has an output, or -1 */
+    private final int[] m_dictionary;
+
+    /**
+     * <p>Constructor for SubstringAutomaton.</p>
+     *
+     * @param strings the strings to look for; the index of a string in
+     *        the list is what {@link #find(String, BitSet)} reports
+     */
+    SubstringAutomaton(final List<String> strings) {
+        final List<Map<Character, Integer>> trie = new ArrayList<Map<Character, Integer>>();
+        final List<Integer> output = new ArrayList<Integer>();
+        trie.add(new TreeMap<Character, Integer>());
+        output.add(-1);
+
+        for (int i = 0; i < strings.size(); i++) {
+            final String string = strings.get(i);
+            int node = ROOT;
+            for (int j = 0; j < string.length(); j++) {
+                Integer next = trie.get(node).get(string.charAt(j));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<Character, Integer>());
+                    output.add(-1);
+                    trie.get(node).put(string.charAt(j), next);
+                }
+                node = next;
+            }
+            output.set(node, i);
+        }
+
+        final int nodes = trie.size();
+        m_keys = new char[nodes][];
+        m_next = new int[nodes][];
+        m_fail = new int[nodes];
+        m_output = new int[nodes];
+        m_dictionary = new int[nodes];
+        for (int node = 0; node < nodes; node++) {
+            final Map<Character, Integer> transitions = trie.get(node);
+            m_keys[node] = new char[transitions.size()];
+            m_next[node] = new int[transitions.size()];
+            int k = 0;
+            for (final Map.Entry<Character, Integer> transition : transitions.entrySet()) {
+                m_keys[node][k] = transition.getKey();
+                m_next[node][k] = transition.getValue();
+                k++;
+            }
+            m_output[node] = output.get(node);
+        }
+        Arrays.fill(m_rootNext, -1);
+        for (int k = 0; k < m_keys[ROOT].length; k++) {
+            if (m_keys[ROOT][k] < m_rootNext.length) {
+                m_rootNext[m_keys[ROOT][k]] = m_next[ROOT][k];
+            }
+        }
+
+        // breadth first, so the suffix links of shallower nodes are known
+        m_dictionary[ROOT] = -1;
+        final Queue<Integer> queue = new ArrayDeque<Integer>();
+        for (final int child : m_next[ROOT]) {
+            m_fail[child] = ROOT;
+            m_dictionary[child] = -1;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            final int node = queue.remove();
+            for (int k = 0; k < m_keys[node].length; k++) {
+                final char c = m_keys[node][k];
+                final int child = m_next[node][k];
+                int fail = m_fail[node];
+                int next;
+                while ((next = next(fail, c)) < 0 && fail != ROOT) {
+                    fail = m_fail[fail];
+                }
+                m_fail[child] = next < 0 ? ROOT : next;
+                m_dictionary[child] = m_output[m_fail[child]] >= 0 ? m_fail[child] : m_dictionary[m_fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    private int next(final int node, final char c) {
+        if (node == ROOT && c < m_rootNext.length) {
+            return m_rootNext[c];
+        }
+        final int k = Arrays.binarySearch(m_keys[node], c);
+        return k < 0 ? -1 : m_next[node][k];
+    }
+
+    /**
+     * Sets the indexes of the strings that occur in the text.
+     *
+     * @param text the text to search
+     * @param found the set to add the indexes of the strings found to
+     */
+    void find(final String text, final BitSet found) {
+        if (m_output[ROOT] >= 0) {
+            // the empty string
+            found.set(m_output[ROOT]);
+        }
+        int node = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            int next;
+            while ((next = next(node, c)) < 0 && node != ROOT) {
+                node = m_fail[node];
+            }
+            node = next < 0 ? ROOT : next;
+            for (int match = m_output[node] >= 0 ? node : m_dictionary[node]; match > ROOT; match = m_dictionary[match]) {
+                found.set(m_output[match]);
+            }
+        }
+    }
+}
@@ -140,16 +140,13 @@ public class SyslogConnection implements Callable<Callable<?>> {
     }
 
     private static DatagramPacket copyPacket(final InetSocketAddress source, final ByteBuffer buffer) {
-        byte[] message = new byte[0xffff];
-        int i = 0;
-        // Copy the buffer into the byte array
-        while (buffer.hasRemaining()) {
-            message[i++] = buffer.get();
-        }
+        // Copy the buffer into a byte array of the size of the message
+        byte[] message = new byte[buffer.remaining()];
+        buffer.get(message);
         DatagramPacket retPacket = new DatagramPacket(
             message,
             0,
-            i,
+            message.length,
             source.getAddress(),
             source.getPort()
         );
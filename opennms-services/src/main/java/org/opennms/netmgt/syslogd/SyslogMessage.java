@@ -189,7 +189,7 @@ public class SyslogMessage {
     }
 
     public String getMatchedMessage() {
-        return m_matchedMessage == null? m_message : m_matchedMessage;
+        return m_matchedMessage == null? getMessage() : m_matchedMessage;
     }
 
     public void setMatchedMessage(final String matchedMessage) {
@@ -239,7 +239,7 @@ public class SyslogMessage {
             .append("message ID", m_messageId)
             .append("process name", m_processName)
             .append("process ID", m_processId)
-            .append("message", m_message)
+            .append("message", getMessage())
             .toString();
     }
 
@@ -0,0 +1,621 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.netmgt.config.syslogd.HideMatch;
+import org.opennms.netmgt.config.syslogd.HideMessage;
+import org.opennms.netmgt.config.syslogd.UeiList;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The ueiMatch and hideMatch rules of the syslogd configuration, compiled
+ * so that a message is not tested against every rule in turn.
+ *
+ * All substr expressions, and a literal that any match must contain for
+ * each regex expression, go into a {@link SubstringAutomaton} that finds
+ * the rules that can match a message in a single pass over its text. The
+ * facility and severity lists are turned into sets of rules per value and
+ * the process, hostname and hostaddr expressions are evaluated at most
+ * once per message. The regular expressions are then only run for the
+ * remaining candidates, in configuration order, so the first rule that
+ * matches is the same one that the linear scan would have found.
+ *
+ * The number of messages matched by each rule is counted and exposed
+ * through the Syslogd MBean.
+ */
+public class SyslogRuleIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(SyslogRuleIndex.class);
+
+    private static final int NONE = 0;
+
+    private static final int SUBSTR = 1;
+
+    private static final int REGEX = 2;
+
+    /** literals shorter than this only filter rules when nothing longer is known */
+    private static final int SHORT_LITERAL = 3;
+
+    private static final int PROCESS = 0;
+
+    private static final int HOSTNAME = 1;
+
+    private static final int HOSTADDR = 2;
+
+    /**
+     * The first ueiMatch that matches a message.
+     */
+    public static final class Result {
+        private final UeiMatch m_ueiMatch;
+        private final Matcher m_matcher;
+
+        private Result(final UeiMatch ueiMatch, final Matcher matcher) {
+            m_ueiMatch = ueiMatch;
+            m_matcher = matcher;
+        }
+
+        public UeiMatch getUeiMatch() {
+            return m_ueiMatch;
+        }
+
+        /**
+         * @return the matcher of a regex match, positioned on the match, or
+         *         null for a substr match
+         */
+        public Matcher getMatcher() {
+            return m_matcher;
+        }
+    }
+
+    /**
+     * The match expressions of a list of rules.
+     */
+    private static final class Expressions {
+        private final int[] m_types;
+        private final String[] m_expressions;
+        private final Pattern[] m_patterns;
+        private final SubstringAutomaton m_automaton;
+
+        /** the rules that can only match if the literal with the same index is found */
+        private final BitSet[] m_literalRules;
+
+        /** the regex rules that no literal is known for */
+        private final BitSet m_unfiltered = new BitSet();
+
+        private Expressions(final int[] types, final String[] expressions) {
+            m_types = types;
+            m_expressions = expressions;
+            m_patterns = new Pattern[types.length];
+
+            final List<List<String>> literals = new ArrayList<List<String>>(types.length);
+            final Map<String, Integer> counts = new HashMap<String, Integer>();
+            for (int i = 0; i < types.length; i++) {
+                List<String> required = Collections.emptyList();
+                if (types[i] == SUBSTR) {
+                    required = Collections.singletonList(expressions[i]);
+                } else if (types[i] == REGEX) {
+                    try {
+                        m_patterns[i] = Pattern.compile(expressions[i], Pattern.MULTILINE);
+                        required = new ArrayList<String>(new LinkedHashSet<String>(getRequiredLiterals(expressions[i])));
+                    } catch (final PatternSyntaxException e) {
+                        LOG.warn("Failed to compile regex pattern '{}'", expressions[i], e);
+                    }
+                }
+                for (final String literal : required) {
+                    final Integer count = counts.get(literal);
+                    counts.put(literal, count == null ? 1 : count + 1);
+                }
+                literals.add(required);
+            }
+
+            final Map<String, BitSet> rulesByLiteral = new LinkedHashMap<String, BitSet>();
+            for (int i = 0; i < types.length; i++) {
+                // the literal shared by the fewest rules filters best
+                String best = null;
+                for (final String literal : literals.get(i)) {
+                    if (best == null || compareLiterals(literal, best, counts) < 0) {
+                        best = literal;
+                    }
+                }
+                if (best != null) {
+                    BitSet rules = rulesByLiteral.get(best);
+                    if (rules == null) {
+                        rules = new BitSet();
+                        rulesByLiteral.put(best, rules);
+                    }
+                    rules.set(i);
+                } else if (m_patterns[i] != null) {
+                    m_unfiltered.set(i);
+                }
+            }
+            m_automaton = new SubstringAutomaton(new ArrayList<String>(rulesByLiteral.keySet()));
+            m_literalRules = rulesByLiteral.values().toArray(new BitSet[rulesByLiteral.size()]);
+        }
+
+        private static int compareLiterals(final String a, final String b, final Map<String, Integer> counts) {
+            final boolean aShort = a.length() < SHORT_LITERAL;
+            final boolean bShort = b.length() < SHORT_LITERAL;
+            if (aShort != bShort) {
+                return aShort ? 1 : -1;
+            }
+            final int byCount = counts.get(a).compareTo(counts.get(b));
+            return byCount != 0 ? byCount : b.length() - a.length();
+        }
+
+        /**
+         * @return the rules whose expression can match the text; for substr
+         *         rules this is exact
+         */
+        private BitSet getCandidates(final String text) {
+            final BitSet candidates = (BitSet)m_unfiltered.clone();
+            final BitSet found = new BitSet(m_literalRules.length);
+            m_automaton.find(text, found);
+            for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) {
+                candidates.or(m_literalRules[i]);
+            }
+            return candidates;
+        }
+
+        private String describe(final int rule) {
+            return (m_types[rule] == SUBSTR ? "substr" : m_types[rule] == REGEX ? "regex" : "unknown") + " '" + m_expressions[rule] + "'";
+        }
+    }
+
+    /**
+     * The values of the process, hostname and hostaddr constraints for a
+     * message, evaluated when first needed.
+     */
+    private final class Constraints {
+        private final SyslogMessage m_message;
+        private final byte[] m_results = new byte[m_constraintPatterns.length];
+        private boolean m_hostAddressKnown = false;
+        private String m_hostAddress;
+
+        private Constraints(final SyslogMessage message) {
+            m_message = message;
+        }
+
+        private boolean matches(final int constraint) {
+            if (constraint < 0) {
+                return true;
+            }
+            if (m_results[constraint] == 0) {
+                final Pattern pattern = m_constraintPatterns[constraint];
+                final String input = getInput(m_constraintTypes[constraint]);
+                m_results[constraint] = (byte)(pattern != null && input != null && pattern.matcher(input).find() ? 1 : -1);
+            }
+            return m_results[constraint] > 0;
+        }
+
+        private String getInput(final int type) {
+            switch (type) {
+            case PROCESS:
+                return m_message.getProcessName();
+            case HOSTNAME:
+                return m_message.getHostName();
+            default:
+                // this may resolve the host name, so only do it once
+                if (!m_hostAddressKnown) {
+                    m_hostAddress = m_message.getHostAddress();
+                    m_hostAddressKnown = true;
+                }
+                return m_hostAddress;
+            }
+        }
+    }
+
+    private final UeiList m_ueiList;
+    private final HideMessage m_hideMessage;
+    private final List<UeiMatch> m_ueiMatches;
+    private final Expressions m_ueiExpressions;
+    private final Expressions m_hideExpressions;
+
+    /** the rules without a facility list, and the rules that list each facility */
+    private final BitSet m_anyFacility = new BitSet();
+    private final Map<String, BitSet> m_facilities = new HashMap<String, BitSet>();
+
+    private final BitSet m_anySeverity = new BitSet();
+    private final Map<String, BitSet> m_severities = new HashMap<String, BitSet>();
+
+    /** the distinct process, hostname and hostaddr expressions */
+    private final Pattern[] m_constraintPatterns;
+    private final int[] m_constraintTypes;
+
+    /** the index of each rule's constraints, or -1 */
+    private final int[][] m_constraints;
+
+    private final AtomicLongArray m_ueiHits;
+    private final AtomicLongArray m_hideHits;
+
+    /**
+     * <p>Constructor for SyslogRuleIndex.</p>
+     *
+     * @param ueiList the ueiMatch rules, may be null
+     * @param hideMessage the hideMatch rules, may be null
+     */
+    public SyslogRuleIndex(final UeiList ueiList, final HideMessage hideMessage) {
+        m_ueiList = ueiList;
+        m_hideMessage = hideMessage;
+        m_ueiMatches = ueiList == null ? Collections.<UeiMatch>emptyList() : new ArrayList<UeiMatch>(ueiList.getUeiMatchCollection());
+
+        final int rules = m_ueiMatches.size();
+        final int[] types = new int[rules];
+        final String[] expressions = new String[rules];
+        final Map<String, Integer> constraintIndexes = new LinkedHashMap<String, Integer>();
+        final List<Integer> constraintTypes = new ArrayList<Integer>();
+        m_constraints = new int[rules][];
+        for (int i = 0; i < rules; i++) {
+            final UeiMatch ueiMatch = m_ueiMatches.get(i);
+            final String type = ueiMatch.getMatch().getType();
+            types[i] = "substr".equals(type) ? SUBSTR : type.startsWith("regex") ? REGEX : NONE;
+            expressions[i] = ueiMatch.getMatch().getExpression();
+
+            index(i, ueiMatch.getFacilityCollection(), m_anyFacility, m_facilities);
+            index(i, ueiMatch.getSeverityCollection(), m_anySeverity, m_severities);
+
+            m_constraints[i] = new int[] {
+                    ueiMatch.getProcessMatch() == null ? -1 : getConstraint(PROCESS, ueiMatch.getProcessMatch().getExpression(), constraintIndexes, constraintTypes),
+                    ueiMatch.getHostnameMatch() == null ? -1 : getConstraint(HOSTNAME, ueiMatch.getHostnameMatch().getExpression(), constraintIndexes, constraintTypes),
+                    ueiMatch.getHostaddrMatch() == null ? -1 : getConstraint(HOSTADDR, ueiMatch.getHostaddrMatch().getExpression(), constraintIndexes, constraintTypes)
+            };
+        }
+        m_ueiExpressions = new Expressions(types, expressions);
+
+        m_constraintPatterns = new Pattern[constraintIndexes.size()];
+        m_constraintTypes = new int[constraintIndexes.size()];
+        for (final Map.Entry<String, Integer> entry : constraintIndexes.entrySet()) {
+            final int constraint = entry.getValue();
+            final String expression = entry.getKey().substring(1);
+            m_constraintTypes[constraint] = constraintTypes.get(constraint);
+            try {
+                m_constraintPatterns[constraint] = Pattern.compile(expression, Pattern.MULTILINE);
+            } catch (final PatternSyntaxException e) {
+                LOG.warn("Failed to compile regex pattern '{}'", expression, e);
+            }
+        }
+
+        final List<HideMatch> hideMatches = hideMessage == null ? Collections.<HideMatch>emptyList() : hideMessage.getHideMatchCollection();
+        final int[] hideTypes = new int[hideMatches.size()];
+        final String[] hideExpressions = new String[hideMatches.size()];
+        for (int i = 0; i < hideTypes.length; i++) {
+            final String type = hideMatches.get(i).getMatch().getType();
+            hideTypes[i] = "substr".equals(type) ? SUBSTR : "regex".equals(type) ? REGEX : NONE;
+            hideExpressions[i] = hideMatches.get(i).getMatch().getExpression();
+        }
+        m_hideExpressions = new Expressions(hideTypes, hideExpressions);
+
+        m_ueiHits = new AtomicLongArray(rules);
+        m_hideHits = new AtomicLongArray(hideTypes.length);
+    }
+
+    private static void index(final int rule, final List<String> values, final BitSet any, final Map<String, BitSet> byValue) {
+        if (values.isEmpty()) {
+            any.set(rule);
+            return;
+        }
+        for (final String value : values) {
+            final String key = value.toLowerCase(Locale.ENGLISH);
+            BitSet rules = byValue.get(key);
+            if (rules == null) {
+                rules = new BitSet();
+                byValue.put(key, rules);
+            }
+            rules.set(rule);
+        }
+    }
+
+    private static int getConstraint(final int type, final String expression, final Map<String, Integer> indexes, final List<Integer> types) {
+        final String key = type + expression;
+        Integer index = indexes.get(key);
+        if (index == null) {
+            index = indexes.size();
+            indexes.put(key, index);
+            types.add(type);
+        }
+        return index;
+    }
+
+    private static BitSet getRules(final String value, final BitSet any, final Map<String, BitSet> byValue) {
+        final BitSet rules = (BitSet)any.clone();
+        final BitSet listed = byValue.get(value.toLowerCase(Locale.ENGLISH));
+        if (listed != null) {
+            rules.or(listed);
+        }
+        return rules;
+    }
+
+    /**
+     * Whether this index was built from the given rules. The lists are
+     * compared by identity and size, so that rules added to a list after
+     * the index was built are noticed.
+     *
+     * @param ueiList a {@link org.opennms.netmgt.config.syslogd.UeiList} object.
+     * @param hideMessage a {@link org.opennms.netmgt.config.syslogd.HideMessage} object.
+     * @return true if the index is current for the rules
+     */
+    public boolean isFor(final UeiList ueiList, final HideMessage hideMessage) {
+        return ueiList == m_ueiList
+                && hideMessage == m_hideMessage
+                && (ueiList == null || ueiList.getUeiMatchCount() == m_ueiMatches.size())
+                && (hideMessage == null || hideMessage.getHideMatchCount() == m_hideHits.length());
+    }
+
+    /**
+     * Returns the first ueiMatch that matches the message.
+     *
+     * @param message the parsed message, for the facility, severity,
+     *        process, hostname and hostaddr constraints
+     * @param text the text to match the expressions against
+     * @return the match, or null if no ueiMatch matches
+     */
+    public Result getUeiMatch(final SyslogMessage message, final String text) {
+        if (m_ueiMatches.isEmpty()) {
+            return null;
+        }
+        final BitSet candidates = m_ueiExpressions.getCandidates(text);
+        candidates.and(getRules(message.getFacility().toString(), m_anyFacility, m_facilities));
+        candidates.and(getRules(message.getSeverity().toString(), m_anySeverity, m_severities));
+
+        final Constraints constraints = new Constraints(message);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            final int[] ruleConstraints = m_constraints[i];
+            if (!constraints.matches(ruleConstraints[0]) || !constraints.matches(ruleConstraints[1]) || !constraints.matches(ruleConstraints[2])) {
+                continue;
+            }
+            Matcher matcher = null;
+            if (m_ueiExpressions.m_types[i] == REGEX) {
+                matcher = m_ueiExpressions.m_patterns[i].matcher(text);
+                if (!matcher.find()) {
+                    continue;
+                }
+            }
+            m_ueiHits.incrementAndGet(i);
+            return new Result(m_ueiMatches.get(i), matcher);
+        }
+        return null;
+    }
+
+    /**
+     * Whether any hideMatch matches the text.
+     *
+     * @param text the full text of the message
+     * @return true if the message should be hidden
+     */
+    public boolean isHidden(final String text) {
+        if (m_hideHits.length() == 0) {
+            return false;
+        }
+        final BitSet candidates = m_hideExpressions.getCandidates(text);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            if (m_hideExpressions.m_types[i] == SUBSTR || m_hideExpressions.m_patterns[i].matcher(text).find()) {
+                m_hideHits.incrementAndGet(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * <p>getUeiMatchHits</p>
+     *
+     * @return the number of messages matched by each ueiMatch, in
+     *         configuration order
+     */
+    public String[] getUeiMatchHits() {
+        final String[] hits = new String[m_ueiMatches.size()];
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = (i + 1) + " " + m_ueiExpressions.describe(i) + " " + m_ueiMatches.get(i).getUei() + ": " + m_ueiHits.get(i);
+        }
+        return hits;
+    }
+
+    /**
+     * <p>getHideMatchHits</p>
+     *
+     * @return the number of messages hidden by each hideMatch, in
+     *         configuration order
+     */
+    public String[] getHideMatchHits() {
+        final String[] hits = new String[m_hideHits.length()];
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = (i + 1) + " " + m_hideExpressions.describe(i) + ": " + m_hideHits.get(i);
+        }
+        return hits;
+    }
+
+    /**
+     * Returns literals that every match of the regular expression must
+     * contain. Only the top level of the expression is looked at; groups,
+     * character classes and optional or repeated atoms end a literal. An
+     * empty list is returned for expressions that can match without
+     * containing any particular literal, such as alternations, and for
+     * constructs that are not understood, such as inline flags.
+     *
+     * @param regex the regular expression
+     * @return the required literals
+     */
+    static List<String> getRequiredLiterals(final String regex) {
+        if (regex.contains("\\Q")) {
+            return Collections.emptyList();
+        }
+        final List<String> literals = new ArrayList<String>();
+        final StringBuilder literal = new StringBuilder();
+        final int length = regex.length();
+        int i = 0;
+        while (i < length) {
+            final char c = regex.charAt(i);
+            int end = i + 1;
+            int character = -1;
+            switch (c) {
+            case '\\':
+                if (i + 1 >= length) {
+                    return Collections.emptyList();
+                }
+                final char escaped = regex.charAt(i + 1);
+                if (Character.isDigit(escaped) || "xucpPkEN".indexOf(escaped) >= 0) {
+                    // back references and escapes of unknown length
+                    return Collections.emptyList();
+                } else if (!Character.isLetter(escaped)) {
+                    character = escaped;
+                }
+                end = i + 2;
+                break;
+            case '[':
+                end = skipClass(regex, i);
+                break;
+            case '(':
+                if (i + 2 < length && regex.charAt(i + 1) == '?' && ":=!<>".indexOf(regex.charAt(i + 2)) < 0) {
+                    // inline flags, such as (?i)
+                    return Collections.emptyList();
+                }
+                end = skipGroup(regex, i);
+                break;
+            case '.':
+            case '^':
+            case '$':
+                break;
+            case '|':
+            case ')':
+            case '?':
+            case '*':
+            case '+':
+            case '{':
+                return Collections.emptyList();
+            default:
+                character = c;
+            }
+            if (end < 0) {
+                return Collections.emptyList();
+            }
+
+            boolean optional = false;
+            boolean repeated = false;
+            if (end < length) {
+                final char quantifier = regex.charAt(end);
+                if (quantifier == '?' || quantifier == '*') {
+                    optional = true;
+                    end++;
+                } else if (quantifier == '+') {
+                    repeated = true;
+                    end++;
+                } else if (quantifier == '{') {
+                    final int close = regex.indexOf('}', end);
+                    if (close < 0) {
+                        return Collections.emptyList();
+                    }
+                    optional = true;
+                    end = close + 1;
+                }
+                if ((optional || repeated) && end < length && (regex.charAt(end) == '?' || regex.charAt(end) == '+')) {
+                    // reluctant or possessive
+                    end++;
+                }
+            }
+
+            if (character >= 0 && !optional) {
+                literal.append((char)character);
+            }
+            if (character < 0 || optional || repeated) {
+                addLiteral(literals, literal);
+            }
+            i = end;
+        }
+        addLiteral(literals, literal);
+        return literals;
+    }
+
+    private static void addLiteral(final List<String> literals, final StringBuilder literal) {
+        if (literal.length() > 0) {
+            literals.add(literal.toString());
+            literal.setLength(0);
+        }
+    }
+
+    private static int skipClass(final String regex, final int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        int depth = 1;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    private static int skipGroup(final String regex, final int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            } else if (c == '[') {
+                i = skipClass(regex, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+}
@@ -199,4 +199,26 @@ import org.slf4j.LoggerFactory;
     public void setEventDao(EventDao eventDao) {
         m_eventDao = eventDao;
     }
+
+    /**
+     * <p>getUeiMatchHits</p>
+     *
+     * @return the number of messages matched by each ueiMatch, in
+     *         configuration order
+     */
+    public String[] getUeiMatchHits() {
+        final SyslogRuleIndex ruleIndex = ConvertToEvent.getRuleIndex();
+        return ruleIndex == null ? new String[0] : ruleIndex.getUeiMatchHits();
+    }
+
+    /**
+     * <p>getHideMatchHits</p>
+     *
+     * @return the number of messages hidden by each hideMatch, in
+     *         configuration order
+     */
+    public String[] getHideMatchHits() {
+        final SyslogRuleIndex ruleIndex = ConvertToEvent.getRuleIndex();
+        return ruleIndex == null ? new String[0] : ruleIndex.getHideMatchHits();
+    }
 }
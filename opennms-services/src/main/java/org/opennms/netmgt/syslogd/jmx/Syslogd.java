@@ -88,4 +88,16 @@ public class Syslogd implements SyslogdMBean {
     public String getStatusText() {
         return org.opennms.core.fiber.Fiber.STATUS_NAMES[getStatus()];
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public String[] getUeiMatchHits() {
+        return org.opennms.netmgt.syslogd.Syslogd.getInstance().getUeiMatchHits();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String[] getHideMatchHits() {
+        return org.opennms.netmgt.syslogd.Syslogd.getInstance().getHideMatchHits();
+    }
 }
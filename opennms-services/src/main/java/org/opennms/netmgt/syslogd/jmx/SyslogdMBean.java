@@ -37,4 +37,13 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface SyslogdMBean extends BaseOnmsMBean {
+    /**
+     * @return The number of messages matched by each ueiMatch, in configuration order
+     */
+    public String[] getUeiMatchHits();
+
+    /**
+     * @return The number of messages hidden by each hideMatch, in configuration order
+     */
+    public String[] getHideMatchHits();
 }
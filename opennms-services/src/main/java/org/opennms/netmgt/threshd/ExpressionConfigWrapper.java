@@ -35,8 +35,8 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.jexl2.ExpressionImpl;
+import org.apache.commons.jexl2.JexlContext;
 import org.apache.commons.jexl2.JexlEngine;
-import org.apache.commons.jexl2.MapContext;
 import org.opennms.netmgt.config.threshd.Expression;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,16 +50,79 @@ import org.slf4j.LoggerFactory;
 public class ExpressionConfigWrapper extends BaseThresholdDefConfigWrapper {
     private static final Logger LOG = LoggerFactory.getLogger(ExpressionConfigWrapper.class);
 
+    /**
+     * The engine is only used to parse expressions; evaluating a parsed
+     * expression is thread-safe.
+     */
+    private static final JexlEngine EXPRESSION_PARSER = new JexlEngine();
+
+    private static final MathBinding MATH = new MathBinding();
+
+    /**
+     * An expression parsed along with the text it was parsed from, so that
+     * a change to the configuration object can be detected.
+     */
+    private static class ParsedExpression {
+        private final String m_text;
+        private final org.apache.commons.jexl2.Expression m_expression;
+
+        private ParsedExpression(final String text) {
+            m_text = text;
+            m_expression = EXPRESSION_PARSER.createExpression(text);
+        }
+    }
+
+    /**
+     * Resolves the expression variables directly from the collected values,
+     * instead of copying them into a new map for every evaluation.
+     */
+    private static class ValuesContext implements JexlContext {
+        private final Map<String, Double> m_values;
+        private Map<String, Object> m_locals;
+
+        private ValuesContext(final Map<String, Double> values) {
+            m_values = values;
+        }
+
+        @Override
+        public Object get(final String name) {
+            if (m_locals != null && m_locals.containsKey(name)) {
+                return m_locals.get(name);
+            } else if ("math".equals(name)) {
+                return MATH;
+            } else if ("datasources".equals(name)) {
+                // To workaround NMS-5019
+                return m_values;
+            }
+            return m_values.get(name);
+        }
+
+        @Override
+        public void set(final String name, final Object value) {
+            if (m_locals == null) {
+                m_locals = new HashMap<String, Object>();
+            }
+            m_locals.put(name, value);
+        }
+
+        @Override
+        public boolean has(final String name) {
+            return (m_locals != null && m_locals.containsKey(name)) || "math".equals(name) || "datasources".equals(name) || m_values.containsKey(name);
+        }
+    }
+
     private final Expression m_expression;
     private final Collection<String> m_datasources;
+    private volatile ParsedExpression m_parsedExpression;
+
     public ExpressionConfigWrapper(Expression expression) throws ThresholdExpressionException {
         super(expression);
         m_expression = expression;
 
-        JexlEngine expressionParser = new JexlEngine();
         m_datasources = new ArrayList<String>();
         try {
-            ExpressionImpl e = (ExpressionImpl) expressionParser.createExpression(m_expression.getExpression());
+            m_parsedExpression = new ParsedExpression(m_expression.getExpression());
+            ExpressionImpl e = (ExpressionImpl) m_parsedExpression.m_expression;
             LOG.trace("List of Variables on the Expression: {}", e.getVariables());
             for (List<String> list : e.getVariables()) { // Requires JEXL 2.1.x
                 if (list.get(0).equalsIgnoreCase("math")) {
@@ -142,16 +205,21 @@ public class ExpressionConfigWrapper extends BaseThresholdDefConfigWrapper {
 
     @Override
     public double evaluate(Map<String, Double> values) throws ThresholdExpressionException {
-        // Add all of the variable values to the script context
-        Map<String,Object> context = new HashMap<String,Object>();
-        context.putAll(values);
-        context.put("datasources", new HashMap<String, Double>(values)); // To workaround NMS-5019
-        context.put("math", new MathBinding());
         double result = Double.NaN;
         try {
-            // Fetch an instance of the JEXL script engine to evaluate the script expression
-            Object resultObject = new JexlEngine().createExpression(m_expression.getExpression()).evaluate(new MapContext(context));
-            result = Double.parseDouble(resultObject.toString());
+            // The expression is parsed once, unless the configuration has changed since
+            ParsedExpression parsed = m_parsedExpression;
+            final String text = m_expression.getExpression();
+            if (text != parsed.m_text && !text.equals(parsed.m_text)) {
+                parsed = new ParsedExpression(text);
+                m_parsedExpression = parsed;
+            }
+            Object resultObject = parsed.m_expression.evaluate(new ValuesContext(values));
+            if (resultObject instanceof Number) {
+                result = ((Number) resultObject).doubleValue();
+            } else {
+                result = Double.parseDouble(resultObject.toString());
+            }
         } catch (Throwable e) {
             throw new ThresholdExpressionException("Error while evaluating expression " + m_expression.getExpression() + ": " + e.getMessage(), e);
         }
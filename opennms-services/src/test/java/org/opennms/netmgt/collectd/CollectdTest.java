@@ -391,6 +391,8 @@ public class CollectdTest extends TestCase {
         m_collectdConfigFactory = m_easyMockUtils.createMock(CollectdConfigFactory.class);
         m_collectdConfig = m_easyMockUtils.createMock(CollectdConfiguration.class);
         expect(m_collectdConfigFactory.getCollectdConfig()).andReturn(m_collectdConfig).anyTimes();
+        m_collectdConfigFactory.rebuildPackageIpListMap();
+        expectLastCall().anyTimes();
         expect(m_collectdConfig.getCollectors()).andReturn(Collections.singletonList(collector)).anyTimes();
         expect(m_collectdConfig.getThreads()).andReturn(1).anyTimes();
 
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.collectd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.netmgt.snmp.SnmpInstId;
+
+/**
+ * Tests the choice between walking a table and getting the collected
+ * instances in {@link ResourceType#getInstancesToCollect()}.
+ */
+public class ResourceTypeTest {
+
+    private static final String LIMIT_PROPERTY = "org.opennms.netmgt.collectd.SnmpCollector.limitCollectionToInstances";
+
+    private static final String RATIO_PROPERTY = "org.opennms.netmgt.collectd.SnmpCollector.limitCollectionRatio";
+
+    private static class TestResourceType extends ResourceType {
+        private final SnmpInstId[] m_instances;
+        private final int m_total;
+
+        private TestResourceType(final int selected, final int total) {
+            super(null, null);
+            m_instances = new SnmpInstId[selected];
+            for (int i = 0; i < selected; i++) {
+                m_instances[i] = new SnmpInstId(i + 1);
+            }
+            m_total = total;
+        }
+
+        @Override
+        public SnmpInstId[] getCollectionInstances() {
+            return m_instances;
+        }
+
+        @Override
+        protected int getInstanceCount() {
+            return m_total;
+        }
+
+        @Override
+        protected Collection<SnmpAttributeType> loadAttributeTypes() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public SnmpCollectionResource findResource(final SnmpInstId inst) {
+            return null;
+        }
+
+        @Override
+        public SnmpCollectionResource findAliasedResource(final SnmpInstId inst, final String ifAlias) {
+            return null;
+        }
+
+        @Override
+        public Collection<? extends SnmpCollectionResource> getResources() {
+            return Collections.emptyList();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(LIMIT_PROPERTY);
+        System.clearProperty(RATIO_PROPERTY);
+    }
+
+    @Test
+    public void testWalkByDefault() {
+        assertNull(new TestResourceType(300, 8000).getInstancesToCollect());
+    }
+
+    @Test
+    public void testAlwaysLimit() {
+        System.setProperty(LIMIT_PROPERTY, "true");
+        assertEquals(7900, new TestResourceType(7900, 8000).getInstancesToCollect().length);
+    }
+
+    @Test
+    public void testAutoLimitsSparseSelection() {
+        System.setProperty(LIMIT_PROPERTY, "auto");
+        assertEquals(300, new TestResourceType(300, 8000).getInstancesToCollect().length);
+        assertEquals(0, new TestResourceType(0, 8000).getInstancesToCollect().length);
+    }
+
+    @Test
+    public void testAutoWalksDenseSelection() {
+        System.setProperty(LIMIT_PROPERTY, "auto");
+        assertNull(new TestResourceType(4000, 8000).getInstancesToCollect());
+
+        System.setProperty(RATIO_PROPERTY, "0.6");
+        assertEquals(4000, new TestResourceType(4000, 8000).getInstancesToCollect().length);
+    }
+
+    @Test
+    public void testAutoWalksWhenTableSizeUnknown() {
+        System.setProperty(LIMIT_PROPERTY, "auto");
+        assertNull(new TestResourceType(1, -1).getInstancesToCollect());
+    }
+}
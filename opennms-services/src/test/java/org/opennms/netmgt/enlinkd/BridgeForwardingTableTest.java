@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.enlinkd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.opennms.netmgt.model.BridgeMacLink;
+import org.opennms.netmgt.model.OnmsNode;
+
+public class BridgeForwardingTableTest {
+
+    @Test
+    public void testEncode() {
+        assertEquals(0x000c29dc6a07L, BridgeForwardingTable.encode("000c29dc6a07"));
+        assertEquals(0xffffffffffffL, BridgeForwardingTable.encode("ffffffffffff"));
+        assertEquals("000c29dc6a07", BridgeForwardingTable.decode(BridgeForwardingTable.encode("000c29dc6a07")));
+        assertEquals("000000000000", BridgeForwardingTable.decode(0));
+        assertEquals("00e0b1bab034", BridgeForwardingTable.decode(BridgeForwardingTable.encode("00E0B1BAB034")));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testEncodeInvalidLength() {
+        BridgeForwardingTable.encode("000c29dc6a0");
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testEncodeInvalidDigit() {
+        BridgeForwardingTable.encode("000c29dc6a0g");
+    }
+
+    @Test
+    public void testAdd() {
+        BridgeForwardingTable bft = new BridgeForwardingTable();
+        assertTrue(bft.isEmpty());
+        bft.add(24, "000c29dc6a07");
+        bft.add(3, "001763010d4f");
+        bft.add(24, "0016b6f12b01");
+        bft.add(24, "000c29dc6a07");
+        bft.add(3, "001763010d4f");
+
+        assertFalse(bft.isEmpty());
+        assertEquals(3, bft.size());
+        assertArrayEquals(new int[] { 3, 24 }, bft.getBridgePorts());
+        assertArrayEquals(new long[] { 0x000c29dc6a07L, 0x0016b6f12b01L }, bft.getMacs(24));
+        assertArrayEquals(new long[0], bft.getMacs(5));
+        assertTrue(bft.contains(3, 0x001763010d4fL));
+        assertFalse(bft.contains(24, 0x001763010d4fL));
+
+        Map<Integer, Set<String>> map = bft.toMap();
+        assertEquals(2, map.size());
+        assertEquals(new HashSet<String>(Arrays.asList("000c29dc6a07", "0016b6f12b01")), map.get(24));
+        assertEquals(new HashSet<String>(Arrays.asList("001763010d4f")), map.get(3));
+    }
+
+    @Test
+    public void testAddMany() {
+        Random random = new Random(42);
+        BridgeForwardingTable bft = new BridgeForwardingTable();
+        Set<List<Long>> expected = new HashSet<List<Long>>();
+        for (int i = 0; i < 20000; i++) {
+            int port = random.nextInt(48);
+            long mac = random.nextInt(5000);
+            bft.add(port, mac);
+            expected.add(Arrays.asList((long) port, mac));
+            if (i % 1000 == 0) {
+                // reading in between compacts the table
+                assertEquals(expected.size(), bft.size());
+            }
+        }
+        assertEquals(expected.size(), bft.size());
+        for (List<Long> entry : expected) {
+            assertTrue(bft.contains(entry.get(0).intValue(), entry.get(1)));
+        }
+    }
+
+    @Test
+    public void testSubtract() {
+        BridgeForwardingTable oldlinks = new BridgeForwardingTable();
+        oldlinks.add(1, 1L);
+        oldlinks.add(1, 2L);
+        oldlinks.add(2, 3L);
+        oldlinks.add(4, 7L);
+
+        BridgeForwardingTable newlinks = new BridgeForwardingTable();
+        newlinks.add(1, 2L);
+        newlinks.add(2, 3L);
+        newlinks.add(2, 4L);
+        newlinks.add(3, 5L);
+
+        BridgeForwardingTable deleted = oldlinks.subtract(newlinks);
+        assertArrayEquals(new int[] { 1, 4 }, deleted.getBridgePorts());
+        assertArrayEquals(new long[] { 1L }, deleted.getMacs(1));
+        assertArrayEquals(new long[] { 7L }, deleted.getMacs(4));
+
+        BridgeForwardingTable added = newlinks.subtract(oldlinks);
+        assertArrayEquals(new int[] { 2, 3 }, added.getBridgePorts());
+        assertArrayEquals(new long[] { 4L }, added.getMacs(2));
+        assertArrayEquals(new long[] { 5L }, added.getMacs(3));
+
+        assertEquals(4, newlinks.subtract(null).size());
+        assertTrue(newlinks.subtract(newlinks).isEmpty());
+    }
+
+    @Test
+    public void testStore() {
+        BridgeForwardingTableStore store = new BridgeForwardingTableStore();
+        store.addCollected(1, 10, "000c29dc6a07");
+        store.addCollected(1, 10, "not a mac");
+        store.addCollected(1, 11, "0016b6f12b01");
+        assertFalse(store.isLoaded());
+
+        BridgeForwardingTable bft = store.removeCollected(1);
+        assertEquals(2, bft.size());
+        assertEquals(null, store.removeCollected(1));
+
+        OnmsNode node = new OnmsNode();
+        node.setId(2);
+        List<BridgeMacLink> links = new ArrayList<BridgeMacLink>();
+        for (String mac : new String[] { "000c29dc6a07", "001763010d4f" }) {
+            BridgeMacLink link = new BridgeMacLink();
+            link.setNode(node);
+            link.setBridgePort(5);
+            link.setMacAddress(mac);
+            links.add(link);
+        }
+        store.load(links);
+        assertTrue(store.isLoaded());
+        assertEquals(2, store.getSavedLinkCount());
+        assertEquals(2, store.getSaved().get(2).size());
+
+        store.setSaved(1, bft);
+        assertEquals(4, store.getSavedLinkCount());
+        store.setSaved(2, null);
+        assertEquals(2, store.getSavedLinkCount());
+        assertEquals(1, store.getSaved().size());
+        store.remove(1);
+        assertEquals(0, store.getSavedLinkCount());
+        assertTrue(store.getSaved().isEmpty());
+    }
+
+    @Test
+    public void testStoreSharingNodes() {
+        BridgeForwardingTableStore store = new BridgeForwardingTableStore();
+        store.load(new ArrayList<BridgeMacLink>());
+
+        BridgeForwardingTable bft1 = new BridgeForwardingTable();
+        bft1.add(1, "000c29dc6a07");
+        bft1.add(2, "001763010d4f");
+        store.setSaved(1, bft1);
+        BridgeForwardingTable bft2 = new BridgeForwardingTable();
+        bft2.add(7, "001763010d4f");
+        store.setSaved(2, bft2);
+        BridgeForwardingTable bft3 = new BridgeForwardingTable();
+        bft3.add(3, "0016b6f12b01");
+        store.setSaved(3, bft3);
+
+        BridgeForwardingTable collected = new BridgeForwardingTable();
+        collected.add(4, "001763010d4f");
+        assertEquals(new HashSet<Integer>(Arrays.asList(2)), store.getNodesSharingMacs(1, collected));
+        assertEquals(new HashSet<Integer>(Arrays.asList(1, 2)), store.getNodesSharingMacs(4, collected, null));
+        assertEquals(new HashSet<Integer>(Arrays.asList(1, 3)), store.getNodesSharingMacs(2, collected, bft3, bft1));
+
+        // a node's old mac addresses are no longer indexed once its table is replaced
+        store.setSaved(2, bft3);
+        assertEquals(new HashSet<Integer>(Arrays.asList(1)), store.getNodesSharingMacs(4, collected));
+        assertEquals(new HashSet<Integer>(Arrays.asList(2, 3)), store.getNodesSharingMacs(4, bft3));
+        store.remove(3);
+        assertEquals(new HashSet<Integer>(Arrays.asList(2)), store.getNodesSharingMacs(4, bft3));
+
+        assertFalse(store.isReconciled(1, collected));
+        store.setReconciled(1, collected);
+        BridgeForwardingTable same = new BridgeForwardingTable();
+        same.add(4, "001763010d4f");
+        assertTrue(store.isReconciled(1, same));
+        same.add(4, "000c29dc6a07");
+        assertFalse(store.isReconciled(1, same));
+
+        // loading the saved tables again forgets the reconciled tables
+        store.load(new ArrayList<BridgeMacLink>());
+        assertFalse(store.isReconciled(1, collected));
+        assertTrue(store.getNodesSharingMacs(4, bft1, bft3).isEmpty());
+    }
+}
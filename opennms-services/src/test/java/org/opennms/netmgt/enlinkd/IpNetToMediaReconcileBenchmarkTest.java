@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.enlinkd;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.dao.api.IpNetToMediaDao;
+import org.opennms.netmgt.dao.support.UpsertTemplate;
+import org.opennms.netmgt.model.IpNetToMedia;
+import org.opennms.netmgt.model.IpNetToMedia.IpNetToMediaType;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.nb.Nms0001NetworkBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Reconciles the ARP table of a core router with the bulk reconcile path of
+ * the {@link EnhancedLinkdServiceImpl} and checks the resulting rows.
+ * testReconcileLargeArpTable(), which is ignored, reconciles a synthetic
+ * table with 50000 entries and logs the time taken by each scan next to
+ * the time taken to write a sample of the entries one at a time with an
+ * {@link UpsertTemplate}.
+ */
+public class IpNetToMediaReconcileBenchmarkTest extends EnLinkdTestBuilder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IpNetToMediaReconcileBenchmarkTest.class);
+
+    private static final int ENTRIES = 50000;
+
+    private static final int SAMPLE = 2000;
+
+    private static final int IFINDEXES = 48;
+
+    @Autowired
+    private IpNetToMediaDao m_ipNetToMediaDao;
+
+    @Autowired
+    private PlatformTransactionManager m_transactionManager;
+
+    private Nms0001NetworkBuilder builder = new Nms0001NetworkBuilder();
+
+    private static InetAddress getNetAddress(final int i) {
+        return InetAddressUtils.addr("10." + (i >> 16 & 0xff) + "." + (i >> 8 & 0xff) + "." + (i & 0xff));
+    }
+
+    private static String getPhysAddress(final int i) {
+        return String.format("0050569a%04x", i & 0xffff);
+    }
+
+    private static IpNetToMedia getEntry(final int i, final int mac, final int ifIndex) {
+        final IpNetToMedia entry = new IpNetToMedia();
+        entry.setNetAddress(getNetAddress(i));
+        entry.setPhysAddress(getPhysAddress(mac));
+        entry.setSourceIfIndex(ifIndex);
+        entry.setIpNetToMediaType(IpNetToMediaType.IPNETTOMEDIA_TYPE_DYNAMIC);
+        return entry;
+    }
+
+    private OnmsNode saveNode(final OnmsNode node) {
+        m_nodeDao.save(node);
+        m_nodeDao.flush();
+        return node;
+    }
+
+    private long scan(final int nodeId, final List<IpNetToMedia> entries, final Date now) {
+        final long start = System.nanoTime();
+        for (final IpNetToMedia entry : entries) {
+            m_linkd.getQueryManager().store(nodeId, entry);
+        }
+        m_linkd.getQueryManager().reconcileIpNetToMedia(nodeId, now);
+        return System.nanoTime() - start;
+    }
+
+    private void upsert(final int nodeId, final IpNetToMedia saveMe) {
+        new UpsertTemplate<IpNetToMedia, IpNetToMediaDao>(m_transactionManager, m_ipNetToMediaDao) {
+
+            @Override
+            protected IpNetToMedia query() {
+                return m_dao.getByNetAndPhysAddress(saveMe.getNetAddress(), saveMe.getPhysAddress());
+            }
+
+            @Override
+            protected IpNetToMedia doUpdate(IpNetToMedia dbIpNetToMedia) {
+                saveMe.setSourceNode(m_nodeDao.get(nodeId));
+                dbIpNetToMedia.merge(saveMe);
+                m_dao.update(dbIpNetToMedia);
+                m_dao.flush();
+                return dbIpNetToMedia;
+            }
+
+            @Override
+            protected IpNetToMedia doInsert() {
+                saveMe.setSourceNode(m_nodeDao.get(nodeId));
+                saveMe.setLastPollTime(saveMe.getCreateTime());
+                m_dao.saveOrUpdate(saveMe);
+                m_dao.flush();
+                return saveMe;
+            }
+
+        }.execute();
+    }
+
+    /**
+     * Checks the results of the reconcile path on an ARP table of a normal
+     * size.
+     */
+    @Test
+    public void testReconcileArpTable() throws Exception {
+        reconcile(saveNode(builder.getFroh()), saveNode(builder.getOedipus()), 1000, 50);
+    }
+
+    /**
+     * Reports the time taken to reconcile a large ARP table.
+     */
+    @Test
+    @Ignore("reconciles 50000 entries")
+    public void testReconcileLargeArpTable() throws Exception {
+        final OnmsNode oedipus = saveNode(builder.getOedipus());
+        final long[] times = reconcile(saveNode(builder.getFroh()), oedipus, ENTRIES, SAMPLE);
+
+        // a sample of the entries written one at a time
+        long start = System.nanoTime();
+        for (int i = 0; i < SAMPLE; i++) {
+            upsert(oedipus.getId(), getEntry(ENTRIES + i, ENTRIES + i, i % IFINDEXES));
+        }
+        final long upsert = System.nanoTime() - start;
+
+        LOG.info("{} ipNetToMedia entries: insert {} ms, refresh {} ms, change {} ms, move {} {} ms, delete {} ms; one at a time {} ms/entry ({} ms for {})",
+                 ENTRIES, times[0] / 1000000, times[1] / 1000000, times[2] / 1000000, SAMPLE, times[3] / 1000000, times[4] / 1000000,
+                 String.format("%.3f", upsert / 1e6 / SAMPLE), Math.round(upsert / 1e6 / SAMPLE * ENTRIES), ENTRIES);
+    }
+
+    /**
+     * Runs a series of scans of a table of the given size on two routers
+     * and checks the resulting rows.
+     *
+     * @return the times taken by the insert, refresh, change, move and
+     *         delete scans in nanoseconds
+     */
+    private long[] reconcile(final OnmsNode froh, final OnmsNode oedipus, final int size, final int sample) throws Exception {
+        // first scan, every entry is new
+        Date now = new Date();
+        List<IpNetToMedia> entries = new ArrayList<IpNetToMedia>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(getEntry(i, i, i % IFINDEXES));
+        }
+        final long insert = scan(froh.getId(), entries, now);
+        assertEquals(size, m_ipNetToMediaDao.findBySourceNodeId(froh.getId()).size());
+
+        // second scan, nothing has changed
+        now = new Date();
+        entries = new ArrayList<IpNetToMedia>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(getEntry(i, i, i % IFINDEXES));
+        }
+        final long refresh = scan(froh.getId(), entries, now);
+        assertEquals(size, m_ipNetToMediaDao.findBySourceNodeId(froh.getId()).size());
+
+        // third scan, a tenth of the hosts changed their MAC address, a
+        // tenth moved to another interface and a tenth went away
+        now = new Date();
+        entries = new ArrayList<IpNetToMedia>(size);
+        for (int i = 0; i < size; i++) {
+            switch (i % 10) {
+            case 0:
+                entries.add(getEntry(i, i + 1, i % IFINDEXES));
+                break;
+            case 1:
+                entries.add(getEntry(i, i, (i + 1) % IFINDEXES));
+                break;
+            case 2:
+                break;
+            default:
+                entries.add(getEntry(i, i, i % IFINDEXES));
+            }
+        }
+        final long change = scan(froh.getId(), entries, now);
+        assertEquals(size - size / 10, m_ipNetToMediaDao.findBySourceNodeId(froh.getId()).size());
+        assertEquals(size - size / 10, m_ipNetToMediaDao.countAll());
+        assertEquals(Integer.valueOf(2 % IFINDEXES), m_ipNetToMediaDao.getByNetAndPhysAddress(getNetAddress(1), getPhysAddress(1)).getSourceIfIndex());
+
+        // another router sees some of the hosts, they move over to it
+        now = new Date();
+        entries = new ArrayList<IpNetToMedia>(sample);
+        for (int i = 3; i < sample * 10; i += 10) {
+            entries.add(getEntry(i, i, 1));
+        }
+        final long move = scan(oedipus.getId(), entries, now);
+        assertEquals(sample, m_ipNetToMediaDao.findBySourceNodeId(oedipus.getId()).size());
+        assertEquals(size - size / 10 - sample, m_ipNetToMediaDao.findBySourceNodeId(froh.getId()).size());
+
+        // and go away again
+        final long delete = scan(oedipus.getId(), new ArrayList<IpNetToMedia>(), new Date());
+        assertEquals(0, m_ipNetToMediaDao.findBySourceNodeId(oedipus.getId()).size());
+
+        return new long[] { insert, refresh, change, move, delete };
+    }
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.opennms.core.test.db.PopulatedTemporaryDatabaseTestCase;
+import org.opennms.netmgt.dao.mock.JdbcEventdServiceManager;
+import org.opennms.netmgt.eventd.processor.JdbcEventWriter;
+import org.opennms.netmgt.mock.EventUtilJdbcImpl;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a burst of events from a set of concurrent threads and checks that
+ * every event was stored under the dbid it was given.
+ * xtestEventsPerSecondByBatchSize() writes a larger burst with increasing
+ * batch sizes and logs the rate for each batch size.
+ */
+@SuppressWarnings("deprecation")
+public class JdbcEventWriterBatchBenchmarkTest extends PopulatedTemporaryDatabaseTestCase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JdbcEventWriterBatchBenchmarkTest.class);
+
+    private static final int THREADS = 32;
+
+    private static final int EVENTS_PER_THREAD = 100;
+
+    private static final int[] BATCH_SIZES = { 1, 8, 16, 32 };
+
+    private JdbcEventWriter createWriter(final int batchSize) throws Exception {
+        final JdbcEventdServiceManager eventdServiceManager = new JdbcEventdServiceManager();
+        eventdServiceManager.setDataSource(getDataSource());
+        eventdServiceManager.afterPropertiesSet();
+
+        final JdbcEventWriter writer = new JdbcEventWriter();
+        writer.setEventdServiceManager(eventdServiceManager);
+        writer.setEventUtil(new EventUtilJdbcImpl());
+        writer.setDataSource(getDataSource());
+        writer.setGetNextIdString("SELECT nextval('eventsNxtId')");
+        writer.setIdBlockSize(batchSize);
+        writer.setBatchSize(batchSize);
+        writer.setBatchInterval(5);
+        writer.afterPropertiesSet();
+        return writer;
+    }
+
+    public void testConcurrentBatchedWrites() throws Exception {
+        writeEvents(8, 4, 20);
+    }
+
+    // not run by the build, rename to testEventsPerSecondByBatchSize to time the batch sizes
+    public void xtestEventsPerSecondByBatchSize() throws Exception {
+        for (final int batchSize : BATCH_SIZES) {
+            final int total = THREADS * EVENTS_PER_THREAD;
+            final long elapsed = writeEvents(batchSize, THREADS, EVENTS_PER_THREAD);
+            LOG.info("batchSize={}: {} events from {} threads in {} ms, {} events/sec",
+                     batchSize, total, THREADS, elapsed / 1000000, Math.round(total / (elapsed / 1e9)));
+        }
+    }
+
+    /**
+     * Writes a burst of events from concurrent threads and checks that every
+     * event was stored under the dbid it was given.
+     *
+     * @return the time taken to write the events in nanoseconds
+     */
+    private long writeEvents(final int batchSize, final int threads, final int eventsPerThread) throws Exception {
+        jdbcTemplate.update("DELETE FROM events");
+        final JdbcEventWriter writer = createWriter(batchSize);
+
+        final List<Integer> dbids = Collections.synchronizedList(new ArrayList<Integer>());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        final long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            final int thread = i;
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < eventsPerThread; j++) {
+                        final EventBuilder bldr = new EventBuilder("uei.opennms.org/test/benchmark", "JdbcEventWriterBatchBenchmarkTest");
+                        bldr.setLogDest("logndisplay");
+                        bldr.setLogMessage("event " + j + " from thread " + thread);
+                        bldr.addParam("thread", thread);
+                        final Event event = bldr.getEvent();
+                        try {
+                            writer.process(null, event);
+                        } catch (final Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                        dbids.add(event.getDbid());
+                    }
+                }
+            }));
+        }
+        for (final Future<?> future : futures) {
+            future.get();
+        }
+        final long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        writer.destroy();
+
+        final int total = threads * eventsPerThread;
+        assertEquals(total, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM events"));
+        final Set<Integer> unique = new HashSet<Integer>(dbids);
+        assertEquals(total, unique.size());
+        assertEquals(total, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM events WHERE eventLogmsg LIKE 'event %'"));
+        for (final Integer dbid : dbids.subList(0, 10)) {
+            assertEquals(1, jdbcTemplate.queryForInt("SELECT COUNT(*) FROM events WHERE eventId = ?", dbid));
+        }
+        return elapsed;
+    }
+}
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.monitors;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollFuture;
+import org.opennms.netmgt.poller.PollFutureListener;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.mock.MonitorTestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Polls a local agent that answers every connection with a banner after a
+ * fixed delay, once with blocking polls on thread pools of different sizes
+ * and once with asynchronous polls, and checks that every poll succeeds.
+ * testServicesPerSecond() polls more services and logs the services polled
+ * per second; it is too slow for a normal build and is ignored.
+ */
+public class TcpMonitorAsyncBenchmarkTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TcpMonitorAsyncBenchmarkTest.class);
+
+    private static final int SERVICES = 1000;
+
+    private static final long LATENCY = 20;
+
+    private static final int[] THREADS = { 10, 50, 200 };
+
+    private ServerSocket m_serverSocket;
+
+    private ScheduledExecutorService m_responder;
+
+    private Thread m_acceptor;
+
+    private MonitoredService m_svc;
+
+    private Map<String, Object> m_parameters;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging(true, "WARN");
+
+        m_serverSocket = new ServerSocket(0, SERVICES, InetAddress.getLoopbackAddress());
+        m_responder = Executors.newScheduledThreadPool(4);
+        m_acceptor = new Thread("benchmark-agent") {
+            @Override
+            public void run() {
+                while (!m_serverSocket.isClosed()) {
+                    try {
+                        final Socket socket = m_serverSocket.accept();
+                        m_responder.schedule(new Callable<Void>() {
+                            @Override
+                            public Void call() throws IOException {
+                                try {
+                                    socket.getOutputStream().write("+OK agent ready\r\n".getBytes());
+                                } finally {
+                                    socket.close();
+                                }
+                                return null;
+                            }
+                        }, LATENCY, TimeUnit.MILLISECONDS);
+                    } catch (final IOException e) {
+                        // closed
+                    }
+                }
+            }
+        };
+        m_acceptor.setDaemon(true);
+        m_acceptor.start();
+
+        m_svc = MonitorTestUtils.getMonitoredService(1, "localhost", InetAddress.getLoopbackAddress(), "TCP");
+        m_parameters = new ConcurrentSkipListMap<String, Object>();
+        m_parameters.put("port", String.valueOf(m_serverSocket.getLocalPort()));
+        m_parameters.put("banner", "+OK");
+        m_parameters.put("retry", "0");
+        m_parameters.put("timeout", "5000");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_serverSocket.close();
+        m_responder.shutdownNow();
+        m_acceptor.join(1000);
+    }
+
+    private double pollSynchronously(final int services, final int threads) throws Exception {
+        final TcpMonitor monitor = new TcpMonitor();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Callable<PollStatus>> polls = new ArrayList<Callable<PollStatus>>(services);
+            for (int i = 0; i < services; i++) {
+                polls.add(new Callable<PollStatus>() {
+                    @Override
+                    public PollStatus call() {
+                        return monitor.poll(m_svc, m_parameters);
+                    }
+                });
+            }
+            final long start = System.nanoTime();
+            int available = 0;
+            for (final Future<PollStatus> status : executor.invokeAll(polls)) {
+                if (status.get().isAvailable()) {
+                    available++;
+                }
+            }
+            final long elapsed = System.nanoTime() - start;
+            assertEquals(services, available);
+            return services / (elapsed / 1e9);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private double pollAsynchronously(final int services) throws Exception {
+        final TcpMonitor monitor = new TcpMonitor();
+        final CountDownLatch latch = new CountDownLatch(services);
+        final AtomicInteger available = new AtomicInteger();
+        final PollFutureListener listener = new PollFutureListener() {
+            @Override
+            public void operationComplete(final PollFuture future) {
+                if (future.getStatus().isAvailable()) {
+                    available.incrementAndGet();
+                }
+                latch.countDown();
+            }
+        };
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < services; i++) {
+            monitor.pollAsync(m_svc, m_parameters).addListener(listener);
+        }
+        latch.await(1, TimeUnit.MINUTES);
+        final long elapsed = System.nanoTime() - start;
+        assertEquals(services, available.get());
+        return services / (elapsed / 1e9);
+    }
+
+    @Test
+    public void testPolls() throws Exception {
+        pollSynchronously(50, 10);
+        pollAsynchronously(50);
+    }
+
+    @Test
+    @Ignore("slow, polls a thousand services per thread pool size")
+    public void testServicesPerSecond() throws Exception {
+        // warm up
+        pollSynchronously(SERVICES, THREADS[0]);
+        pollAsynchronously(SERVICES);
+
+        for (final int threads : THREADS) {
+            LOG.info("{} services, {} ms latency: blocking polls on {} threads {} services/s",
+                     SERVICES, LATENCY, threads, Math.round(pollSynchronously(SERVICES, threads)));
+        }
+        LOG.info("{} services, {} ms latency: asynchronous polls {} services/s",
+                 SERVICES, LATENCY, Math.round(pollAsynchronously(SERVICES)));
+    }
+}
@@ -54,6 +54,7 @@ public class ScheduleTest extends TestCase {
     class MockSchedulable implements ReadyRunnable {
         private volatile int runCount = 0;
         private volatile boolean m_callingAdjustSchedule;
+        private volatile boolean m_deferring;
         
         @Override
         public boolean isReady() {
@@ -65,6 +66,12 @@ public class ScheduleTest extends TestCase {
             runCount++;
             if (isCallingAdjustSchedule())
                 m_sched.adjustSchedule();
+            if (m_deferring)
+                m_sched.deferSchedule();
+        }
+
+        public void setDeferring(boolean deferring) {
+            m_deferring = deferring;
         }
         
         public int getRunCount() {
@@ -226,6 +233,29 @@ public class ScheduleTest extends TestCase {
         assertRunAndScheduled(1000, 1000, 2, 1);
     }
     
+    public void testDeferScheduleWithinRun() {
+        m_schedulable.setDeferring(true);
+
+        m_sched.schedule();
+
+        assertRunAndScheduled(0, 0, 0, 1);
+
+        m_scheduler.next();
+
+        // not rescheduled until the run completes
+        assertRunAndScheduled(0, -1, 1, 0);
+
+        // the interval known once the run completes is used
+        m_interval.setInterval(500);
+        m_sched.adjustSchedule();
+
+        assertRunAndScheduled(0, 500, 1, 1);
+
+        m_scheduler.next();
+
+        assertRunAndScheduled(500, -1, 2, 0);
+    }
+
     private void assertRunAndScheduled(long currentTime, long interval, int count, int entryCount) {
         assertEquals(count, m_schedulable.getRunCount());
         assertEquals(currentTime, m_scheduler.getCurrentTime());
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+
+public class TimingWheelSchedulerTest {
+
+    private TimingWheelScheduler m_scheduler;
+
+    private static class LatchRunnable implements ReadyRunnable {
+        private final CountDownLatch m_latch;
+        private volatile long m_ranAt;
+
+        public LatchRunnable(final CountDownLatch latch) {
+            m_latch = latch;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void run() {
+            m_ranAt = System.currentTimeMillis();
+            m_latch.countDown();
+        }
+
+        public long getRanAt() {
+            return m_ranAt;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        MockLogAppender.setupLogging(false);
+        m_scheduler = new TimingWheelScheduler("TimingWheelSchedulerTest", 4, 10L, 0L);
+        m_scheduler.start();
+    }
+
+    @After
+    public void tearDown() {
+        m_scheduler.stop();
+    }
+
+    private long waitForTasksExecuted(final long expected, final long timeout) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        while (m_scheduler.getNumTasksExecuted() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return m_scheduler.getNumTasksExecuted();
+    }
+
+    @Test
+    public void testRunsAfterInterval() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(3);
+        final LatchRunnable now = new LatchRunnable(latch);
+        final LatchRunnable soon = new LatchRunnable(latch);
+        // beyond the first level of the wheel so it has to be cascaded
+        final LatchRunnable later = new LatchRunnable(latch);
+
+        final long start = System.currentTimeMillis();
+        m_scheduler.schedule(3000, later);
+        m_scheduler.schedule(200, soon);
+        m_scheduler.schedule(0, now);
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(now.getRanAt() <= soon.getRanAt());
+        assertTrue(soon.getRanAt() <= later.getRanAt());
+        assertTrue(soon.getRanAt() - start >= 200);
+        assertTrue(later.getRanAt() - start >= 3000);
+        // the counter is incremented after the task has been handed to the runner
+        assertEquals(3, waitForTasksExecuted(3, 5000));
+        assertEquals(0, m_scheduler.getScheduled());
+    }
+
+    @Test
+    public void testWaitsUntilReady() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicBoolean ready = new AtomicBoolean(false);
+        m_scheduler.schedule(0, new LatchRunnable(latch) {
+            @Override
+            public boolean isReady() {
+                return ready.get();
+            }
+        });
+
+        assertTrue(!latch.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, m_scheduler.getScheduled());
+
+        ready.set(true);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLatenessHistograms() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            m_scheduler.schedule(50, new LatchRunnable(latch));
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        final Map<Long, long[]> histograms = m_scheduler.getLatenessHistograms();
+        assertEquals(1, histograms.size());
+        long total = 0;
+        for (final long count : histograms.get(50L)) {
+            total += count;
+        }
+        assertEquals(10, total);
+        assertEquals(1, m_scheduler.getLatenessHistogramsAsStrings().length);
+    }
+
+    @Test
+    public void testStartupSpread() throws Exception {
+        final TimingWheelScheduler scheduler = new TimingWheelScheduler("TimingWheelSchedulerTest", 4, 10L, 500L);
+        scheduler.start();
+        try {
+            final CountDownLatch latch = new CountDownLatch(20);
+            final LatchRunnable[] runnables = new LatchRunnable[20];
+            final long start = System.currentTimeMillis();
+            for (int i = 0; i < runnables.length; i++) {
+                runnables[i] = new LatchRunnable(latch);
+                scheduler.schedule(0, runnables[i]);
+            }
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+            long last = 0;
+            for (final LatchRunnable runnable : runnables) {
+                // each first run is delayed by a share of the spread that depends on the runnable
+                final long delay = (System.identityHashCode(runnable) & 0x7fffffff) % 500;
+                final long ranAfter = runnable.getRanAt() - start;
+                assertTrue("ran after " + ranAfter + " ms, expected at least " + delay + " ms", ranAfter >= delay - 10);
+                last = Math.max(last, ranAfter);
+            }
+            // twenty runs do not all land in the first quarter of the window
+            assertTrue("last first run after " + last + " ms", last >= 125);
+        } finally {
+            scheduler.stop();
+        }
+    }
+}
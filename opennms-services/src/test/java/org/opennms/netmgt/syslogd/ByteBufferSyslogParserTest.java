@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Verifies the {@link ByteBufferSyslogParser} against messages from real
+ * devices, checks that it agrees with the regular expression parsers on
+ * the messages that they understand. The ignored testParseTime() logs
+ * the time it takes to parse them with each.
+ */
+public class ByteBufferSyslogParserTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ByteBufferSyslogParserTest.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int ITERATIONS = 20000;
+
+    private static final String[] BSD_MESSAGES = new String[] {
+        "<34>Oct 11 22:14:15 mymachine su: 'su root' failed for lonvick on /dev/pts/8",
+        "<13>Feb  5 17:32:18 10.0.0.99 Use the BFG!",
+        "<173>Dec  7 12:02:06 10.13.110.116 mgmtd[8326]: [mgmtd.NOTICE]: Configuration saved to database initial",
+        "<6>test: 2007-01-01 127.0.0.1 OpenNMS[1234]: A SyslogNG style message",
+        "<6>main: 2010-08-19 localhost foo23: load test 23 on tty1",
+        "<86>Jun 12 08:01:03 web01 sshd[21453]: Accepted publickey for deploy from 192.0.2.15 port 52311 ssh2",
+        "<30>Jun 12 08:01:04 web01 systemd[1]: Started Session 4711 of user deploy.",
+        "<28>Mar 10 13:25:39 fw01 RT_FLOW: RT_FLOW_SESSION_CREATE: session created 10.1.1.2/51234->8.8.8.8/53 junos-dns-udp",
+        "<188>Mar 10 13:25:40 srx-edge mgd[6011]: UI_COMMIT: User 'admin' requested 'commit' operation (comment: none)",
+        "<3>Jul  4 00:00:01 nas01 kernel: md/raid1:md0: Disk failure on sdb1, disabling device.",
+        "<165>Aug 24 05:14:15 192.0.2.1 myproc[8710]: %% It's time to make the do-nuts.",
+    };
+
+    private static final String[] RFC5424_MESSAGES = new String[] {
+        "<34>1 2003-10-11T22:14:15.003Z mymachine.example.com su - ID47 - 'su root' failed for lonvick on /dev/pts/8",
+        "<165>1 2003-10-11T22:14:15.003Z mymachine.example.com evntslog - ID47 [exampleSDID@32473 iut=\"3\" eventSource=\"Application\" eventID=\"1011\"] An application event log entry...",
+        "<165>1 2003-10-11T22:14:15.003Z mymachine.example.com evntslog - ID47 [exampleSDID@32473 iut=\"3\" eventSource=\"Application\" eventID=\"1011\"][examplePriority@32473 class=\"high\"]",
+        "<165>1 2003-08-24T05:14:15.123-07:00 192.0.2.1 myproc 8710 - - %% It's time to make the do-nuts.",
+        "<14>1 2015-06-12T08:01:03+02:00 app01 java 3312 AUDIT - User admin logged in",
+    };
+
+    private static SyslogMessage parse(final String text) throws Exception {
+        final SyslogParser parser = ByteBufferSyslogParser.getParser(text);
+        assertTrue(text, parser.find());
+        final SyslogMessage message = parser.parse();
+        assertNotNull(text, message);
+        return message;
+    }
+
+    private static Date thisYear(final int month, final int day, final int hour, final int minute, final int second, final int millis) {
+        final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(calendar.get(Calendar.YEAR), month, day, hour, minute, second);
+        calendar.set(Calendar.YEAR, Calendar.getInstance(TimeZone.getTimeZone("UTC")).get(Calendar.YEAR));
+        calendar.set(Calendar.MILLISECOND, millis);
+        return calendar.getTime();
+    }
+
+    @Test
+    public void testBsdMessage() throws Exception {
+        final SyslogMessage message = parse("<173>Dec  7 12:02:06 10.13.110.116 mgmtd[8326]: [mgmtd.NOTICE]: Configuration saved to database initial\n");
+
+        assertEquals(SyslogFacility.LOCAL5, message.getFacility());
+        assertEquals(SyslogSeverity.NOTICE, message.getSeverity());
+        assertNull(message.getVersion());
+        assertNull(message.getMessageID());
+        assertEquals(thisYear(Calendar.DECEMBER, 7, 12, 2, 6, 0), message.getDate());
+        assertEquals("10.13.110.116", message.getHostName());
+        assertEquals("mgmtd", message.getProcessName());
+        assertEquals(8326, message.getProcessId().intValue());
+        assertEquals("[mgmtd.NOTICE]: Configuration saved to database initial", message.getMessage());
+    }
+
+    @Test
+    public void testSyslogNGMessage() throws Exception {
+        final SyslogMessage message = parse("<6>test: 2007-01-01 127.0.0.1 OpenNMS[1234]: A SyslogNG style message\0");
+
+        assertEquals(SyslogFacility.KERNEL, message.getFacility());
+        assertEquals(SyslogSeverity.INFORMATIONAL, message.getSeverity());
+        assertEquals("test", message.getMessageID());
+        assertEquals(new Date(1167609600000L), message.getDate());
+        assertEquals("127.0.0.1", message.getHostName());
+        assertEquals("OpenNMS", message.getProcessName());
+        assertEquals(1234, message.getProcessId().intValue());
+        assertEquals("A SyslogNG style message", message.getMessage());
+    }
+
+    @Test
+    public void testCiscoMessage() throws Exception {
+        final SyslogMessage message = parse("<189>25: *Mar  1 00:05:31.547: %SYS-5-CONFIG_I: Configured from console by vty0 (10.1.1.1)");
+
+        assertEquals(SyslogFacility.LOCAL7, message.getFacility());
+        assertEquals(SyslogSeverity.NOTICE, message.getSeverity());
+        assertEquals("25", message.getMessageID());
+        assertEquals(thisYear(Calendar.MARCH, 1, 0, 5, 31, 547), message.getDate());
+        assertNull(message.getHostName());
+        assertEquals("%SYS-5-CONFIG_I", message.getProcessName());
+        assertNull(message.getProcessId());
+        assertEquals("Configured from console by vty0 (10.1.1.1)", message.getMessage());
+    }
+
+    @Test
+    public void testCiscoMessageWithYear() throws Exception {
+        final SyslogMessage message = parse("<187>Mar 12 2015 10:22:14.118 router1 %LINK-3-UPDOWN: Interface GigabitEthernet0/1, changed state to down");
+
+        final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(2015, Calendar.MARCH, 12, 10, 22, 14);
+        calendar.set(Calendar.MILLISECOND, 118);
+        assertEquals(calendar.getTime(), message.getDate());
+        assertEquals("router1", message.getHostName());
+        assertEquals("%LINK-3-UPDOWN", message.getProcessName());
+        assertEquals("Interface GigabitEthernet0/1, changed state to down", message.getMessage());
+    }
+
+    @Test
+    public void testRfc5424Message() throws Exception {
+        final byte[] header = "<165>1 2003-08-24T05:14:15.000003-07:00 192.0.2.1 myproc 8710 - [exampleSDID@32473 iut=\"3\" quote=\"a \\\"b\\\" [c\\]\"] ".getBytes(UTF_8);
+        final byte[] body = "caf\u00e9".getBytes(UTF_8);
+        final byte[] text = ByteBuffer.allocate(header.length + 3 + body.length)
+                .put(header).put(new byte[] { (byte)0xef, (byte)0xbb, (byte)0xbf }).put(body).array();
+        final ByteBufferSyslogParser parser = (ByteBufferSyslogParser)ByteBufferSyslogParser.getParser(ByteBuffer.wrap(text));
+        assertTrue(parser.find());
+        final SyslogMessage message = parser.parse();
+
+        assertEquals(1, message.getVersion().intValue());
+        assertEquals(SyslogFacility.LOCAL4, message.getFacility());
+        assertEquals(SyslogSeverity.NOTICE, message.getSeverity());
+        assertEquals(new Date(1061727255000L), message.getDate());
+        assertEquals("192.0.2.1", message.getHostName());
+        assertEquals("myproc", message.getProcessName());
+        assertEquals(8710, message.getProcessId().intValue());
+        assertNull(message.getMessageID());
+        assertEquals("caf\u00e9", message.getMessage());
+
+        final Map<String, Map<String, String>> structuredData = parser.getStructuredData();
+        assertEquals(1, structuredData.size());
+        assertEquals("3", structuredData.get("exampleSDID@32473").get("iut"));
+        assertEquals("a \"b\" [c]", structuredData.get("exampleSDID@32473").get("quote"));
+    }
+
+    @Test
+    public void testDirectBuffer() throws Exception {
+        final byte[] text = RFC5424_MESSAGES[1].getBytes(UTF_8);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(text.length + 10);
+        buffer.put(new byte[10]).put(text).flip();
+        buffer.position(10);
+
+        final ByteBufferSyslogParser parser = (ByteBufferSyslogParser)ByteBufferSyslogParser.getParser(buffer);
+        final SyslogMessage message = parser.parse();
+        assertEquals("mymachine.example.com", message.getHostName());
+        assertEquals("An application event log entry...", message.getMessage());
+        assertEquals("Application", parser.getStructuredData().get("exampleSDID@32473").get("eventSource"));
+        assertEquals(10, buffer.position());
+    }
+
+    @Test
+    public void testMessageIsDecodedLazily() throws Exception {
+        final byte[] text = BSD_MESSAGES[0].getBytes(UTF_8);
+        final SyslogMessage message = ByteBufferSyslogParser.getParser(ByteBuffer.wrap(text)).parse();
+        assertEquals("mymachine", message.getHostName());
+
+        // the text is decoded from the received bytes when it is first asked for, and kept
+        text[text.length - 1] = '9';
+        assertEquals("'su root' failed for lonvick on /dev/pts/9", message.getMessage());
+        text[text.length - 1] = '7';
+        assertEquals("'su root' failed for lonvick on /dev/pts/9", message.getMessage());
+        assertEquals("'su root' failed for lonvick on /dev/pts/9", message.getMatchedMessage());
+
+        message.setMessage("replaced");
+        assertEquals("replaced", message.getMessage());
+    }
+
+    @Test
+    public void testUnparseableMessages() throws Exception {
+        final String[] messages = new String[] {
+            "",
+            "no priority",
+            "<>Oct 11 22:14:15 mymachine su: message",
+            "<1000>Oct 11 22:14:15 mymachine su: message",
+            "<34>Use the BFG!",
+            "<34>Oct 41 22:14:15 mymachine su: message",
+            "<34>1 2003-10-11T22:14:15.003Z mymachine.example.com su - ID47 [unclosed",
+        };
+        for (final String text : messages) {
+            final SyslogParser parser = ByteBufferSyslogParser.getParser(text);
+            assertFalse(text, parser.find());
+            assertNull(text, parser.parse());
+        }
+    }
+
+    @Test
+    public void testAgreesWithRegexParsers() throws Exception {
+        for (final String text : BSD_MESSAGES) {
+            assertSameMessage(text, SyslogNGParser.getParser(text).parse(), parse(text));
+        }
+        for (final String text : RFC5424_MESSAGES) {
+            final SyslogMessage expected = Rfc5424SyslogParser.getParser(text).parse();
+            final SyslogMessage actual = parse(text);
+            assertEquals(text, expected.getVersion(), actual.getVersion());
+            if (expected.getMessage() == null) {
+                // the regular expression parser leaves an empty message unset
+                expected.setMessage("");
+            }
+            assertSameMessage(text, expected, actual);
+        }
+    }
+
+    private static void assertSameMessage(final String text, final SyslogMessage expected, final SyslogMessage actual) {
+        assertEquals(text, expected.getFacility(), actual.getFacility());
+        assertEquals(text, expected.getSeverity(), actual.getSeverity());
+        assertEquals(text, expected.getDate(), actual.getDate());
+        assertEquals(text, expected.getHostName(), actual.getHostName());
+        assertEquals(text, expected.getProcessName(), actual.getProcessName());
+        assertEquals(text, expected.getProcessId(), actual.getProcessId());
+        assertEquals(text, expected.getMessageID(), actual.getMessageID());
+        assertEquals(text, expected.getMessage(), actual.getMessage());
+    }
+
+    @Test
+    @Ignore("parser timing")
+    public void testParseTime() throws Exception {
+        final byte[][] bsd = new byte[BSD_MESSAGES.length][];
+        for (int i = 0; i < bsd.length; i++) {
+            bsd[i] = BSD_MESSAGES[i].getBytes(UTF_8);
+        }
+        final byte[][] rfc5424 = new byte[RFC5424_MESSAGES.length][];
+        for (int i = 0; i < rfc5424.length; i++) {
+            rfc5424[i] = RFC5424_MESSAGES[i].getBytes(UTF_8);
+        }
+
+        // warm up
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            parseWithRegex(bsd, rfc5424);
+            parseBytes(bsd, rfc5424);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            parseWithRegex(bsd, rfc5424);
+        }
+        final long regex = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            parseBytes(bsd, rfc5424);
+        }
+        final long bytes = System.nanoTime() - start;
+
+        final int messages = ITERATIONS * (bsd.length + rfc5424.length);
+        LOG.info("{} messages: regex {} us/message, bytes {} us/message",
+                 messages, String.format("%.2f", regex / 1e3 / messages), String.format("%.2f", bytes / 1e3 / messages));
+    }
+
+    private static void parseWithRegex(final byte[][] bsd, final byte[][] rfc5424) throws Exception {
+        // like ConvertToEvent does it: decode, then match
+        for (final byte[] data : bsd) {
+            final SyslogParser parser = SyslogNGParser.getParser(new String(data, 0, data.length, "US-ASCII"));
+            if (parser.find()) {
+                parser.parse();
+            }
+        }
+        for (final byte[] data : rfc5424) {
+            final SyslogParser parser = Rfc5424SyslogParser.getParser(new String(data, 0, data.length, "US-ASCII"));
+            if (parser.find()) {
+                parser.parse();
+            }
+        }
+    }
+
+    private static void parseBytes(final byte[][] bsd, final byte[][] rfc5424) throws Exception {
+        for (final byte[] data : bsd) {
+            final SyslogParser parser = ByteBufferSyslogParser.getParser(ByteBuffer.wrap(data));
+            if (parser.find()) {
+                parser.parse();
+            }
+        }
+        for (final byte[] data : rfc5424) {
+            final SyslogParser parser = ByteBufferSyslogParser.getParser(ByteBuffer.wrap(data));
+            if (parser.find()) {
+                parser.parse();
+            }
+        }
+    }
+}
@@ -0,0 +1,363 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.opennms.netmgt.config.syslogd.HideMatch;
+import org.opennms.netmgt.config.syslogd.HideMessage;
+import org.opennms.netmgt.config.syslogd.Match;
+import org.opennms.netmgt.config.syslogd.ProcessMatch;
+import org.opennms.netmgt.config.syslogd.UeiList;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class SyslogRuleIndexTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SyslogRuleIndexTest.class);
+
+    private static final int RULES = 900;
+
+    private static final int MESSAGES = 2000;
+
+    private static final String[] PROCESSES = new String[] { "sshd", "kernel", "mgmtd", "cron", "named" };
+
+    private static UeiMatch ueiMatch(final String type, final String expression, final String uei) {
+        final Match match = new Match();
+        match.setType(type);
+        match.setExpression(expression);
+        final UeiMatch ueiMatch = new UeiMatch();
+        ueiMatch.setMatch(match);
+        ueiMatch.setUei(uei);
+        return ueiMatch;
+    }
+
+    private static HideMatch hideMatch(final String type, final String expression) {
+        final Match match = new Match();
+        match.setType(type);
+        match.setExpression(expression);
+        final HideMatch hideMatch = new HideMatch();
+        hideMatch.setMatch(match);
+        return hideMatch;
+    }
+
+    private static SyslogMessage message(final SyslogFacility facility, final SyslogSeverity severity, final String processName, final String text) {
+        final SyslogMessage message = new SyslogMessage();
+        message.setFacility(facility);
+        message.setSeverity(severity);
+        message.setHostName("192.0.2.1");
+        message.setProcessName(processName);
+        message.setMessage(text);
+        return message;
+    }
+
+    @Test
+    public void testRequiredLiterals() {
+        assertEquals(Arrays.asList("foo12: ", "load test ", " on "), SyslogRuleIndex.getRequiredLiterals(".*foo12: .*load test (\\S+) on ((pts\\/\\d+)|(tty\\d+)).*"));
+        assertEquals(Arrays.asList("%SYS-5-CONFIG_I: Configured from ", " by "), SyslogRuleIndex.getRequiredLiterals("^%SYS-5-CONFIG_I: Configured from (.*) by (\\S+)$"));
+        assertEquals(Arrays.asList("a.b", "d"), SyslogRuleIndex.getRequiredLiterals("a\\.bc?d"));
+        assertEquals(Arrays.asList("ab", "d"), SyslogRuleIndex.getRequiredLiterals("ab+c{2}d"));
+        assertEquals(Arrays.asList("error", " code"), SyslogRuleIndex.getRequiredLiterals("error[:=]\\s* code"));
+        assertEquals(Arrays.asList("x", "z"), SyslogRuleIndex.getRequiredLiterals("x(?:y|[)])z"));
+
+        assertEquals(Collections.emptyList(), SyslogRuleIndex.getRequiredLiterals("foo|bar"));
+        assertEquals(Collections.emptyList(), SyslogRuleIndex.getRequiredLiterals("(?i)foo"));
+        assertEquals(Collections.emptyList(), SyslogRuleIndex.getRequiredLiterals("\\Qfoo\\E"));
+        assertEquals(Collections.emptyList(), SyslogRuleIndex.getRequiredLiterals("(a)\\1"));
+        assertEquals(Collections.emptyList(), SyslogRuleIndex.getRequiredLiterals("\\x41BC"));
+        assertEquals(Collections.emptyList(), SyslogRuleIndex.getRequiredLiterals(".*"));
+    }
+
+    @Test
+    public void testSubstringAutomaton() {
+        final SubstringAutomaton automaton = new SubstringAutomaton(Arrays.asList("he", "she", "his", "hers", "", "\u00e9t\u00e9"));
+        final BitSet found = new BitSet();
+        automaton.find("ushers in the \u00e9t\u00e9", found);
+        assertEquals("{0, 1, 3, 4, 5}", found.toString());
+
+        found.clear();
+        automaton.find("", found);
+        assertEquals("{4}", found.toString());
+    }
+
+    @Test
+    public void testFirstMatchWins() {
+        final UeiList ueiList = new UeiList();
+        ueiList.addUeiMatch(ueiMatch("regex", "^Accepted (\\S+) for (\\S+)", "uei.example.org/accepted"));
+        ueiList.addUeiMatch(ueiMatch("substr", "for root", "uei.example.org/root"));
+        ueiList.addUeiMatch(ueiMatch("regex", "(?i)FAILED", "uei.example.org/failed"));
+        ueiList.addUeiMatch(ueiMatch("substr", "", "uei.example.org/everything"));
+
+        final SyslogRuleIndex index = new SyslogRuleIndex(ueiList, null);
+        SyslogRuleIndex.Result result = index.getUeiMatch(message(SyslogFacility.AUTH, SyslogSeverity.INFORMATIONAL, "sshd", ""), "Accepted publickey for root");
+        assertSame(ueiList.getUeiMatchCollection().get(0), result.getUeiMatch());
+        assertEquals("root", result.getMatcher().group(2));
+
+        result = index.getUeiMatch(message(SyslogFacility.AUTH, SyslogSeverity.INFORMATIONAL, "sshd", ""), "Failed password for root");
+        assertSame(ueiList.getUeiMatchCollection().get(1), result.getUeiMatch());
+        assertNull(result.getMatcher());
+
+        result = index.getUeiMatch(message(SyslogFacility.AUTH, SyslogSeverity.INFORMATIONAL, "sshd", ""), "Login failed");
+        assertSame(ueiList.getUeiMatchCollection().get(2), result.getUeiMatch());
+
+        result = index.getUeiMatch(message(SyslogFacility.AUTH, SyslogSeverity.INFORMATIONAL, "sshd", ""), "Anything else");
+        assertSame(ueiList.getUeiMatchCollection().get(3), result.getUeiMatch());
+
+        final String[] hits = index.getUeiMatchHits();
+        assertEquals(4, hits.length);
+        assertEquals("1 regex '^Accepted (\\S+) for (\\S+)' uei.example.org/accepted: 1", hits[0]);
+        assertEquals("4 substr '' uei.example.org/everything: 1", hits[3]);
+    }
+
+    @Test
+    public void testConstraints() {
+        final UeiList ueiList = new UeiList();
+        UeiMatch ueiMatch = ueiMatch("substr", "link down", "uei.example.org/kernel");
+        ueiMatch.addFacility("KERNEL");
+        ueiMatch.addSeverity("error");
+        ueiList.addUeiMatch(ueiMatch);
+
+        ueiMatch = ueiMatch("substr", "link down", "uei.example.org/other");
+        final ProcessMatch processMatch = new ProcessMatch();
+        processMatch.setExpression("^net");
+        ueiMatch.setProcessMatch(processMatch);
+        ueiList.addUeiMatch(ueiMatch);
+
+        final SyslogRuleIndex index = new SyslogRuleIndex(ueiList, null);
+        assertEquals("uei.example.org/kernel", index.getUeiMatch(message(SyslogFacility.KERNEL, SyslogSeverity.ERROR, null, ""), "eth0: link down").getUeiMatch().getUei());
+        assertEquals("uei.example.org/other", index.getUeiMatch(message(SyslogFacility.KERNEL, SyslogSeverity.WARNING, "netd", ""), "eth0: link down").getUeiMatch().getUei());
+        assertNull(index.getUeiMatch(message(SyslogFacility.KERNEL, SyslogSeverity.WARNING, null, ""), "eth0: link down"));
+        assertNull(index.getUeiMatch(message(SyslogFacility.USER, SyslogSeverity.ERROR, "sshd", ""), "eth0: link down"));
+    }
+
+    @Test
+    public void testHideMessage() {
+        final HideMessage hideMessage = new HideMessage();
+        hideMessage.addHideMatch(hideMatch("substr", "password"));
+        hideMessage.addHideMatch(hideMatch("regex", "secret=\\S+"));
+        hideMessage.addHideMatch(hideMatch("regex", "(unclosed"));
+
+        final SyslogRuleIndex index = new SyslogRuleIndex(null, hideMessage);
+        assertTrue(index.isHidden("user password is hunter2"));
+        assertTrue(index.isHidden("secret=42"));
+        assertFalse(index.isHidden("secret= 42"));
+        assertFalse(index.isHidden("(unclosed"));
+        assertNull(index.getUeiMatch(message(SyslogFacility.USER, SyslogSeverity.ERROR, "sshd", ""), "password"));
+
+        assertEquals("1 substr 'password': 1", index.getHideMatchHits()[0]);
+        assertEquals("2 regex 'secret=\\S+': 1", index.getHideMatchHits()[1]);
+
+        assertTrue(index.isFor(null, hideMessage));
+        hideMessage.addHideMatch(hideMatch("substr", "token"));
+        assertFalse(index.isFor(null, hideMessage));
+    }
+
+    /**
+     * Generates a large rule set like the ones seen in production: mostly
+     * regular expressions for a particular message, some substrings, some
+     * restricted to a facility, severity or process, and a few catch-alls.
+     */
+    private static UeiList generateRules(final Random random) {
+        final UeiList ueiList = new UeiList();
+        for (int i = 0; i < RULES; i++) {
+            final UeiMatch ueiMatch;
+            switch (random.nextInt(10)) {
+            case 0:
+                ueiMatch = ueiMatch("substr", "event" + i + " ", "uei.example.org/substr" + i);
+                break;
+            case 1:
+                ueiMatch = ueiMatch("regex", "^(\\S+): event" + random.nextInt(RULES) + "|interface (\\S+) down", "uei.example.org/alternation" + i);
+                break;
+            case 2:
+                ueiMatch = ueiMatch("regex", "ev[e]nt" + i + "[ :]", "uei.example.org/class" + i);
+                break;
+            default:
+                ueiMatch = ueiMatch("regex", ".*%EVT-" + (i % 7) + "-" + i + ": .*event" + i + " on (\\S+) from (\\d+\\.\\d+\\.\\d+\\.\\d+)", "uei.example.org/regex" + i);
+            }
+            if (random.nextInt(5) == 0) {
+                ueiMatch.addFacility(SyslogFacility.getFacility(random.nextInt(24)).toString());
+            }
+            if (random.nextInt(5) == 0) {
+                ueiMatch.addSeverity(SyslogSeverity.getSeverity(random.nextInt(8)).toString().toUpperCase());
+            }
+            if (random.nextInt(10) == 0) {
+                final ProcessMatch processMatch = new ProcessMatch();
+                processMatch.setExpression("^" + PROCESSES[random.nextInt(PROCESSES.length)]);
+                ueiMatch.setProcessMatch(processMatch);
+            }
+            ueiList.addUeiMatch(ueiMatch);
+        }
+        return ueiList;
+    }
+
+    private static List<SyslogMessage> generateMessages(final Random random) {
+        final List<SyslogMessage> messages = new ArrayList<SyslogMessage>();
+        for (int i = 0; i < MESSAGES; i++) {
+            final int event = random.nextInt(RULES * 2);
+            final String text;
+            switch (random.nextInt(4)) {
+            case 0:
+                text = "%EVT-" + (event % 7) + "-" + event + ": event" + event + " on Gi0/" + random.nextInt(48) + " from 192.0.2." + random.nextInt(255);
+                break;
+            case 1:
+                text = "event" + event + " happened";
+                break;
+            case 2:
+                text = "interface eth" + random.nextInt(4) + " down";
+                break;
+            default:
+                text = "unrelated message number " + event;
+            }
+            messages.add(message(SyslogFacility.getFacility(random.nextInt(24)), SyslogSeverity.getSeverity(random.nextInt(8)), PROCESSES[random.nextInt(PROCESSES.length)], text));
+        }
+        return messages;
+    }
+
+    /**
+     * Compiles the expressions of the rules, as ConvertToEvent cached them.
+     */
+    private static Pattern[] compile(final UeiList ueiList) {
+        final Pattern[] patterns = new Pattern[ueiList.getUeiMatchCount() * 2];
+        for (int i = 0; i < ueiList.getUeiMatchCount(); i++) {
+            final UeiMatch ueiMatch = ueiList.getUeiMatchCollection().get(i);
+            if (!"substr".equals(ueiMatch.getMatch().getType())) {
+                patterns[2 * i] = Pattern.compile(ueiMatch.getMatch().getExpression(), Pattern.MULTILINE);
+            }
+            if (ueiMatch.getProcessMatch() != null) {
+                patterns[2 * i + 1] = Pattern.compile(ueiMatch.getProcessMatch().getExpression(), Pattern.MULTILINE);
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * The first ueiMatch that matches, tested one rule after the other.
+     */
+    private static UeiMatch scan(final UeiList ueiList, final Pattern[] patterns, final SyslogMessage message) {
+        final String text = message.getMatchedMessage();
+        for (int i = 0; i < ueiList.getUeiMatchCount(); i++) {
+            final UeiMatch ueiMatch = ueiList.getUeiMatchCollection().get(i);
+            if (!ueiMatch.getFacilityCollection().isEmpty() && !containsIgnoreCase(ueiMatch.getFacilityCollection(), message.getFacility().toString())) {
+                continue;
+            }
+            if (!ueiMatch.getSeverityCollection().isEmpty() && !containsIgnoreCase(ueiMatch.getSeverityCollection(), message.getSeverity().toString())) {
+                continue;
+            }
+            if (patterns[2 * i + 1] != null && !patterns[2 * i + 1].matcher(message.getProcessName()).find()) {
+                continue;
+            }
+            if (patterns[2 * i] == null ? text.contains(ueiMatch.getMatch().getExpression()) : patterns[2 * i].matcher(text).find()) {
+                return ueiMatch;
+            }
+        }
+        return null;
+    }
+
+    private static boolean containsIgnoreCase(final List<String> values, final String value) {
+        for (final String v : values) {
+            if (v.equalsIgnoreCase(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testAgreesWithLinearScan() {
+        final Random random = new Random(42);
+        final UeiList ueiList = generateRules(random);
+        final Pattern[] patterns = compile(ueiList);
+        final SyslogRuleIndex index = new SyslogRuleIndex(ueiList, null);
+
+        int matched = 0;
+        for (final SyslogMessage message : generateMessages(random)) {
+            final UeiMatch expected = scan(ueiList, patterns, message);
+            final SyslogRuleIndex.Result result = index.getUeiMatch(message, message.getMatchedMessage());
+            if (expected == null) {
+                assertNull(message.getMessage(), result);
+            } else {
+                assertNotNull(message.getMessage(), result);
+                assertSame(message.getMessage(), expected, result.getUeiMatch());
+                matched++;
+            }
+        }
+        assertTrue(matched > MESSAGES / 4);
+    }
+
+    @Test
+    @Ignore("compares the index with the regex scan, slow")
+    public void testMatchTime() {
+        final Random random = new Random(42);
+        final UeiList ueiList = generateRules(random);
+        final List<SyslogMessage> messages = generateMessages(random);
+
+        final Pattern[] patterns = compile(ueiList);
+
+        long start = System.nanoTime();
+        int scanned = 0;
+        for (final SyslogMessage message : messages) {
+            if (scan(ueiList, patterns, message) != null) {
+                scanned++;
+            }
+        }
+        final long scan = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        final SyslogRuleIndex index = new SyslogRuleIndex(ueiList, null);
+        final long build = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int indexed = 0;
+        for (final SyslogMessage message : messages) {
+            if (index.getUeiMatch(message, message.getMatchedMessage()) != null) {
+                indexed++;
+            }
+        }
+        final long lookup = System.nanoTime() - start;
+
+        LOG.info("{} rules, {} messages: scan {} us/message ({} matched), index {} us/message ({} matched), built in {} ms",
+                 RULES, MESSAGES, scan / 1000 / MESSAGES, scanned, lookup / 1000 / MESSAGES, indexed, build / 1000000);
+    }
+}
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2015 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2015 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.threshd;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.MapContext;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.opennms.netmgt.config.threshd.Expression;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Evaluates an interface utilization threshold expression over a set of
+ * per-interface resources, both the way it used to be done (parsing the
+ * expression and copying the values for every resource) and with
+ * {@link ExpressionConfigWrapper}, and checks that they agree.
+ * testEvaluationsPerSecond() logs the evaluations per second of each and
+ * is ignored by default.
+ */
+public class ExpressionConfigWrapperBenchmarkTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExpressionConfigWrapperBenchmarkTest.class);
+
+    private static final String FORMULA = "ifSpeed > 0 and ifSpeed < 100000000 ? ((ifInOctets * 8 / ifSpeed) * 100) : (ifHighSpeed > 0 ? (((ifHCInOctets * 8) / (ifHighSpeed * 1000000)) * 100) : 0)";
+
+    private static final int RESOURCES = 5000;
+
+    private static final int ITERATIONS = 5;
+
+    private final List<Map<String, Double>> m_resources = new ArrayList<Map<String, Double>>();
+
+    private ExpressionConfigWrapper m_wrapper;
+
+    @Before
+    public void setUp() throws Exception {
+        final Expression exp = new Expression();
+        exp.setExpression(FORMULA);
+        m_wrapper = new ExpressionConfigWrapper(exp);
+
+        final Random random = new Random(42);
+        for (int i = 0; i < RESOURCES; i++) {
+            final Map<String, Double> values = new HashMap<String, Double>();
+            values.put("ifInOctets", random.nextDouble() * 1000000);
+            values.put("ifHCInOctets", random.nextDouble() * 100000000);
+            values.put("ifSpeed", random.nextBoolean() ? 10000000.0 : 1000000000.0);
+            values.put("ifHighSpeed", 1000.0);
+            m_resources.add(values);
+        }
+    }
+
+    private static double evaluateUncached(final Map<String, Double> values) {
+        final Map<String,Object> context = new HashMap<String,Object>();
+        context.putAll(values);
+        context.put("datasources", new HashMap<String, Double>(values));
+        context.put("math", new ExpressionConfigWrapper.MathBinding());
+        final Object resultObject = new JexlEngine().createExpression(FORMULA).evaluate(new MapContext(context));
+        return Double.parseDouble(resultObject.toString());
+    }
+
+    @Test
+    public void testAgreesWithUncachedEvaluation() throws Exception {
+        for (final Map<String, Double> values : m_resources) {
+            assertEquals(evaluateUncached(values), m_wrapper.evaluate(values), 0.0);
+        }
+    }
+
+    @Test
+    @Ignore("measures evaluations per second only")
+    public void testEvaluationsPerSecond() throws Exception {
+        // warm up
+        for (final Map<String, Double> values : m_resources) {
+            evaluateUncached(values);
+            m_wrapper.evaluate(values);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (final Map<String, Double> values : m_resources) {
+                evaluateUncached(values);
+            }
+        }
+        final long uncached = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (final Map<String, Double> values : m_resources) {
+                m_wrapper.evaluate(values);
+            }
+        }
+        final long cached = System.nanoTime() - start;
+
+        final int evaluations = ITERATIONS * RESOURCES;
+        LOG.info("{} threshold evaluations: parsed every time {}/sec, parsed once {}/sec",
+                 evaluations, Math.round(evaluations / (uncached / 1e9)), Math.round(evaluations / (cached / 1e9)));
+    }
+
+    @Test
+    public void testExpressionChange() throws Exception {
+        final Expression exp = new Expression();
+        exp.setExpression("ifInOctets * 8");
+        final ExpressionConfigWrapper wrapper = new ExpressionConfigWrapper(exp);
+        final Map<String, Double> values = m_resources.get(0);
+        assertEquals(values.get("ifInOctets") * 8, wrapper.evaluate(values), 0.0);
+
+        exp.setExpression("ifInOctets * 16");
+        assertEquals(values.get("ifInOctets") * 16, wrapper.evaluate(values), 0.0);
+    }
+}
@@ -147,6 +147,21 @@ public class TimeoutTracker {
 
     }
 
+    /**
+     * Returns how long {@link #startAttempt()} will wait before starting the
+     * next attempt when strict timeouts are enabled, so that callers that
+     * must not block can delay the attempt by other means.
+     *
+     * @return the delay in milliseconds, 0 if the attempt can start right away
+     */
+    public long getNextAttemptDelayInMillis() {
+        if (!m_strictTimeouts) {
+            return 0L;
+        }
+        final long nanos = m_nextRetryTimeNanos - System.nanoTime();
+        return nanos <= 0 ? 0L : (nanos + 999999L) / 1000000L;
+    }
+
     private void sleep(long nanos) {
         long millis = nanos / 1000000L;
         int remainingNanos = (int)(nanos % 1000000L);